@@ -1,5 +1,6 @@
 #!/usr/bin/env python3
 import os
+import re
 import requests
 from plumbum import local, FG, BG
 
@@ -47,6 +48,10 @@ juris = supported_jurisdictions[0]
 bindings_xjb_contents = f"""<?xml version="1.0" ?>
 <jaxb:bindings version="1.0" xmlns:jaxb="http://java.sun.com/xml/ns/jaxb"
   xmlns:xsd="http://www.w3.org/2001/XMLSchema">
+    <!-- The NIEM proxy base64Binary (document contents) is bound to a DataHandler with
+         @XmlMimeType, so JAXB streams documents instead of holding them as byte[]s. xjc only reads
+         xmime:expectedContentTypes from the schema itself, not from a bindings file, so
+         redo_wsdls.py adds it to the downloaded proxy schema (ecf-13.xsd) before generating. -->
     <jaxb:bindings schemaLocation="ecf-11.xsd">
         <jaxb:globalBindings typesafeEnumMaxMembers="1024"/>
     </jaxb:bindings>
@@ -57,6 +62,26 @@ os.chdir(f'{juris}/{tyler_env}')
 with open('bindings.xjb', 'w') as f:
   f.write(bindings_xjb_contents)
 
+def add_xmime_to_base64_binary(xsd_dir='.'):
+  """Marks the NIEM proxy base64Binary as xmime content, so xjc makes it a DataHandler."""
+  for name in os.listdir(xsd_dir):
+    if not name.endswith('.xsd'):
+      continue
+    path = os.path.join(xsd_dir, name)
+    with open(path) as f:
+      schema = f.read()
+    if 'targetNamespace="http://niem.gov/niem/proxy/xsd/2.0"' not in schema or 'xmime:' in schema:
+      continue
+    schema = re.sub(r'<(\w+):schema ', r'<\1:schema xmlns:xmime="http://www.w3.org/2005/05/xmlmime" ', schema, count=1)
+    schema = re.sub(r'<(\w+):complexType name="base64Binary"',
+                    r'<\1:complexType name="base64Binary" xmime:expectedContentTypes="application/octet-stream"',
+                    schema, count=1)
+    with open(path, 'w') as f:
+      f.write(schema)
+    print(f'added xmime:expectedContentTypes to base64Binary in {name}')
+
+add_xmime_to_base64_binary()
+
 downloaded_fs = ['EFMUserServiceSingle.svc.wsdl', 'EFMFirmServiceSingle.svc.wsdl']
 
 wsdl2java['-client', '-b', 'bindings.xjb', '-xjc-Xts', '-d', '../../../../java', '-verbose', 'ECF-4.0-FilingReviewMDEService.wsdl'] & FG
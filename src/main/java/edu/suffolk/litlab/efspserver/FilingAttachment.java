@@ -1,12 +1,17 @@
 package edu.suffolk.litlab.efspserver;
 
+import java.net.URL;
+import java.util.Optional;
+
 /** An individual PDF, all a part of the same "document". The equivalent of an ALDocument. */
 public class FilingAttachment {
   private final String filingComponentCode;
   // For the setBinaryDescriptionText
   private final String documentDescription;
   private final String fileName;
-  private final byte[] fileContents;
+  private SpooledContents contents;
+  /** Where to get the contents from, if they haven't been fetched yet. */
+  private final Optional<URL> dataUrl;
   // This is, "determined via configuration within the EFM for each EFSP"?
   // So, we can just say yes?
   // Provides Document Type code / BinaryFormatStandardName
@@ -23,11 +28,54 @@ public class FilingAttachment {
     this.fileName = fileName;
     this.documentTypeFormatStandardName = documentTypeFormatStandardName;
     this.documentDescription = documentDescription;
-    this.fileContents = fileStream;
+    this.contents = SpooledContents.of(fileStream);
+    this.dataUrl = Optional.empty();
+  }
+
+  /**
+   * An attachment whose contents still need to be downloaded from dataUrl, see {@link
+   * edu.suffolk.litlab.efspserver.docassemble.DocumentFetcher}.
+   */
+  public FilingAttachment(
+      String fileName,
+      URL dataUrl,
+      String documentTypeFormatStandardName,
+      String filingComponentCode,
+      String documentDescription) {
+    this.filingComponentCode = filingComponentCode;
+    this.fileName = fileName;
+    this.documentTypeFormatStandardName = documentTypeFormatStandardName;
+    this.documentDescription = documentDescription;
+    this.contents = null;
+    this.dataUrl = Optional.of(dataUrl);
+  }
+
+  /** The file itself, which might be on disk; stream it instead of reading it all in. */
+  public SpooledContents getContents() {
+    if (contents == null) {
+      throw new IllegalStateException(fileName + " hasn't been fetched from " + dataUrl.get());
+    }
+    return contents;
+  }
+
+  public Optional<URL> getDataUrl() {
+    return dataUrl;
+  }
+
+  public boolean needsFetching() {
+    return contents == null;
+  }
+
+  public void setContents(SpooledContents contents) {
+    this.contents = contents;
   }
 
-  public byte[] getFileContents() {
-    return fileContents;
+  /** Done with the contents, see {@link SpooledContents#release()}. */
+  public void releaseContents() {
+    if (contents != null) {
+      contents.release();
+      contents = null;
+    }
   }
 
   public String getFileName() {
@@ -96,10 +96,10 @@ public class FilingDoc {
   }
 
   /** Returns the sum of all of the attachment files lengths. */
-  public int allAttachmentsLength() {
-    int length = 0;
+  public long allAttachmentsLength() {
+    long length = 0;
     for (var attachment : filingAttachments) {
-      length += attachment.getFileContents().length;
+      length += attachment.getContents().length();
     }
     return length;
   }
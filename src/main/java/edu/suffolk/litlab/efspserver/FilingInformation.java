@@ -164,6 +164,15 @@ public class FilingInformation {
     return filingDocs;
   }
 
+  /** Lets go of every document's contents, deleting any temp files. Call when the request ends. */
+  public void releaseDocuments() {
+    for (FilingDoc doc : filingDocs) {
+      for (FilingAttachment attachment : doc.getFilingAttachments()) {
+        attachment.releaseContents();
+      }
+    }
+  }
+
   public String getPaymentId() {
     return paymentId;
   }
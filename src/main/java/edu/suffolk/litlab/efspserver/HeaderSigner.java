@@ -24,19 +24,45 @@ import org.bouncycastle.cms.CMSTypedData;
 import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Signs the headers that Tyler needs to download codes, with the X509 certificate it gave us.
+ *
+ * <p>The keystore is read, and the key in it decrypted, the first time something is signed; after
+ * that, each signature just needs a new generator around the same key. The generators aren't
+ * thread safe, but the key and certificates are, so one signer can be shared by all of the
+ * download workers.
+ */
 public class HeaderSigner {
   private static Logger log = LoggerFactory.getLogger(HeaderSigner.class);
 
   private static final String SIGNATUREALGO = "SHA256withRSA";
+
+  /** Made once, since making a provider registers every algorithm it has, which is slow. */
+  private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+  static {
+    Security.addProvider(PROVIDER);
+  }
+
   private final String pathToKeystore;
   private final String x509Password;
 
+  /** What's needed from the keystore to sign. Null until the first signature. */
+  private volatile SigningKey signingKey;
+
+  private record SigningKey(
+      PrivateKey privateKey,
+      X509Certificate cert,
+      JcaCertStore certStore,
+      DigestCalculatorProvider digests) {}
+
   /**
    * The string password to the x509 certificate. This password is given by Tyler, and will also
    * unlock the .pfx file.
@@ -70,9 +96,24 @@ public class HeaderSigner {
     }
   }
 
-  private CMSSignedDataGenerator setUpProvider(final KeyStore keystore)
-      throws GeneralSecurityException, OperatorCreationException, CMSException {
-    Security.addProvider(new BouncyCastleProvider());
+  /** Loads the key the first time it's needed. If that fails, it's tried again next time. */
+  private SigningKey signingKey()
+      throws GeneralSecurityException, IOException, OperatorCreationException {
+    SigningKey key = signingKey;
+    if (key == null) {
+      synchronized (this) {
+        key = signingKey;
+        if (key == null) {
+          key = readSigningKey(loadKeyStore());
+          signingKey = key;
+        }
+      }
+    }
+    return key;
+  }
+
+  private SigningKey readSigningKey(final KeyStore keystore)
+      throws GeneralSecurityException, OperatorCreationException {
     String alias = keystore.aliases().nextElement();
 
     Certificate[] certchain = keystore.getCertificateChain(alias);
@@ -90,19 +131,24 @@ public class HeaderSigner {
     Certificate cert = keystore.getCertificate(alias);
 
     char[] x509Password = this.x509Password.toCharArray();
+    PrivateKey privateKey = (PrivateKey) keystore.getKey(alias, x509Password);
+    DigestCalculatorProvider digests =
+        new JcaDigestCalculatorProviderBuilder().setProvider(PROVIDER).build();
+    return new SigningKey(privateKey, (X509Certificate) cert, certstore, digests);
+  }
+
+  /** Makes a generator for one signature: they keep state while signing, so aren't shared. */
+  private static CMSSignedDataGenerator setUpGenerator(final SigningKey key)
+      throws GeneralSecurityException, OperatorCreationException, CMSException {
     ContentSigner signer =
-        new JcaContentSignerBuilder(SIGNATUREALGO)
-            .setProvider("BC")
-            .build((PrivateKey) (keystore.getKey(alias, x509Password)));
+        new JcaContentSignerBuilder(SIGNATUREALGO).setProvider(PROVIDER).build(key.privateKey());
 
     CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
 
     generator.addSignerInfoGenerator(
-        new JcaSignerInfoGeneratorBuilder(
-                new JcaDigestCalculatorProviderBuilder().setProvider("BC").build())
-            .build(signer, (X509Certificate) cert));
+        new JcaSignerInfoGeneratorBuilder(key.digests()).build(signer, key.cert()));
 
-    generator.addCertificates(certstore);
+    generator.addCertificates(key.certStore());
     return generator;
   }
 
@@ -115,7 +161,7 @@ public class HeaderSigner {
    */
   public Optional<String> signedBase64(String content) {
     try {
-      byte[] signedBytes = signPkcs7(content.getBytes("UTF-8"), setUpProvider(loadKeyStore()));
+      byte[] signedBytes = signPkcs7(content.getBytes("UTF-8"), setUpGenerator(signingKey()));
       return Optional.of(Base64.getEncoder().encodeToString(signedBytes));
     } catch (GeneralSecurityException ex) {
       log.error("Exception when trying to sign info with a X509 cert: " + ex);
@@ -0,0 +1,75 @@
+package edu.suffolk.litlab.efspserver;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each JAXBContext we use around, instead of making a new one every time we (un)marshal.
+ * Making a context has to walk all of the classes that it can bind, which for the ECF message types
+ * is one of the slowest things the server does.
+ *
+ * <p>Contexts are thread safe, but (Un)Marshallers aren't, so each thread gets its own.
+ */
+public class JaxbContexts {
+  private static final Map<List<Class<?>>, Entry> contexts = new ConcurrentHashMap<>();
+
+  private static class Entry {
+    final JAXBContext context;
+    final ThreadLocal<Marshaller> marshallers = new ThreadLocal<>();
+    final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<>();
+
+    Entry(JAXBContext context) {
+      this.context = context;
+    }
+  }
+
+  /** Gets the context that can bind all of the given classes (the order matters). */
+  public static JAXBContext get(Class<?>... classes) throws JAXBException {
+    return entry(classes).context;
+  }
+
+  /**
+   * A marshaller (with formatted output) for the given classes. Only use it on the current thread,
+   * and don't change its properties.
+   */
+  public static Marshaller formattedMarshaller(Class<?>... classes) throws JAXBException {
+    Entry entry = entry(classes);
+    Marshaller mar = entry.marshallers.get();
+    if (mar == null) {
+      mar = entry.context.createMarshaller();
+      mar.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+      entry.marshallers.set(mar);
+    }
+    return mar;
+  }
+
+  /** An unmarshaller for the given classes. Only use it on the current thread. */
+  public static Unmarshaller unmarshaller(Class<?>... classes) throws JAXBException {
+    Entry entry = entry(classes);
+    Unmarshaller unmar = entry.unmarshallers.get();
+    if (unmar == null) {
+      unmar = entry.context.createUnmarshaller();
+      entry.unmarshallers.set(unmar);
+    }
+    return unmar;
+  }
+
+  private static Entry entry(Class<?>... classes) throws JAXBException {
+    List<Class<?>> key = List.of(classes);
+    Entry entry = contexts.get(key);
+    if (entry == null) {
+      // Two threads might both make the context the first time; that's fine, only one is kept.
+      Entry newEntry = new Entry(JAXBContext.newInstance(classes));
+      entry = contexts.putIfAbsent(key, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+      }
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,164 @@
+package edu.suffolk.litlab.efspserver;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The contents of a single attachment. Small documents are kept in memory, but anything bigger
+ * than DOC_SPOOL_THRESHOLD_BYTES is written to a temp file, so a few big filings at once can't run
+ * us out of heap. Read it with {@link #openStream()} or {@link #asDataHandler()}, which never pull
+ * the whole file into memory.
+ *
+ * <p>A new SpooledContents has one reference, owned by whoever made it. Each other owner (i.e. the
+ * {@link edu.suffolk.litlab.efspserver.docassemble.DocumentCache}) calls {@link #retain()}, and
+ * every owner calls {@link #release()} when it's done, i.e. when the request finishes. The temp
+ * file is deleted as soon as the last reference is released. If a reference is leaked, the file is
+ * still deleted once this object is garbage collected.
+ */
+public final class SpooledContents {
+  private static final Logger log = LoggerFactory.getLogger(SpooledContents.class);
+
+  private static final int THRESHOLD =
+      Integer.parseInt(GetEnv("DOC_SPOOL_THRESHOLD_BYTES").orElse(Integer.toString(1 << 20)));
+
+  private static final Cleaner cleaner = Cleaner.create();
+
+  private final byte[] inMemory;
+  private final Path file;
+  private final long length;
+  private final AtomicInteger refs = new AtomicInteger(1);
+  /** Deletes the file, either from the last {@link #release()}, or when this is collected. */
+  private final Cleaner.Cleanable deleter;
+
+  private SpooledContents(byte[] inMemory, Path file, long length) {
+    this.inMemory = inMemory;
+    this.file = file;
+    this.length = length;
+    this.deleter = (file != null) ? cleaner.register(this, new Deleter(file)) : null;
+  }
+
+  /** Wraps bytes that are already in memory. */
+  public static SpooledContents of(byte[] contents) {
+    return new SpooledContents(contents, null, contents.length);
+  }
+
+  /** Reads the whole stream, moving to a temp file if it's more than the threshold. */
+  public static SpooledContents spool(InputStream in) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      buffer.write(chunk, 0, read);
+      if (buffer.size() > THRESHOLD) {
+        return spoolToFile(buffer, in);
+      }
+    }
+    return of(buffer.toByteArray());
+  }
+
+  private static SpooledContents spoolToFile(ByteArrayOutputStream start, InputStream rest)
+      throws IOException {
+    Path file = Files.createTempFile("efsp-doc-", ".bin");
+    try (OutputStream out = Files.newOutputStream(file)) {
+      start.writeTo(out);
+      rest.transferTo(out);
+    } catch (IOException ex) {
+      Files.deleteIfExists(file);
+      throw ex;
+    }
+    return new SpooledContents(null, file, Files.size(file));
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public boolean isInMemory() {
+    return inMemory != null;
+  }
+
+  /** Adds an owner, who also has to {@link #release()} it. */
+  public SpooledContents retain() {
+    if (refs.getAndUpdate(r -> (r > 0) ? r + 1 : r) <= 0) {
+      throw new IllegalStateException("Contents were already released");
+    }
+    return this;
+  }
+
+  /** This owner is done with the contents; the temp file is deleted if it was the last one. */
+  public void release() {
+    int left = refs.decrementAndGet();
+    if (left == 0 && deleter != null) {
+      deleter.clean();
+    } else if (left < 0) {
+      log.warn("Released spooled contents more times than they were retained");
+    }
+  }
+
+  /** A new stream over the contents; the caller has to close it. */
+  public InputStream openStream() throws IOException {
+    if (inMemory != null) {
+      return new ByteArrayInputStream(inMemory);
+    }
+    return Files.newInputStream(file);
+  }
+
+  /** For JAXB / CXF, which stream the contents straight out of the data handler. */
+  public DataHandler asDataHandler() {
+    return new DataHandler(new ContentsDataSource());
+  }
+
+  /** Only for callers that really need all of it at once: prefer {@link #openStream()}. */
+  public byte[] readAllBytes() throws IOException {
+    if (inMemory != null) {
+      return inMemory;
+    }
+    return Files.readAllBytes(file);
+  }
+
+  private class ContentsDataSource implements DataSource {
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return openStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      throw new IOException("Attachment contents are read only");
+    }
+
+    @Override
+    public String getContentType() {
+      return "application/octet-stream";
+    }
+
+    @Override
+    public String getName() {
+      return (file != null) ? file.getFileName().toString() : "in-memory";
+    }
+  }
+
+  private record Deleter(Path file) implements Runnable {
+    @Override
+    public void run() {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException ex) {
+        log.warn("Couldn't delete spooled document {}: {}", file, ex.toString());
+      }
+    }
+  }
+}
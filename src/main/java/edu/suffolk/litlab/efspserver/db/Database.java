@@ -47,5 +47,13 @@ public abstract class Database implements AutoCloseable {
     }
   }
 
+  public void rollback() throws SQLException {
+    if (this.conn != null) {
+      this.conn.rollback();
+    } else {
+      throw new SQLException("Connection is null!");
+    }
+  }
+
   public abstract void createTablesIfAbsent() throws SQLException;
 }
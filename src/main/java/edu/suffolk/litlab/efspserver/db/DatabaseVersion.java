@@ -2,6 +2,7 @@ package edu.suffolk.litlab.efspserver.db;
 
 import static edu.suffolk.litlab.efspserver.StdLib.strFromException;
 
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeStaging;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -11,6 +12,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import org.bouncycastle.util.encoders.Hex;
@@ -26,7 +28,7 @@ import org.slf4j.LoggerFactory;
  */
 public class DatabaseVersion {
 
-  static final int CURRENT_VERSION = 10;
+  static final int CURRENT_VERSION = 11;
   private static Logger log = LoggerFactory.getLogger(DatabaseVersion.class);
   private final Connection codeConn;
   private final Connection userConn;
@@ -154,6 +156,8 @@ public class DatabaseVersion {
       update8To9();
     } else if (onDiskVersion == 9) {
       update9To10();
+    } else if (onDiskVersion == 10) {
+      update10To11();
     }
     setSchemaVersion(onDiskVersion + 1);
     userConn.commit();
@@ -531,4 +535,104 @@ public class DatabaseVersion {
     }
     codeConn.commit();
   }
+
+  public void update10To11() throws SQLException {
+    // Partitions every code table by domain, so a domain's codes can be refreshed in new tables
+    // and swapped in all at once, instead of deleting and re-inserting rows in the live tables.
+    final List<String> tableNames =
+        List.of(
+            "location",
+            "error",
+            "version",
+            "installedversion",
+            "country",
+            "state",
+            "filingstatus",
+            "datafieldconfig",
+            "answer",
+            "arrestlocation",
+            "bond",
+            "casecategory",
+            "casesubtype",
+            "casetype",
+            "chargephase",
+            "citationjurisdiction",
+            "crossreference",
+            "damageamount",
+            "degree",
+            "disclaimerrequirement",
+            "driverlicensetype",
+            "documenttype",
+            "ethnicity",
+            "eyecolor",
+            "filertype",
+            "filetype",
+            "filing",
+            "filingcomponent",
+            "generaloffense",
+            "haircolor",
+            "language",
+            "lawenforcementunit",
+            "motiontype",
+            "namesuffix",
+            "optionalservices",
+            "optionalservices_filinglist",
+            "partytype",
+            "physicalfeature",
+            "procedureremedy",
+            "question",
+            "race",
+            "servicetype",
+            "statute",
+            "statutetype",
+            "vehiclecolor",
+            "vehiclemake",
+            "vehicletype",
+            "refundreason");
+    final String isPlainTable =
+        """
+        SELECT COUNT(*) FROM pg_catalog.pg_class c
+        JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = 'public' AND c.relname = ? AND c.relkind = 'r'""";
+    try (PreparedStatement existsSt = codeConn.prepareStatement(isPlainTable);
+        Statement st = codeConn.createStatement()) {
+      for (String tableName : tableNames) {
+        existsSt.setString(1, tableName);
+        ResultSet rs = existsSt.executeQuery();
+        if (!rs.next() || rs.getInt(1) <= 0) {
+          continue;
+        }
+        log.info("Partitioning {} by domain", tableName);
+        st.executeUpdate(
+            "ALTER TABLE \"%s\" RENAME TO \"%s__legacy\"".formatted(tableName, tableName));
+        st.executeUpdate(
+            """
+            CREATE TABLE "%s" (LIKE "%s__legacy" INCLUDING ALL) PARTITION BY LIST (domain)"""
+                .formatted(tableName, tableName));
+        st.executeUpdate(
+            "CREATE TABLE \"%s__default\" PARTITION OF \"%s\" DEFAULT"
+                .formatted(tableName, tableName));
+        List<String> domains = new ArrayList<>();
+        ResultSet domainRs =
+            st.executeQuery(
+                "SELECT DISTINCT domain FROM \"%s__legacy\" WHERE domain IS NOT NULL"
+                    .formatted(tableName));
+        while (domainRs.next()) {
+          domains.add(domainRs.getString(1));
+        }
+        for (String domain : domains) {
+          st.executeUpdate(
+              "CREATE TABLE \"%s\" PARTITION OF \"%s\" FOR VALUES IN ('%s')"
+                  .formatted(
+                      CodeStaging.partitionName(tableName, domain),
+                      tableName,
+                      domain.replace("'", "''")));
+        }
+        st.executeUpdate(
+            "INSERT INTO \"%s\" SELECT * FROM \"%s__legacy\"".formatted(tableName, tableName));
+        st.executeUpdate("DROP TABLE \"%s__legacy\"".formatted(tableName));
+      }
+    }
+    codeConn.commit();
+  }
 }
@@ -0,0 +1,96 @@
+package edu.suffolk.litlab.efspserver.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+/**
+ * A {@link Connection} that doesn't take a connection out of the pool until something actually
+ * needs it.
+ *
+ * <p>Most requests open a {@link edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase} for a
+ * handful of lookups that can be answered from memory; this keeps those requests from holding one
+ * of the (few) pooled connections while they do it.
+ *
+ * <p>If the pool can't give a connection when one is needed, the call throws an unchecked {@link
+ * ConnectionUnavailableException}. Callers that treat a SQLException as "nothing found" (like
+ * most of CodeDatabase's lookups) would otherwise give a wrong answer, instead of failing.
+ */
+public class LazyConnection implements InvocationHandler {
+  private final DataSource ds;
+  private Connection conn;
+  private boolean closed = false;
+
+  private LazyConnection(DataSource ds) {
+    this.ds = ds;
+  }
+
+  public static Connection of(DataSource ds) {
+    return (Connection)
+        Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new LazyConnection(ds));
+  }
+
+  /** True if the underlying connection has been taken from the pool. */
+  public static boolean isAcquired(Connection conn) {
+    if (conn != null && Proxy.isProxyClass(conn.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(conn);
+      if (handler instanceof LazyConnection lazy) {
+        return lazy.conn != null;
+      }
+    }
+    return conn != null;
+  }
+
+  /** Thrown by any call that needed the underlying connection, when it couldn't be taken. */
+  public static class ConnectionUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionUnavailableException(SQLException cause) {
+      super("Couldn't get a database connection: " + cause.getMessage(), cause);
+    }
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "close":
+        closed = true;
+        if (conn != null) {
+          conn.close();
+        }
+        return null;
+      case "isClosed":
+        return closed || (conn != null && conn.isClosed());
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "LazyConnection[" + conn + "]";
+      default:
+        break;
+    }
+    if (closed) {
+      throw new SQLException("Connection is closed");
+    }
+    if (conn == null) {
+      try {
+        conn = ds.getConnection();
+      } catch (SQLException ex) {
+        throw new ConnectionUnavailableException(ex);
+      }
+    }
+    try {
+      return method.invoke(conn, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.hubspot.algebra.Result;
 import edu.suffolk.litlab.efspserver.FilingInformation;
+import edu.suffolk.litlab.efspserver.services.FailFastCollector;
 import edu.suffolk.litlab.efspserver.services.FilingError;
 import edu.suffolk.litlab.efspserver.services.InfoCollector;
 import edu.suffolk.litlab.efspserver.services.InterviewToFilingInformationConverter;
@@ -22,6 +23,16 @@ public class DocassembleToFilingInformationConverter extends InterviewToFilingIn
   @Override
   public Result<FilingInformation, FilingError> traverseInterview(
       String interviewContents, InfoCollector collector) {
+    return parse(interviewContents, collector, true);
+  }
+
+  @Override
+  public Result<FilingInformation, FilingError> extractWithoutDocuments(String interviewContents) {
+    return parse(interviewContents, new FailFastCollector(), false);
+  }
+
+  private Result<FilingInformation, FilingError> parse(
+      String interviewContents, InfoCollector collector, boolean fetchDocuments) {
     SimpleModule module = new SimpleModule();
     module.addDeserializer(
         FilingInformation.class,
@@ -33,6 +44,9 @@ public class DocassembleToFilingInformationConverter extends InterviewToFilingIn
       if (info == null) {
         return Result.err(FilingError.malformedInterview("The interview contents were null"));
       }
+      if (fetchDocuments) {
+        DocumentFetcher.fetchAll(info, collector);
+      }
       return Result.ok(info);
     } catch (JsonExtractException ex) {
       log.warn("Got extract Exception: " + ex);
@@ -40,6 +54,8 @@ public class DocassembleToFilingInformationConverter extends InterviewToFilingIn
     } catch (JsonProcessingException ex) {
       log.warn("Parsing Exception: " + ex);
       return Result.err(FilingError.malformedInterview("JsonParsing Exception: " + ex));
+    } catch (FilingError err) {
+      return Result.err(err);
     }
   }
 }
@@ -0,0 +1,184 @@
+package edu.suffolk.litlab.efspserver.docassemble;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import edu.suffolk.litlab.efspserver.SpooledContents;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps documents that we've recently downloaded from docassemble, so the usual check, fees, then
+ * submit calls for the same interview only download each PDF once.
+ *
+ * <p>Entries are keyed by the server that asked for it and the data_url, and point to the contents
+ * by their SHA-256, so the same document behind two URLs is only kept once. The contents are
+ * {@link SpooledContents}, so big documents are on disk, not in the heap. If docassemble gave us
+ * an ETag or Last-Modified, the caller revalidates with a conditional GET before using an entry.
+ *
+ * <p>The cache holds its own reference to each document's contents, and releases it when the
+ * document is dropped. Contents handed to a caller are retained for it, so the caller releases them
+ * when its request is done.
+ *
+ * <p>Entries last DOC_CACHE_TTL_SECONDS (default 15 minutes, 0 turns the cache off), and the least
+ * recently used are dropped when there's more than DOC_CACHE_MAX_BYTES (default 512 MiB) in total.
+ */
+public class DocumentCache {
+  private static final Logger log = LoggerFactory.getLogger(DocumentCache.class);
+
+  private static final Duration TTL =
+      Duration.ofSeconds(Long.parseLong(GetEnv("DOC_CACHE_TTL_SECONDS").orElse("900")));
+  private static final long MAX_BYTES =
+      Long.parseLong(GetEnv("DOC_CACHE_MAX_BYTES").orElse(Long.toString(512L << 20)));
+
+  /** Both guarded by the class lock. entries is in access order, so the eldest is the LRU. */
+  private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private static final Map<String, Blob> blobs = new HashMap<>();
+  private static long totalBytes = 0;
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong revalidated = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong evictions = new AtomicLong();
+
+  private record Key(String serverId, String url) {}
+
+  private static class Blob {
+    final SpooledContents contents;
+    int refs = 0;
+
+    Blob(SpooledContents contents) {
+      this.contents = contents.retain();
+    }
+  }
+
+  /** A cached document. */
+  public record Entry(
+      String sha256,
+      SpooledContents contents,
+      Optional<String> etag,
+      Optional<String> lastModified,
+      Instant storedAt) {
+    /** If we have to ask docassemble if the document changed before using it. */
+    public boolean needsRevalidation() {
+      return etag.isPresent() || lastModified.isPresent();
+    }
+  }
+
+  public static boolean enabled() {
+    return !TTL.isZero() && MAX_BYTES > 0;
+  }
+
+  /**
+   * The unexpired entry for this url, if there is one. Doesn't count as a hit or miss. Its contents
+   * are retained for the caller, who has to release them.
+   */
+  public static synchronized Optional<Entry> get(String serverId, String url) {
+    if (!enabled()) {
+      return Optional.empty();
+    }
+    Key key = new Key(serverId, url);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (entry.storedAt().plus(TTL).isBefore(Instant.now())) {
+      remove(key);
+      return Optional.empty();
+    }
+    entry.contents().retain();
+    return Optional.of(entry);
+  }
+
+  /** The entry was used as is, or docassemble said it hadn't changed (revalidated). */
+  public static void hit(boolean wasRevalidated) {
+    hits.incrementAndGet();
+    if (wasRevalidated) {
+      revalidated.incrementAndGet();
+    }
+  }
+
+  /**
+   * Adds a freshly downloaded document, whose reference is passed in by the caller. If we already
+   * have the same contents, the new copy is released and the caller gets (a reference to) ours
+   * instead. Either way, the caller has to release what's returned.
+   */
+  public static synchronized SpooledContents put(
+      String serverId,
+      String url,
+      SpooledContents contents,
+      String sha256,
+      Optional<String> etag,
+      Optional<String> lastModified) {
+    misses.incrementAndGet();
+    if (!enabled() || contents.length() > MAX_BYTES) {
+      return contents;
+    }
+    Key key = new Key(serverId, url);
+    Entry old = entries.get(key);
+    if (old != null && !old.sha256().equals(sha256)) {
+      log.info("Document at {} changed since it was cached", url);
+    }
+    remove(key);
+
+    Blob blob = blobs.get(sha256);
+    if (blob == null) {
+      blob = new Blob(contents);
+      blobs.put(sha256, blob);
+      totalBytes += contents.length();
+    } else if (blob.contents != contents) {
+      contents.release();
+      blob.contents.retain();
+    }
+    blob.refs += 1;
+    entries.put(key, new Entry(sha256, blob.contents, etag, lastModified, Instant.now()));
+
+    Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+    while (totalBytes > MAX_BYTES && eldest.hasNext()) {
+      Map.Entry<Key, Entry> toEvict = eldest.next();
+      eldest.remove();
+      release(toEvict.getValue());
+      evictions.incrementAndGet();
+    }
+    return blob.contents;
+  }
+
+  private static void remove(Key key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      release(entry);
+    }
+  }
+
+  private static void release(Entry entry) {
+    Blob blob = blobs.get(entry.sha256());
+    blob.refs -= 1;
+    if (blob.refs <= 0) {
+      blobs.remove(entry.sha256());
+      totalBytes -= blob.contents.length();
+      blob.contents.release();
+    }
+  }
+
+  /** Hit and miss counts, and how full the cache is. */
+  public static synchronized Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("hits", hits.get());
+    stats.put("revalidated_hits", revalidated.get());
+    stats.put("misses", misses.get());
+    stats.put("evictions", evictions.get());
+    stats.put("entries", (long) entries.size());
+    stats.put("documents", (long) blobs.size());
+    stats.put("bytes", totalBytes);
+    stats.put("max_bytes", MAX_BYTES);
+    return stats;
+  }
+}
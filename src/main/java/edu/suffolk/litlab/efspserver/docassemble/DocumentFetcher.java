@@ -0,0 +1,251 @@
+package edu.suffolk.litlab.efspserver.docassemble;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+import static edu.suffolk.litlab.efspserver.services.FilingError.serverError;
+
+import edu.suffolk.litlab.efspserver.FilingAttachment;
+import edu.suffolk.litlab.efspserver.FilingDoc;
+import edu.suffolk.litlab.efspserver.FilingInformation;
+import edu.suffolk.litlab.efspserver.SpooledContents;
+import edu.suffolk.litlab.efspserver.services.FilingError;
+import edu.suffolk.litlab.efspserver.services.InfoCollector;
+import edu.suffolk.litlab.efspserver.services.MDCWrappers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Downloads the contents of every attachment in a filing, after the interview has been parsed.
+ *
+ * <p>All filings share one pooled HTTP client and one set of download threads
+ * (DOC_FETCH_MAX_CONCURRENT of them), and a single filing can only use DOC_FETCH_MAX_PER_FILING of
+ * those at a time, so one filing with lots of documents can't starve the others. Connect and read
+ * timeouts are DOC_FETCH_CONNECT_TIMEOUT_MS and DOC_FETCH_READ_TIMEOUT_MS.
+ *
+ * <p>Documents that were downloaded recently (i.e. for the /filing/check call before this one) come
+ * from the {@link DocumentCache} instead.
+ */
+public class DocumentFetcher {
+  private static final Logger log = LoggerFactory.getLogger(DocumentFetcher.class);
+
+  static final int MAX_CONCURRENT = envInt("DOC_FETCH_MAX_CONCURRENT", 16);
+  static final int MAX_PER_FILING = envInt("DOC_FETCH_MAX_PER_FILING", 4);
+  private static final int CONNECT_TIMEOUT_MS = envInt("DOC_FETCH_CONNECT_TIMEOUT_MS", 15000);
+  private static final int READ_TIMEOUT_MS = envInt("DOC_FETCH_READ_TIMEOUT_MS", 60000);
+
+  private static final CloseableHttpClient client = makeClient();
+  private static final ExecutorService threads = makeThreads();
+
+  /**
+   * Fetches every attachment in the filing that still needs its contents.
+   *
+   * @throws FilingError (through the collector) if any of the documents couldn't be downloaded;
+   *     the error lists each one that failed.
+   */
+  public static void fetchAll(FilingInformation info, InfoCollector collector) throws FilingError {
+    Queue<FilingAttachment> toFetch = new ConcurrentLinkedQueue<>();
+    for (FilingDoc doc : info.getFilings()) {
+      for (FilingAttachment attachment : doc.getFilingAttachments()) {
+        if (attachment.needsFetching()) {
+          toFetch.add(attachment);
+        }
+      }
+    }
+    if (toFetch.isEmpty()) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    int count = toFetch.size();
+    Queue<String> failures = new ConcurrentLinkedQueue<>();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    // Each worker takes documents from the queue until it's empty, so at most
+    // MAX_PER_FILING downloads for this filing are ever going at once.
+    List<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(MAX_PER_FILING, count); i++) {
+      workers.add(threads.submit(() -> drain(toFetch, failures, mdc)));
+    }
+    try {
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException ex) {
+          // Stop the other workers after the document they're on, and keep waiting for them, so
+          // nothing is still downloading once the documents are released below.
+          toFetch.clear();
+          failures.add("Unexpected error while downloading documents: " + ex.getCause());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      toFetch.clear();
+      workers.forEach(w -> w.cancel(true));
+      info.releaseDocuments();
+      FilingError err = serverError("Interrupted while downloading documents");
+      collector.error(err);
+      throw err;
+    }
+    log.info(
+        "Fetched {} documents ({} failed) in {} ms",
+        count,
+        failures.size(),
+        (System.nanoTime() - start) / 1_000_000);
+
+    if (!failures.isEmpty()) {
+      // The filing won't go anywhere, so don't keep the documents that did download.
+      info.releaseDocuments();
+      FilingError err = serverError(String.join("; ", failures));
+      collector.error(err);
+      throw err;
+    }
+  }
+
+  private static void drain(
+      Queue<FilingAttachment> toFetch, Queue<String> failures, Map<String, String> mdc) {
+    if (mdc != null) {
+      MDC.setContextMap(mdc);
+    }
+    try {
+      FilingAttachment attachment;
+      while ((attachment = toFetch.poll()) != null) {
+        URL url = attachment.getDataUrl().get();
+        try {
+          attachment.setContents(download(url));
+        } catch (IOException | URISyntaxException ex) {
+          log.warn("Couldn't download {} from {}: {}", attachment.getFileName(), url, ex);
+          failures.add("IOException trying to connect to data_url (" + url + "): " + ex);
+        }
+      }
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  private static SpooledContents download(URL url) throws IOException, URISyntaxException {
+    String serverId = Optional.ofNullable(MDC.get(MDCWrappers.SERVER_ID)).orElse("");
+    Optional<DocumentCache.Entry> cached = DocumentCache.get(serverId, url.toString());
+    if (cached.isPresent() && !cached.get().needsRevalidation()) {
+      DocumentCache.hit(false);
+      return cached.get().contents();
+    }
+
+    HttpGet get = new HttpGet(url.toURI());
+    cached.flatMap(c -> c.etag()).ifPresent(etag -> get.setHeader("If-None-Match", etag));
+    cached
+        .flatMap(c -> c.lastModified())
+        .ifPresent(modified -> get.setHeader("If-Modified-Since", modified));
+    SpooledContents fetched = null;
+    try {
+      fetched = client.execute(get, response -> fromResponse(response, serverId, url, cached));
+      return fetched;
+    } finally {
+      // Our reference to the old contents, unless that's what we're still using
+      if (cached.isPresent() && fetched != cached.get().contents()) {
+        cached.get().contents().release();
+      }
+    }
+  }
+
+  private static SpooledContents fromResponse(
+      ClassicHttpResponse response,
+      String serverId,
+      URL url,
+      Optional<DocumentCache.Entry> cached)
+      throws IOException {
+    if (response.getCode() == 304 && cached.isPresent()) {
+      DocumentCache.hit(true);
+      return cached.get().contents();
+    }
+    if (response.getCode() >= 400) {
+      throw new IOException("Got HTTP " + response.getCode() + " " + response.getReasonPhrase());
+    }
+    HttpEntity entity = response.getEntity();
+    if (entity == null) {
+      throw new IOException("No contents in response");
+    }
+    MessageDigest digest = sha256();
+    SpooledContents contents;
+    try (InputStream in = new DigestInputStream(entity.getContent(), digest)) {
+      contents = SpooledContents.spool(in);
+    }
+    return DocumentCache.put(
+        serverId,
+        url.toString(),
+        contents,
+        HexFormat.of().formatHex(digest.digest()),
+        headerValue(response, "ETag"),
+        headerValue(response, "Last-Modified"));
+  }
+
+  private static Optional<String> headerValue(HttpResponse response, String name) {
+    return Optional.ofNullable(response.getFirstHeader(name)).map(h -> h.getValue());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      // Every JVM has to have SHA-256.
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static CloseableHttpClient makeClient() {
+    PoolingHttpClientConnectionManager cm =
+        PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(MAX_CONCURRENT)
+            // Usually everything comes from the same docassemble server.
+            .setMaxConnPerRoute(MAX_CONCURRENT)
+            .setDefaultConnectionConfig(
+                ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.ofMilliseconds(CONNECT_TIMEOUT_MS))
+                    .setSocketTimeout(Timeout.ofMilliseconds(READ_TIMEOUT_MS))
+                    .build())
+            .build();
+    return HttpClients.custom().setConnectionManager(cm).build();
+  }
+
+  private static ExecutorService makeThreads() {
+    AtomicInteger threadNum = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        MAX_CONCURRENT,
+        r -> {
+          Thread t = new Thread(r, "document-fetcher-" + threadNum.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  private static int envInt(String name, int defaultVal) {
+    return Integer.parseInt(GetEnv(name).orElse(Integer.toString(defaultVal)));
+  }
+}
@@ -22,10 +22,7 @@ import edu.suffolk.litlab.efspserver.services.InfoCollector;
 import edu.suffolk.litlab.efspserver.services.InterviewVariable;
 import fj.data.NonEmptyList;
 import fj.data.Option;
-import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Instant;
@@ -243,34 +240,16 @@ public class FilingDocDocassembleJacksonDeserializer {
     // into here somehow
     try {
       URL inUrl = new URL(dataUrl);
-
-      HttpURLConnection conn = (HttpURLConnection) inUrl.openConnection();
-      conn.setRequestMethod("GET");
-      conn.setConnectTimeout(15000); // set connection timeout (not read timeout) in milliseconds
-      InputStream inStream = conn.getInputStream();
-      if (inStream == null) {
-        FilingError err = serverError("Couldn't connect to " + inUrl.toString());
-        collector.error(err);
-      }
-
+      // Downloaded later, all at once, by DocumentFetcher
       return Optional.of(
           new FilingAttachment(
-              fileName,
-              (inStream != null) ? inStream.readAllBytes() : new byte[0],
-              documentTypeFormatName,
-              filingComponentCode,
-              documentDescription));
+              fileName, inUrl, documentTypeFormatName, filingComponentCode, documentDescription));
     } catch (MalformedURLException ex) {
       FilingError err =
           serverError(
               "MalformedURLException trying to parse the data_url (" + dataUrl + "): " + ex);
       collector.error(err);
       throw err;
-    } catch (IOException ex) {
-      FilingError err =
-          serverError("IOException trying to connect to data_url (" + dataUrl + "):" + ex);
-      collector.error(err);
-      throw err;
     }
   }
 }
@@ -11,13 +11,17 @@ import edu.suffolk.litlab.efspserver.FilingInformation;
 import edu.suffolk.litlab.efspserver.PartyId;
 import edu.suffolk.litlab.efspserver.Person;
 import edu.suffolk.litlab.efspserver.StdLib;
+import edu.suffolk.litlab.efspserver.docassemble.DocumentFetcher;
+import edu.suffolk.litlab.efspserver.services.BoundedExecutors;
 import edu.suffolk.litlab.efspserver.services.EfmCheckableFilingInterface;
 import edu.suffolk.litlab.efspserver.services.FailFastCollector;
 import edu.suffolk.litlab.efspserver.services.FilingError;
 import edu.suffolk.litlab.efspserver.services.FilingResult;
 import edu.suffolk.litlab.efspserver.services.InfoCollector;
 import edu.suffolk.litlab.efspserver.services.InterviewVariable;
+import edu.suffolk.litlab.efspserver.services.PayloadCapture;
 import edu.suffolk.litlab.efspserver.services.ServiceHelpers;
+import edu.suffolk.litlab.efspserver.services.SoapPortPool;
 import edu.suffolk.litlab.efspserver.tyler.QueryType;
 import edu.suffolk.litlab.efspserver.tyler.TylerLogin;
 import edu.suffolk.litlab.efspserver.tyler.TylerUrls;
@@ -41,12 +45,16 @@ import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.ws.BindingProvider;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -112,12 +120,26 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
   private final FilingReviewMDEService filingFactory;
   private final EfmFirmService firmFactory;
   private final ServiceMDEService serviceFactory;
-  private static final PolicyCacher policyCacher = new PolicyCacher();
+  private final PolicyCacher policyCacher;
   private final String jurisdiction;
 
+  /** If documents go to Tyler as MTOM attachments, instead of inline in the filing message. */
+  private final boolean useMtom;
+
+  /** Runs the Tyler lookups that a filing needs at the same time. */
+  private final ExecutorService lookups;
+
   public Ecf4Filer(String jurisdiction, String env, Supplier<CodeDatabase> cdSupplier) {
     this.jurisdiction = jurisdiction;
+    this.useMtom = ServiceHelpers.useMtom(jurisdiction);
+    this.lookups =
+        BoundedExecutors.shared(
+            jurisdiction,
+            "ecf4-lookup",
+            Integer.parseInt(StdLib.GetEnv("EFM_LOOKUP_THREADS").orElse("32")),
+            Integer.parseInt(StdLib.GetEnv("EFM_LOOKUP_QUEUE").orElse("128")));
     this.cdSupplier = cdSupplier;
+    this.policyCacher = new PolicyCacher(cdSupplier);
     TylerLogin login = new TylerLogin(jurisdiction, env);
     this.headerKey = login.getHeaderKey();
     statusObjFac =
@@ -160,6 +182,48 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
     return this.headerKey;
   }
 
+  /**
+   * Loads the saved policies for these courts, so filings right after startup don't wait on Tyler
+   * for them.
+   */
+  public void warmPolicies(Collection<String> courtIds) {
+    long start = System.nanoTime();
+    int loaded = policyCacher.warm(courtIds);
+    log.info(
+        "Loaded {} saved court policies for {} in {} ms",
+        loaded,
+        jurisdiction,
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /** Starts a Tyler lookup on another thread, or this one if too many are already running. */
+  private <T> CompletableFuture<T> lookup(Supplier<T> call) {
+    return BoundedExecutors.supplyOrRun(lookups, call);
+  }
+
+  /** Downloads any of the filing's documents that haven't been yet. */
+  private static Optional<FilingError> fetchDocuments(
+      FilingInformation info, InfoCollector collector) {
+    try {
+      DocumentFetcher.fetchAll(info, collector);
+      return Optional.empty();
+    } catch (FilingError err) {
+      return Optional.of(err);
+    }
+  }
+
+  /** Waits on a lookup, throwing what the lookup threw. */
+  private static <T> T await(CompletableFuture<T> lookup) {
+    try {
+      return lookup.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw ex;
+    }
+  }
+
   private CoreMessageAndNames prepareFiling(
       FilingInformation info,
       InfoCollector collector,
@@ -170,6 +234,48 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
       throws FilingError {
     String existingCaseTitle = null;
     String caseCategoryName = "";
+    boolean isInitialFiling =
+        info.getPreviousCaseId().isEmpty() && info.getCaseDocketNumber().isEmpty();
+    boolean isFirstIndexedFiling = info.getPreviousCaseId().isEmpty();
+
+    // Get everything we need from Tyler before taking a DB connection: these calls can take
+    // seconds, and there's only a few connections in the pool to share. None of them depend on
+    // each other, so the documents download and the case and firm lookups run while we wait on
+    // the policy.
+    CompletableFuture<Optional<FilingError>> futureDocs =
+        lookup(() -> fetchDocuments(info, collector));
+    CompletableFuture<CaseResponseMessageType> futureCase =
+        CompletableFuture.completedFuture(null);
+    if (!isFirstIndexedFiling) {
+      CaseQueryMessageType query = new CaseQueryMessageType();
+      Ecf4Helper.prep(query, info.getCourtLocation());
+      query.setCaseTrackingID(Ecf4Helper.convertString(info.getPreviousCaseId().get()));
+      query.setCaseQueryCriteria(EcfCaseTypeFactory.getCriteria());
+      futureCase = lookup(() -> recordPort.getCase(query));
+    }
+    CompletableFuture<Boolean> futureIsIndividual =
+        lookup(
+            () ->
+                setupFirmPort(firmFactory, apiToken)
+                    .map(port -> port.getFirm().getFirm().isIsIndividual())
+                    .orElse(true));
+    CourtPolicyResponseMessageType policy;
+    CaseResponseMessageType resp;
+    boolean isIndividual;
+    try {
+      policy = policyCacher.getPolicyFor(filingPort, info.getCourtLocation());
+      resp = await(futureCase);
+      isIndividual = await(futureIsIndividual);
+    } finally {
+      // Even if a lookup failed: the caller releases the documents after, so they can't still be
+      // downloading
+      futureDocs.exceptionally(ex -> Optional.empty()).join();
+    }
+    Optional<FilingError> docsError = await(futureDocs);
+    if (docsError.isPresent()) {
+      throw docsError.get();
+    }
+
     try (CodeDatabase cd = cdSupplier.get()) {
       EcfCaseTypeFactory ecfCaseFactory = new EcfCaseTypeFactory(cd, this.jurisdiction);
       Optional<CourtLocationInfo> maybeLocationInfo =
@@ -183,9 +289,6 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
       CourtLocationInfo locationInfo = maybeLocationInfo.orElse(new CourtLocationInfo());
       String courtName = locationInfo.name;
 
-      CourtPolicyResponseMessageType policy =
-          policyCacher.getPolicyFor(filingPort, info.getCourtLocation());
-
       if (!locationInfo.allowfilingintononindexedcase
           && info.getCaseDocketNumber().isPresent()
           && info.getPreviousCaseId().isEmpty()) {
@@ -200,16 +303,8 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
       }
 
       EcfCourtSpecificSerializer serializer = new EcfCourtSpecificSerializer(cd, locationInfo);
-      boolean isInitialFiling =
-          info.getPreviousCaseId().isEmpty() && info.getCaseDocketNumber().isEmpty();
-      boolean isFirstIndexedFiling = info.getPreviousCaseId().isEmpty();
       ComboCaseCodes allCodes;
       if (!isFirstIndexedFiling) {
-        CaseQueryMessageType query = new CaseQueryMessageType();
-        Ecf4Helper.prep(query, info.getCourtLocation());
-        query.setCaseTrackingID(Ecf4Helper.convertString(info.getPreviousCaseId().get()));
-        query.setCaseQueryCriteria(EcfCaseTypeFactory.getCriteria());
-        CaseResponseMessageType resp = recordPort.getCase(query);
         if (resp.getCase() != null && resp.getCase().getValue() != null) {
           if (resp.getCase().getValue().getCaseTitleText() != null) {
             existingCaseTitle = resp.getCase().getValue().getCaseTitleText().getValue();
@@ -359,9 +454,6 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
       long maxSize = Ecf4Helper.sizeMeasureAsBytes(maxIndivDocSize);
       long cumulativeBytes = 0;
 
-      Optional<IEfmFirmService> firmPort = setupFirmPort(firmFactory, apiToken);
-      boolean isIndividual =
-          firmPort.map(port -> port.getFirm().getFirm().isIsIndividual()).orElse(true);
       Map<String, Object> filingIdToObj = new HashMap<>();
       int seqNum = 0;
       for (FilingDoc filingDoc : info.getFilings()) {
@@ -431,10 +523,9 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
                   aug.getFilingAssociation().add(association);
                 }
               });
-      log.info(
-          "Full cfm: "
-              + Ecf4Helper.objectToXmlStrOrError(cfm, CoreFilingMessageType.class)
-                  .replaceAll("<ns2:BinaryBase64Object>[^<]+<\\/ns2:BinaryBase64Object>", ""));
+      PayloadCapture.request(
+          "Ecf4Filer.prepareFiling",
+          () -> Ecf4Helper.objectToRedactedXmlStrOrError(cfm, CoreFilingMessageType.class));
       return new CoreMessageAndNames(cfm, existingCaseTitle, caseCategoryName, courtName);
     } catch (IOException | SQLException ex) {
       log.error("IO Error when making filing! " + strFromException(ex));
@@ -532,7 +623,9 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
     rfrm.setCoreFilingMessage(cfm);
     rfrm.setPaymentMessage(pmt);
 
-    log.debug(Ecf4Helper.objectToXmlStrOrError(rfrm, ReviewFilingRequestMessageType.class));
+    PayloadCapture.request(
+        "Ecf4Filer.reviewFiling",
+        () -> Ecf4Helper.objectToRedactedXmlStrOrError(rfrm, ReviewFilingRequestMessageType.class));
     MessageReceiptMessageType mrmt = filingPort.reviewFiling(rfrm);
     if (mrmt.getError().size() > 0) {
       for (var err : mrmt.getError()) {
@@ -580,7 +673,9 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
                           (str, str2) -> str + str2)));
     }
     String caseTitle = (exists(existingCaseTitle)) ? existingCaseTitle : info.makeCaseTitle();
-    log.info(Ecf4Helper.objectToXmlStrOrError(mrmt, MessageReceiptMessageType.class));
+    PayloadCapture.response(
+        "Ecf4Filer.reviewFiling",
+        () -> Ecf4Helper.objectToRedactedXmlStrOrError(mrmt, MessageReceiptMessageType.class));
     return Result.ok(
         new FilingResult(
             caseId.get(),
@@ -755,8 +850,9 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
         return Response.status(500).build();
       }
     }
-    log.info(
-        "Final query: " + Ecf4Helper.objectToXmlStrOrError(m, FilingListQueryMessageType.class));
+    PayloadCapture.request(
+        "Ecf4Filer.getFilingList",
+        () -> Ecf4Helper.objectToRedactedXmlStrOrError(m, FilingListQueryMessageType.class));
     FilingListResponseMessageType resp = port.get().getFilingList(m);
     for (MatchingFilingType match : resp.getMatchingFiling()) {
       log.trace("Matched: " + match.getCaseTrackingID() + ", " + match);
@@ -928,7 +1024,9 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
       return Optional.empty();
     }
 
-    CourtRecordMDEPort port = recordFactory.getCourtRecordMDEPort();
+    CourtRecordMDEPort port =
+        SoapPortPool.get(
+            recordFactory, CourtRecordMDEPort.class, recordFactory::getCourtRecordMDEPort);
     ServiceHelpers.setupServicePort((BindingProvider) port);
     Map<String, Object> ctx = ((BindingProvider) port).getRequestContext();
     List<Header> headersList = List.of(creds.get().toHeader());
@@ -937,14 +1035,33 @@ public class Ecf4Filer extends EfmCheckableFilingInterface {
   }
 
   private FilingReviewMDEPort makeFilingPort() {
-    FilingReviewMDEPort port = filingFactory.getFilingReviewMDEPort();
+    FilingReviewMDEPort port =
+        SoapPortPool.get(
+            filingFactory,
+            FilingReviewMDEPort.class,
+            portVariant(),
+            () -> maybeMtom(filingFactory.getFilingReviewMDEPort()));
     ServiceHelpers.setupServicePort((BindingProvider) port);
     return port;
   }
 
   private ServiceMDEPort makeServicePort() {
-    ServiceMDEPort port = serviceFactory.getServiceMDEPort();
+    ServiceMDEPort port =
+        SoapPortPool.get(
+            serviceFactory,
+            ServiceMDEPort.class,
+            portVariant(),
+            () -> maybeMtom(serviceFactory.getServiceMDEPort()));
     ServiceHelpers.setupServicePort((BindingProvider) port);
     return port;
   }
+
+  /** MTOM ports have a different binding, so they can't be shared with the plain ones. */
+  private String portVariant() {
+    return useMtom ? "mtom" : "";
+  }
+
+  private <T> T maybeMtom(T port) {
+    return useMtom ? ServiceHelpers.enableMtom(port) : port;
+  }
 }
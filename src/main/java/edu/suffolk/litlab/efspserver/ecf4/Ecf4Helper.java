@@ -1,5 +1,7 @@
 package edu.suffolk.litlab.efspserver.ecf4;
 
+import edu.suffolk.litlab.efspserver.JaxbContexts;
+import edu.suffolk.litlab.efspserver.SpooledContents;
 import edu.suffolk.litlab.efspserver.services.ServiceHelpers;
 import edu.suffolk.litlab.efspserver.tyler.TylerErrorCodes;
 import gov.niem.niem.domains.jxdm._4.CourtType;
@@ -7,11 +9,12 @@ import gov.niem.niem.niem_core._2.DateType;
 import gov.niem.niem.niem_core._2.EntityType;
 import gov.niem.niem.niem_core._2.MeasureType;
 import gov.niem.niem.niem_core._2.TextType;
+import jakarta.activation.DataHandler;
 import jakarta.ws.rs.core.Response;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.attachment.AttachmentMarshaller;
 import java.io.File;
 import java.io.StringWriter;
 import java.time.LocalDate;
@@ -152,12 +155,14 @@ public class Ecf4Helper {
     return anyUri;
   }
 
-  public static gov.niem.niem.proxy.xsd._2.Base64Binary convertBase64(final byte[] rawContent) {
+  public static gov.niem.niem.proxy.xsd._2.Base64Binary convertBase64(
+      final SpooledContents rawContent) {
     gov.niem.niem.proxy.xsd._2.Base64Binary binaryString = niemProxyObjFac.createBase64Binary();
     // We don't need to encode Base64? For some strange reason, JAXB does it for us.
     // See https://stackoverflow.com/a/7224025
-    // binaryString.setValue(Base64.getEncoder().encode(rawContent));
-    binaryString.setValue(rawContent);
+    // It's a DataHandler so JAXB can stream it straight from the file, instead of having another
+    // copy of the document in memory.
+    binaryString.setValue(rawContent.asDataHandler());
     return binaryString;
   }
 
@@ -211,8 +216,8 @@ public class Ecf4Helper {
    * @return the XML string to do what you want with
    */
   public static <T> String objectToXmlStr(T toXml, Class<T> toXmlClazz) throws JAXBException {
-    JAXBContext jaxContext =
-        JAXBContext.newInstance(
+    Marshaller mar =
+        JaxbContexts.formattedMarshaller(
             toXmlClazz,
             gov.niem.niem.niem_core._2.ObjectFactory.class,
             gov.niem.niem.structures._2.ObjectFactory.class,
@@ -222,8 +227,6 @@ public class Ecf4Helper {
             ecfv5.https.docs_oasis_open_org.legalxml_courtfiling.ns.v5_0.civil.ObjectFactory.class,
             ecfv5.gov.niem.release.niem.niem_core._4.ObjectFactory.class,
             ecfv5.gov.niem.release.niem.domains.jxdm._6.ObjectFactory.class*/ );
-    Marshaller mar = jaxContext.createMarshaller();
-    mar.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
     QName qname = new QName("suffolk.test.objectToXml", "objectToXml");
     JAXBElement<T> wrappedRoot = new JAXBElement<T>(qname, toXmlClazz, toXml);
     StringWriter sw = new StringWriter();
@@ -231,6 +234,68 @@ public class Ecf4Helper {
     return sw.toString();
   }
 
+  /**
+   * Like {@link #objectToXmlStrOrError}, but leaves out binary data (i.e. the base64 documents in a
+   * filing), with a placeholder that says how big it was. Much cheaper than the full XML for big
+   * filings, and keeps documents out of the logs.
+   */
+  public static <T> String objectToRedactedXmlStrOrError(T toXml, Class<T> toXmlClazz) {
+    try {
+      // Not the shared marshaller, since this changes the attachment handling.
+      Marshaller mar =
+          JaxbContexts.get(
+                  toXmlClazz,
+                  gov.niem.niem.niem_core._2.ObjectFactory.class,
+                  gov.niem.niem.structures._2.ObjectFactory.class,
+                  oasis.names.tc.legalxml_courtfiling.schema.xsd.corefilingmessage_4.ObjectFactory
+                      .class,
+                  oasis.names.tc.legalxml_courtfiling.schema.xsd.commontypes_4.ObjectFactory.class)
+              .createMarshaller();
+      mar.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+      mar.setAttachmentMarshaller(new RedactingAttachmentMarshaller());
+      QName qname = new QName("suffolk.test.objectToXml", "objectToXml");
+      JAXBElement<T> wrappedRoot = new JAXBElement<T>(qname, toXmlClazz, toXml);
+      StringWriter sw = new StringWriter();
+      mar.marshal(wrappedRoot, sw);
+      return sw.toString();
+    } catch (JAXBException | NullPointerException ex) {
+      return ex.toString() + "(original obj was : " + toXml + ")";
+    }
+  }
+
+  /**
+   * Pretends to send binary data as MTOM attachments, so JAXB writes a small reference in its place
+   * instead of encoding all of it.
+   */
+  private static class RedactingAttachmentMarshaller extends AttachmentMarshaller {
+    @Override
+    public boolean isXOPPackage() {
+      return true;
+    }
+
+    @Override
+    public String addMtomAttachment(
+        DataHandler data, String elementNamespace, String elementLocalName) {
+      return "cid:redacted";
+    }
+
+    @Override
+    public String addMtomAttachment(
+        byte[] data,
+        int offset,
+        int length,
+        String mimeType,
+        String elementNamespace,
+        String elementLocalName) {
+      return "cid:redacted-" + length + "-bytes";
+    }
+
+    @Override
+    public String addSwaRefAttachment(DataHandler data) {
+      return "cid:redacted";
+    }
+  }
+
   /**
    * Converts any XML annotated object (from CXF) to a file. Useful for testing larger XML objects
    * that are unwieldly to print. Will throw an exception if there's a JAXB error.
@@ -240,14 +305,12 @@ public class Ecf4Helper {
    */
   public static <T> void objectToXmlFile(T toXml, Class<T> toXmlClazz, File outfile)
       throws JAXBException {
-    JAXBContext jc =
-        JAXBContext.newInstance(
+    Marshaller mar =
+        JaxbContexts.formattedMarshaller(
             gov.niem.niem.niem_core._2.ObjectFactory.class,
             gov.niem.niem.structures._2.ObjectFactory.class,
             oasis.names.tc.legalxml_courtfiling.schema.xsd.corefilingmessage_4.ObjectFactory.class,
             oasis.names.tc.legalxml_courtfiling.schema.xsd.commontypes_4.ObjectFactory.class);
-    Marshaller mar = jc.createMarshaller();
-    mar.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
     QName qname = new QName("suffolk.test.objectToXml", "objectToXml");
     JAXBElement<T> pp = new JAXBElement<T>(qname, toXmlClazz, toXml);
     mar.marshal(pp, outfile);
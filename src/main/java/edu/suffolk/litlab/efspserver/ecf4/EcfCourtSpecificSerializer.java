@@ -1035,7 +1035,7 @@ public class EcfCourtSpecificSerializer {
       collector.addWrong(oriNameVar);
     }
     JAXBElement<Base64Binary> n =
-        niemObjFac.createBinaryBase64Object(Ecf4Helper.convertBase64(fa.getFileContents()));
+        niemObjFac.createBinaryBase64Object(Ecf4Helper.convertBase64(fa.getContents()));
     // System.err.println(Ecf4Helper.objectToXmlStrOrError(n.getValue(), Base64Binary.class));
     attachment.setBinaryObject(n);
     // TODO(brycew): depends on some DA code, should read in the PDF if possible here. Might be
@@ -1,52 +1,225 @@
 package edu.suffolk.litlab.efspserver.ecf4;
 
-import java.time.LocalDateTime;
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import edu.suffolk.litlab.efspserver.JaxbContexts;
+import edu.suffolk.litlab.efspserver.StdLib;
+import edu.suffolk.litlab.efspserver.services.BoundedExecutors;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
+import edu.suffolk.litlab.efspserver.tyler.codes.CourtPolicyStore;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
 import oasis.names.tc.legalxml_courtfiling.schema.xsd.courtpolicyquerymessage_4.CourtPolicyQueryMessageType;
 import oasis.names.tc.legalxml_courtfiling.schema.xsd.courtpolicyresponsemessage_4.CourtPolicyResponseMessageType;
 import oasis.names.tc.legalxml_courtfiling.wsdl.webservicesprofile_definitions_4_0.FilingReviewMDEPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Keeps each court's policy, which every filing needs, but which Tyler almost never changes.
+ *
+ * <p>A policy is used as is for POLICY_CACHE_TTL_HOURS (default 24) after it's fetched. After that,
+ * it's still used, but is fetched again in the background (stale while revalidate), until it's
+ * POLICY_CACHE_MAX_STALE_HOURS (default 168) old, when callers wait for the new one. If many
+ * requests need the same court's policy at once, only one of them asks Tyler, and the rest wait
+ * for its answer.
+ *
+ * <p>If given a code database (and POLICY_CACHE_PERSIST isn't false), fetched policies are also
+ * saved there, and {@link #warm} loads them at startup, so the first filing after a restart doesn't
+ * wait on Tyler.
+ */
 public class PolicyCacher {
-  public PolicyCacher() {
-    this.policyInMemoryCache = new ConcurrentHashMap<String, CourtPolicyResponseMessageType>();
-    this.lastFlushed = LocalDateTime.now();
+  private static final Logger log = LoggerFactory.getLogger(PolicyCacher.class);
+
+  private static final Duration TTL =
+      Duration.ofHours(Long.parseLong(GetEnv("POLICY_CACHE_TTL_HOURS").orElse("24")));
+  private static final Duration MAX_STALE =
+      Duration.ofHours(Long.parseLong(GetEnv("POLICY_CACHE_MAX_STALE_HOURS").orElse("168")));
+  private static final boolean PERSIST =
+      GetEnv("POLICY_CACHE_PERSIST").map(Boolean::parseBoolean).orElse(true);
+
+  private static final QName ROOT = new QName("suffolk.policyCache", "policy");
+
+  /**
+   * The policy refers to NIEM elements by substitution group, so JAXB needs their factories too.
+   */
+  private static final Class<?>[] POLICY_CLASSES = {
+    CourtPolicyResponseMessageType.class,
+    gov.niem.niem.niem_core._2.ObjectFactory.class,
+    gov.niem.niem.structures._2.ObjectFactory.class,
+    oasis.names.tc.legalxml_courtfiling.schema.xsd.corefilingmessage_4.ObjectFactory.class,
+    oasis.names.tc.legalxml_courtfiling.schema.xsd.commontypes_4.ObjectFactory.class
+  };
+
+  /** Only a few refreshes at once: they're in the background, and never urgent. */
+  private static final ExecutorService refresher = BoundedExecutors.make("policy-refresh-", 2, 256);
+
+  private record Entry(CourtPolicyResponseMessageType policy, Instant fetched) {}
+
+  private final Map<String, Entry> policies = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<CourtPolicyResponseMessageType>> loading =
+      new ConcurrentHashMap<>();
+  private final Optional<Supplier<CodeDatabase>> store;
+  private final Clock clock;
+  private final Duration ttl;
+  private final Duration maxStale;
+
+  /**
+   * @param cdSupplier where to save policies, so they're kept between restarts
+   */
+  public PolicyCacher(Supplier<CodeDatabase> cdSupplier) {
+    this(PERSIST ? Optional.of(cdSupplier) : Optional.empty(), Clock.systemUTC(), TTL, MAX_STALE);
+  }
+
+  PolicyCacher(
+      Optional<Supplier<CodeDatabase>> store, Clock clock, Duration ttl, Duration maxStale) {
+    this.store = store;
+    this.clock = clock;
+    this.ttl = ttl;
+    this.maxStale = maxStale;
   }
 
   public CourtPolicyResponseMessageType getPolicyFor(
       FilingReviewMDEPort filingPort, String courtId) {
-    if (needToFlushCache()) {
-      flushCache();
+    Entry entry = policies.get(courtId);
+    if (entry != null) {
+      Duration age = Duration.between(entry.fetched(), clock.instant());
+      if (age.compareTo(ttl) < 0) {
+        return entry.policy();
+      }
+      if (age.compareTo(maxStale) < 0) {
+        refreshInBackground(filingPort, courtId);
+        return entry.policy();
+      }
+    }
+    try {
+      return load(filingPort, courtId).join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw ex;
     }
+  }
 
-    if (policyInMemoryCache.containsKey(courtId)) {
-      return policyInMemoryCache.get(courtId);
-    } else {
+  /**
+   * Loads the saved policies for the given courts, if they aren't already here. Doesn't call Tyler:
+   * getting a policy needs a user's login, so courts without a saved policy are fetched when a user
+   * first needs them.
+   *
+   * @return how many policies were loaded
+   */
+  public int warm(Collection<String> courtIds) {
+    if (store.isEmpty()) {
+      return 0;
+    }
+    Map<String, CourtPolicyStore.Saved> saved;
+    try (CodeDatabase cd = store.get().get()) {
+      saved = cd.getSavedPolicies();
+    } catch (SQLException ex) {
+      log.error("Couldn't load saved court policies: " + StdLib.strFromException(ex));
+      return 0;
+    }
+    int loaded = 0;
+    for (String courtId : courtIds) {
+      CourtPolicyStore.Saved policy = saved.get(courtId);
+      if (policy == null) {
+        continue;
+      }
+      try {
+        Entry entry = new Entry(fromXml(policy.policyXml()), policy.fetched());
+        if (policies.putIfAbsent(courtId, entry) == null) {
+          loaded += 1;
+        }
+      } catch (JAXBException ex) {
+        log.warn("Couldn't read the saved policy for {}: {}", courtId, ex.toString());
+      }
+    }
+    return loaded;
+  }
+
+  private void refreshInBackground(FilingReviewMDEPort filingPort, String courtId) {
+    if (loading.containsKey(courtId)) {
+      return;
+    }
+    BoundedExecutors.supply(refresher, () -> load(filingPort, courtId).join())
+        .exceptionally(
+            ex -> {
+              // The stale policy is still there, so the next request will try again.
+              log.warn("Couldn't refresh the policy for {}: {}", courtId, ex.toString());
+              return null;
+            });
+  }
+
+  /** Fetches the court's policy from Tyler, unless someone else already is. */
+  private CompletableFuture<CourtPolicyResponseMessageType> load(
+      FilingReviewMDEPort filingPort, String courtId) {
+    CompletableFuture<CourtPolicyResponseMessageType> mine = new CompletableFuture<>();
+    CompletableFuture<CourtPolicyResponseMessageType> running =
+        loading.putIfAbsent(courtId, mine);
+    if (running != null) {
+      return running;
+    }
+    try {
       CourtPolicyQueryMessageType policyQuery =
           Ecf4Helper.prep(new CourtPolicyQueryMessageType(), courtId);
-      CourtPolicyResponseMessageType p = filingPort.getPolicy(policyQuery);
-      policyInMemoryCache.put(courtId, p);
-      return p;
+      CourtPolicyResponseMessageType policy = filingPort.getPolicy(policyQuery);
+      // Don't keep errors (i.e. Tyler being down): the next request should ask again.
+      boolean keep = policy.getError().stream().noneMatch(Ecf4Helper::checkErrors);
+      Instant fetched = clock.instant();
+      if (keep) {
+        policies.put(courtId, new Entry(policy, fetched));
+      }
+      mine.complete(policy);
+      if (keep) {
+        save(courtId, policy, fetched);
+      }
+    } catch (RuntimeException ex) {
+      mine.completeExceptionally(ex);
+    } finally {
+      loading.remove(courtId, mine);
     }
+    return mine;
   }
 
-  /**
-   * Returns true if the policies need to be flushed, which is 2 am the day after when they were
-   * last flushed.
-   */
-  private boolean needToFlushCache() {
-    LocalDateTime toFlush =
-        LocalDateTime.of(
-                lastFlushed.getYear(), lastFlushed.getMonth(), lastFlushed.getDayOfMonth(), 2, 0, 0)
-            .plusDays(1);
-    return LocalDateTime.now().isAfter(toFlush);
+  private void save(String courtId, CourtPolicyResponseMessageType policy, Instant fetched) {
+    if (store.isEmpty()) {
+      return;
+    }
+    try (CodeDatabase cd = store.get().get()) {
+      cd.savePolicy(courtId, toXml(policy), fetched);
+    } catch (SQLException | JAXBException ex) {
+      // It's still in memory, it just won't survive a restart.
+      log.warn("Couldn't save the policy for {}: {}", courtId, ex.toString());
+    }
   }
 
-  private void flushCache() {
-    policyInMemoryCache.clear();
-    lastFlushed = LocalDateTime.now();
+  static String toXml(CourtPolicyResponseMessageType policy) throws JAXBException {
+    StringWriter sw = new StringWriter();
+    JaxbContexts.formattedMarshaller(POLICY_CLASSES)
+        .marshal(new JAXBElement<>(ROOT, CourtPolicyResponseMessageType.class, policy), sw);
+    return sw.toString();
   }
 
-  private Map<String, CourtPolicyResponseMessageType> policyInMemoryCache;
-  private LocalDateTime lastFlushed;
+  static CourtPolicyResponseMessageType fromXml(String xml) throws JAXBException {
+    return JaxbContexts.unmarshaller(POLICY_CLASSES)
+        .unmarshal(new StreamSource(new StringReader(xml)), CourtPolicyResponseMessageType.class)
+        .getValue();
+  }
 }
@@ -1,5 +1,6 @@
 package edu.suffolk.litlab.efspserver.ecf4;
 
+import edu.suffolk.litlab.efspserver.services.SoapTransport;
 import https.docs_oasis_open_org.legalxml_courtfiling.ns.v5_0.wsdl.courtschedulingmde.CourtSchedulingMDE_Service;
 import java.net.URL;
 import java.util.Map;
@@ -59,7 +60,7 @@ public class SoapClientChooser {
 
   public static Optional<FilingReviewMDEService> getFilingReviewFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, filingReviewMDEWsdls);
-    return url.map(u -> new FilingReviewMDEService(u));
+    return url.map(u -> SoapTransport.makeService(wsdlDomain, () -> new FilingReviewMDEService(u)));
   }
 
   public static Optional<FilingReviewMDEService> getFilingReviewFactory(
@@ -69,7 +70,7 @@ public class SoapClientChooser {
 
   public static Optional<ServiceMDEService> getServiceFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, serviceMDEWsdls);
-    return url.map(u -> new ServiceMDEService(u));
+    return url.map(u -> SoapTransport.makeService(wsdlDomain, () -> new ServiceMDEService(u)));
   }
 
   public static Optional<ServiceMDEService> getServiceFactory(String jurisdiction, String env) {
@@ -78,7 +79,7 @@ public class SoapClientChooser {
 
   public static Optional<CourtRecordMDEService> getCourtRecordFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, courtRecordMDEWsdls);
-    return url.map(u -> new CourtRecordMDEService(u));
+    return url.map(u -> SoapTransport.makeService(wsdlDomain, () -> new CourtRecordMDEService(u)));
   }
 
   public static Optional<CourtRecordMDEService> getCourtRecordFactory(
@@ -88,7 +89,8 @@ public class SoapClientChooser {
 
   public static Optional<CourtSchedulingMDE_Service> getCourtSchedulingFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, courtSchedulingMDEWsdls);
-    return url.map(u -> new CourtSchedulingMDE_Service(u));
+    return url.map(
+        u -> SoapTransport.makeService(wsdlDomain, () -> new CourtSchedulingMDE_Service(u)));
   }
 
   public static Optional<CourtSchedulingMDE_Service> getCourtSchedulingFactory(
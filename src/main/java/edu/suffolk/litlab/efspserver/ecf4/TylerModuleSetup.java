@@ -8,6 +8,7 @@ import edu.suffolk.litlab.efspserver.SoapX509CallbackHandler;
 import edu.suffolk.litlab.efspserver.StdLib;
 import edu.suffolk.litlab.efspserver.ecfcodes.CodeUpdater;
 import edu.suffolk.litlab.efspserver.services.AdminUserService;
+import edu.suffolk.litlab.efspserver.services.BoundedExecutors;
 import edu.suffolk.litlab.efspserver.services.CasesService;
 import edu.suffolk.litlab.efspserver.services.CourtSchedulingService;
 import edu.suffolk.litlab.efspserver.services.EfmFilingInterface;
@@ -30,7 +31,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -38,13 +38,16 @@ import javax.sql.DataSource;
 import org.apache.cxf.jaxws.EndpointImpl;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.JobKey;
 import org.quartz.ScheduleBuilder;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
 import org.quartz.impl.StdSchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -165,6 +168,9 @@ public class TylerModuleSetup implements EfmModuleSetup {
     // I don't quite understand Spring yet
     SoapX509CallbackHandler.setX509Password(x509Password);
 
+    boolean disableQuartzSchedule =
+        Boolean.parseBoolean(GetEnv("DISABLE_QUARTZ_SCHEDULE_FOR_CODE_UPDATE").orElse("false"));
+
     log.info("Checking table if absent");
     try (CodeDatabase cd = new CodeDatabase(tylerJurisdiction, tylerEnv, codeDs.getConnection())) {
       cd.createTablesIfAbsent();
@@ -193,6 +199,11 @@ public class TylerModuleSetup implements EfmModuleSetup {
               cd, tylerJurisdiction, tylerEnv, List.of("replaceall"), this.x509Password);
         }
       }
+      // If the codes are updated by some other process, we'd never know to reload them, so only
+      // keep them in memory when it's this process that updates them.
+      if (!disableQuartzSchedule) {
+        cd.publishSnapshot();
+      }
     } catch (SQLException e) {
       log.error("SQL Exception: " + StdLib.strFromException(e));
       throw new RuntimeException(e);
@@ -200,7 +211,6 @@ public class TylerModuleSetup implements EfmModuleSetup {
     log.info("Done checking table if absent");
 
     try {
-      boolean disableQuartzSchedule = Boolean.parseBoolean(GetEnv("DISABLE_QUARTZ_SCHEDULE_FOR_CODE_UPDATE").orElse("false"));
       boolean scheduleImmediately = Boolean.parseBoolean(GetEnv("SCHEDULE_CODE_UPDATE_IMMEDIATELY").orElse("false"));
 
       Scheduler scheduler = StdSchedulerFactory.getDefaultScheduler();
@@ -208,42 +218,79 @@ public class TylerModuleSetup implements EfmModuleSetup {
         scheduler.start();
       }
 
-      String jobName = "job-" + this.tylerJurisdiction + "-" + this.tylerEnv;
-
       JobDetail job =
           JobBuilder.newJob(UpdateCodeVersions.class)
-              .withIdentity(jobName, "codesdb-group")
-              .usingJobData("TYLER_JURISDICTION", this.tylerJurisdiction)
+              .withIdentity(JobKey.jobKey("job-codes-" + this.tylerEnv, "codesdb-group"))
+              .usingJobData("TYLER_JURISDICTIONS", this.tylerJurisdiction)
               .usingJobData("TYLER_ENV", this.tylerEnv)
               .usingJobData("X509_PASSWORD", this.x509Password)
               .usingJobData("POSTGRES_URL", this.pgUrl)
               .usingJobData("POSTGRES_DB", this.pgDb)
               .usingJobData("POSTGRES_USERNAME", this.pgUser)
               .usingJobData("POSTGRES_PASSWORD", this.pgPassword)
+              .storeDurably()
               .build();
 
-      var r = new Random();
-      ScheduleBuilder codeUpdateSchedule;
+      ScheduleBuilder<?> codeUpdateSchedule;
       if(scheduleImmediately) {
         // Testable version! Updates the codes 20 seconds after launch
         // We also use this for immediately running the update on ephemeral machines that are controlled by external cron
         codeUpdateSchedule = SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(20);
       } else {
-        codeUpdateSchedule = CronScheduleBuilder.dailyAtHourAndMinute(2, 13 + r.nextInt(4));
+        codeUpdateSchedule = CronScheduleBuilder.dailyAtHourAndMinute(2, 13);
       }
-      String triggerName = "trigger-" + this.tylerJurisdiction + "-" + this.tylerEnv;
+      scheduleCodeUpdate(scheduler, job, codeUpdateSchedule, this.tylerEnv, this.tylerJurisdiction);
+    } catch (SchedulerException se) {
+      log.error("Scheduler Exception: " + StdLib.strFromException(se));
+      throw new RuntimeException(se);
+    }
+  }
+
+  /**
+   * Adds the jurisdiction to the env's code update job. The first jurisdiction in an env makes the
+   * job, with the given schedule.
+   */
+  static void scheduleCodeUpdate(
+      Scheduler scheduler,
+      JobDetail job,
+      ScheduleBuilder<?> schedule,
+      String env,
+      String jurisdiction)
+      throws SchedulerException {
+    // All of the jurisdictions for an env are refreshed by one job, at the same time (see
+    // CodeRefreshCoordinator), so each one adds itself to the job the first one made.
+    TriggerKey triggerKey = TriggerKey.triggerKey("trigger-codes-" + env, "codesdb-group");
+    JobDetail existing = scheduler.getJobDetail(job.getKey());
+    if (existing == null) {
       Trigger trigger =
           TriggerBuilder.newTrigger()
-              .withIdentity(triggerName, "codesdb-group")
+              .withIdentity(triggerKey)
               .startNow()
-              .withSchedule(codeUpdateSchedule)
+              .withSchedule(schedule)
               .build();
-
       scheduler.scheduleJob(job, trigger);
-    } catch (SchedulerException se) {
-      log.error("Scheduler Exception: " + StdLib.strFromException(se));
-      throw new RuntimeException(se);
+      return;
+    }
+
+    JobDataMap data = existing.getJobDataMap();
+    data.put("TYLER_JURISDICTIONS", data.getString("TYLER_JURISDICTIONS") + " " + jurisdiction);
+    scheduler.addJob(existing.getJobBuilder().usingJobData(data).build(), true);
+    // A trigger reads the job's data when it fires, so if it hasn't fired yet, or fires again
+    // (like the daily one), it'll refresh this jurisdiction too.
+    Trigger shared = scheduler.getTrigger(triggerKey);
+    if (shared != null && (shared.getPreviousFireTime() == null || shared.mayFireAgain())) {
+      return;
     }
+    // The one time refresh already started without this jurisdiction, so run it by itself.
+    Trigger trigger =
+        TriggerBuilder.newTrigger()
+            .withIdentity(
+                TriggerKey.triggerKey("trigger-codes-" + env + "-" + jurisdiction, "codesdb-group"))
+            .forJob(existing.getKey())
+            .usingJobData("TYLER_JURISDICTIONS", jurisdiction)
+            .startNow()
+            .build();
+    scheduler.scheduleJob(trigger);
   }
 
   @Override
@@ -281,12 +328,17 @@ public class TylerModuleSetup implements EfmModuleSetup {
           return CodeDatabase.fromDS(jurisdiction, env, this.codeDs);
         };
 
-    EfmFilingInterface filer = new Ecf4Filer(jurisdiction, env, cdSupplier);
+    Ecf4Filer filer = new Ecf4Filer(jurisdiction, env, cdSupplier);
 
-    for (String court : getCourts()) {
+    Set<String> courts = getCourts();
+    for (String court : courts) {
       filingMap.put(court, filer);
       getCallback().ifPresent(call -> callbackMap.put(court, call));
     }
+    // Doesn't need to hold up startup: until they're loaded, policies come from Tyler as usual.
+    Thread warmup = new Thread(() -> filer.warmPolicies(courts), "policy-warmup-" + jurisdiction);
+    warmup.setDaemon(true);
+    warmup.start();
 
     Function<String, Result<NullValue, String>> passwordChecker =
         (password) -> {
@@ -404,6 +456,7 @@ public class TylerModuleSetup implements EfmModuleSetup {
         log.error("SchedulerException on shutdown: " + e.toString());
       }
     }
+    BoundedExecutors.shutdown(getJurisdiction());
   }
 
   @Override
@@ -1,12 +1,13 @@
 package edu.suffolk.litlab.efspserver.ecfcodes;
 
+import edu.suffolk.litlab.efspserver.JaxbContexts;
 import edu.suffolk.litlab.efspserver.db.Database;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import javax.xml.stream.XMLStreamException;
@@ -48,7 +49,7 @@ public abstract class CodeDatabaseAPI extends Database {
 
   public void updateTable(String tableName, String courtName, XMLStreamReader xsr)
       throws JAXBException, SQLException {
-    Unmarshaller u = JAXBContext.newInstance(CodeListDocument.class).createUnmarshaller();
+    Unmarshaller u = JaxbContexts.unmarshaller(CodeListDocument.class);
     final CodeListDocument doc = u.unmarshal(xsr, CodeListDocument.class).getValue();
     this.updateTable(tableName, courtName, doc);
   }
@@ -58,6 +59,9 @@ public abstract class CodeDatabaseAPI extends Database {
   public abstract boolean deleteFromTable(String tableName, String courtLocation)
       throws SQLException;
 
+  public abstract boolean deleteFromTable(String tableName, Collection<String> courtLocations)
+      throws SQLException;
+
   public abstract void createTableIfAbsent(String tableName) throws SQLException;
 
   public abstract Map<String, List<String>> getVersionsToUpdate() throws SQLException;
@@ -65,4 +69,10 @@ public abstract class CodeDatabaseAPI extends Database {
   // TODO(brycew): needed for compatibility, but should be renamed to something more general
   // i.e. 'postUpdateClean'
   public abstract void vacuumAll();
+
+  /** Cleans up after an update that only wrote to the given tables. */
+  public abstract void vacuumTables(Collection<String> tableNames);
+
+  /** Cleans up after an update that only changed a few rows in the given tables. */
+  public abstract void analyzeTables(Collection<String> tableNames);
 }
@@ -0,0 +1,170 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Refreshes the codes for several jurisdictions at the same time, instead of one after another, and
+ * reports on all of them together.
+ *
+ * <p>Each jurisdiction still gets its own {@link CodeUpdater} run, with its own connections and
+ * transactions, so one failing doesn't stop the others. What they share are the limits on how many
+ * downloads from Tyler and how many table loads into the database can happen at once across every
+ * jurisdiction in this process, so refreshing another jurisdiction adds to the same pool of work
+ * instead of adding more load on Tyler and Postgres.
+ */
+public class CodeRefreshCoordinator {
+  private static final Logger log = LoggerFactory.getLogger(CodeRefreshCoordinator.class);
+
+  /** How many jurisdictions to refresh at once. 0 means all of them. */
+  private static final int PARALLEL_JURISDICTIONS =
+      Integer.parseInt(StdLib.GetEnv("CODE_REFRESH_JURISDICTIONS").orElse("0"));
+
+  /** Court policies and code zips being downloaded, across all jurisdictions. */
+  private static final Semaphore DOWNLOADS =
+      new Semaphore(Integer.parseInt(StdLib.GetEnv("CODE_DOWNLOAD_LIMIT").orElse("8")), true);
+
+  /** Court tables being loaded into the database, across all jurisdictions. */
+  private static final Semaphore WRITES =
+      new Semaphore(Integer.parseInt(StdLib.GetEnv("CODE_WRITE_LIMIT").orElse("8")), true);
+
+  /** Refreshes one jurisdiction's codes. */
+  @FunctionalInterface
+  public interface Refresh {
+    /**
+     * @return true if the refresh succeeded
+     */
+    boolean refresh(String jurisdiction) throws Exception;
+  }
+
+  /** How one jurisdiction's refresh went. */
+  public record Outcome(String jurisdiction, boolean success, Duration took) {}
+
+  /** How all of the jurisdictions' refreshes went, in the order they were given. */
+  public record Report(List<Outcome> outcomes, Duration took) {
+    public boolean success() {
+      return outcomes.stream().allMatch(Outcome::success);
+    }
+
+    public List<String> failed() {
+      return outcomes.stream().filter(o -> !o.success()).map(Outcome::jurisdiction).toList();
+    }
+
+    /** A line for the whole run, then a line for each jurisdiction. */
+    public String summary() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(
+          "Refreshed codes for %d jurisdictions in %s, %d failed"
+              .formatted(outcomes.size(), took, failed().size()));
+      for (Outcome outcome : outcomes) {
+        sb.append(
+            "\n  %s: %s in %s"
+                .formatted(
+                    outcome.jurisdiction(),
+                    outcome.success() ? "succeeded" : "FAILED",
+                    outcome.took()));
+      }
+      return sb.toString();
+    }
+  }
+
+  /** Runs work that downloads from Tyler, once there's room under CODE_DOWNLOAD_LIMIT. */
+  static <T> T downloading(Callable<T> work) throws Exception {
+    return limited(DOWNLOADS, work);
+  }
+
+  /** Runs work that writes to the database, once there's room under CODE_WRITE_LIMIT. */
+  static <T> T writing(Callable<T> work) throws Exception {
+    return limited(WRITES, work);
+  }
+
+  private static <T> T limited(Semaphore permits, Callable<T> work) throws Exception {
+    permits.acquire();
+    try {
+      return work.call();
+    } finally {
+      permits.release();
+    }
+  }
+
+  /** Refreshes the jurisdictions, CODE_REFRESH_JURISDICTIONS of them at a time. */
+  public static Report refreshAll(List<String> jurisdictions, Refresh refresh) {
+    return refreshAll(jurisdictions, PARALLEL_JURISDICTIONS, refresh);
+  }
+
+  /**
+   * Refreshes the jurisdictions, at most `parallel` of them at a time (all of them if it's 0), and
+   * logs the report. Waits until all of them are done.
+   */
+  public static Report refreshAll(List<String> jurisdictions, int parallel, Refresh refresh) {
+    Instant start = Instant.now(Clock.systemUTC());
+    int threads = (parallel <= 0) ? jurisdictions.size() : Math.min(parallel, jurisdictions.size());
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    ExecutorService executor =
+        ParallelCodeLoader.makeExecutor(Math.max(1, threads), "code-refresh-");
+    List<Outcome> outcomes = new ArrayList<>();
+    try {
+      List<Future<Outcome>> running = new ArrayList<>();
+      for (String jurisdiction : jurisdictions) {
+        running.add(executor.submit(() -> refreshOne(jurisdiction, refresh, mdc)));
+      }
+      for (int i = 0; i < running.size(); i++) {
+        try {
+          outcomes.add(running.get(i).get());
+        } catch (ExecutionException ex) {
+          log.error(
+              "Refresh of {} failed: {}", jurisdictions.get(i), StdLib.strFromException(ex));
+          outcomes.add(new Outcome(jurisdictions.get(i), false, Duration.ZERO));
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while refreshing codes, stopping the rest");
+      executor.shutdownNow();
+      for (int i = outcomes.size(); i < jurisdictions.size(); i++) {
+        outcomes.add(new Outcome(jurisdictions.get(i), false, Duration.ZERO));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Report report = new Report(outcomes, Duration.between(start, Instant.now(Clock.systemUTC())));
+    if (report.success()) {
+      log.info(report.summary());
+    } else {
+      log.error(report.summary());
+    }
+    return report;
+  }
+
+  private static Outcome refreshOne(
+      String jurisdiction, Refresh refresh, Map<String, String> mdc) {
+    if (mdc != null) {
+      MDC.setContextMap(mdc);
+    }
+    Instant start = Instant.now(Clock.systemUTC());
+    boolean success;
+    try {
+      success = refresh.refresh(jurisdiction);
+    } catch (Exception ex) {
+      log.error("Refresh of {} failed: {}", jurisdiction, StdLib.strFromException(ex));
+      success = false;
+    } finally {
+      MDC.clear();
+    }
+    return new Outcome(
+        jurisdiction, success, Duration.between(start, Instant.now(Clock.systemUTC())));
+  }
+}
@@ -10,6 +10,9 @@ import edu.suffolk.litlab.efspserver.services.ServiceHelpers;
 import edu.suffolk.litlab.efspserver.tyler.TylerUrls;
 import edu.suffolk.litlab.efspserver.tyler.TylerUserNamePassword;
 import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeStaging;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeTableConstants;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeTableDiff;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.ws.BindingProvider;
 import jakarta.xml.ws.soap.SOAPFaultException;
@@ -19,22 +22,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import javax.sql.DataSource;
 import javax.xml.stream.XMLInputFactory;
@@ -64,9 +74,12 @@ import tyler.efm.wsdl.webservicesprofile_implementation_4_0.FilingReviewMDEServi
  * the Postgres codes database - this takes the XMLStreamReader, unmarshalls it into a java object,
  * and uses that to populate the code database. Most code for that is in {@link CodeDatabase}.
  *
- * <p>We parallelize this as much as possible, which means steps 1 and 2 are done in batch, and each
- * court / court-table item is done in parallel. Step 3, however, can't seem to be parallelized, due
- * to java issues. See https://github.com/SuffolkLITLab/EfileProxyServer/issues/111
+ * <p>The steps are pipelined (see {@link ParallelCodeLoader#pipeline}): a few download workers get
+ * policies and download zips (CODE_DOWNLOAD_THREADS), and hand the zips to the database workers
+ * through a bounded queue (CODE_DOWNLOAD_QUEUE), so the network and the database are both kept
+ * busy. Step 3 is only done in parallel if the updater is given a way to make more database
+ * connections (CODE_UPDATE_THREADS); otherwise it's done one table at a time on the given
+ * connection, while the downloads continue in the background.
  *
  * <p>For TX, IL, and MA, it takes ~45 minutes to refresh all of the codes.
  */
@@ -136,9 +149,67 @@ public class CodeUpdater {
 
   private final String x509Password;
 
+  /** How many tables to load at once, if loading in parallel. */
+  private static final int LOAD_THREADS =
+      Integer.parseInt(StdLib.GetEnv("CODE_UPDATE_THREADS").orElse("4"));
+
+  /** How many courts' policies and tables' zips to download at once. */
+  private static final int DOWNLOAD_THREADS =
+      Integer.parseInt(StdLib.GetEnv("CODE_DOWNLOAD_THREADS").orElse("4"));
+
+  /**
+   * How many downloaded zips can wait for the database before the downloads wait too. Bounds how
+   * many temp files (or open zip cache files) there are at once.
+   */
+  private static final int DOWNLOAD_QUEUE =
+      Integer.parseInt(StdLib.GetEnv("CODE_DOWNLOAD_QUEUE").orElse("8"));
+
+  /**
+   * If refreshes should load into staging tables and swap them in (see {@link CodeStaging}),
+   * instead of deleting and reloading rows in the live tables.
+   */
+  private static final boolean SWAP_IN_CODES =
+      StdLib.GetEnv("CODE_REFRESH_WITH_SWAP").map(Boolean::parseBoolean).orElse(true);
+
+  /**
+   * If refreshes should only change the rows that are different in the new code lists (see {@link
+   * CodeTableDiff}), instead of reloading the whole table for each court. Off by default; when on,
+   * it's used instead of CODE_REFRESH_WITH_SWAP.
+   */
+  private static final boolean DIFF_UPDATES =
+      StdLib.GetEnv("CODE_UPDATE_WITH_DIFF").map(Boolean::parseBoolean).orElse(false);
+
+  /** How a court's table is loaded. */
+  private enum LoadMode {
+    /** The table doesn't have any of the court's rows yet (it was emptied, or it's in staging). */
+    APPEND,
+    /** Delete the court's rows, then load the new ones. */
+    REPLACE,
+    /** Only change the rows that are different. */
+    DIFF,
+    /**
+     * Like REPLACE, but the court's table is committed as soon as it's loaded, along with a
+     * checkpoint (see {@link CodeDatabase#markLoaded}), instead of when every table is done.
+     */
+    CHECKPOINT
+  }
+
+  /** Makes new connections for the parallel loaders. If empty, tables are loaded serially. */
+  private final Optional<ParallelCodeLoader.DbMaker> workerDbs;
+
+  /** Where downloaded zips are kept, if anywhere. */
+  private final Optional<CodeZipCache> zipCache;
+
   public CodeUpdater(String pathToKeystore, String x509Password) {
+    this(pathToKeystore, x509Password, Optional.empty());
+  }
+
+  public CodeUpdater(
+      String pathToKeystore, String x509Password, Optional<ParallelCodeLoader.DbMaker> workerDbs) {
     this.pathToKeystore = pathToKeystore;
     this.x509Password = x509Password;
+    this.workerDbs = workerDbs.filter(w -> LOAD_THREADS > 1);
+    this.zipCache = CodeZipCache.fromEnv();
   }
 
   /**
@@ -161,20 +232,39 @@ public class CodeUpdater {
     }
   }
 
+  /** Opens the codes zip, through the zip cache if there is one. */
+  private InputStream openCodesZip(String toRead, String authHeader, CodeZipCache.Key key)
+      throws IOException {
+    if (zipCache.isPresent()) {
+      return zipCache.get().fetch(toRead, authHeader, key);
+    }
+    return getCodesZip(toRead, authHeader);
+  }
+
   private Duration downloads = Duration.ZERO;
   private Duration updates = Duration.ZERO;
   private Duration soaps = Duration.ZERO;
 
+  /** How many rows each table had inserted and deleted by diffs. */
+  private final Map<String, CodeTableDiff.RowChanges> rowChanges = new TreeMap<>();
+
   /**
    * @param toRead
    * @param signedTime
+   * @param key what to cache the zip under. If empty, it isn't cached
    * @param process
    * @return
    */
   private boolean downloadAndProcessZip(
-      String toRead, String signedTime, Function<InputStream, Boolean> process) {
+      String toRead,
+      String signedTime,
+      Optional<CodeZipCache.Key> key,
+      Function<InputStream, Boolean> process) {
     Instant startTable = Instant.now(Clock.systemUTC());
-    try (InputStream urlStream = getCodesZip(toRead, signedTime)) {
+    try (InputStream urlStream =
+        key.isPresent()
+            ? openCodesZip(toRead, signedTime, key.get())
+            : getCodesZip(toRead, signedTime)) {
       // Write out the zip file
       downloads = downloads.plus(Duration.between(startTable, Instant.now(Clock.systemUTC())));
 
@@ -237,8 +327,11 @@ public class CodeUpdater {
               return false;
             }
           };
+      // The versions of the system tables aren't known until "version" is downloaded
+      var key = new CodeZipCache.Key(cd.getDomain(), "0", urlSuffix.getKey(), Optional.empty());
       boolean updateSuccess =
-          downloadAndProcessZip(baseUrl + urlSuffix.getValue(), signedTime.get(), process);
+          downloadAndProcessZip(
+              baseUrl + urlSuffix.getValue(), signedTime.get(), Optional.of(key), process);
       if (!updateSuccess) {
         cd.rollback(sp);
         return false;
@@ -262,78 +355,34 @@ public class CodeUpdater {
     }
   }
 
-  /**
-   * Internal class, meant to pass around information between the "download zip" stage and the
-   * "update postgres" stage.
-   */
-  private static class DownloadedCodes {
-    final String tableName;
-    final String location;
-    final XMLStreamReader xsr;
-    final InputStream input;
+  /** Sent to the database workers for tables whose zip couldn't be downloaded. */
+  private static final ParallelCodeLoader.Fetched SKIPPED =
+      new ParallelCodeLoader.Fetched() {
+        @Override
+        public void load(CodeDatabase cd) {}
 
-    public DownloadedCodes(
-        String tableName, String location, XMLStreamReader xsr, InputStream input) {
-      this.tableName = tableName;
-      this.location = location;
-      this.xsr = xsr;
-      this.input = input;
-    }
-  }
+        @Override
+        public void close() {}
+      };
 
-  /**
-   * @param authHeader The header needed to download the codes
-   * @param location The court code
-   * @param courtCodeList The list of codes to download for this court
-   * @param tables
-   * @return a map of the actually downloaded codes
-   */
-  private static Map<String, DownloadedCodes> streamDownload(
-      String authHeader,
-      String location,
-      Stream<CodeToDownload> courtCodeList,
-      Optional<List<String>> tables) {
-    var codeLists = new ConcurrentHashMap<String, DownloadedCodes>();
-    courtCodeList.forEach(
-        toDownload -> {
-          if (tables.isEmpty() || tables.get().contains(toDownload.tableName)) {
-            try {
-              InputStream urlStream = getCodesZip(toDownload.url, authHeader);
-              ZipInputStream zip = new ZipInputStream(urlStream);
-              zip.getNextEntry();
-              XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-              XMLStreamReader sr = xmlInputFactory.createXMLStreamReader(zip);
-              codeLists.put(
-                  toDownload.tableName,
-                  new DownloadedCodes(toDownload.tableName, location, sr, urlStream));
-            } catch (IOException | XMLStreamException e) {
-              log.error(StdLib.strFromException(e));
-            }
-          }
-        });
-    return codeLists;
-  }
-
-  private static Map<String, CourtPolicyResponseMessageType> streamPolicies(
-      Stream<String> locations, String jurisdiction, FilingReviewMDEPort filingPort) {
-    var policies = new ConcurrentHashMap<String, CourtPolicyResponseMessageType>();
-    locations.forEach(
-        location -> {
-          var m = Ecf4Helper.prep(new CourtPolicyQueryMessageType(), location);
-          try {
-            CourtPolicyResponseMessageType p = filingPort.getPolicy(m);
-            policies.put(location, p);
-          } catch (SOAPFaultException ex) {
-            log.warn(
-                "Got a SOAP Fault excption when getting the policy for "
-                    + location
-                    + " in "
-                    + jurisdiction
-                    + ": "
-                    + StdLib.strFromException(ex));
-          }
-        });
-    return policies;
+  private Optional<CourtPolicyResponseMessageType> getPolicy(
+      String location, String jurisdiction, FilingReviewMDEPort filingPort) {
+    Instant start = Instant.now(Clock.systemUTC());
+    var m = Ecf4Helper.prep(new CourtPolicyQueryMessageType(), location);
+    try {
+      return Optional.of(filingPort.getPolicy(m));
+    } catch (SOAPFaultException ex) {
+      log.warn(
+          "Got a SOAP Fault excption when getting the policy for "
+              + location
+              + " in "
+              + jurisdiction
+              + ": "
+              + StdLib.strFromException(ex));
+      return Optional.empty();
+    } finally {
+      addSoapTime(start);
+    }
   }
 
   private String makeCodeUrl(String baseUrl, String tableName, String location) {
@@ -341,18 +390,15 @@ public class CodeUpdater {
   }
 
   /**
-   * @param tables If empty, all versions will be downloaded
+   * Gets the URLs of each of the tables to download for a court.
+   *
+   * @param tables If empty, all tables in the court's policy will be downloaded
    */
-  private boolean downloadCourtTables(
+  private List<CodeToDownload> codesToDownload(
       String location,
       Optional<List<String>> tables,
-      CodeDatabase cd,
-      HeaderSigner signer,
       CourtPolicyResponseMessageType policyResp,
-      String baseUrl)
-      throws JAXBException, IOException, SQLException {
-    log.info("Doing updates for: {}, tables: {}", location, tables);
-    Instant downloadStart = Instant.now(Clock.systemUTC());
+      String baseUrl) {
     // TODO(brycew-later): check that the effective date is later than today
     // JAXBElement<?> obj = ccl.getEffectiveDate().getDateRepresentation();
     Map<String, String> urlMap =
@@ -366,45 +412,231 @@ public class CodeUpdater {
                             .getIdentificationID()
                             .getValue()
                             .replace(" ", "%20")));
-    Stream<CodeToDownload> toDownload;
     if (tables.isEmpty()) {
-      toDownload =
-          urlMap.entrySet().stream().map((ent) -> new CodeToDownload(ent.getKey(), ent.getValue()));
-    } else {
-      toDownload =
-          tables.get().stream()
-              .map(
-                  tableName -> {
-                    String guessUrl = makeCodeUrl(baseUrl, tableName, location);
-                    return new CodeToDownload(tableName, urlMap.getOrDefault(tableName, guessUrl));
-                  });
+      return urlMap.entrySet().stream()
+          .map((ent) -> new CodeToDownload(ent.getKey(), ent.getValue()))
+          .toList();
     }
+    return tables.get().stream()
+        .map(
+            tableName -> {
+              String guessUrl = makeCodeUrl(baseUrl, tableName, location);
+              return new CodeToDownload(tableName, urlMap.getOrDefault(tableName, guessUrl));
+            })
+        .toList();
+  }
+
+  private ParallelCodeLoader.Stages stages() {
+    return new ParallelCodeLoader.Stages(DOWNLOAD_THREADS, LOAD_THREADS, DOWNLOAD_QUEUE);
+  }
+
+  /**
+   * Makes a {@link ParallelCodeLoader.Source} for each court, which gets the court's policy and
+   * then makes a job to download and load each of its tables.
+   *
+   * @param courtTables the tables to load for each court. If empty, all of the tables in the
+   *     court's policy are loaded
+   * @param mode how the court's existing rows in each table are handled
+   * @param alreadyLoaded tables to skip, as "location/codelist" (see {@link
+   *     CodeDatabase#startCheckpoints})
+   */
+  private List<ParallelCodeLoader.Source> courtSources(
+      Map<String, Optional<List<String>>> courtTables,
+      String baseUrl,
+      FilingReviewMDEPort filingPort,
+      CodeDatabase cd,
+      HeaderSigner signer,
+      LoadMode mode,
+      Set<String> alreadyLoaded)
+      throws SQLException {
+    String domain = cd.getDomain();
+    // Looked up now, since the network workers don't have a database connection
+    Map<String, String> versions = cd.getAvailableVersions();
+    List<ParallelCodeLoader.Source> sources = new ArrayList<>();
+    for (Entry<String, Optional<List<String>>> courtAndTables : courtTables.entrySet()) {
+      final String location = courtAndTables.getKey();
+      if (location.isBlank()) {
+        log.warn("Ignoring tables with an empty court!");
+        continue;
+      }
+      sources.add(
+          () -> {
+            Optional<CourtPolicyResponseMessageType> policy =
+                CodeRefreshCoordinator.downloading(() -> getPolicy(location, domain, filingPort));
+            if (policy.isEmpty()) {
+              return List.of();
+            }
+            List<ParallelCodeLoader.FetchJob> jobs = new ArrayList<>();
+            for (CodeToDownload code :
+                codesToDownload(location, courtAndTables.getValue(), policy.get(), baseUrl)) {
+              String versionKey =
+                  location + "/" + CodeTableConstants.getZipNameFromTable(code.tableName);
+              if (alreadyLoaded.contains(versionKey)) {
+                log.debug("Skipping {}, already loaded", versionKey);
+                continue;
+              }
+              var key =
+                  new CodeZipCache.Key(
+                      domain,
+                      location,
+                      code.tableName,
+                      Optional.ofNullable(versions.get(versionKey)));
+              jobs.add(
+                  new ParallelCodeLoader.FetchJob(
+                      location + "/" + code.tableName,
+                      () ->
+                          CodeRefreshCoordinator.downloading(
+                              () -> fetchCourtTable(location, code, signer, key, mode))));
+            }
+            return jobs;
+          });
+    }
+    return sources;
+  }
+
+  /**
+   * Downloads a court's table, to a temp file if it isn't going to the zip cache, so that it can
+   * wait for a database worker without holding a connection to Tyler open.
+   */
+  private ParallelCodeLoader.Fetched fetchCourtTable(
+      String location,
+      CodeToDownload code,
+      HeaderSigner signer,
+      CodeZipCache.Key key,
+      LoadMode mode)
+      throws IOException {
+    // Signed here instead of when the job is made, since jobs can wait a while to be fetched.
     Optional<String> signedTime = signer.signedCurrentTime();
     if (signedTime.isEmpty()) {
-      log.error("Couldn't get signed time to download codes, skipping all");
-      return false;
+      throw new IOException("Couldn't get signed time to download " + code.url);
     }
-    Map<String, DownloadedCodes> downloaded =
-        streamDownload(signedTime.get(), location, toDownload.parallel(), tables);
-    downloads = downloads.plus(Duration.between(downloadStart, Instant.now(Clock.systemUTC())));
-    log.info("Location: {}: Downloads took: {}", location, downloads);
+    Instant downloadStart = Instant.now(Clock.systemUTC());
+    InputStream zipStream;
+    try {
+      zipStream = openCodesZip(code.url, signedTime.get(), key);
+      if (zipCache.isEmpty()) {
+        Path tmp = Files.createTempFile("codes", ".zip");
+        try (InputStream urlStream = zipStream) {
+          Files.copy(urlStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+          zipStream = Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException ex) {
+          Files.deleteIfExists(tmp);
+          throw ex;
+        }
+      }
+    } catch (IOException ex) {
+      // Skip the table, keeping its old rows and version.
+      log.warn("Skipping {}, got exception accessing zip: {}", code.url, ex.toString());
+      return SKIPPED;
+    } finally {
+      addTime(true, downloadStart);
+    }
+    final InputStream downloaded = zipStream;
+    return new ParallelCodeLoader.Fetched() {
+      @Override
+      public void load(CodeDatabase cd) throws Exception {
+        CodeRefreshCoordinator.writing(
+            () -> {
+              loadCourtTable(cd, location, code.tableName, downloaded, mode);
+              return null;
+            });
+      }
 
+      @Override
+      public void close() {
+        try {
+          downloaded.close();
+        } catch (IOException ex) {
+          log.warn("Couldn't close the zip for {}: {}", code.url, ex.toString());
+        }
+      }
+    };
+  }
+
+  private void loadCourtTable(
+      CodeDatabase cd, String location, String table, InputStream zipStream, LoadMode mode)
+      throws IOException, SQLException, JAXBException, XMLStreamException {
+    ZipInputStream zip = new ZipInputStream(zipStream);
+    zip.getNextEntry();
+    XMLStreamReader xsr = XMLInputFactory.newInstance().createXMLStreamReader(zip);
     Instant updateStart = Instant.now(Clock.systemUTC());
-    for (DownloadedCodes down : downloaded.values()) {
-      try {
-        cd.updateTable(down.tableName, down.location, down.xsr);
-      } catch (Exception ex) {
-        log.error("Couldn't update table? {}", StdLib.strFromException(ex));
-      } finally {
-        StdLib.closeQuitely(down.xsr);
-        down.input.close();
+    try {
+      switch (mode) {
+        case APPEND -> cd.updateTable(table, location, xsr);
+        case REPLACE -> {
+          if (!cd.deleteFromTable(table, location)) {
+            throw new SQLException("Couldn't delete from " + table + " at " + location);
+          }
+          cd.updateTable(table, location, xsr);
+        }
+        case DIFF -> addChanges(table, cd.diffTable(table, location, xsr));
+        case CHECKPOINT -> {
+          if (!cd.deleteFromTable(table, location)) {
+            throw new SQLException("Couldn't delete from " + table + " at " + location);
+          }
+          cd.updateTable(table, location, xsr);
+          cd.markLoaded(table, location);
+          cd.commit();
+        }
       }
+    } finally {
+      StdLib.closeQuitely(xsr);
+      addTime(false, updateStart);
     }
-    updates = updates.plus(Duration.between(updateStart, Instant.now(Clock.systemUTC())));
+  }
 
-    cd.commit();
-    log.info("Location: {}: updates took: {}", location, updates);
-    return true;
+  private synchronized void addTime(boolean download, Instant start) {
+    Duration took = Duration.between(start, Instant.now(Clock.systemUTC()));
+    if (download) {
+      downloads = downloads.plus(took);
+    } else {
+      updates = updates.plus(took);
+    }
+  }
+
+  private synchronized void addSoapTime(Instant start) {
+    soaps = soaps.plus(Duration.between(start, Instant.now(Clock.systemUTC())));
+  }
+
+  private synchronized void addChanges(String table, CodeTableDiff.RowChanges changes) {
+    rowChanges.merge(table, changes, CodeTableDiff.RowChanges::plus);
+  }
+
+  private void logChanges() {
+    CodeTableDiff.RowChanges total = CodeTableDiff.RowChanges.NONE;
+    for (Entry<String, CodeTableDiff.RowChanges> table : rowChanges.entrySet()) {
+      CodeTableDiff.RowChanges changes = table.getValue();
+      log.info(
+          "{}: {} rows inserted, {} rows deleted",
+          table.getKey(),
+          changes.inserted(),
+          changes.deleted());
+      total = total.plus(changes);
+    }
+    log.info(
+        "Diffed {} tables: {} rows inserted, {} rows deleted",
+        rowChanges.size(),
+        total.inserted(),
+        total.deleted());
+  }
+
+  private void logTimes(String what, Instant start, boolean success) {
+    log.info(
+        "{} took {} (success: {}). Summed over workers, getPolicy took {}, downloads took {}, and"
+            + " updates took {}",
+        what,
+        Duration.between(start, Instant.now(Clock.systemUTC())),
+        success,
+        soaps,
+        downloads,
+        updates);
+  }
+
+  /** Just the given tables for each court. */
+  private static Map<String, Optional<List<String>>> someTables(Map<String, List<String>> tables) {
+    Map<String, Optional<List<String>>> courtTables = new HashMap<>();
+    tables.forEach((court, names) -> courtTables.put(court, Optional.of(names)));
+    return courtTables;
   }
 
   /** Returns true if successful, false if not successful */
@@ -431,52 +663,292 @@ public class CodeUpdater {
     }
     for (String table : allTables) {
       cd.createTableIfAbsent(table);
+      cd.createIndicesIfAbsent(table);
+    }
+    if (DIFF_UPDATES && !allTables.isEmpty()) {
+      cd.commit();
+      return refreshWithDiffs(baseUrl, filingPort, cd, signer, versionsToUpdate);
+    }
+    if (SWAP_IN_CODES && !allTables.isEmpty()) {
+      cd.commit();
+      Optional<CodeStaging> staging = cd.startStaging(stagedTables(allTables));
+      if (staging.isPresent()) {
+        return refreshWithSwap(baseUrl, filingPort, cd, signer, versionsToUpdate, staging.get());
+      }
+    }
+    if (workerDbs.isPresent()) {
+      // The workers use their own connections, so they need to see any new tables.
+      cd.commit();
+      return refreshInParallel(baseUrl, filingPort, cd, signer, versionsToUpdate);
+    }
+    Map<String, Set<String>> courtsByTable = courtsByTable(versionsToUpdate);
+    log.info("Removing {} court entries, with one query per table ({})", n, courtsByTable.size());
+    for (Entry<String, Set<String>> tableAndCourts : courtsByTable.entrySet()) {
+      String table = tableAndCourts.getKey();
+      log.debug(
+          "In {}, removing entries in {} for courts: {}",
+          cd.getDomain(),
+          table,
+          tableAndCourts.getValue());
+      Instant deleteFromTable = Instant.now(Clock.systemUTC());
+      if (!cd.deleteFromTable(table, tableAndCourts.getValue())) {
+        log.error("Couldn't delete from {}, aborting", table);
+        cd.rollback(sp);
+        return false;
+      }
+      updates = updates.plus(Duration.between(deleteFromTable, Instant.now(Clock.systemUTC())));
+    }
+    log.info(
+        "Took {} to remove existing tables",
+        Duration.between(startDel, Instant.now(Clock.systemUTC())));
+
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(
+            someTables(versionsToUpdate),
+            baseUrl,
+            filingPort,
+            cd,
+            signer,
+            LoadMode.APPEND,
+            Set.of());
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    boolean success = ParallelCodeLoader.pipelineInto(sources, stages(), cd);
+    logTimes("Loading codes", startLoad, success);
+    if (!success) {
+      cd.rollback(sp);
+      return false;
     }
-    log.info("Removing {} court entries, over {} queries", versionsToUpdate.size(), n);
+    cd.commit();
+    cd.setAutoCommit(true);
+    cd.vacuumTables(writtenTables(allTables));
+    return true;
+  }
+
+  /**
+   * The rest of {@link #updateAll} when there are parallel workers: each court's tables are
+   * deleted and reloaded by the workers, and only committed if all of them succeed.
+   */
+  private boolean refreshInParallel(
+      String baseUrl,
+      FilingReviewMDEPort filingPort,
+      CodeDatabase cd,
+      HeaderSigner signer,
+      Map<String, List<String>> versionsToUpdate)
+      throws SQLException {
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(
+            someTables(versionsToUpdate),
+            baseUrl,
+            filingPort,
+            cd,
+            signer,
+            LoadMode.REPLACE,
+            Set.of());
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    boolean success = ParallelCodeLoader.pipeline(sources, stages(), workerDbs.get());
+    logTimes("Loading codes with " + LOAD_THREADS + " workers", startLoad, success);
+    if (!success) {
+      return false;
+    }
+    cd.setAutoCommit(true);
+    cd.vacuumTables(writtenTables(courtsByTable(versionsToUpdate).keySet()));
+    return true;
+  }
+
+  /**
+   * The rest of {@link #updateAll} when diffing: each changed table for each court is compared with
+   * the new code list, and only the rows that changed are written. The changes are all written on
+   * `cd`'s connection, even if there are worker connections, so they're committed together, or not
+   * at all. Since few rows change, there isn't much for vacuum to do after.
+   */
+  private boolean refreshWithDiffs(
+      String baseUrl,
+      FilingReviewMDEPort filingPort,
+      CodeDatabase cd,
+      HeaderSigner signer,
+      Map<String, List<String>> versionsToUpdate)
+      throws SQLException {
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(
+            someTables(versionsToUpdate),
+            baseUrl,
+            filingPort,
+            cd,
+            signer,
+            LoadMode.DIFF,
+            Set.of());
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    rowChanges.clear();
+    boolean success = loadSerially(sources, cd);
+    logTimes("Diffing codes", startLoad, success);
+    cd.setAutoCommit(true);
+    if (success) {
+      logChanges();
+      // The code tables only had a few rows change, but the system tables were all replaced
+      cd.analyzeTables(changedTables());
+      cd.vacuumTables(writtenTables(List.of()));
+    }
+    return success;
+  }
+
+  /**
+   * The rest of {@link #updateAll} when the tables can be swapped: the changed tables are rebuilt
+   * in staging, with the rows of the courts that didn't change copied over, and then swapped in.
+   */
+  private boolean refreshWithSwap(
+      String baseUrl,
+      FilingReviewMDEPort filingPort,
+      CodeDatabase cd,
+      HeaderSigner signer,
+      Map<String, List<String>> versionsToUpdate,
+      CodeStaging staging)
+      throws SQLException {
+    Map<String, Set<String>> courtsByTable = new HashMap<>();
+    List<String> reloadingVersions = new ArrayList<>();
     for (Entry<String, List<String>> courtAndTables : versionsToUpdate.entrySet()) {
       final String courtLocation = courtAndTables.getKey();
       if (courtLocation.isBlank()) {
         log.warn("Ignoring tables with an empty court!");
         continue;
       }
-      List<String> tables = courtAndTables.getValue();
-      log.debug(
-          "In {}, removing entries for court {} for tables: {}",
-          cd.getDomain(),
-          courtLocation,
-          tables);
-      for (String table : tables) {
-        Instant deleteFromTable = Instant.now(Clock.systemUTC());
-        if (!cd.deleteFromTable(table, courtLocation)) {
-          log.error("Couldn't delete from {} at {}, aborting", table, courtLocation);
-          cd.rollback(sp);
+      for (String table : courtAndTables.getValue()) {
+        if (!table.equals("optionalservices") && !CodeTableConstants.isCourtTable(table)) {
+          log.error("Can't reload {} for just {}, aborting", table, courtLocation);
+          staging.drop();
           return false;
         }
-        updates = updates.plus(Duration.between(deleteFromTable, Instant.now(Clock.systemUTC())));
+        courtsByTable.computeIfAbsent(table, t -> new HashSet<>()).add(courtLocation);
+        reloadingVersions.add(courtLocation + "/" + CodeTableConstants.getZipNameFromTable(table));
+      }
+    }
+    Instant startCopy = Instant.now(Clock.systemUTC());
+    try {
+      for (Entry<String, Set<String>> tableAndCourts : courtsByTable.entrySet()) {
+        staging.keepOtherCourts(tableAndCourts.getKey(), tableAndCourts.getValue());
+        if (tableAndCourts.getKey().equals("optionalservices")) {
+          staging.keepOtherCourts("optionalservices_filinglist", tableAndCourts.getValue());
+        }
       }
+      staging.keepOtherVersions(reloadingVersions);
+      cd.commit();
+    } catch (SQLException ex) {
+      log.error("Couldn't set up staging tables: {}", StdLib.strFromException(ex));
+      staging.drop();
+      return false;
     }
     log.info(
-        "Took {} to remove existing tables",
-        Duration.between(startDel, Instant.now(Clock.systemUTC())));
-    Instant startPolicy = Instant.now(Clock.systemUTC());
-    Map<String, CourtPolicyResponseMessageType> policies =
-        streamPolicies(versionsToUpdate.keySet().stream().parallel(), cd.getDomain(), filingPort);
-    soaps = soaps.plus(Duration.between(startPolicy, Instant.now(Clock.systemUTC())));
-    log.info("Soaps: {}", soaps);
-
-    for (var policy : policies.entrySet()) {
-      final String courtLocation = policy.getKey();
-      final List<String> tables = versionsToUpdate.get(courtLocation);
-      if (!downloadCourtTables(
-          courtLocation, Optional.of(tables), cd, signer, policy.getValue(), baseUrl)) {
-        log.warn("Failed updating court {}'s tables {}", courtLocation, tables);
-        cd.rollback(sp);
-        return false;
+        "Took {} to copy unchanged courts to staging",
+        Duration.between(startCopy, Instant.now(Clock.systemUTC())));
+
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(
+            someTables(versionsToUpdate),
+            baseUrl,
+            filingPort,
+            cd,
+            signer,
+            LoadMode.APPEND,
+            Set.of());
+    return loadAndSwap(sources, cd, staging);
+  }
+
+  /** Makes the staging tables also swap in the tables that are loaded with the given ones. */
+  private static List<String> stagedTables(Collection<String> tables) {
+    List<String> staged = new ArrayList<>(tables);
+    if (tables.contains("optionalservices")) {
+      staged.add("optionalservices_filinglist");
+    }
+    staged.add("installedversion");
+    return staged;
+  }
+
+  /**
+   * The tables written to by loading the given code tables, so only they are vacuumed afterwards.
+   * The system tables are always included, since they're downloaded again every time.
+   */
+  private static Set<String> writtenTables(Collection<String> tables) {
+    Set<String> written = new HashSet<>(stagedTables(tables));
+    written.addAll(List.of("version", "location", "error"));
+    return written;
+  }
+
+  /** The tables that diffs inserted or deleted rows in. */
+  private synchronized Set<String> changedTables() {
+    Set<String> changed = new HashSet<>();
+    rowChanges.forEach(
+        (table, changes) -> {
+          if (!changes.isEmpty()) {
+            changed.add(table);
+          }
+        });
+    if (!changed.isEmpty()) {
+      changed.addAll(stagedTables(changed));
+    }
+    return changed;
+  }
+
+  /** Flips the courts to update for each table to the courts for each table. */
+  private static Map<String, Set<String>> courtsByTable(Map<String, List<String>> tablesByCourt) {
+    Map<String, Set<String>> courtsByTable = new HashMap<>();
+    for (Entry<String, List<String>> courtAndTables : tablesByCourt.entrySet()) {
+      final String courtLocation = courtAndTables.getKey();
+      if (courtLocation.isBlank()) {
+        log.warn("Ignoring tables with an empty court!");
+        continue;
+      }
+      for (String table : courtAndTables.getValue()) {
+        courtsByTable.computeIfAbsent(table, t -> new HashSet<>()).add(courtLocation);
       }
     }
-    cd.commit();
+    return courtsByTable;
+  }
+
+  /**
+   * Runs the jobs so they load into the staging tables, commits them, and swaps them in. If any
+   * job fails, the staging tables are dropped and the live codes are left as is.
+   */
+  private boolean loadAndSwap(
+      List<ParallelCodeLoader.Source> sources, CodeDatabase cd, CodeStaging staging)
+      throws SQLException {
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    boolean success;
+    if (workerDbs.isPresent()) {
+      ParallelCodeLoader.DbMaker stagingDbs =
+          () -> {
+            CodeDatabase worker = workerDbs.get().make();
+            worker.setAutoCommit(false);
+            worker.loadIntoSchema(staging.getSchema());
+            return worker;
+          };
+      success = ParallelCodeLoader.pipeline(sources, stages(), stagingDbs);
+    } else {
+      cd.setAutoCommit(false);
+      cd.loadIntoSchema(staging.getSchema());
+      success = loadSerially(sources, cd);
+    }
+    logTimes("Loading codes into " + staging.getSchema(), startLoad, success);
+    if (!success) {
+      staging.drop();
+      cd.setAutoCommit(true);
+      return false;
+    }
+    success = staging.swap();
     cd.setAutoCommit(true);
-    cd.vacuumAll();
+    return success;
+  }
+
+  /**
+   * Loads everything on the given database, with downloads still in the background, committing
+   * only if it all succeeds.
+   */
+  private boolean loadSerially(List<ParallelCodeLoader.Source> sources, CodeDatabase cd)
+      throws SQLException {
+    cd.setAutoCommit(false);
+    if (!ParallelCodeLoader.pipelineInto(sources, stages(), cd)) {
+      cd.rollback();
+      return false;
+    }
+    cd.commit();
     return true;
   }
 
@@ -495,12 +967,20 @@ public class CodeUpdater {
     log.info("Downloading system tables for {}", cd.getDomain());
     boolean success = downloadSystemTables(baseUrl, cd, signer);
 
-    var tablesToDeleteDomain = ecf4ElemToTableName.values();
+    var tablesToDeleteDomain = Set.copyOf(ecf4ElemToTableName.values());
     for (String table : tablesToDeleteDomain) {
       cd.createTableIfAbsent(table);
-      cd.deleteFromTable(table);
+      cd.createIndicesIfAbsent(table);
     }
     cd.commit();
+    Optional<CodeStaging> staging =
+        SWAP_IN_CODES ? cd.startStaging(stagedTables(tablesToDeleteDomain)) : Optional.empty();
+    if (staging.isEmpty()) {
+      for (String table : tablesToDeleteDomain) {
+        cd.deleteFromTable(table);
+      }
+      cd.commit();
+    }
 
     downloads = Duration.ZERO;
     soaps = Duration.ZERO;
@@ -510,24 +990,176 @@ public class CodeUpdater {
     }
     // Remove the "0" or top level court, which doesn't usually have individual court tables
     locs.remove("0");
-    Instant startPolicy = Instant.now(Clock.systemUTC());
-    Map<String, CourtPolicyResponseMessageType> policies =
-        streamPolicies(locs.stream(), cd.getDomain(), filingPort);
-    soaps = soaps.plus(Duration.between(startPolicy, Instant.now(Clock.systemUTC())));
-    log.info("Soaps: {}", soaps);
-    for (var policy : policies.entrySet()) {
-      final String location = policy.getKey();
-      log.info("Downloading tables for {}", location);
-      success &=
-          downloadCourtTables(location, Optional.empty(), cd, signer, policy.getValue(), baseUrl);
-    }
-    log.info("Downloads took: {}, and updates took: {}, soaps took: {}", downloads, updates, soaps);
+    Map<String, Optional<List<String>>> courtTables = new HashMap<>();
+    for (String location : locs) {
+      courtTables.put(location, Optional.empty());
+    }
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(courtTables, baseUrl, filingPort, cd, signer, LoadMode.APPEND, Set.of());
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    if (staging.isPresent()) {
+      // The staging tables start empty, like the deleted tables would be. Only the versions of the
+      // system tables are kept.
+      List<String> reloadingVersions = new ArrayList<>();
+      List<String> allLocations = new ArrayList<>(cd.getAllLocations());
+      allLocations.add("0");
+      for (String location : allLocations) {
+        for (String table : tablesToDeleteDomain) {
+          reloadingVersions.add(location + "/" + CodeTableConstants.getZipNameFromTable(table));
+        }
+      }
+      try {
+        for (String table : stagedTables(tablesToDeleteDomain)) {
+          staging.get().addTable(table);
+        }
+        staging.get().keepOtherVersions(reloadingVersions);
+        cd.commit();
+      } catch (SQLException ex) {
+        log.error("Couldn't set up staging tables: {}", StdLib.strFromException(ex));
+        staging.get().drop();
+        return false;
+      }
+      success &= loadAndSwap(sources, cd, staging.get());
+      return success;
+    }
+    if (workerDbs.isPresent()) {
+      success &= ParallelCodeLoader.pipeline(sources, stages(), workerDbs.get());
+    } else {
+      success &= ParallelCodeLoader.pipelineInto(sources, stages(), cd);
+    }
+    logTimes("Loading codes", startLoad, success);
     cd.commit();
     cd.setAutoCommit(true);
-    cd.vacuumAll();
+    cd.vacuumTables(writtenTables(tablesToDeleteDomain));
     return success;
   }
 
+  /**
+   * Like {@link #replaceAll}, but each court's table is committed as soon as it's loaded, along
+   * with a checkpoint (see {@link CodeDatabase#startCheckpoints}). If the run dies part way
+   * through, running it again with {@code resume} skips the tables that were already loaded,
+   * instead of starting over. Tables whose installed version has changed since their checkpoint
+   * are loaded again.
+   *
+   * <p>Until the run finishes, the domain has new codes for some courts and none for others, so
+   * only use this when the tables can't be replaced all at once.
+   *
+   * @param resume if false, deletes all of the domain's codes and old checkpoints first
+   */
+  public boolean replaceAllCheckpointed(
+      String baseUrl, FilingReviewMDEPort filingPort, CodeDatabase cd, boolean resume)
+      throws SQLException, IOException, JAXBException {
+    HeaderSigner signer = new HeaderSigner(this.pathToKeystore, this.x509Password);
+    log.info("Downloading system tables for {}", cd.getDomain());
+    boolean success = downloadSystemTables(baseUrl, cd, signer);
+
+    var tablesToDeleteDomain = Set.copyOf(ecf4ElemToTableName.values());
+    for (String table : tablesToDeleteDomain) {
+      cd.createTableIfAbsent(table);
+      cd.createIndicesIfAbsent(table);
+    }
+    if (!resume) {
+      for (String table : tablesToDeleteDomain) {
+        cd.deleteFromTable(table);
+      }
+    }
+    Set<String> alreadyLoaded = cd.startCheckpoints(resume);
+    cd.commit();
+    if (resume) {
+      log.info("Resuming {}: {} tables already loaded", cd.getDomain(), alreadyLoaded.size());
+    }
+
+    downloads = Duration.ZERO;
+    soaps = Duration.ZERO;
+    updates = Duration.ZERO;
+    List<String> locs = new ArrayList<>(cd.getAllLocations());
+    locs.remove("0");
+    Map<String, Optional<List<String>>> courtTables = new HashMap<>();
+    for (String location : locs) {
+      courtTables.put(location, Optional.empty());
+    }
+    List<ParallelCodeLoader.Source> sources =
+        courtSources(
+            courtTables, baseUrl, filingPort, cd, signer, LoadMode.CHECKPOINT, alreadyLoaded);
+    Instant startLoad = Instant.now(Clock.systemUTC());
+    boolean loaded =
+        workerDbs.isPresent()
+            ? ParallelCodeLoader.pipeline(sources, stages(), workerDbs.get())
+            : loadSerially(sources, cd);
+    logTimes("Loading codes with checkpoints", startLoad, loaded);
+    if (!loaded) {
+      log.error(
+          "Stopped loading {}; run replaceall --resume to load the tables that aren't done",
+          cd.getDomain());
+      cd.setAutoCommit(true);
+      return false;
+    }
+    cd.clearCheckpoints();
+    cd.commit();
+    cd.setAutoCommit(true);
+    cd.vacuumTables(writtenTables(tablesToDeleteDomain));
+    return success;
+  }
+
+  /**
+   * Reloads all of the domain's codes from the zip cache (see {@link CodeZipCache}), without
+   * talking to Tyler. Each table that's in the cache has all of its rows replaced. Everything is
+   * committed together, or not at all.
+   */
+  public boolean rebuildFromCache(CodeDatabase cd) throws SQLException {
+    if (zipCache.isEmpty()) {
+      log.error("CODE_ZIP_CACHE_DIR isn't set, so there's no cache to rebuild from");
+      return false;
+    }
+    List<CodeZipCache.CachedZip> zips;
+    try {
+      zips = zipCache.get().latest(cd.getDomain());
+    } catch (IOException ex) {
+      log.error("Couldn't read the zip cache: {}", StdLib.strFromException(ex));
+      return false;
+    }
+    if (zips.isEmpty()) {
+      log.error("No cached zips for {}", cd.getDomain());
+      return false;
+    }
+    log.info("Rebuilding {} tables for {} from the zip cache", zips.size(), cd.getDomain());
+    cd.createTableIfAbsent("installedversion");
+    Set<String> tables = zips.stream().map(z -> z.table()).collect(Collectors.toSet());
+    for (String table : tables) {
+      cd.createTableIfAbsent(table);
+      cd.createIndicesIfAbsent(table);
+    }
+    cd.commit();
+    cd.setAutoCommit(false);
+    try {
+      for (String table : tables) {
+        cd.deleteFromTable(table);
+      }
+      for (CodeZipCache.CachedZip cached : zips) {
+        Optional<InputStream> in = zipCache.get().open(cached.zip());
+        if (in.isEmpty()) {
+          throw new IOException("Cached " + cached.zip() + " is missing or corrupt");
+        }
+        try (ZipInputStream zip = new ZipInputStream(in.get())) {
+          ZipEntry entry = zip.getNextEntry();
+          if (entry == null) {
+            throw new IOException(cached.zip() + " is empty");
+          }
+          cd.updateTable(cached.table(), cached.court(), zip);
+        }
+      }
+      cd.commit();
+    } catch (IOException | JAXBException | XMLStreamException | SQLException ex) {
+      log.error("Couldn't rebuild from the zip cache: {}", StdLib.strFromException(ex));
+      cd.rollback();
+      cd.setAutoCommit(true);
+      return false;
+    }
+    cd.setAutoCommit(true);
+    cd.vacuumTables(writtenTables(tables));
+    return true;
+  }
+
   /** Sets up the WSDL connection to Tyler, used for `getPolicy` to get the URL. */
   private static FilingReviewMDEPort loginWithTyler(
       String jurisdiction, String env, String userEmail, String userPassword) {
@@ -577,6 +1209,7 @@ public class CodeUpdater {
     return downloadAndProcessZip(
         makeCodeUrl(endpoint, table, location),
         hs.signedCurrentTime().get(),
+        Optional.empty(),
         (in) -> {
           String newFile = location.replace(':', '_') + "_" + table + "_test.xml";
           try (FileOutputStream fw = new FileOutputStream(newFile)) {
@@ -591,9 +1224,27 @@ public class CodeUpdater {
 
   public static boolean executeCommand(
       CodeDatabase cd, String jurisdiction, String env, List<String> args, String x509Password) {
+    return executeCommand(cd, jurisdiction, env, args, x509Password, Optional.empty());
+  }
+
+  /**
+   * @param workerDbs makes new connections to load tables in parallel. If empty, loads serially
+   */
+  public static boolean executeCommand(
+      CodeDatabase cd,
+      String jurisdiction,
+      String env,
+      List<String> args,
+      String x509Password,
+      Optional<ParallelCodeLoader.DbMaker> workerDbs) {
     SoapX509CallbackHandler.setX509Password(x509Password);
     String command = args.get(0);
     try {
+      if (command.equalsIgnoreCase("rebuildFromCache")) {
+        // Doesn't need Tyler at all
+        return new CodeUpdater(System.getenv("PATH_TO_KEYSTORE"), x509Password, workerDbs)
+            .rebuildFromCache(cd);
+      }
       cd.setAutoCommit(false);
       String codesSite = TylerUrls.getCodeEndpointRootUrl(jurisdiction, env);
       FilingReviewMDEPort filingPort =
@@ -602,8 +1253,14 @@ public class CodeUpdater {
               env,
               System.getenv("TYLER_USER_EMAIL"),
               System.getenv("TYLER_USER_PASSWORD"));
-      CodeUpdater cu = new CodeUpdater(System.getenv("PATH_TO_KEYSTORE"), x509Password);
+      CodeUpdater cu =
+          new CodeUpdater(System.getenv("PATH_TO_KEYSTORE"), x509Password, workerDbs);
       if (command.equalsIgnoreCase("replaceall")) {
+        if (args.contains("--resume")) {
+          return cu.replaceAllCheckpointed(codesSite, filingPort, cd, true);
+        } else if (args.contains("--checkpoint")) {
+          return cu.replaceAllCheckpointed(codesSite, filingPort, cd, false);
+        }
         return cu.replaceAll(codesSite, filingPort, cd);
       } else if (command.equalsIgnoreCase("replacesome")) {
         return cu.replaceSome(codesSite, filingPort, cd, args.subList(1, args.size()));
@@ -628,15 +1285,24 @@ public class CodeUpdater {
    * java -cp $(cat cp.txt):target/efspserver.jar edu.suffolk.litlab.efspserver.ecfcodes.CodeUpdater refresh
    * </pre>
    *
-   * <p>TODO(#111): use with this System property and class to try to fix parallel unmarshalling
-   * -Djava.util.concurrent.ForkJoinPool.common.threadFactory=edu.suffolk.litlab.efspserver.JAXBForkJoinWorkerThreadFactory
-   * \ https://stackoverflow.com/a/57551188/11416267
+   * <p>Set CODE_UPDATE_THREADS to change how many tables are loaded at once (1 loads serially).
+   *
+   * <p>With CODE_ZIP_CACHE_DIR set, {@code rebuildFromCache} reloads the codes from the zips
+   * downloaded by earlier runs, without talking to Tyler.
+   *
+   * <p>{@code replaceall --checkpoint} commits each court's table as it's loaded, and if it's
+   * interrupted, {@code replaceall --resume} loads just the tables it didn't get to.
+   *
+   * <p>All of the TYLER_JURISDICTIONS are run at once, sharing the limits in {@link
+   * CodeRefreshCoordinator}. Exits with 1 if any of them failed.
    */
   public static void main(String[] args) throws Exception {
     if (args.length < 1) {
-      log.error("Need to pass in a subprogram: downloadIndiv, or refresh");
+      log.error("Need to pass in a subprogram: downloadIndiv, refresh, or rebuildFromCache");
       System.exit(1);
     }
+    List<String> jurisdictions = List.of(System.getenv("TYLER_JURISDICTIONS").split(" "));
+    // Each jurisdiction is refreshed at the same time, with a connection for itself and each loader
     DataSource ds =
         DatabaseCreator.makeDataSource(
             System.getenv("POSTGRES_URL"),
@@ -644,20 +1310,26 @@ public class CodeUpdater {
             System.getenv("POSTGRES_CODES_DB"),
             System.getenv("POSTGRES_USER"),
             System.getenv("POSTGRES_PASSWORD"),
-            5,
+            jurisdictions.size() * (LOAD_THREADS + 1),
             100);
 
-    List<String> jurisdictions = List.of(System.getenv("TYLER_JURISDICTIONS").split(" "));
     String env = System.getenv("TYLER_ENV");
-    for (String jurisdiction : jurisdictions) {
-      try (Connection conn = ds.getConnection()) {
-        executeCommand(
-            new CodeDatabase(jurisdiction, env, conn),
-            jurisdiction,
-            env,
-            List.of(args),
-            System.getenv("X509_PASSWORD"));
-      }
+    CodeRefreshCoordinator.Report report =
+        CodeRefreshCoordinator.refreshAll(
+            jurisdictions,
+            jurisdiction -> {
+              try (Connection conn = ds.getConnection()) {
+                return executeCommand(
+                    new CodeDatabase(jurisdiction, env, conn),
+                    jurisdiction,
+                    env,
+                    List.of(args),
+                    System.getenv("X509_PASSWORD"),
+                    Optional.of(() -> new CodeDatabase(jurisdiction, env, ds.getConnection())));
+              }
+            });
+    if (!report.success()) {
+      System.exit(1);
     }
   }
 }
@@ -0,0 +1,268 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a copy on disk of each codes zip downloaded from Tyler, so codes that haven't changed
+ * don't need to be downloaded again, and the code tables can be rebuilt without Tyler at all (see
+ * {@link CodeUpdater#rebuildFromCache}).
+ *
+ * <p>Zips are kept at {@code <root>/<domain>/<court>/<table>/<version>.zip}, next to a {@code
+ * .sha256} file with their hash, which is checked each time the zip is opened. Only the latest
+ * version of each table is kept; {@code latest.properties} says which version that is, along with
+ * the ETag and Last-Modified headers it was downloaded with.
+ *
+ * <p>If the version is known ahead of time (from the "version" system table) and is already here,
+ * Tyler isn't asked at all. If the version isn't known, the latest zip is revalidated with a
+ * conditional GET, and a 304 reuses it. Zips are written to disk before they're read, so a slow
+ * database load doesn't hold a connection to Tyler open.
+ */
+public class CodeZipCache {
+  private static final Logger log = LoggerFactory.getLogger(CodeZipCache.class);
+
+  /** Used as the version when we don't know it before downloading. */
+  private static final String UNKNOWN_VERSION = "latest";
+
+  private final Path root;
+
+  /** What a zip is cached under. The version is empty if it isn't known before downloading. */
+  public record Key(String domain, String court, String table, Optional<String> version) {}
+
+  /** A zip in the cache. */
+  public record CachedZip(String court, String table, String version, Path zip) {}
+
+  public CodeZipCache(Path root) {
+    this.root = root;
+  }
+
+  /** The cache in CODE_ZIP_CACHE_DIR, if it's set. */
+  public static Optional<CodeZipCache> fromEnv() {
+    return StdLib.GetEnv("CODE_ZIP_CACHE_DIR")
+        .filter(dir -> !dir.isBlank())
+        .map(dir -> new CodeZipCache(Path.of(dir)));
+  }
+
+  /**
+   * Opens the codes zip at the given URL, from the cache if possible.
+   *
+   * @throws IOException if the zip isn't cached and couldn't be downloaded
+   */
+  public InputStream fetch(String url, String authHeader, Key key) throws IOException {
+    if (!url.startsWith("http://") && !url.startsWith("https://")) {
+      return new FileInputStream(url);
+    }
+    Path dir = tableDir(key.domain(), key.court(), key.table());
+    if (key.version().isPresent()) {
+      Optional<InputStream> cached = open(dir.resolve(zipName(key.version().get())));
+      if (cached.isPresent()) {
+        log.debug("Using cached {} for {}", key, url);
+        return cached.get();
+      }
+    }
+    Properties latest = readLatest(dir);
+    Optional<Path> latestZip =
+        Optional.ofNullable(latest.getProperty("version")).map(v -> dir.resolve(zipName(v)));
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    conn.setRequestMethod("GET");
+    conn.setRequestProperty("tyl-efm-api", authHeader);
+    // If we know the version we want and don't have it, the latest zip can't be it
+    if (key.version().isEmpty() && latestZip.isPresent() && Files.exists(latestZip.get())) {
+      Optional.ofNullable(latest.getProperty("etag"))
+          .ifPresent(etag -> conn.setRequestProperty("If-None-Match", etag));
+      Optional.ofNullable(latest.getProperty("lastModified"))
+          .ifPresent(modified -> conn.setRequestProperty("If-Modified-Since", modified));
+    }
+    int status = conn.getResponseCode();
+    if (status == HttpURLConnection.HTTP_NOT_MODIFIED && latestZip.isPresent()) {
+      conn.disconnect();
+      Optional<InputStream> cached = open(latestZip.get());
+      if (cached.isPresent()) {
+        log.debug("{} wasn't modified, using cached {}", url, latestZip.get());
+        return cached.get();
+      }
+      throw new IOException("Got a 304 for " + url + ", but the cached zip is gone");
+    }
+    if (status >= 400) {
+      conn.disconnect();
+      throw new IOException("Got a " + status + " downloading " + url);
+    }
+
+    String version = key.version().orElse(UNKNOWN_VERSION);
+    setOrRemove(latest, "etag", conn.getHeaderField("ETag"));
+    setOrRemove(latest, "lastModified", conn.getHeaderField("Last-Modified"));
+    Path zip = store(dir, version, conn);
+    latest.setProperty("version", version);
+    writeLatest(dir, latest);
+    removeOtherVersions(dir, zip);
+    return Files.newInputStream(zip);
+  }
+
+  /** The latest cached zip of each table for each court in the domain. */
+  public List<CachedZip> latest(String domain) throws IOException {
+    List<CachedZip> zips = new ArrayList<>();
+    Path domainDir = root.resolve(encode(domain));
+    if (!Files.isDirectory(domainDir)) {
+      return zips;
+    }
+    try (DirectoryStream<Path> courts = Files.newDirectoryStream(domainDir, Files::isDirectory)) {
+      for (Path courtDir : courts) {
+        try (DirectoryStream<Path> tables =
+            Files.newDirectoryStream(courtDir, Files::isDirectory)) {
+          for (Path tableDir : tables) {
+            String version = readLatest(tableDir).getProperty("version");
+            if (version != null) {
+              zips.add(
+                  new CachedZip(
+                      decode(courtDir.getFileName().toString()),
+                      decode(tableDir.getFileName().toString()),
+                      version,
+                      tableDir.resolve(zipName(version))));
+            }
+          }
+        }
+      }
+    }
+    return zips;
+  }
+
+  /**
+   * Opens a cached zip, if it's there and still has the hash it was saved with. A zip that doesn't
+   * match is removed.
+   */
+  public Optional<InputStream> open(Path zip) throws IOException {
+    Path hashFile = hashFile(zip);
+    if (!Files.exists(zip) || !Files.exists(hashFile)) {
+      return Optional.empty();
+    }
+    String expected = Files.readString(hashFile, StandardCharsets.UTF_8).strip();
+    MessageDigest digest = sha256();
+    try (InputStream in = new DigestInputStream(Files.newInputStream(zip), digest)) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    String actual = HexFormat.of().formatHex(digest.digest());
+    if (!actual.equals(expected)) {
+      log.warn("Cached {} has hash {}, not {}: removing it", zip, actual, expected);
+      Files.deleteIfExists(zip);
+      Files.deleteIfExists(hashFile);
+      return Optional.empty();
+    }
+    return Optional.of(Files.newInputStream(zip));
+  }
+
+  /** Writes the response to a temp file while hashing it, and then moves it into place. */
+  private Path store(Path dir, String version, HttpURLConnection conn) throws IOException {
+    Files.createDirectories(dir);
+    Path zip = dir.resolve(zipName(version));
+    Path tmp = Files.createTempFile(dir, "download", ".tmp");
+    try {
+      MessageDigest digest = sha256();
+      try (InputStream in = new DigestInputStream(conn.getInputStream(), digest)) {
+        Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+      }
+      Files.move(tmp, zip, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.writeString(hashFile(zip), HexFormat.of().formatHex(digest.digest()));
+    } finally {
+      Files.deleteIfExists(tmp);
+      conn.disconnect();
+    }
+    return zip;
+  }
+
+  private void removeOtherVersions(Path dir, Path keep) {
+    try (DirectoryStream<Path> zips = Files.newDirectoryStream(dir, "*.zip")) {
+      for (Path zip : zips) {
+        if (!zip.equals(keep)) {
+          Files.deleteIfExists(zip);
+          Files.deleteIfExists(hashFile(zip));
+        }
+      }
+    } catch (IOException ex) {
+      log.warn("Couldn't remove old zips in {}: {}", dir, StdLib.strFromException(ex));
+    }
+  }
+
+  private Path tableDir(String domain, String court, String table) {
+    return root.resolve(encode(domain)).resolve(encode(court)).resolve(encode(table));
+  }
+
+  private static Properties readLatest(Path dir) throws IOException {
+    Properties latest = new Properties();
+    Path file = dir.resolve("latest.properties");
+    if (Files.exists(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        latest.load(in);
+      }
+    }
+    return latest;
+  }
+
+  private static void writeLatest(Path dir, Properties latest) throws IOException {
+    Path tmp = Files.createTempFile(dir, "latest", ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      latest.store(out, null);
+    }
+    Files.move(
+        tmp,
+        dir.resolve("latest.properties"),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void setOrRemove(Properties props, String key, String val) {
+    if (val == null) {
+      props.remove(key);
+    } else {
+      props.setProperty(key, val);
+    }
+  }
+
+  private static String zipName(String version) {
+    return encode(version) + ".zip";
+  }
+
+  private static Path hashFile(Path zip) {
+    return zip.resolveSibling(zip.getFileName() + ".sha256");
+  }
+
+  /** Court names have colons and spaces in them ("cook:cd1"), so names are URL encoded. */
+  private static String encode(String name) {
+    return URLEncoder.encode(name, StandardCharsets.UTF_8);
+  }
+
+  private static String decode(String name) {
+    return URLDecoder.decode(name, StandardCharsets.UTF_8);
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      // Every JVM has to have SHA-256.
+      throw new IllegalStateException(ex);
+    }
+  }
+}
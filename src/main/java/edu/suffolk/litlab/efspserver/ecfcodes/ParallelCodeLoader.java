@@ -0,0 +1,451 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Loads code tables into the database with a few workers at once. Each worker has its own thread,
+ * its own connection (so its own transaction), and its own unmarshaller (see {@link
+ * edu.suffolk.litlab.efspserver.JaxbContexts}).
+ *
+ * <p>The workers are on threads made here, not the common ForkJoinPool. Common pool threads don't
+ * have the application's class loader as their context class loader, so JAXB couldn't find its
+ * implementation on them (https://github.com/SuffolkLITLab/EfileProxyServer/issues/111).
+ *
+ * <p>Nothing is committed until every job has finished. If any job fails, every worker rolls back,
+ * so the database keeps all of the old codes instead of some mix. Each job updates a table's rows
+ * and its installed version in the same transaction, so if a commit itself fails part way through
+ * the commit step, the tables that didn't make it still have their old version, and get picked up
+ * again by the next refresh. (A job can still commit its own work, which checkpointed loads do so
+ * they can be resumed; a failure then only rolls back the jobs that were in progress.)
+ *
+ * <p>The tables, and their indices, have to be made and committed before loading. If a worker made
+ * an index, the other workers touching that table would wait on its transaction, which doesn't
+ * commit until they've all finished.
+ *
+ * <p>{@link #pipeline} does the same, but splits each job into a network part and a database part,
+ * so downloads don't wait on the database and the database doesn't wait on downloads. Network
+ * workers find the jobs to do (by getting each court's policy) and fetch what each job needs,
+ * handing them to the database workers through a bounded queue. When the database falls behind,
+ * the queue fills up and the network workers wait, so at most a fixed number of fetched jobs are
+ * around at once.
+ */
+public class ParallelCodeLoader {
+  private static final Logger log = LoggerFactory.getLogger(ParallelCodeLoader.class);
+
+  /** Makes a new CodeDatabase, with its own connection, for a worker. */
+  @FunctionalInterface
+  public interface DbMaker {
+    CodeDatabase make() throws SQLException;
+  }
+
+  @FunctionalInterface
+  public interface Work {
+    void run(CodeDatabase cd) throws Exception;
+  }
+
+  /** A single piece of work, usually one table for one court. The name is just for logging. */
+  public record Job(String name, Work work) {}
+
+  /** Gets what a job needs from the network (like its zip). Doesn't have a database connection. */
+  @FunctionalInterface
+  public interface Fetch {
+    Fetched fetch() throws Exception;
+  }
+
+  /** What a {@link Fetch} got. Closed after it's loaded, or if it won't be loaded. */
+  public interface Fetched extends AutoCloseable {
+    void load(CodeDatabase cd) throws Exception;
+
+    @Override
+    void close();
+  }
+
+  /** A job split into its network and database parts, for {@link #pipeline}. */
+  public record FetchJob(String name, Fetch fetch) {}
+
+  /** Finds jobs to do, like all of the tables for a court. Run by the network workers. */
+  @FunctionalInterface
+  public interface Source {
+    List<FetchJob> jobs() throws Exception;
+  }
+
+  /**
+   * How many threads each part of {@link #pipeline} gets, and how many fetched jobs can wait for
+   * a database worker.
+   */
+  public record Stages(int fetchThreads, int dbThreads, int queueSize) {}
+
+  private record Ready(String name, Fetched fetched) {}
+
+  /** How long workers wait on a queue before checking if they should stop. */
+  private static final long POLL_MS = 100;
+
+  /**
+   * Runs all of the jobs, spread over at most `threads` workers.
+   *
+   * @return true if every job succeeded and everything was committed
+   */
+  public static boolean loadAll(List<Job> jobs, int threads, DbMaker makeDb) {
+    if (jobs.isEmpty()) {
+      return true;
+    }
+    int workerCount = Math.max(1, Math.min(threads, jobs.size()));
+    Queue<Job> queue = new ConcurrentLinkedQueue<>(jobs);
+    Queue<CodeDatabase> opened = new ConcurrentLinkedQueue<>();
+    AtomicBoolean failed = new AtomicBoolean(false);
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+    ExecutorService executor = makeExecutor(workerCount, "code-loader-");
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < workerCount; i++) {
+        workers.add(executor.submit(() -> work(queue, opened, failed, makeDb, mdc)));
+      }
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException ex) {
+          log.error("Code loading worker failed: {}", StdLib.strFromException(ex));
+          failed.set(true);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while loading codes, rolling back");
+      failed.set(true);
+      executor.shutdownNow();
+      try {
+        // Don't roll back connections that a worker is still using.
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException ex2) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return finish(opened, !failed.get());
+  }
+
+  private static Void work(
+      Queue<Job> queue,
+      Queue<CodeDatabase> opened,
+      AtomicBoolean failed,
+      DbMaker makeDb,
+      Map<String, String> mdc)
+      throws SQLException {
+    if (mdc != null) {
+      MDC.setContextMap(mdc);
+    }
+    try {
+      CodeDatabase cd = makeDb.make();
+      opened.add(cd);
+      cd.setAutoCommit(false);
+      Job job;
+      while (!failed.get() && (job = queue.poll()) != null) {
+        try {
+          job.work().run(cd);
+        } catch (Exception ex) {
+          log.error("Couldn't load {}: {}", job.name(), StdLib.strFromException(ex));
+          failed.set(true);
+        }
+      }
+      return null;
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  /** Commits (or rolls back) and closes every worker's connection. */
+  private static boolean finish(Queue<CodeDatabase> dbs, boolean success) {
+    boolean committing = success;
+    for (CodeDatabase cd : dbs) {
+      try {
+        if (committing) {
+          cd.commit();
+        } else {
+          cd.rollback();
+        }
+      } catch (SQLException ex) {
+        log.error(
+            "Couldn't {} code updates: {}",
+            committing ? "commit" : "roll back",
+            StdLib.strFromException(ex));
+        committing = false;
+        try {
+          cd.rollback();
+        } catch (SQLException ex2) {
+          log.warn("Couldn't roll back either: {}", ex2.toString());
+        }
+      } finally {
+        try {
+          cd.close();
+        } catch (SQLException ex) {
+          log.warn("Couldn't close code loading connection: {}", ex.toString());
+        }
+      }
+    }
+    return committing;
+  }
+
+  /**
+   * Runs the jobs from all of the sources, with the network parts and database parts on their own
+   * workers. Like {@link #loadAll}, everything is committed only if every job succeeds.
+   *
+   * @return true if every job succeeded and everything was committed
+   */
+  public static boolean pipeline(List<Source> sources, Stages stages, DbMaker makeDb) {
+    if (sources.isEmpty()) {
+      return true;
+    }
+    AtomicBoolean failed = new AtomicBoolean(false);
+    Queue<CodeDatabase> opened = new ConcurrentLinkedQueue<>();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    Fetchers fetchers = new Fetchers(sources, stages, failed, mdc);
+    ExecutorService executor = makeExecutor(Math.max(1, stages.dbThreads()), "code-loader-");
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < Math.max(1, stages.dbThreads()); i++) {
+        workers.add(
+            executor.submit(
+                () -> {
+                  if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                  }
+                  try {
+                    CodeDatabase cd = makeDb.make();
+                    opened.add(cd);
+                    cd.setAutoCommit(false);
+                    loadFetched(fetchers, cd, failed);
+                    return null;
+                  } finally {
+                    MDC.clear();
+                  }
+                }));
+      }
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException ex) {
+          log.error("Code loading worker failed: {}", StdLib.strFromException(ex));
+          failed.set(true);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while loading codes, rolling back");
+      failed.set(true);
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException ex2) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      executor.shutdownNow();
+      fetchers.stop();
+    }
+    return finish(opened, !failed.get());
+  }
+
+  /**
+   * Same as {@link #pipeline}, but loads everything on this thread, into the given database.
+   * Doesn't commit or roll back; that's up to the caller.
+   *
+   * @return true if every job succeeded
+   */
+  public static boolean pipelineInto(List<Source> sources, Stages stages, CodeDatabase cd) {
+    if (sources.isEmpty()) {
+      return true;
+    }
+    AtomicBoolean failed = new AtomicBoolean(false);
+    Fetchers fetchers = new Fetchers(sources, stages, failed, MDC.getCopyOfContextMap());
+    try {
+      loadFetched(fetchers, cd, failed);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while loading codes");
+      failed.set(true);
+    } finally {
+      fetchers.stop();
+    }
+    return !failed.get();
+  }
+
+  private static void loadFetched(Fetchers fetchers, CodeDatabase cd, AtomicBoolean failed)
+      throws InterruptedException {
+    Ready ready;
+    while ((ready = fetchers.next()) != null) {
+      try (Fetched fetched = ready.fetched()) {
+        if (!failed.get()) {
+          fetched.load(cd);
+        }
+      } catch (Exception ex) {
+        log.error("Couldn't load {}: {}", ready.name(), StdLib.strFromException(ex));
+        failed.set(true);
+      }
+    }
+  }
+
+  /**
+   * The network workers of a pipeline. They take jobs from the sources, fetch them, and put them
+   * in the bounded ready queue, waiting while it's full.
+   */
+  private static class Fetchers {
+    private final BlockingQueue<Source> sources;
+    private final BlockingDeque<FetchJob> toFetch = new LinkedBlockingDeque<>();
+    private final BlockingQueue<Ready> ready;
+    private final AtomicBoolean failed;
+    private final Map<String, String> mdc;
+
+    /** Sources and jobs that haven't finished yet. */
+    private final AtomicInteger pending;
+
+    /** Workers still running. When there are none, nothing more will be ready. */
+    private final AtomicInteger running;
+
+    private final ExecutorService executor;
+
+    Fetchers(
+        List<Source> sources, Stages stages, AtomicBoolean failed, Map<String, String> mdc) {
+      this.sources = new LinkedBlockingDeque<>(sources);
+      this.ready = new ArrayBlockingQueue<>(Math.max(1, stages.queueSize()));
+      this.failed = failed;
+      this.mdc = mdc;
+      this.pending = new AtomicInteger(sources.size());
+      int threads = Math.max(1, stages.fetchThreads());
+      this.running = new AtomicInteger(threads);
+      this.executor = makeExecutor(threads, "code-fetcher-");
+      for (int i = 0; i < threads; i++) {
+        executor.submit(this::work);
+      }
+    }
+
+    /** The next fetched job, or null if there aren't any more (or something failed). */
+    Ready next() throws InterruptedException {
+      while (!failed.get()) {
+        Ready r = ready.poll(POLL_MS, TimeUnit.MILLISECONDS);
+        if (r != null) {
+          return r;
+        }
+        if (running.get() == 0 && ready.isEmpty()) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    /** Stops the workers, and closes anything that was fetched but not loaded. */
+    void stop() {
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      Ready r;
+      while ((r = ready.poll()) != null) {
+        r.fetched().close();
+      }
+    }
+
+    private void work() {
+      if (mdc != null) {
+        MDC.setContextMap(mdc);
+      }
+      try {
+        while (!failed.get() && !Thread.currentThread().isInterrupted()) {
+          // Fetch the jobs we already know about before looking for more, so the database
+          // workers get something to do as soon as possible.
+          FetchJob job = toFetch.poll();
+          if (job != null) {
+            fetch(job);
+            pending.decrementAndGet();
+            continue;
+          }
+          Source source = sources.poll();
+          if (source != null) {
+            List<FetchJob> jobs = source.jobs();
+            pending.addAndGet(jobs.size());
+            toFetch.addAll(jobs);
+            pending.decrementAndGet();
+            continue;
+          }
+          if (pending.get() == 0) {
+            break;
+          }
+          // Another worker is still finding jobs
+          job = toFetch.poll(POLL_MS, TimeUnit.MILLISECONDS);
+          if (job != null) {
+            fetch(job);
+            pending.decrementAndGet();
+          }
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Exception ex) {
+        log.error("Couldn't find codes to load: {}", StdLib.strFromException(ex));
+        failed.set(true);
+      } finally {
+        running.decrementAndGet();
+        MDC.clear();
+      }
+    }
+
+    private void fetch(FetchJob job) throws InterruptedException {
+      Fetched fetched;
+      try {
+        fetched = job.fetch().fetch();
+      } catch (Exception ex) {
+        log.error("Couldn't fetch {}: {}", job.name(), StdLib.strFromException(ex));
+        failed.set(true);
+        return;
+      }
+      Ready r = new Ready(job.name(), fetched);
+      try {
+        while (!ready.offer(r, POLL_MS, TimeUnit.MILLISECONDS)) {
+          if (failed.get()) {
+            fetched.close();
+            return;
+          }
+        }
+      } catch (InterruptedException ex) {
+        fetched.close();
+        throw ex;
+      }
+    }
+  }
+
+  static ExecutorService makeExecutor(int workerCount, String namePrefix) {
+    ClassLoader appLoader = ParallelCodeLoader.class.getClassLoader();
+    AtomicInteger threadNum = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        workerCount,
+        r -> {
+          Thread t = new Thread(r, namePrefix + threadNum.incrementAndGet());
+          t.setContextClassLoader(appLoader);
+          t.setDaemon(true);
+          return t;
+        });
+  }
+}
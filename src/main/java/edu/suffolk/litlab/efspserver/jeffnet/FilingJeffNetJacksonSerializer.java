@@ -7,9 +7,10 @@ import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import edu.suffolk.litlab.efspserver.FilingAttachment;
 import edu.suffolk.litlab.efspserver.FilingDoc;
 import edu.suffolk.litlab.efspserver.PartyId;
+import edu.suffolk.litlab.efspserver.SpooledContents;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 
 public class FilingJeffNetJacksonSerializer extends StdSerializer<FilingDoc> {
@@ -51,25 +52,20 @@ public class FilingJeffNetJacksonSerializer extends StdSerializer<FilingDoc> {
       throw new RuntimeException("JeffNet can't accept more than one file at a time!");
     }
     FilingAttachment attachment = filingDoc.getFilingAttachments().head();
-    DocAttachment docAttachment = new DocAttachment();
-    byte[] data = attachment.getFileContents();
-    String encodedDoc = new String(Base64.getEncoder().encode(data));
-    docAttachment.encodedDoc = encodedDoc;
-    docAttachment.documentName = attachment.getFileName();
+    SpooledContents contents = attachment.getContents();
+    gen.writeObjectFieldStart("DocumentAttachment");
+    // Base64 encodes as it goes, so the whole document doesn't have to be in memory.
+    gen.writeFieldName("BinaryBase64Object");
+    try (InputStream in = contents.openStream()) {
+      gen.writeBinary(in, (int) contents.length());
+    }
+    gen.writeStringField("DocumentName", attachment.getFileName());
+    gen.writeEndObject();
 
-    gen.writeObjectField("DocumentAttachment", docAttachment);
     gen.writeStringField("FilingCommentsText", filingDoc.getFilingComments());
     gen.writeEndObject();
   }
 
-  private class DocAttachment {
-    @JsonProperty("BinaryBase64Object")
-    String encodedDoc;
-
-    @JsonProperty("DocumentName")
-    String documentName;
-  }
-
   private class Metadata {
     @JsonProperty("FilingParties")
     List<FilingParty> filingParties;
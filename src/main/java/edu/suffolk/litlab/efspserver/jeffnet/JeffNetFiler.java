@@ -15,7 +15,9 @@ import edu.suffolk.litlab.efspserver.LegalIssuesTaxonomyCodes;
 import edu.suffolk.litlab.efspserver.Name;
 import edu.suffolk.litlab.efspserver.PartyId;
 import edu.suffolk.litlab.efspserver.Person;
+import edu.suffolk.litlab.efspserver.docassemble.DocumentFetcher;
 import edu.suffolk.litlab.efspserver.services.EfmFilingInterface;
+import edu.suffolk.litlab.efspserver.services.FailFastCollector;
 import edu.suffolk.litlab.efspserver.services.FilingError;
 import edu.suffolk.litlab.efspserver.services.FilingResult;
 import edu.suffolk.litlab.efspserver.services.InfoCollector;
@@ -90,6 +92,11 @@ public class JeffNetFiler implements EfmFilingInterface {
           FilingError.malformedInterview(
               "Error: JeffNet cannot reference alredy existing filing parties"));
     }
+    try {
+      DocumentFetcher.fetchAll(info, new FailFastCollector());
+    } catch (FilingError err) {
+      return Result.err(err);
+    }
 
     ObjectMapper mapper =
         JsonMapper.builder()
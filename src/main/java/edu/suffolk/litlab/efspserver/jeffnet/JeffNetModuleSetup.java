@@ -3,6 +3,7 @@ package edu.suffolk.litlab.efspserver.jeffnet;
 import com.opencsv.exceptions.CsvValidationException;
 import edu.suffolk.litlab.efspserver.LegalIssuesTaxonomyCodes;
 import edu.suffolk.litlab.efspserver.StdLib;
+import edu.suffolk.litlab.efspserver.services.BoundedExecutors;
 import edu.suffolk.litlab.efspserver.services.EfmFilingInterface;
 import edu.suffolk.litlab.efspserver.services.EfmModuleSetup;
 import edu.suffolk.litlab.efspserver.services.EfmRestCallbackInterface;
@@ -113,6 +114,6 @@ public class JeffNetModuleSetup implements EfmModuleSetup {
 
   @Override
   public void shutdown() {
-    // N/A
+    BoundedExecutors.shutdown(getJurisdiction());
   }
 }
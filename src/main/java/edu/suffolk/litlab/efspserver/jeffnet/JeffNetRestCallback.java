@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import edu.suffolk.litlab.efspserver.JaxbContexts;
 import edu.suffolk.litlab.efspserver.db.Transaction;
 import edu.suffolk.litlab.efspserver.db.UserDatabase;
 import edu.suffolk.litlab.efspserver.services.EfmRestCallbackInterface;
@@ -13,7 +14,6 @@ import edu.suffolk.litlab.efspserver.services.OrgMessageSender;
 import edu.suffolk.litlab.efspserver.services.UpdateMessageStatus;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlElement;
@@ -59,8 +59,7 @@ public class JeffNetRestCallback implements EfmRestCallbackInterface {
     } catch (JsonProcessingException e) {
       // Trying to parse XML
       try {
-        JAXBContext jaxContext = JAXBContext.newInstance(FileResponse.class);
-        Unmarshaller unmar = jaxContext.createUnmarshaller();
+        Unmarshaller unmar = JaxbContexts.unmarshaller(FileResponse.class);
         InputStream stream =
             new ByteArrayInputStream(statusReport.getBytes(StandardCharsets.UTF_8));
         resp = (FileResponse) unmar.unmarshal(stream);
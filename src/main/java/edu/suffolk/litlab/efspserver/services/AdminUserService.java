@@ -766,7 +766,9 @@ public class AdminUserService {
    * @return A port connection to the SOAP server
    */
   private static IEfmUserService makeUserPort(EfmUserService userService) {
-    IEfmUserService port = userService.getBasicHttpBindingIEfmUserService();
+    IEfmUserService port =
+        SoapPortPool.get(
+            userService, IEfmUserService.class, userService::getBasicHttpBindingIEfmUserService);
     ServiceHelpers.setupServicePort((BindingProvider) port);
     return port;
   }
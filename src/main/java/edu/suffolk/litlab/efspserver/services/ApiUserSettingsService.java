@@ -2,6 +2,7 @@ package edu.suffolk.litlab.efspserver.services;
 
 import edu.suffolk.litlab.efspserver.db.AtRest;
 import edu.suffolk.litlab.efspserver.db.LoginDatabase;
+import edu.suffolk.litlab.efspserver.docassemble.DocumentCache;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
@@ -13,6 +14,7 @@ import jakarta.ws.rs.core.Response;
 import java.io.File;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.sql.DataSource;
 
@@ -84,6 +86,67 @@ public class ApiUserSettingsService {
     }
   }
 
+  /** The last few SOAP messages sent to / received from Tyler for this server, newest first. */
+  @GET
+  @Path("/payloads")
+  public Response getPayloads(@Context HttpHeaders httpHeaders) {
+    try (LoginDatabase ld = new LoginDatabase(ds.getConnection())) {
+      Optional<AtRest> atRest = ld.getAtRestInfo(httpHeaders.getHeaderString("X-API-KEY"));
+      if (atRest.isEmpty()) {
+        return Response.status(401).entity("\"Not logged in to efile\"").build();
+      }
+      List<Map<String, String>> payloads =
+          PayloadCapture.recentFor(atRest.get().serverId.toString()).stream()
+              .map(
+                  c ->
+                      Map.of(
+                          "time", c.time().toString(),
+                          "operation", c.operation(),
+                          "direction", c.direction(),
+                          "payload", c.payload()))
+              .toList();
+      return Response.ok(payloads).build();
+    } catch (SQLException ex) {
+      return Response.status(500).build();
+    } finally {
+      MDCWrappers.removeAllMDCs();
+    }
+  }
+
+  /** Hits and misses for the downloaded documents cache, shared by all servers. */
+  @GET
+  @Path("/document_cache")
+  public Response getDocumentCacheStats(@Context HttpHeaders httpHeaders) {
+    try (LoginDatabase ld = new LoginDatabase(ds.getConnection())) {
+      Optional<AtRest> atRest = ld.getAtRestInfo(httpHeaders.getHeaderString("X-API-KEY"));
+      if (atRest.isEmpty()) {
+        return Response.status(401).entity("\"Not logged in to efile\"").build();
+      }
+      return Response.ok(DocumentCache.stats()).build();
+    } catch (SQLException ex) {
+      return Response.status(500).build();
+    } finally {
+      MDCWrappers.removeAllMDCs();
+    }
+  }
+
+  /** Hits and misses for the case lookups cache, shared by all servers and jurisdictions. */
+  @GET
+  @Path("/case_cache")
+  public Response getCaseCacheStats(@Context HttpHeaders httpHeaders) {
+    try (LoginDatabase ld = new LoginDatabase(ds.getConnection())) {
+      Optional<AtRest> atRest = ld.getAtRestInfo(httpHeaders.getHeaderString("X-API-KEY"));
+      if (atRest.isEmpty()) {
+        return Response.status(401).entity("\"Not logged in to efile\"").build();
+      }
+      return Response.ok(CaseLookupCache.shared().stats()).build();
+    } catch (SQLException ex) {
+      return Response.status(500).build();
+    } finally {
+      MDCWrappers.removeAllMDCs();
+    }
+  }
+
   @GET
   @Produces(MediaType.APPLICATION_OCTET_STREAM)
   @Path("/logs")
@@ -0,0 +1,107 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import com.hubspot.algebra.NullValue;
+import com.hubspot.algebra.Result;
+import edu.suffolk.litlab.efspserver.FilingInformation;
+import jakarta.ws.rs.core.Response;
+import java.time.LocalDate;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Makes an {@link AsyncEfmFilingInterface} out of a blocking {@link EfmFilingInterface}, by running
+ * its calls on a pool of threads just for that EFM.
+ *
+ * <p>Each EFM gets at most EFM_CALL_THREADS calls at once, with EFM_CALL_QUEUE more waiting. Past
+ * that, the returned stages fail with a RejectedExecutionException, so one slow EFM can't take
+ * every thread, or build up an endless backlog of calls to it.
+ */
+public class AsyncEfmFiler implements AsyncEfmFilingInterface {
+  private static final int THREADS = Integer.parseInt(GetEnv("EFM_CALL_THREADS").orElse("32"));
+  private static final int QUEUE = Integer.parseInt(GetEnv("EFM_CALL_QUEUE").orElse("128"));
+
+  private final EfmFilingInterface filer;
+  private final ExecutorService executor;
+
+  /**
+   * @param jurisdiction whose "efm" pool the calls run on; it's shut down with the jurisdiction
+   */
+  public AsyncEfmFiler(EfmFilingInterface filer, String jurisdiction) {
+    this.filer = filer;
+    this.executor = BoundedExecutors.shared(jurisdiction, "efm", THREADS, QUEUE);
+  }
+
+  private <T> CompletionStage<T> call(Supplier<T> call) {
+    return BoundedExecutors.supply(executor, call);
+  }
+
+  @Override
+  public CompletionStage<Result<FilingResult, FilingError>> sendFiling(
+      FilingInformation info, String apiToken, EfmFilingInterface.ApiChoice choice) {
+    return call(() -> filer.sendFiling(info, apiToken, choice));
+  }
+
+  @Override
+  public CompletionStage<Result<NullValue, FilingError>> checkFiling(
+      FilingInformation info, String apiToken, InfoCollector collector) {
+    return call(() -> filer.checkFiling(info, apiToken, collector));
+  }
+
+  @Override
+  public CompletionStage<Result<Response, FilingError>> getFilingFees(
+      FilingInformation info, String apiToken) {
+    return call(() -> filer.getFilingFees(info, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Result<Response, FilingError>> getServiceTypes(
+      FilingInformation info, String apiToken) {
+    return call(() -> filer.getServiceTypes(info, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> getFilingList(
+      String courtId,
+      String submitterId,
+      LocalDate startDate,
+      LocalDate beforeDate,
+      String apiToken) {
+    return call(() -> filer.getFilingList(courtId, submitterId, startDate, beforeDate, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> getFilingStatus(
+      String courtId, String filingId, String apiToken) {
+    return call(() -> filer.getFilingStatus(courtId, filingId, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> getFilingDetails(
+      String courtId, String filingId, String apiToken) {
+    return call(() -> filer.getFilingDetails(courtId, filingId, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> getFilingService(
+      String courtId, String filingId, String contactId, String apiToken) {
+    return call(() -> filer.getFilingService(courtId, filingId, contactId, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> getPolicy(String courtId, String apiToken) {
+    return call(() -> filer.getPolicy(courtId, apiToken));
+  }
+
+  @Override
+  public CompletionStage<Response> cancelFiling(String courtId, String filingId, String apiToken) {
+    return call(() -> filer.cancelFiling(courtId, filingId, apiToken));
+  }
+
+  @Override
+  public EfmFilingInterface blocking() {
+    return filer;
+  }
+}
@@ -0,0 +1,51 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import com.hubspot.algebra.NullValue;
+import com.hubspot.algebra.Result;
+import edu.suffolk.litlab.efspserver.FilingInformation;
+import jakarta.ws.rs.core.Response;
+import java.time.LocalDate;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The calls of an {@link EfmFilingInterface} that go to the EFM, but returning right away, so
+ * callers can do other work (or make other calls) while the EFM answers.
+ *
+ * <p>See {@link EfmFilingInterface} for what each call does.
+ */
+public interface AsyncEfmFilingInterface {
+  public CompletionStage<Result<FilingResult, FilingError>> sendFiling(
+      FilingInformation info, String apiToken, EfmFilingInterface.ApiChoice choice);
+
+  public CompletionStage<Result<NullValue, FilingError>> checkFiling(
+      FilingInformation info, String apiToken, InfoCollector collector);
+
+  public CompletionStage<Result<Response, FilingError>> getFilingFees(
+      FilingInformation info, String apiToken);
+
+  public CompletionStage<Result<Response, FilingError>> getServiceTypes(
+      FilingInformation info, String apiToken);
+
+  public CompletionStage<Response> getFilingList(
+      String courtId,
+      String submitterId,
+      LocalDate startDate,
+      LocalDate beforeDate,
+      String apiToken);
+
+  public CompletionStage<Response> getFilingStatus(
+      String courtId, String filingId, String apiToken);
+
+  public CompletionStage<Response> getFilingDetails(
+      String courtId, String filingId, String apiToken);
+
+  public CompletionStage<Response> getFilingService(
+      String courtId, String filingId, String contactId, String apiToken);
+
+  public CompletionStage<Response> getPolicy(String courtId, String apiToken);
+
+  public CompletionStage<Response> cancelFiling(String courtId, String filingId, String apiToken);
+
+  /** The blocking interface, for the calls that don't go to the EFM (i.e. getHeaderKey). */
+  public EfmFilingInterface blocking();
+}
@@ -0,0 +1,75 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers slow REST requests (ones that wait on Tyler) from a separate pool of threads, so the
+ * request doesn't hold one of Jetty's threads while it waits.
+ *
+ * <p>At most TYLER_CALL_THREADS requests wait on Tyler at once, and at most TYLER_CALL_QUEUE more
+ * wait for one of those threads. Past that, requests get a 503 right away instead of piling up.
+ */
+public class AsyncResponses {
+  private static final Logger log = LoggerFactory.getLogger(AsyncResponses.class);
+
+  private static final int THREADS = Integer.parseInt(GetEnv("TYLER_CALL_THREADS").orElse("64"));
+  private static final int QUEUE = Integer.parseInt(GetEnv("TYLER_CALL_QUEUE").orElse("256"));
+
+  private static final ThreadPoolExecutor executor =
+      BoundedExecutors.make("tyler-call-", THREADS, QUEUE);
+
+  /**
+   * Resumes the response with what `call` returns, once a thread is free to run it. The MDC of the
+   * calling thread is kept for the call.
+   */
+  public static void resume(AsyncResponse async, Supplier<Response> call) {
+    resumeWith(async, () -> CompletableFuture.completedFuture(call.get()));
+  }
+
+  /**
+   * Like {@link #resume(AsyncResponse, Supplier)}, but for calls that start more async work (i.e.
+   * through an {@link AsyncEfmFilingInterface}): the response is resumed when the stage completes,
+   * without holding a thread while it waits.
+   */
+  public static void resumeWith(AsyncResponse async, Supplier<CompletionStage<Response>> call) {
+    BoundedExecutors.supply(executor, call)
+        .thenCompose(stage -> stage)
+        .whenComplete(
+            (resp, ex) -> {
+              Throwable cause = unwrap(ex);
+              if (cause == null) {
+                async.resume(resp);
+              } else if (cause instanceof UpstreamUnavailableException upstreamEx) {
+                log.warn(upstreamEx.getMessage());
+                async.resume(UpstreamExceptionMapper.toResponse503(upstreamEx));
+              } else if (cause instanceof RejectedExecutionException) {
+                log.warn("Too many requests waiting on Tyler, returning 503");
+                async.resume(
+                    Response.status(503).entity("Server is busy, try again later").build());
+              } else {
+                log.error(
+                    "Error answering async request: {}",
+                    (cause instanceof Exception e) ? StdLib.strFromException(e) : cause.toString());
+                async.resume(Response.status(500).build());
+              }
+            });
+    // The rest of the request happens on other threads.
+    MDCWrappers.removeAllMDCs();
+  }
+
+  private static Throwable unwrap(Throwable ex) {
+    return (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+  }
+}
@@ -0,0 +1,129 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.MDC;
+
+/**
+ * Thread pools for work that waits on Tyler (or another EFM), with a limit on how much work can
+ * wait for a thread, so a slow EFM turns into quick errors instead of an ever growing queue.
+ */
+public class BoundedExecutors {
+
+  /** Jurisdiction -> what the pool is for -> the pool. */
+  private static final Map<String, Map<String, ThreadPoolExecutor>> shared =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Makes a pool of at most `threads` daemon threads, with at most `queue` tasks waiting for one.
+   * Past that, tasks are rejected with a RejectedExecutionException.
+   */
+  public static ThreadPoolExecutor make(String namePrefix, int threads, int queue) {
+    // JAXB and CXF look things up through the context class loader, so keep the app's.
+    ClassLoader appLoader = BoundedExecutors.class.getClassLoader();
+    AtomicInteger threadNum = new AtomicInteger();
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queue),
+            r -> {
+              Thread t = new Thread(r, namePrefix + threadNum.incrementAndGet());
+              t.setContextClassLoader(appLoader);
+              t.setDaemon(true);
+              return t;
+            });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * The pool for this use (i.e. "efm") in the jurisdiction, made the first time it's asked for, so
+   * everything in a jurisdiction shares the same threads for it. Its threads are named
+   * "use-jurisdiction-N".
+   */
+  public static ThreadPoolExecutor shared(String jurisdiction, String use, int threads, int queue) {
+    return shared
+        .computeIfAbsent(jurisdiction, j -> new ConcurrentHashMap<>())
+        .computeIfAbsent(use, u -> make(u + "-" + jurisdiction + "-", threads, queue));
+  }
+
+  /** Shuts down all of the jurisdiction's shared pools. Work that's already queued still runs. */
+  public static void shutdown(String jurisdiction) {
+    Map<String, ThreadPoolExecutor> pools = shared.remove(jurisdiction);
+    if (pools != null) {
+      pools.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+  }
+
+  /**
+   * Runs the call on the executor, with the calling thread's MDC. If the executor is full, the
+   * future fails with a RejectedExecutionException, instead of this throwing it.
+   */
+  public static <T> CompletableFuture<T> supply(Executor executor, Supplier<T> call) {
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    try {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            if (mdc != null) {
+              MDC.setContextMap(mdc);
+            }
+            try {
+              return call.get();
+            } finally {
+              MDC.clear();
+            }
+          },
+          executor);
+    } catch (RejectedExecutionException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  /**
+   * Wraps a continuation (i.e. for thenApply) so that it runs with the calling thread's MDC, even
+   * when it runs on a pool thread after {@link #supply} has cleared it.
+   */
+  public static <T, R> Function<T, R> withMdc(Function<T, R> fn) {
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    return t -> {
+      Map<String, String> before = MDC.getCopyOfContextMap();
+      if (mdc != null) {
+        MDC.setContextMap(mdc);
+      }
+      try {
+        return fn.apply(t);
+      } finally {
+        if (before != null) {
+          MDC.setContextMap(before);
+        } else {
+          MDC.clear();
+        }
+      }
+    };
+  }
+
+  /**
+   * Like {@link #supply(Executor, Supplier)}, but if the executor is full, runs the call on this
+   * thread instead. For work that's only on another thread to overlap with this one's.
+   */
+  public static <T> CompletableFuture<T> supplyOrRun(Executor executor, Supplier<T> call) {
+    return supply(executor, call)
+        .exceptionallyCompose(
+            ex ->
+                (ex instanceof RejectedExecutionException)
+                    ? CompletableFuture.completedFuture(call.get())
+                    : CompletableFuture.failedFuture(ex));
+  }
+}
@@ -0,0 +1,206 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import jakarta.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the answers to recent case lookups (case searches, case details, service contacts), since
+ * interviews tend to ask for the same case a few times in a row, and each is a slow call to Tyler.
+ *
+ * <p>Keys always include the user's Tyler token, so one user never sees another's results, and
+ * the jurisdiction, court, and every parameter of the query. Only complete (200) answers are kept.
+ * Errors, and 203s, which mean Tyler couldn't reach the court's CMS and only sent part of the
+ * results, are always asked again. Identical lookups that come in while the first is still waiting
+ * on Tyler wait for its answer, instead of asking Tyler again.
+ *
+ * <p>Kept answers must be ready to send as is, i.e. with protected case types already replaced,
+ * and can't be changed afterwards, since they're shared between requests.
+ *
+ * <p>Entries last CASE_CACHE_TTL_SECONDS (default 60, 0 turns the cache off, but not the sharing of
+ * in flight lookups), and the least recently used are dropped past CASE_CACHE_MAX_ENTRIES (default
+ * 2000).
+ *
+ * <p>{@link #stats} has the median time of the last LATENCY_SAMPLES hits and misses, next to the
+ * counts.
+ */
+public class CaseLookupCache {
+  private static final Duration TTL =
+      Duration.ofSeconds(Long.parseLong(GetEnv("CASE_CACHE_TTL_SECONDS").orElse("60")));
+  private static final int MAX_ENTRIES =
+      Integer.parseInt(GetEnv("CASE_CACHE_MAX_ENTRIES").orElse("2000"));
+
+  /** How many of the most recent hits (and misses) the latency percentiles are taken from. */
+  private static final int LATENCY_SAMPLES = 1024;
+
+  private static final CaseLookupCache shared =
+      new CaseLookupCache(TTL, MAX_ENTRIES, System::nanoTime);
+
+  /** An answer, without the rest of the Response, which can only be sent once. */
+  private record Answer(int status, Object entity, long storedAt) {
+    Response toResponse() {
+      return Response.status(status).entity(entity).build();
+    }
+
+    boolean keep() {
+      return status == 200;
+    }
+  }
+
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final LongSupplier nanoTime;
+
+  /** Guarded by this. In access order, so the eldest is the LRU. */
+  private final LinkedHashMap<List<Object>, Answer> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Map<List<Object>, CompletableFuture<Answer>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong sharedLookups = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong missNanos = new AtomicLong();
+  private final Latencies hitLatencies = new Latencies();
+  private final Latencies missLatencies = new Latencies();
+
+  CaseLookupCache(Duration ttl, int maxEntries, LongSupplier nanoTime) {
+    this.ttlNanos = ttl.toNanos();
+    this.maxEntries = maxEntries;
+    this.nanoTime = nanoTime;
+  }
+
+  /** The cache for all jurisdictions. */
+  public static CaseLookupCache shared() {
+    return shared;
+  }
+
+  /**
+   * Answers the lookup from the cache, from an identical lookup that's already running, or by
+   * running it.
+   *
+   * @param key who's asking and everything about the query, i.e. (tylerToken, jurisdiction,
+   *     "getCase", courtId, caseId). Can have nulls, for query parameters that weren't given.
+   * @param lookup asks Tyler. Only called if there's no usable answer.
+   */
+  public Response get(List<Object> key, Supplier<Response> lookup) {
+    long start = nanoTime.getAsLong();
+    Answer cached = cached(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+      Response resp = cached.toResponse();
+      hitLatencies.add(nanoTime.getAsLong() - start);
+      return resp;
+    }
+
+    CompletableFuture<Answer> mine = new CompletableFuture<>();
+    CompletableFuture<Answer> running = inFlight.putIfAbsent(key, mine);
+    if (running != null) {
+      sharedLookups.incrementAndGet();
+      try {
+        return running.join().toResponse();
+      } catch (CompletionException ex) {
+        if (ex.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw ex;
+      }
+    }
+
+    misses.incrementAndGet();
+    try {
+      Response resp = lookup.get();
+      Answer answer = new Answer(resp.getStatus(), resp.getEntity(), nanoTime.getAsLong());
+      if (answer.keep()) {
+        store(key, answer);
+      }
+      mine.complete(answer);
+      return resp;
+    } catch (RuntimeException ex) {
+      mine.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, mine);
+      long took = nanoTime.getAsLong() - start;
+      missNanos.addAndGet(took);
+      missLatencies.add(took);
+    }
+  }
+
+  private synchronized Answer cached(List<Object> key) {
+    Answer answer = entries.get(key);
+    if (answer == null) {
+      return null;
+    }
+    if (nanoTime.getAsLong() - answer.storedAt() >= ttlNanos) {
+      entries.remove(key);
+      return null;
+    }
+    return answer;
+  }
+
+  private synchronized void store(List<Object> key, Answer answer) {
+    if (ttlNanos <= 0 || maxEntries <= 0) {
+      return;
+    }
+    entries.put(key, answer);
+    Iterator<Map.Entry<List<Object>, Answer>> eldest = entries.entrySet().iterator();
+    while (entries.size() > maxEntries && eldest.hasNext()) {
+      eldest.next();
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /** Hits, misses, and lookups that waited on an identical one, and how long they took. */
+  public synchronized Map<String, Long> stats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("hits", hits.get());
+    stats.put("shared_in_flight", sharedLookups.get());
+    stats.put("misses", misses.get());
+    stats.put("evictions", evictions.get());
+    stats.put("entries", (long) entries.size());
+    stats.put("max_entries", (long) maxEntries);
+    long missCount = misses.get();
+    stats.put(
+        "average_miss_millis", missCount == 0 ? 0 : missNanos.get() / missCount / 1_000_000);
+    stats.put("hit_p50_micros", hitLatencies.p50() / 1_000);
+    stats.put("miss_p50_millis", missLatencies.p50() / 1_000_000);
+    return stats;
+  }
+
+  /** The most recent LATENCY_SAMPLES latencies of one kind of lookup. */
+  private static class Latencies {
+    private final long[] nanos = new long[LATENCY_SAMPLES];
+    private int next = 0;
+    private int count = 0;
+
+    synchronized void add(long sample) {
+      nanos[next] = sample;
+      next = (next + 1) % nanos.length;
+      count = Math.min(count + 1, nanos.length);
+    }
+
+    /** The median, or 0 if there haven't been any. */
+    synchronized long p50() {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(nanos, count);
+      Arrays.sort(sorted);
+      return sorted[(count - 1) / 2];
+    }
+  }
+}
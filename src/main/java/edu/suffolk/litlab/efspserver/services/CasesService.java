@@ -23,6 +23,8 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
@@ -32,6 +34,7 @@ import jakarta.xml.ws.BindingProvider;
 import java.lang.reflect.Method;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -78,6 +81,7 @@ public class CasesService {
   private final Supplier<CodeDatabase> cdSupplier;
   private final String jurisdiction;
   private final EndpointReflection ef;
+  private final CaseLookupCache caseLookups = CaseLookupCache.shared();
 
   public CasesService(
       String jurisdiction, String env, DataSource userDs, Supplier<CodeDatabase> cdSupplier) {
@@ -135,21 +139,61 @@ public class CasesService {
    */
   @GET
   @Path("/courts/{court_id}/cases")
-  public Response getCaseList(
+  public void getCaseList(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @QueryParam("docket_number") String docketId,
       @QueryParam("business_name") String businessName,
       @QueryParam("first_name") String firstName,
       @QueryParam("middle_name") String middleName,
-      @QueryParam("last_name") String lastName)
-      throws JsonProcessingException {
-    MDC.put(MDCWrappers.OPERATION, "CasesService.getCaseList");
-    Optional<CourtRecordMDEPort> maybePort = setupRecordPort(httpHeaders);
-    if (maybePort.isEmpty()) {
-      return Response.status(401).build();
-    }
+      @QueryParam("last_name") String lastName) {
+    // Case searches can take Tyler minutes, so don't hold a Jetty thread while they run.
+    AsyncResponses.resume(
+        async,
+        () -> {
+          MDC.put(MDCWrappers.OPERATION, "CasesService.getCaseList");
+          Optional<CourtRecordMDEPort> maybePort = setupRecordPort(httpHeaders);
+          if (maybePort.isEmpty()) {
+            return Response.status(401).build();
+          }
+          return caseLookups.get(
+              cacheKey(
+                  httpHeaders,
+                  "getCaseList",
+                  courtId,
+                  docketId,
+                  businessName,
+                  firstName,
+                  middleName,
+                  lastName),
+              () -> {
+                try {
+                  return caseList(
+                      maybePort.get(),
+                      courtId,
+                      docketId,
+                      businessName,
+                      firstName,
+                      middleName,
+                      lastName);
+                } catch (JsonProcessingException ex) {
+                  log.error("Couldn't process the case list: " + StdLib.strFromException(ex));
+                  return Response.status(500).build();
+                }
+              });
+        });
+  }
 
+  private Response caseList(
+      CourtRecordMDEPort port,
+      String courtId,
+      String docketId,
+      String businessName,
+      String firstName,
+      String middleName,
+      String lastName)
+      throws JsonProcessingException {
     try (CodeDatabase cd = cdSupplier.get()) {
       Optional<CourtLocationInfo> info = cd.getFullLocationInfo(courtId);
       if (info.isEmpty()) {
@@ -220,8 +264,10 @@ public class CasesService {
     }
 
     log.info("Before the case list query");
-    CaseListResponseMessageType resp = maybePort.get().getCaseList(query);
-    log.info(Ecf4Helper.objectToXmlStrOrError(resp, CaseListResponseMessageType.class));
+    CaseListResponseMessageType resp = port.getCaseList(query);
+    PayloadCapture.response(
+        "CasesService.getCaseList",
+        () -> Ecf4Helper.objectToRedactedXmlStrOrError(resp, CaseListResponseMessageType.class));
 
     MDCWrappers.removeAllMDCs();
     if (hasError(resp)) {
@@ -240,23 +286,39 @@ public class CasesService {
 
   @GET
   @Path("/courts/{court_id}/cases/{case_tracking_id}")
-  public Response getCase(
+  public void getCase(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @PathParam("case_tracking_id") String caseId) {
-    MDC.put(MDCWrappers.OPERATION, "CasesService.getCase");
-    Optional<CourtRecordMDEPort> maybePort = setupRecordPort(httpHeaders);
-    if (maybePort.isEmpty()) {
-      MDCWrappers.removeAllMDCs();
-      return Response.status(401).build();
-    }
+    AsyncResponses.resume(
+        async,
+        () -> {
+          MDC.put(MDCWrappers.OPERATION, "CasesService.getCase");
+          Optional<CourtRecordMDEPort> maybePort = setupRecordPort(httpHeaders);
+          if (maybePort.isEmpty()) {
+            return Response.status(401).build();
+          }
+          // The cached case already has its protected case type replaced, since caseDetails does
+          // that before returning it.
+          return caseLookups.get(
+              cacheKey(httpHeaders, "getCase", courtId, caseId),
+              () -> caseDetails(maybePort.get(), courtId, caseId));
+        });
+  }
 
-    try (CodeDatabase cd = cdSupplier.get()) {
-      Optional<CourtLocationInfo> locationInfo = cd.getFullLocationInfo(courtId);
-      if (locationInfo.isEmpty()) {
+  private Response caseDetails(CourtRecordMDEPort port, String courtId, String caseId) {
+    try {
+      // Don't hold onto the DB connection while waiting on Tyler.
+      Optional<CourtLocationInfo> maybeLocation;
+      try (CodeDatabase cd = cdSupplier.get()) {
+        maybeLocation = cd.getFullLocationInfo(courtId);
+      }
+      if (maybeLocation.isEmpty()) {
         log.warn("Can't find court location for " + courtId + " when getting case");
         return Response.status(404).entity("No court " + courtId).build();
       }
+      CourtLocationInfo locationInfo = maybeLocation.get();
       CaseQueryMessageType query = new CaseQueryMessageType();
       EntityType typ = new EntityType();
       JAXBElement<PersonType> elem2 = ecfOf.createEntityPerson(new PersonType());
@@ -267,7 +329,7 @@ public class CasesService {
       query.setSendingMDEProfileCode(ServiceHelpers.MDE_PROFILE_CODE);
       query.setCaseTrackingID(Ecf4Helper.convertString(caseId));
       query.setCaseQueryCriteria(EcfCaseTypeFactory.getCriteria());
-      CaseResponseMessageType resp = maybePort.get().getCase(query);
+      CaseResponseMessageType resp = port.getCase(query);
       int responseCode = 200;
       if (hasError(resp)) {
         // If the response has issues connecting with the CMS, we are still supposed to allow
@@ -282,17 +344,14 @@ public class CasesService {
         }
       }
 
-      if (locationInfo.get().hasprotectedcasetypes) {
+      if (locationInfo.hasprotectedcasetypes) {
         CaseType caseType = resp.getCase().getValue();
         Optional<CaseAugmentationType> caseAug = EcfCaseTypeFactory.getCaseAugmentation(caseType);
         caseAug.ifPresent(
             aug -> {
-              if (locationInfo
-                  .get()
-                  .protectedcasetypes
-                  .contains(aug.getCaseTypeText().getValue())) {
+              if (locationInfo.protectedcasetypes.contains(aug.getCaseTypeText().getValue())) {
                 TextType protectedText =
-                    Ecf4Helper.convertText(locationInfo.get().protectedcasereplacementstring);
+                    Ecf4Helper.convertText(locationInfo.protectedcasereplacementstring);
                 aug.setCaseTypeText(protectedText);
                 caseType.setCaseCategoryText(protectedText);
               }
@@ -336,7 +395,13 @@ public class CasesService {
     if (maybePort.isEmpty()) {
       return Response.status(401).build();
     }
+    return caseLookups.get(
+        cacheKey(httpHeaders, "getServiceAttachCaseList", courtId, serviceId),
+        () -> serviceAttachCaseList(maybePort.get(), courtId, serviceId));
+  }
 
+  private Response serviceAttachCaseList(
+      CourtRecordMDEPort port, String courtId, String serviceId) {
     ServiceAttachCaseListQueryMessageType query = new ServiceAttachCaseListQueryMessageType();
     EntityType typ = new EntityType();
     typ.setEntityRepresentation(ecfOf.createEntityPerson(new PersonType()));
@@ -345,7 +410,7 @@ public class CasesService {
     query.setServiceContactIdentification(Ecf4Helper.convertId(serviceId));
     query.setSendingMDELocationID(Ecf4Helper.convertId(ServiceHelpers.SERVICE_URL));
     query.setSendingMDEProfileCode(ServiceHelpers.MDE_PROFILE_CODE);
-    ServiceAttachCaseListResponseMessageType resp = maybePort.get().getServiceAttachCaseList(query);
+    ServiceAttachCaseListResponseMessageType resp = port.getServiceAttachCaseList(query);
     MDCWrappers.removeAllMDCs();
     if (hasError(resp)) {
       return Response.status(400).entity(resp.getError()).build();
@@ -364,7 +429,12 @@ public class CasesService {
     if (maybePort.isEmpty()) {
       return Response.status(401).build();
     }
+    return caseLookups.get(
+        cacheKey(httpHeaders, "getServiceInformation", courtId, caseId),
+        () -> serviceInformation(maybePort.get(), courtId, caseId));
+  }
 
+  private Response serviceInformation(CourtRecordMDEPort port, String courtId, String caseId) {
     ServiceInformationQueryMessageType query = new ServiceInformationQueryMessageType();
     EntityType typ = new EntityType();
     JAXBElement<PersonType> elem2 = ecfOf.createEntityPerson(new PersonType());
@@ -374,7 +444,7 @@ public class CasesService {
     query.setCaseTrackingID(Ecf4Helper.convertString(caseId));
     query.setSendingMDELocationID(Ecf4Helper.convertId(ServiceHelpers.SERVICE_URL));
     query.setSendingMDEProfileCode(ServiceHelpers.MDE_PROFILE_CODE);
-    ServiceInformationResponseMessageType resp = maybePort.get().getServiceInformation(query);
+    ServiceInformationResponseMessageType resp = port.getServiceInformation(query);
     MDCWrappers.removeAllMDCs();
     if (hasError(resp)) {
       return Response.status(400).entity(resp.getError()).build();
@@ -393,6 +463,13 @@ public class CasesService {
     if (maybePort.isEmpty()) {
       return Response.status(401).build();
     }
+    return caseLookups.get(
+        cacheKey(httpHeaders, "getServiceInformationHistory", courtId, caseId),
+        () -> serviceInformationHistory(maybePort.get(), courtId, caseId));
+  }
+
+  private Response serviceInformationHistory(
+      CourtRecordMDEPort port, String courtId, String caseId) {
     ServiceInformationHistoryQueryMessageType query =
         new ServiceInformationHistoryQueryMessageType();
     EntityType typ = new EntityType();
@@ -403,8 +480,7 @@ public class CasesService {
     query.setCaseTrackingID(Ecf4Helper.convertString(caseId));
     query.setSendingMDELocationID(Ecf4Helper.convertId(ServiceHelpers.SERVICE_URL));
     query.setSendingMDEProfileCode(ServiceHelpers.MDE_PROFILE_CODE);
-    ServiceInformationHistoryResponseMessageType resp =
-        maybePort.get().getServiceInformationHistory(query);
+    ServiceInformationHistoryResponseMessageType resp = port.getServiceInformationHistory(query);
     MDCWrappers.removeAllMDCs();
     if (hasError(resp)) {
       return Response.status(400).entity(resp.getError()).build();
@@ -412,6 +488,19 @@ public class CasesService {
     return Response.ok(resp.getServiceRecipient()).build();
   }
 
+  /**
+   * The key for a lookup in the case cache: the user (by their Tyler token), the jurisdiction, and
+   * the query.
+   */
+  private List<Object> cacheKey(HttpHeaders httpHeaders, String operation, String... query) {
+    List<Object> key = new ArrayList<>();
+    key.add(httpHeaders.getHeaderString(TylerLogin.getHeaderKeyFromJurisdiction(jurisdiction)));
+    key.add(jurisdiction);
+    key.add(operation);
+    key.addAll(Arrays.asList(query));
+    return key;
+  }
+
   private static boolean hasError(QueryResponseMessageType resp) {
     return resp.getError().size() > 1
         || (resp.getError().size() == 1
@@ -441,8 +530,18 @@ public class CasesService {
       return Optional.empty();
     }
 
-    CourtRecordMDEPort port = recordFactory.getCourtRecordMDEPort();
+    CourtRecordMDEPort port =
+        SoapPortPool.get(
+            recordFactory, CourtRecordMDEPort.class, "long-timeout", this::makeLongTimeoutPort);
+    ServiceHelpers.setupServicePort((BindingProvider) port);
+    Map<String, Object> ctx = ((BindingProvider) port).getRequestContext();
+    List<Header> headersList = List.of(creds.get().toHeader());
+    ctx.put(Header.HEADER_LIST, headersList);
+    return Optional.of(port);
+  }
 
+  private CourtRecordMDEPort makeLongTimeoutPort() {
+    CourtRecordMDEPort port = recordFactory.getCourtRecordMDEPort();
     // Sometimes, getCases takes an incredibly long time. Bump timeout to 3 minutes
     Client client = ClientProxy.getClient(port);
     HTTPConduit http = (HTTPConduit) client.getConduit();
@@ -450,11 +549,6 @@ public class CasesService {
     httpClientPolicy.setConnectionTimeout(180_000);
     httpClientPolicy.setReceiveTimeout(180_000);
     http.setClient(httpClientPolicy);
-
-    ServiceHelpers.setupServicePort((BindingProvider) port);
-    Map<String, Object> ctx = ((BindingProvider) port).getRequestContext();
-    List<Header> headersList = List.of(creds.get().toHeader());
-    ctx.put(Header.HEADER_LIST, headersList);
-    return Optional.of(port);
+    return port;
   }
 }
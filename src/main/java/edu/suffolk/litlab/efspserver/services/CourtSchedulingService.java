@@ -218,66 +218,82 @@ public class CourtSchedulingService {
     if (maybeServ.isEmpty()) {
       return Response.status(401).build();
     }
+    // Only take a DB connection for the parts that need it, and never while waiting on Tyler.
+    Optional<CourtLocationInfo> locationInfo = Optional.empty();
     try (CodeDatabase cd = cdSupplier.get()) {
-      Optional<CourtLocationInfo> locationInfo = cd.getFullLocationInfo(courtId);
-      if (locationInfo.isEmpty()) {
-        return Response.status(404).entity("No court: " + courtId).build();
-      }
-      if (!locationInfo.get().allowreturndate) {
-        return Response.status(400)
-            .entity("Court " + courtId + " doesn't allow handling return dates")
-            .build();
-      }
+      locationInfo = cd.getFullLocationInfo(courtId);
+    }
+    if (locationInfo.isEmpty()) {
+      return Response.status(404).entity("No court: " + courtId).build();
+    }
+    if (!locationInfo.get().allowreturndate) {
+      return Response.status(400)
+          .entity("Court " + courtId + " doesn't allow handling return dates")
+          .build();
+    }
 
-      MediaType mediaType = httpHeaders.getMediaType();
-      if (mediaType == null) {
-        mediaType = MediaType.valueOf("application/json");
-      }
-      InfoCollector collector = new FailFastCollector();
-      Result<FilingInformation, FilingError> res =
-          converterMap.get(mediaType.toString()).traverseInterview(allVars, collector);
-      if (res.isErr()) {
-        return Response.status(400).entity(collector.jsonSummary()).build();
+    MediaType mediaType = httpHeaders.getMediaType();
+    if (mediaType == null) {
+      mediaType = MediaType.valueOf("application/json");
+    }
+    InfoCollector collector = new FailFastCollector();
+    Result<FilingInformation, FilingError> res =
+        converterMap.get(mediaType.toString()).traverseInterview(allVars, collector);
+    if (res.isErr()) {
+      return Response.status(400).entity(collector.jsonSummary()).build();
+    }
+    FilingInformation info = res.unwrapOrElseThrow();
+    info.setCourtLocation(courtId);
+    if (info.getFilings().isEmpty()) {
+      return Response.status(400)
+          .entity("Need to have a filing to calculate a request date")
+          .build();
+    }
+    try {
+      boolean isInitialFiling =
+          info.getPreviousCaseId().isEmpty() && info.getCaseDocketNumber().isEmpty();
+      boolean isFirstIndexedFiling = info.getPreviousCaseId().isEmpty();
+      CaseResponseMessageType existingCase = null;
+      Optional<Map<PartyId, Person>> existingParties = Optional.empty();
+      if (!isFirstIndexedFiling) {
+        Optional<CourtRecordMDEPort> recordPort = setupRecordPort(httpHeaders);
+        if (recordPort.isEmpty()) {
+          return Response.status(500)
+              .entity("Can't make connection to retrieve court records for subsequent case")
+              .build();
+        }
+        CaseQueryMessageType query = new CaseQueryMessageType();
+        Ecf4Helper.prep(query, info.getCourtLocation());
+        query.setCaseTrackingID(Ecf4Helper.convertString(info.getPreviousCaseId().get()));
+        query.setCaseQueryCriteria(EcfCaseTypeFactory.getCriteria());
+        existingCase = recordPort.get().getCase(query);
+        existingParties = EcfCaseTypeFactory.getCaseParticipants(existingCase.getCase().getValue());
+        if (existingParties.isEmpty()) {
+          log.info("Couldn't get exsting parties?");
+          throw FilingError.serverError(
+              "Couldn't get existing parties for case " + info.getPreviousCaseId().get());
+        }
       }
-      FilingInformation info = res.unwrapOrElseThrow();
-      info.setCourtLocation(courtId);
-      if (info.getFilings().isEmpty()) {
-        return Response.status(400)
-            .entity("Need to have a filing to calculate a request date")
-            .build();
+
+      Optional<LocalDate> returnDate = info.getReturnDate();
+      if (returnDate.isEmpty()) {
+        return Response.status(400).entity("Need return_date").build();
       }
-      try {
+
+      ReturnDateMessageType m = new ReturnDateMessageType();
+      setupReq(m, courtId);
+      CaseType ct;
+      try (CodeDatabase cd = cdSupplier.get()) {
         EcfCourtSpecificSerializer serializer =
             new EcfCourtSpecificSerializer(cd, locationInfo.get());
-        boolean isInitialFiling =
-            info.getPreviousCaseId().isEmpty() && info.getCaseDocketNumber().isEmpty();
-        boolean isFirstIndexedFiling = info.getPreviousCaseId().isEmpty();
         ComboCaseCodes allCodes;
-        Optional<Map<PartyId, Person>> existingParties = Optional.empty();
         if (!isFirstIndexedFiling) {
-          Optional<CourtRecordMDEPort> recordPort = setupRecordPort(httpHeaders);
-          if (recordPort.isEmpty()) {
-            return Response.status(500)
-                .entity("Can't make connection to retrieve court records for subsequent case")
-                .build();
-          }
-          CaseQueryMessageType query = new CaseQueryMessageType();
-          Ecf4Helper.prep(query, info.getCourtLocation());
-          query.setCaseTrackingID(Ecf4Helper.convertString(info.getPreviousCaseId().get()));
-          query.setCaseQueryCriteria(EcfCaseTypeFactory.getCriteria());
-          CaseResponseMessageType resp = recordPort.get().getCase(query);
-          String catCode = resp.getCase().getValue().getCaseCategoryText().getValue();
+          String catCode = existingCase.getCase().getValue().getCaseCategoryText().getValue();
           String typeCode =
-              EcfCaseTypeFactory.getCaseAugmentation(resp.getCase().getValue())
+              EcfCaseTypeFactory.getCaseAugmentation(existingCase.getCase().getValue())
                   .get()
                   .getCaseTypeText()
                   .getValue();
-          existingParties = EcfCaseTypeFactory.getCaseParticipants(resp.getCase().getValue());
-          if (existingParties.isEmpty()) {
-            log.info("Couldn't get exsting parties?");
-            throw FilingError.serverError(
-                "Couldn't get existing parties for case " + info.getPreviousCaseId().get());
-          }
           List<Optional<String>> maybeFilingCodes =
               info.getFilings().stream().map(f -> f.getFilingCode()).collect(Collectors.toList());
           if (maybeFilingCodes.stream().anyMatch(fc -> fc.isEmpty())) {
@@ -309,13 +325,7 @@ public class CourtSchedulingService {
         } else {
           allCodes = serializer.serializeCaseCodes(info, collector, isInitialFiling);
         }
-        Optional<LocalDate> returnDate = info.getReturnDate();
-        if (returnDate.isEmpty()) {
-          return Response.status(400).entity("Need return_date").build();
-        }
 
-        ReturnDateMessageType m = new ReturnDateMessageType();
-        setupReq(m, courtId);
         Ecfv5CaseTypeFactory caseTypeFac = new Ecfv5CaseTypeFactory();
         Result<CaseType, FilingError> ctRes =
             caseTypeFac.createCaseType(info, allCodes, cd, serializer, collector, existingParties);
@@ -323,50 +333,28 @@ public class CourtSchedulingService {
         if (ctRes.isErr()) {
           return Response.status(400).entity(ctRes.unwrapErrOrElseThrow().toJson()).build();
         }
+        ct = ctRes.unwrapOrElseThrow();
+      }
 
-        CaseType ct = ctRes.unwrapOrElseThrow();
-        m.setCase(niemObjFac.createCase(ct));
-        m.setReturnDate(Ecfv5XmlHelper.convertDate(returnDate.get()));
+      m.setCase(niemObjFac.createCase(ct));
+      m.setReturnDate(Ecfv5XmlHelper.convertDate(returnDate.get()));
 
-        boolean outOfState = false;
-        if (info.getMiscInfo().has("out_of_state")) {
-          outOfState = info.getMiscInfo().get("out_of_state").asBoolean(false);
-        }
-        m.setOutOfStateIndicator(Ecfv5XmlHelper.convertBool(outOfState));
-        ReturnDateRequestType r = oasisWrapObjFac.createReturnDateRequestType();
-        r.setReturnDateMessage(m);
-        log.info(
-            "Full msg: " + Ecfv5XmlHelper.objectToXmlStrOrError(r, ReturnDateRequestType.class));
-        ReturnDateResponseMessageType resp =
-            maybeServ.get().getReturnDate(r).getReturnDateResponseMessage();
-        log.info(
-            "Full resp: "
-                + Ecfv5XmlHelper.objectToXmlStrOrError(resp, ReturnDateResponseMessageType.class));
-        for (MessageContentErrorType err : resp.getMessageStatus().getMessageContentError()) {
-          if (err.getErrorDescription().getErrorCodeText().getValue().equals("344")) {
-            for (var aug : ct.getCaseAugmentationPoint()) {
-              if (aug.getValue()
-                  instanceof tyler.ecf.v5_0.extensions.common.CaseAugmentationType tylerAug) {
-                tylerAug.getCrossReferenceNumber().clear();
-              }
-            }
-            m.setCase(niemObjFac.createCase(ct));
-            r.setReturnDateMessage(m);
-            log.info(
-                "New full msg: "
-                    + Ecfv5XmlHelper.objectToXmlStrOrError(r, ReturnDateRequestType.class));
-            resp = maybeServ.get().getReturnDate(r).getReturnDateResponseMessage();
-            log.info(
-                "New full resp: "
-                    + Ecfv5XmlHelper.objectToXmlStrOrError(
-                        resp, ReturnDateResponseMessageType.class));
-          }
-        }
-        // TODO(brycew:) have gotten "451: AmountInControversy is not supported" for Handling error,
-        // should
-        // able to automatically not do the amount in those cases.
-        MessageErrorType err = resp.getMessageStatus().getMessageHandlingError();
-        if (err.getErrorCodeText().getValue().equals("344")) {
+      boolean outOfState = false;
+      if (info.getMiscInfo().has("out_of_state")) {
+        outOfState = info.getMiscInfo().get("out_of_state").asBoolean(false);
+      }
+      m.setOutOfStateIndicator(Ecfv5XmlHelper.convertBool(outOfState));
+      ReturnDateRequestType r = oasisWrapObjFac.createReturnDateRequestType();
+      r.setReturnDateMessage(m);
+      log.info(
+          "Full msg: " + Ecfv5XmlHelper.objectToXmlStrOrError(r, ReturnDateRequestType.class));
+      ReturnDateResponseMessageType resp =
+          maybeServ.get().getReturnDate(r).getReturnDateResponseMessage();
+      log.info(
+          "Full resp: "
+              + Ecfv5XmlHelper.objectToXmlStrOrError(resp, ReturnDateResponseMessageType.class));
+      for (MessageContentErrorType err : resp.getMessageStatus().getMessageContentError()) {
+        if (err.getErrorDescription().getErrorCodeText().getValue().equals("344")) {
           for (var aug : ct.getCaseAugmentationPoint()) {
             if (aug.getValue()
                 instanceof tyler.ecf.v5_0.extensions.common.CaseAugmentationType tylerAug) {
@@ -384,17 +372,41 @@ public class CourtSchedulingService {
                   + Ecfv5XmlHelper.objectToXmlStrOrError(
                       resp, ReturnDateResponseMessageType.class));
         }
-        if (hasError(resp)) {
-          return Response.status(400).entity(resp.getMessageStatus()).build();
-        }
-        if (resp.getReturnDate() != null) {
-          return Response.ok(resp.getReturnDate().getDateRepresentation().getValue()).build();
-        } else {
-          return Response.status(502).entity("No actual return dates given!").build();
+      }
+      // TODO(brycew:) have gotten "451: AmountInControversy is not supported" for Handling error,
+      // should
+      // able to automatically not do the amount in those cases.
+      MessageErrorType err = resp.getMessageStatus().getMessageHandlingError();
+      if (err.getErrorCodeText().getValue().equals("344")) {
+        for (var aug : ct.getCaseAugmentationPoint()) {
+          if (aug.getValue()
+              instanceof tyler.ecf.v5_0.extensions.common.CaseAugmentationType tylerAug) {
+            tylerAug.getCrossReferenceNumber().clear();
+          }
         }
-      } catch (FilingError err) {
-        return Response.status(422).entity(collector.jsonSummary()).build();
+        m.setCase(niemObjFac.createCase(ct));
+        r.setReturnDateMessage(m);
+        log.info(
+            "New full msg: "
+                + Ecfv5XmlHelper.objectToXmlStrOrError(r, ReturnDateRequestType.class));
+        resp = maybeServ.get().getReturnDate(r).getReturnDateResponseMessage();
+        log.info(
+            "New full resp: "
+                + Ecfv5XmlHelper.objectToXmlStrOrError(
+                    resp, ReturnDateResponseMessageType.class));
+      }
+      if (hasError(resp)) {
+        return Response.status(400).entity(resp.getMessageStatus()).build();
+      }
+      if (resp.getReturnDate() != null) {
+        return Response.ok(resp.getReturnDate().getDateRepresentation().getValue()).build();
+      } else {
+        return Response.status(502).entity("No actual return dates given!").build();
       }
+    } catch (FilingError err) {
+      return Response.status(422).entity(collector.jsonSummary()).build();
+    } finally {
+      info.releaseDocuments();
     }
   }
 
@@ -541,7 +553,9 @@ public class CourtSchedulingService {
       log.warn("No creds?");
       return Optional.empty();
     }
-    CourtSchedulingMDE serv = schedFactory.getCourtSchedulingMDEPort();
+    CourtSchedulingMDE serv =
+        SoapPortPool.get(
+            schedFactory, CourtSchedulingMDE.class, schedFactory::getCourtSchedulingMDEPort);
     ServiceHelpers.setupServicePort((BindingProvider) serv);
     Map<String, Object> ctx = ((BindingProvider) serv).getRequestContext();
     List<Header> headersList = List.of(creds.get().toHeader());
@@ -558,7 +572,9 @@ public class CourtSchedulingService {
       return Optional.empty();
     }
 
-    CourtRecordMDEPort port = recordFactory.getCourtRecordMDEPort();
+    CourtRecordMDEPort port =
+        SoapPortPool.get(
+            recordFactory, CourtRecordMDEPort.class, recordFactory::getCourtRecordMDEPort);
     ServiceHelpers.setupServicePort((BindingProvider) port);
     Map<String, Object> ctx = ((BindingProvider) port).getRequestContext();
     List<Header> headersList = List.of(creds.get().toHeader());
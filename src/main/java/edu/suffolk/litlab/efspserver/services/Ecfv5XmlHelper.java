@@ -1,11 +1,11 @@
 package edu.suffolk.litlab.efspserver.services;
 
+import edu.suffolk.litlab.efspserver.JaxbContexts;
 import gov.niem.release.niem.domains.jxdm._6.CourtType;
 import gov.niem.release.niem.niem_core._4.DateType;
 import gov.niem.release.niem.niem_core._4.IdentificationType;
 import gov.niem.release.niem.niem_core._4.TextType;
 import gov.niem.release.niem.proxy.xsd._4.NormalizedString;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
@@ -55,8 +55,8 @@ public class Ecfv5XmlHelper {
   }
 
   public static <T> String objectToXmlStr(T toXml, Class<T> toXmlClazz) throws JAXBException {
-    JAXBContext jaxContext =
-        JAXBContext.newInstance(
+    Marshaller mar =
+        JaxbContexts.formattedMarshaller(
             toXmlClazz,
             /*gov.niem.niem.niem_core._2.ObjectFactory.class,
             gov.niem.niem.structures._2.ObjectFactory.class,
@@ -66,8 +66,6 @@ public class Ecfv5XmlHelper {
             https.docs_oasis_open_org.legalxml_courtfiling.ns.v5_0.civil.ObjectFactory.class,
             gov.niem.release.niem.niem_core._4.ObjectFactory.class,
             gov.niem.release.niem.domains.jxdm._6.ObjectFactory.class);
-    Marshaller mar = jaxContext.createMarshaller();
-    mar.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
     QName qname = new QName("suffolk.test.objectToXml", "objectToXml");
     JAXBElement<T> wrappedRoot = new JAXBElement<T>(qname, toXmlClazz, toXml);
     StringWriter sw = new StringWriter();
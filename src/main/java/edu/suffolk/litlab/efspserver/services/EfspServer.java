@@ -144,7 +144,8 @@ public class EfspServer {
         List.of(
             new JAXBElementProvider<Object>(),
             new JacksonJsonProvider(),
-            new SoapExceptionMapper()));
+            new SoapExceptionMapper(),
+            new UpstreamExceptionMapper()));
 
     sf.setAddress(ServiceHelpers.BASE_LOCAL_URL);
     server = sf.create();
@@ -9,6 +9,7 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Request;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
@@ -165,6 +166,7 @@ public class EndpointReflection {
 
       // ignore parameters used to access context
       if ((parameter == Request.class)
+          || (parameter == AsyncResponse.class)
           || (parameter == jakarta.servlet.http.HttpServletResponse.class)
           || (parameter == jakarta.servlet.http.HttpServletRequest.class)) {
         continue;
@@ -4,7 +4,6 @@ import static edu.suffolk.litlab.efspserver.JsonHelpers.getStringDefault;
 import static edu.suffolk.litlab.efspserver.services.EndpointReflection.replacePathParam;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.hubspot.algebra.NullValue;
 import com.hubspot.algebra.Result;
 import edu.suffolk.litlab.efspserver.FilingInformation;
 import edu.suffolk.litlab.efspserver.Person;
@@ -19,6 +18,8 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
@@ -29,10 +30,14 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
@@ -49,6 +54,9 @@ public class FilingReviewService {
   /** From court to FilingInterface (could be different on a court to court basis. */
   private final Map<String, EfmFilingInterface> filingInterfaces;
 
+  /** The same filing interfaces, but async, with one thread pool for each EFM. */
+  private final Map<String, AsyncEfmFilingInterface> asyncFilers;
+
   private final Map<String, EfmRestCallbackInterface> callbackInterfaces;
   private final OrgMessageSender msgSender;
   private final DataSource ds;
@@ -63,6 +71,13 @@ public class FilingReviewService {
       OrgMessageSender msgSender) {
     this.converterMap = converterMap;
     this.filingInterfaces = filingInterfaces;
+    // Most courts share an EFM, and they should share its threads too.
+    Map<EfmFilingInterface, AsyncEfmFilingInterface> byEfm = new IdentityHashMap<>();
+    this.asyncFilers = new HashMap<>();
+    filingInterfaces.forEach(
+        (court, filer) ->
+            asyncFilers.put(
+                court, byEfm.computeIfAbsent(filer, f -> new AsyncEfmFiler(f, jurisdiction))));
     this.callbackInterfaces = callbackInterfaces;
     this.ds = ds;
     this.msgSender = msgSender;
@@ -103,81 +118,98 @@ public class FilingReviewService {
 
   @GET
   @Path("/courts/{court_id}/filings/{filing_id}/status")
-  public Response getFilingStatus(
+  public void getFilingStatus(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @PathParam("filing_id") String filingId) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getFilingStatus");
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-    if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
-    }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-    if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
-    }
-    var toRet = filer.getFilingStatus(courtId, filingId, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return toRet;
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          Optional<String> activeToken =
+              getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          return filer.getFilingStatus(courtId, filingId, activeToken.get());
+        });
   }
 
   /** If 0 is passed for court, search all courts. */
   @GET
   @Path("/courts/{court_id}/filings")
-  public Response getFilingList(
+  public void getFilingList(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @QueryParam("user_id") String userId,
       @QueryParam("start_date") String startStr,
       @QueryParam("before_date") String beforeStr) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getFilingList");
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-    if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
-    }
-    EfmFilingInterface filer = filingInterfaces.get(courtId);
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-    if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
-    }
-    try {
-      LocalDate startDate = (startStr != null) ? LocalDate.parse(startStr) : null;
-      LocalDate beforeDate = (beforeStr != null) ? LocalDate.parse(beforeStr) : null;
-      // beforeDate is exclusive!
-      return filer.getFilingList(courtId, userId, startDate, beforeDate, activeToken.get());
-    } catch (DateTimeParseException ex) {
-      return Response.status(400)
-          .entity(
-              "Dates given were incorrect, should be of the form: yyyy-MM-dd (ISO_LOCAL_DATE): "
-                  + ex)
-          .build();
-    } finally {
-      MDCWrappers.removeAllMDCs();
-    }
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          Optional<String> activeToken =
+              getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          try {
+            LocalDate startDate = (startStr != null) ? LocalDate.parse(startStr) : null;
+            LocalDate beforeDate = (beforeStr != null) ? LocalDate.parse(beforeStr) : null;
+            // beforeDate is exclusive!
+            return filer.getFilingList(courtId, userId, startDate, beforeDate, activeToken.get());
+          } catch (DateTimeParseException ex) {
+            return done(
+                Response.status(400)
+                    .entity(
+                        "Dates given were incorrect, should be of the form: yyyy-MM-dd"
+                            + " (ISO_LOCAL_DATE): "
+                            + ex)
+                    .build());
+          }
+        });
   }
 
   @GET
   @Path("/courts/{court_id}/filing/check")
-  public Response checkFilingForReview(
-      @Context HttpHeaders httpHeaders, @PathParam("court_id") String courtId, String allVars) {
+  public void checkFilingForReview(
+      @Suspended AsyncResponse async,
+      @Context HttpHeaders httpHeaders,
+      @PathParam("court_id") String courtId,
+      String allVars) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.checkFilingForReview");
+    AsyncResponses.resumeWith(async, () -> checkFiling(httpHeaders, courtId, allVars));
+  }
+
+  private CompletionStage<Response> checkFiling(
+      HttpHeaders httpHeaders, String courtId, String allVars) {
     MediaType mediaType = httpHeaders.getMediaType();
     if (mediaType == null) {
       mediaType = MediaType.valueOf("application/json");
     }
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
+    Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
     if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
+      return done(checked.unwrapErrOrElseThrow());
     }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
+    AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+    Optional<String> activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
     if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
+      return done(notLoggedIn(courtId));
     }
     if (!converterMap.containsKey(mediaType.toString())) {
-      return Response.status(415).entity("We only support " + converterMap.keySet()).build();
+      return done(Response.status(415).entity("We only support " + converterMap.keySet()).build());
     }
     InfoCollector collector = new NeverSubmitCollector();
     Result<FilingInformation, FilingError> res =
@@ -185,42 +217,51 @@ public class FilingReviewService {
     if (res.isErr()) {
       log.warn(res.toString());
       log.info("All vars for check, on error:" + allVars);
-      MDCWrappers.removeAllMDCs();
-      return Response.status(400).entity(collector.jsonSummary()).build();
+      return done(Response.status(400).entity(collector.jsonSummary()).build());
     }
     FilingInformation info = res.unwrapOrElseThrow();
     info.setCourtLocation(courtId);
-    Result<NullValue, FilingError> resEfm = filer.checkFiling(info, activeToken.get(), collector);
-    if (resEfm.isErr()) {
-      log.warn(resEfm.toString());
-      log.info("All vars for check, on error:" + allVars);
-      MDCWrappers.removeAllMDCs();
-      return Response.ok(collector.jsonSummary()).build();
-    }
-    MDCWrappers.removeAllMDCs();
-    return Response.ok(collector.jsonSummary()).build();
+    return filer
+        .checkFiling(info, activeToken.get(), collector)
+        .thenApply(
+            resEfm -> {
+              if (resEfm.isErr()) {
+                log.warn(resEfm.toString());
+                log.info("All vars for check, on error:" + allVars);
+              }
+              return Response.ok(collector.jsonSummary()).build();
+            })
+        .whenComplete((resp, ex) -> info.releaseDocuments());
   }
 
   @POST
   @Path("/courts/{court_id}/filing/fees")
-  public Response calculateFilingFees(
-      @Context HttpHeaders httpHeaders, @PathParam("court_id") String courtId, String allVars) {
+  public void calculateFilingFees(
+      @Suspended AsyncResponse async,
+      @Context HttpHeaders httpHeaders,
+      @PathParam("court_id") String courtId,
+      String allVars) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.calculateFilingFees");
+    AsyncResponses.resumeWith(async, () -> filingFees(httpHeaders, courtId, allVars));
+  }
+
+  private CompletionStage<Response> filingFees(
+      HttpHeaders httpHeaders, String courtId, String allVars) {
     MediaType mediaType = httpHeaders.getMediaType();
     if (mediaType == null) {
       mediaType = MediaType.valueOf("application/json");
     }
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
+    Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
     if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
+      return done(checked.unwrapErrOrElseThrow());
     }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
+    AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+    Optional<String> activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
     if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
+      return done(notLoggedIn(courtId));
     }
     if (!converterMap.containsKey(mediaType.toString())) {
-      return Response.status(415).entity("We only support " + converterMap.keySet()).build();
+      return done(Response.status(415).entity("We only support " + converterMap.keySet()).build());
     }
     log.trace("Court id: " + courtId);
     log.info("All vars:" + allVars);
@@ -229,71 +270,88 @@ public class FilingReviewService {
         converterMap.get(mediaType.toString()).traverseInterview(allVars, collector);
     if (res.isErr()) {
       log.warn("In fees: " + res.toString());
-      MDCWrappers.removeAllMDCs();
-      return Response.status(400).entity(collector.jsonSummary()).build();
+      return done(Response.status(400).entity(collector.jsonSummary()).build());
     }
     FilingInformation info = res.unwrapOrElseThrow();
     info.setCourtLocation(courtId);
-    Result<Response, FilingError> fees = filer.getFilingFees(info, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return fees.match(err -> Response.status(400).entity(err.toJson()).build(), respon -> respon);
+    return filer
+        .getFilingFees(info, activeToken.get())
+        .thenApply(
+            fees ->
+                fees.match(
+                    err -> Response.status(400).entity(err.toJson()).build(), respon -> respon))
+        .whenComplete((resp, ex) -> info.releaseDocuments());
   }
 
   @GET
   @Path("/courts/{court_id}/filing/servicetypes")
-  public Response getServiceTypes(
-      @Context HttpHeaders httpHeaders, @PathParam("court_id") String courtId, String allVars) {
+  public void getServiceTypes(
+      @Suspended AsyncResponse async,
+      @Context HttpHeaders httpHeaders,
+      @PathParam("court_id") String courtId,
+      String allVars) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getServiceTypes");
+    AsyncResponses.resumeWith(async, () -> serviceTypes(httpHeaders, courtId, allVars));
+  }
+
+  private CompletionStage<Response> serviceTypes(
+      HttpHeaders httpHeaders, String courtId, String allVars) {
     MediaType mediaType = httpHeaders.getMediaType();
     if (mediaType == null) {
       mediaType = MediaType.valueOf("application/json");
     }
     log.trace("Court id: " + courtId);
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
+    Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
     if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
+      return done(checked.unwrapErrOrElseThrow());
     }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
+    AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+    Optional<String> activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
     if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
+      return done(notLoggedIn(courtId));
     }
     if (!converterMap.containsKey(mediaType.toString())) {
-      MDCWrappers.removeAllMDCs();
-      return Response.status(415).entity("We only support " + converterMap.keySet()).build();
+      return done(Response.status(415).entity("We only support " + converterMap.keySet()).build());
     }
     InfoCollector collector = new FailFastCollector();
     Result<FilingInformation, FilingError> res =
         converterMap.get(mediaType.toString()).traverseInterview(allVars, collector);
     if (res.isErr()) {
-      MDCWrappers.removeAllMDCs();
-      return Response.status(400).entity(collector.jsonSummary()).build();
+      return done(Response.status(400).entity(collector.jsonSummary()).build());
     }
     FilingInformation info = res.unwrapOrElseThrow();
     info.setCourtLocation(courtId);
-    Result<Response, FilingError> fees = filer.getServiceTypes(info, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return fees.match(err -> Response.status(400).entity(err.toJson()).build(), respon -> respon);
+    return filer
+        .getServiceTypes(info, activeToken.get())
+        .thenApply(
+            types ->
+                types.match(
+                    err -> Response.status(400).entity(err.toJson()).build(), respon -> respon))
+        .whenComplete((resp, ex) -> info.releaseDocuments());
   }
 
   @GET
   @Path("/courts/{court_id}/policy")
-  public Response getPolicy(
-      @Context HttpHeaders httpHeaders, @PathParam("court_id") String courtId) {
+  public void getPolicy(
+      @Suspended AsyncResponse async,
+      @Context HttpHeaders httpHeaders,
+      @PathParam("court_id") String courtId) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getPolicy");
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-    if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
-    }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-    if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
-    }
-
-    var toRet = filer.getPolicy(courtId, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return toRet;
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          Optional<String> activeToken =
+              getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          return filer.getPolicy(courtId, activeToken.get());
+        });
   }
 
   @POST
@@ -325,15 +383,19 @@ public class FilingReviewService {
 
   @POST
   @Path("/courts/{court_id}/filings")
-  public Response submitFilingForReview(
-      @Context HttpHeaders httpHeaders, @PathParam("court_id") String courtId, String allVars) {
+  public void submitFilingForReview(
+      @Suspended AsyncResponse async,
+      @Context HttpHeaders httpHeaders,
+      @PathParam("court_id") String courtId,
+      String allVars) {
+    // Filing downloads every document and waits on Tyler, so don't hold a Jetty thread for it.
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.submitFilingForReview");
-    var toRet = fileOrServe(httpHeaders, courtId, allVars, EfmFilingInterface.ApiChoice.FileApi);
-    MDCWrappers.removeAllMDCs();
-    return toRet;
+    AsyncResponses.resumeWith(
+        async,
+        () -> fileOrServe(httpHeaders, courtId, allVars, EfmFilingInterface.ApiChoice.FileApi));
   }
 
-  private Response fileOrServe(
+  private CompletionStage<Response> fileOrServe(
       HttpHeaders httpHeaders,
       String courtId,
       String allVars,
@@ -342,30 +404,45 @@ public class FilingReviewService {
     if (mediaType == null) {
       mediaType = MediaType.valueOf("application/json");
     }
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
+    Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
     if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
+      return done(checked.unwrapErrOrElseThrow());
     }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    Optional<String> activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
+    AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+    Optional<String> activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
     Optional<AtRest> atRest = Optional.empty();
     try (LoginDatabase ld = new LoginDatabase(ds.getConnection())) {
       atRest = ld.getAtRestInfo(httpHeaders.getHeaderString("X-API-KEY"));
       if (activeToken.isEmpty() || atRest.isEmpty()) {
-        return Response.status(401).entity("Not logged in to file with " + courtId).build();
+        return done(notLoggedIn(courtId));
       }
     } catch (SQLException ex) {
       log.error(StdLib.strFromException(ex));
     }
     Result<FilingInformation, Response> maybeInfo =
-        parseFiling(httpHeaders, allVars, filer, courtId, mediaType);
+        parseFiling(httpHeaders, allVars, filer.blocking(), courtId, mediaType);
     if (maybeInfo.isErr()) {
-      return maybeInfo.unwrapErrOrElseThrow();
+      return done(maybeInfo.unwrapErrOrElseThrow());
     }
     FilingInformation info = maybeInfo.unwrapOrElseThrow();
     info.setCourtLocation(courtId);
-    Result<FilingResult, FilingError> result =
-        filer.sendFiling(info, activeToken.get(), EfmFilingInterface.ApiChoice.FileApi);
+    final Optional<AtRest> loggedIn = atRest;
+    return filer
+        .sendFiling(info, activeToken.get(), EfmFilingInterface.ApiChoice.FileApi)
+        .thenApply(
+            BoundedExecutors.withMdc(
+                result -> recordFiling(result, info, courtId, activeToken.get(), loggedIn)))
+        // Tyler has the documents (or never will), so the temp files can go now.
+        .whenComplete((resp, ex) -> info.releaseDocuments());
+  }
+
+  /** Saves a sent filing to the transaction database, and sends the user a confirmation. */
+  private Response recordFiling(
+      Result<FilingResult, FilingError> result,
+      FilingInformation info,
+      String courtId,
+      String apiToken,
+      Optional<AtRest> atRest) {
     if (result.isErr()) {
       return Response.status(500).entity(result.unwrapErrOrElseThrow().toJson()).build();
     }
@@ -406,7 +483,7 @@ public class FilingReviewService {
           user.getContactInfo().getEmail().orElse(""),
           filingIds,
           atRest.get().serverId,
-          activeToken.get(),
+          apiToken,
           info.getCaseTypeCode(),
           courtId,
           ts,
@@ -461,8 +538,9 @@ public class FilingReviewService {
       return Result.err(
           Response.status(415).entity("We only support " + converterMap.keySet()).build());
     }
+    // The filer downloads the documents while it looks up the case and firm
     Result<FilingInformation, FilingError> maybeInfo =
-        converterMap.get(mediaType.toString()).extractInformation(allVars);
+        converterMap.get(mediaType.toString()).extractWithoutDocuments(allVars);
     if (maybeInfo.isErr()) {
       return Result.err(
           Response.status(400).entity(maybeInfo.unwrapErrOrElseThrow().toJson()).build());
@@ -474,68 +552,75 @@ public class FilingReviewService {
 
   @GET
   @Path("/courts/{court_id}/filings/{filing_id}")
-  public Response getFilingDetails(
+  public void getFilingDetails(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @PathParam("filing_id") String filingId) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getFilingDetails");
-    try {
-      Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-      if (checked.isErr()) {
-        return checked.unwrapErrOrElseThrow();
-      }
-      EfmFilingInterface filer = checked.unwrapOrElseThrow();
-      var activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-      if (activeToken.isEmpty()) {
-        return Response.status(401).entity("Not logged in to file with " + courtId).build();
-      }
-      return filer.getFilingDetails(courtId, filingId, activeToken.get());
-    } finally {
-      MDCWrappers.removeAllMDCs();
-    }
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          var activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          return filer.getFilingDetails(courtId, filingId, activeToken.get());
+        });
   }
 
   @GET
   @Path("/courts/{court_id}/filings/{filing_id}/service/{contact_id}")
-  public Response getFilingService(
+  public void getFilingService(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @PathParam("filing_id") String filingId,
       @PathParam("contact_id") String contactId) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.getFilingService");
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-    if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
-    }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    var activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-    if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
-    }
-    var toRet = filer.getFilingService(courtId, filingId, contactId, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return toRet;
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          var activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          return filer.getFilingService(courtId, filingId, contactId, activeToken.get());
+        });
   }
 
   @DELETE
   @Path("/courts/{court_id}/filings/{filing_id}")
-  public Response cancelFiling(
+  public void cancelFiling(
+      @Suspended AsyncResponse async,
       @Context HttpHeaders httpHeaders,
       @PathParam("court_id") String courtId,
       @PathParam("filing_id") String filingId) {
     MDC.put(MDCWrappers.OPERATION, "FilingReviewService.cancelFiling");
-    Result<EfmFilingInterface, Response> checked = checkFilingInterfaces(courtId);
-    if (checked.isErr()) {
-      return checked.unwrapErrOrElseThrow();
-    }
-    EfmFilingInterface filer = checked.unwrapOrElseThrow();
-    var activeToken = getActiveToken(httpHeaders, filer.getHeaderKey());
-    if (activeToken.isEmpty()) {
-      return Response.status(401).entity("Not logged in to file with " + courtId).build();
-    }
-    var toRet = filer.cancelFiling(courtId, filingId, activeToken.get());
-    MDCWrappers.removeAllMDCs();
-    return toRet;
+    AsyncResponses.resumeWith(
+        async,
+        () -> {
+          Result<AsyncEfmFilingInterface, Response> checked = checkAsyncFiler(courtId);
+          if (checked.isErr()) {
+            return done(checked.unwrapErrOrElseThrow());
+          }
+          AsyncEfmFilingInterface filer = checked.unwrapOrElseThrow();
+          var activeToken = getActiveToken(httpHeaders, filer.blocking().getHeaderKey());
+          if (activeToken.isEmpty()) {
+            return done(notLoggedIn(courtId));
+          }
+          return filer.cancelFiling(courtId, filingId, activeToken.get());
+        });
   }
 
   private Optional<String> getActiveToken(HttpHeaders httpHeaders, String orgHeaderKey) {
@@ -556,10 +641,18 @@ public class FilingReviewService {
     }
   }
 
-  private Result<EfmFilingInterface, Response> checkFilingInterfaces(String courtId) {
-    if (!filingInterfaces.containsKey(courtId)) {
+  private Result<AsyncEfmFilingInterface, Response> checkAsyncFiler(String courtId) {
+    if (!asyncFilers.containsKey(courtId)) {
       return Result.err(Response.status(404).entity("Cannot send filing to " + courtId).build());
     }
-    return Result.ok(filingInterfaces.get(courtId));
+    return Result.ok(asyncFilers.get(courtId));
+  }
+
+  private static Response notLoggedIn(String courtId) {
+    return Response.status(401).entity("Not logged in to file with " + courtId).build();
+  }
+
+  private static CompletionStage<Response> done(Response resp) {
+    return CompletableFuture.completedFuture(resp);
   }
 }
@@ -10,6 +10,14 @@ public abstract class InterviewToFilingInformationConverter {
     return traverseInterview(interviewContents, collector);
   }
 
+  /**
+   * Like {@link #extractInformation}, but the documents don't have to be downloaded yet: the filer
+   * fetches any that still need it, while it waits on the court.
+   */
+  public Result<FilingInformation, FilingError> extractWithoutDocuments(String interviewContents) {
+    return extractInformation(interviewContents);
+  }
+
   public abstract Result<FilingInformation, FilingError> traverseInterview(
       String interviewContents, InfoCollector collector);
 }
@@ -0,0 +1,89 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Keeps the last few SOAP payloads that each server sent / got back from each operation, so we can
+ * debug without writing every (huge) filing to the logs.
+ *
+ * <p>Capturing is off unless the PAYLOAD_CAPTURE_SIZE env var is set above 0, since the payloads
+ * have users' information in them. Payloads are only turned into strings if something is going to
+ * keep them: either capturing is on, or debug logging is. Callers should pass a
+ * supplier that leaves out binary data, like {@link
+ * edu.suffolk.litlab.efspserver.ecf4.Ecf4Helper#objectToRedactedXmlStrOrError}.
+ */
+public class PayloadCapture {
+  private static final Logger log = LoggerFactory.getLogger(PayloadCapture.class);
+
+  /** How many payloads to keep per server and operation. */
+  private static final int CAPACITY =
+      Integer.parseInt(GetEnv("PAYLOAD_CAPTURE_SIZE").orElse("0"));
+
+  /** server id -> operation -> most recent payloads, oldest first. */
+  private static final Map<String, Map<String, Deque<Capture>>> captures =
+      new ConcurrentHashMap<>();
+
+  public record Capture(Instant time, String operation, String direction, String payload) {}
+
+  public static void request(String operation, Supplier<String> payload) {
+    capture(operation, "request", payload, CAPACITY);
+  }
+
+  public static void response(String operation, Supplier<String> payload) {
+    capture(operation, "response", payload, CAPACITY);
+  }
+
+  static void capture(String operation, String direction, Supplier<String> payload, int capacity) {
+    boolean debug = log.isDebugEnabled();
+    if (capacity <= 0 && !debug) {
+      return;
+    }
+    String str = payload.get();
+    if (debug) {
+      log.debug(operation + " " + direction + ": " + str);
+    }
+    if (capacity <= 0) {
+      return;
+    }
+    Deque<Capture> recent =
+        captures
+            .computeIfAbsent(serverId(), id -> new ConcurrentHashMap<>())
+            .computeIfAbsent(operation, op -> new ArrayDeque<>());
+    synchronized (recent) {
+      recent.addLast(new Capture(Instant.now(), operation, direction, str));
+      while (recent.size() > capacity) {
+        recent.removeFirst();
+      }
+    }
+  }
+
+  /** All of the payloads kept for a server, most recent first. */
+  public static List<Capture> recentFor(String serverId) {
+    List<Capture> all = new ArrayList<>();
+    for (Deque<Capture> recent : captures.getOrDefault(serverId, Map.of()).values()) {
+      synchronized (recent) {
+        all.addAll(recent);
+      }
+    }
+    all.sort(Comparator.comparing(Capture::time).reversed());
+    return all;
+  }
+
+  private static String serverId() {
+    String serverId = MDC.get(MDCWrappers.SERVER_ID);
+    return (serverId == null) ? "" : serverId;
+  }
+}
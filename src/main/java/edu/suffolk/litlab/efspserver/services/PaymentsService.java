@@ -7,6 +7,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.suffolk.litlab.efspserver.JaxbContexts;
 import edu.suffolk.litlab.efspserver.RandomString;
 import edu.suffolk.litlab.efspserver.tyler.TylerErrorCodes;
 import edu.suffolk.litlab.efspserver.tyler.TylerUrls;
@@ -27,7 +28,6 @@ import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlElement;
@@ -459,8 +459,7 @@ public class PaymentsService {
     MDC.put(MDCWrappers.OPERATION, "PaymentsService.makeNewPaymentAccount");
     log.info("Making new payment account with Tyler's response: " + body);
     try {
-      JAXBContext jaxContext = JAXBContext.newInstance(TogaResponseXml.class);
-      Unmarshaller unmar = jaxContext.createUnmarshaller();
+      Unmarshaller unmar = JaxbContexts.unmarshaller(TogaResponseXml.class);
       InputStream stream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
       TogaResponseXml resp = (TogaResponseXml) unmar.unmarshal(stream);
 
@@ -29,10 +29,22 @@ public class RootService {
                 MessageSettingsService.class,
                 ApiUserSettingsService.class));
     endPoints.put("getVersionInfo", ServiceHelpers.EXTERNAL_URL + "/about");
+    endPoints.put("getUpstreams", ServiceHelpers.EXTERNAL_URL + "/upstreams");
     log.info("Displaying EFSP services @ROOT");
     return Response.ok(endPoints).build();
   }
 
+  /**
+   * How each of Tyler's services that we've called is doing: whether its circuit breaker is open,
+   * how many calls are waiting on it, and how many have been failed or turned away.
+   */
+  @GET
+  @Path("/upstreams")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getUpstreams() {
+    return Response.ok(Upstream.statuses()).build();
+  }
+
   @GET
   @Path("/about")
   @Produces(MediaType.APPLICATION_JSON)
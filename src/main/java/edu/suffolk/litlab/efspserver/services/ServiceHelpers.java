@@ -12,11 +12,14 @@ import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.soap.SOAPBinding;
 import java.io.File;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.sql.DataSource;
 import org.apache.cxf.headers.Header;
@@ -113,6 +116,29 @@ public class ServiceHelpers {
     setupServicePort(bp);
   }
 
+  /**
+   * Jurisdictions that send filing documents as MTOM / XOP attachments instead of inline base64,
+   * from the space separated TYLER_MTOM_JURISDICTIONS env var (i.e. "illinois massachusetts").
+   */
+  private static final Set<String> MTOM_JURISDICTIONS =
+      Arrays.stream(GetEnv("TYLER_MTOM_JURISDICTIONS").orElse("").split(" "))
+          .filter(j -> !j.isBlank())
+          .collect(Collectors.toSet());
+
+  public static boolean useMtom(String jurisdiction) {
+    return MTOM_JURISDICTIONS.contains(jurisdiction);
+  }
+
+  /**
+   * Makes the port send binary data (i.e. documents) as MTOM attachments. The signature still
+   * covers the attachment contents, since CXF expands the xop:Includes when signing. Only call this
+   * on a port before it's shared: it changes the binding for every caller.
+   */
+  public static <T> T enableMtom(T port) {
+    ((SOAPBinding) ((BindingProvider) port).getBinding()).setMTOMEnabled(true);
+    return port;
+  }
+
   /**
    * Helper for getting all of the valid courts that can be passed to a particular endpoint,
    *
@@ -172,7 +198,7 @@ public class ServiceHelpers {
         MDC.put(MDCWrappers.USER_ID, ld.makeHash(tylerToken));
         return setupFirmPort(firmFactory, tylerToken);
       } else {
-        IEfmFirmService port = firmFactory.getBasicHttpBindingIEfmFirmService();
+        IEfmFirmService port = makeFirmPort(firmFactory);
         ServiceHelpers.setupServicePort((BindingProvider) port);
         return Optional.of(port);
       }
@@ -190,8 +216,13 @@ public class ServiceHelpers {
       return Optional.empty();
     }
 
-    IEfmFirmService port = firmFactory.getBasicHttpBindingIEfmFirmService();
+    IEfmFirmService port = makeFirmPort(firmFactory);
     ServiceHelpers.setupServicePort((BindingProvider) port, creds.get());
     return Optional.of(port);
   }
+
+  private static IEfmFirmService makeFirmPort(EfmFirmService firmFactory) {
+    return SoapPortPool.get(
+        firmFactory, IEfmFirmService.class, firmFactory::getBasicHttpBindingIEfmFirmService);
+  }
 }
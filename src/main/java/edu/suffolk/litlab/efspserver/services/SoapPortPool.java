@@ -0,0 +1,166 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.Service;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.cxf.frontend.ClientProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one CXF client proxy for each SOAP port that we talk to, instead of making a new one (and
+ * rebuilding its conduit and WS-Security interceptors from the WSDL model) on every request.
+ *
+ * <p>CXF proxies are safe to share between threads, as long as nothing changes their conduit after
+ * they're made and their request context is thread local. So each caller gets a light wrapper with
+ * its own request context (the user's auth headers, etc.), which is copied into the shared proxy's
+ * thread local context for just the duration of each call.
+ *
+ * <p>Every call goes through the {@link Upstream} for its jurisdiction and service, which limits
+ * how many calls wait on that service at once, and stops calling it for a while if it keeps failing.
+ */
+public class SoapPortPool {
+  private static final Logger log = LoggerFactory.getLogger(SoapPortPool.class);
+
+  private static final Map<List<Object>, Shared> ports = new ConcurrentHashMap<>();
+
+  /**
+   * Gets a port for the given service.
+   *
+   * @param factory the WSDL service that the port comes from
+   * @param iface the port's interface
+   * @param makePort makes a new, fully configured port; only called the first time
+   */
+  public static <T> T get(Service factory, Class<T> iface, Supplier<T> makePort) {
+    return get(factory, iface, "", makePort);
+  }
+
+  /**
+   * Same as {@link #get(Service, Class, Supplier)}, but for ports with a non-default setup (i.e.
+   * longer timeouts). Ports with different variants are never shared.
+   */
+  public static <T> T get(Service factory, Class<T> iface, String variant, Supplier<T> makePort) {
+    // Services for the same jurisdiction are made from the same WSDL, so their ports can be shared.
+    List<Object> key =
+        List.of(
+            String.valueOf(factory.getWSDLDocumentLocation()),
+            factory.getServiceName(),
+            iface.getName(),
+            variant);
+    Shared shared =
+        ports.computeIfAbsent(
+            key,
+            k ->
+                makeShared(
+                    iface,
+                    makePort,
+                    Upstream.get(
+                        domainOf(String.valueOf(factory.getWSDLDocumentLocation())),
+                        serviceKind(iface))));
+    return iface.cast(
+        Proxy.newProxyInstance(
+            iface.getClassLoader(),
+            new Class<?>[] {iface, BindingProvider.class},
+            new PortHandler(shared)));
+  }
+
+  /**
+   * The jurisdiction and env of a WSDL, from its path (i.e. ".../wsdl/stage/illinois-...wsdl" is
+   * "illinois-stage").
+   */
+  static String domainOf(String wsdlLocation) {
+    String[] parts = wsdlLocation.split("/");
+    if (parts.length < 2) {
+      return wsdlLocation;
+    }
+    String jurisdiction = parts[parts.length - 1].split("-")[0];
+    return jurisdiction + "-" + parts[parts.length - 2];
+  }
+
+  /** The kind of Tyler service a port talks to, i.e. "record" for CourtRecordMDEPort. */
+  static String serviceKind(Class<?> iface) {
+    return switch (iface.getSimpleName()) {
+      case "FilingReviewMDEPort" -> "filing";
+      case "CourtRecordMDEPort" -> "record";
+      case "ServiceMDEPort" -> "service";
+      case "IEfmFirmService" -> "firm";
+      case "IEfmUserService" -> "user";
+      case "CourtSchedulingMDE" -> "scheduling";
+      default -> iface.getSimpleName();
+    };
+  }
+
+  private static <T> Shared makeShared(Class<T> iface, Supplier<T> makePort, Upstream upstream) {
+    long start = System.nanoTime();
+    T port = makePort.get();
+    BindingProvider bp = (BindingProvider) port;
+    Map<String, Object> base = new HashMap<>(bp.getRequestContext());
+    ClientProxy.getClient(port).setThreadLocalRequestContext(true);
+    log.info(
+        "Made shared {} port in {} ms",
+        iface.getSimpleName(),
+        (System.nanoTime() - start) / 1_000_000);
+    return new Shared(port, base, upstream);
+  }
+
+  private record Shared(Object port, Map<String, Object> baseContext, Upstream upstream) {}
+
+  private static class PortHandler implements InvocationHandler {
+    private final Shared shared;
+    private final Map<String, Object> requestContext;
+
+    PortHandler(Shared shared) {
+      this.shared = shared;
+      this.requestContext = new HashMap<>(shared.baseContext());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return "SoapPortPool[" + shared.port() + "]";
+        }
+      }
+      if (method.getDeclaringClass() == BindingProvider.class) {
+        if (method.getName().equals("getRequestContext")) {
+          return requestContext;
+        }
+        return invokeShared(method, args);
+      }
+
+      // Clearing a thread local request context drops it, and the next getRequestContext() on this
+      // thread starts over from the port's shared context, which only ever has the base setup. So
+      // the map has to be looked up again after clearing it, or the call never sees what's put in.
+      BindingProvider port = (BindingProvider) shared.port();
+      port.getRequestContext().clear();
+      port.getRequestContext().putAll(requestContext);
+      try {
+        return shared.upstream().call(() -> invokeShared(method, args));
+      } finally {
+        // Don't leave this user's headers around for the next request on this thread.
+        port.getRequestContext().clear();
+      }
+    }
+
+    private Object invokeShared(Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(shared.port(), args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.bus.CXFBusFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the HTTP transport that the SOAP clients use to talk to Tyler.
+ *
+ * <p>By default, the clients use CXF's default conduit, which holds a thread for each call until
+ * Tyler answers. With TYLER_ASYNC_HTTP=true, they use CXF's async conduit instead (Apache
+ * HttpClient 5, from cxf-rt-transports-http-hc5), which keeps connections alive and pools them
+ * between calls. Each jurisdiction gets its own bus, so each has its own pool of at most
+ * TYLER_MAX_CONNECTIONS connections, which can be set for just one jurisdiction with
+ * TYLER_MAX_CONNECTIONS_{JURISDICTION} (i.e. TYLER_MAX_CONNECTIONS_ILLINOIS). With TYLER_HTTP2=true,
+ * the conduit is asked to use HTTP/2.
+ */
+public class SoapTransport {
+  private static final Logger log = LoggerFactory.getLogger(SoapTransport.class);
+
+  private static final boolean ASYNC_HTTP =
+      GetEnv("TYLER_ASYNC_HTTP").map(Boolean::parseBoolean).orElse(false);
+
+  private static final boolean HTTP2 =
+      GetEnv("TYLER_HTTP2").map(Boolean::parseBoolean).orElse(false);
+
+  private static final int MAX_CONNECTIONS =
+      Integer.parseInt(GetEnv("TYLER_MAX_CONNECTIONS").orElse("64"));
+
+  // Bus properties read by the async conduit's factory when the bus is made.
+  private static final String USE_POLICY = "org.apache.cxf.transport.http.async.usePolicy";
+  private static final String MAX_TOTAL = "org.apache.cxf.transport.http.async.MAX_CONNECTIONS";
+  private static final String MAX_PER_HOST =
+      "org.apache.cxf.transport.http.async.MAX_PER_HOST_CONNECTIONS";
+  // Read from each message's contextual properties, which fall back to the bus'.
+  private static final String FORCE_VERSION = "org.apache.cxf.transport.http.forceVersion";
+
+  private static final Map<String, Bus> buses = new ConcurrentHashMap<>();
+
+  /**
+   * Makes a SOAP service with the transport for its jurisdiction. Ports made from the service use
+   * the same transport.
+   *
+   * @param wsdlDomain the jurisdiction, "-", and the Tyler env, i.e. "illinois-stage"
+   * @param makeService calls the generated service's constructor
+   */
+  public static <T> T makeService(String wsdlDomain, Supplier<T> makeService) {
+    if (!ASYNC_HTTP) {
+      return makeService.get();
+    }
+    return makeAsyncService(wsdlDomain, makeService);
+  }
+
+  /** Makes the service with the async transport, whether or not TYLER_ASYNC_HTTP is set. */
+  static <T> T makeAsyncService(String wsdlDomain, Supplier<T> makeService) {
+    Bus bus = buses.computeIfAbsent(wsdlDomain, SoapTransport::makeBus);
+    // CXF services are tied to the thread's default bus when they're made.
+    Bus previous = BusFactory.getAndSetThreadDefaultBus(bus);
+    try {
+      return makeService.get();
+    } finally {
+      BusFactory.setThreadDefaultBus(previous);
+    }
+  }
+
+  static int maxConnections(String wsdlDomain) {
+    String jurisdiction = wsdlDomain.split("-")[0].toUpperCase(Locale.ROOT);
+    return GetEnv("TYLER_MAX_CONNECTIONS_" + jurisdiction)
+        .map(Integer::parseInt)
+        .orElse(MAX_CONNECTIONS);
+  }
+
+  private static Bus makeBus(String wsdlDomain) {
+    // Making a bus makes it the thread's (and the global) default bus if there isn't one yet, and
+    // this one should only ever be used for this jurisdiction's clients.
+    BusFactory.getThreadDefaultBus(true);
+    int maxConnections = maxConnections(wsdlDomain);
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(USE_POLICY, "ALWAYS");
+    properties.put(MAX_TOTAL, String.valueOf(maxConnections));
+    // Each jurisdiction and env's services are all on the same Tyler host.
+    properties.put(MAX_PER_HOST, String.valueOf(maxConnections));
+    if (HTTP2) {
+      properties.put(FORCE_VERSION, "2");
+    }
+    Bus bus = new CXFBusFactory().createBus(new HashMap<>(), properties);
+    log.info(
+        "Made async HTTP transport for {} with up to {} connections{}",
+        wsdlDomain,
+        maxConnections,
+        HTTP2 ? ", HTTP/2" : "");
+    return bus;
+  }
+}
@@ -3,13 +3,18 @@ package edu.suffolk.litlab.efspserver.services;
 import edu.suffolk.litlab.efspserver.Monitor;
 import edu.suffolk.litlab.efspserver.StdLib;
 import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.ecfcodes.CodeRefreshCoordinator;
 import edu.suffolk.litlab.efspserver.ecfcodes.CodeUpdater;
+import edu.suffolk.litlab.efspserver.ecfcodes.ParallelCodeLoader;
 import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
@@ -18,30 +23,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+@DisallowConcurrentExecution
 public class UpdateCodeVersions implements Job {
   private static Logger log = LoggerFactory.getLogger(UpdateCodeVersions.class);
 
   private static final String badUpdateEmailTemplate =
       """
     Something's wrong with the EfileProxy. On the {{external_server}} server, `UpdateCodeVersions`
-    has failed to refresh the downloaded genericodes for the jurisdiction {{jurisdiction}} (env: {{env}}).
+    has failed to refresh the downloaded genericodes for the jurisdictions {{jurisdictions}} (env: {{env}}).
     Unfortunately We can't send the potential problems in this message yet, but check the logs around
     {{error_timestamp}}.
 
+    How the whole refresh went:
+    {{report}}
+
     Good luck, lol.
     - The EfileProxyServer
       """;
 
   /**
-   * A very light wrapper around the CLI CodeUpdater tool. A separate Job is started for each
-   * jurisdiciton, so only jurisdiciton and Tyler env is passed through.
+   * A very light wrapper around the CLI CodeUpdater tool. One Job refreshes all of the
+   * jurisdictions in TYLER_JURISDICTIONS (space separated) for a Tyler env at once, through the
+   * {@link CodeRefreshCoordinator}, and sends one email if any of them failed.
    */
   public void execute(JobExecutionContext context) throws JobExecutionException {
-    JobDataMap dataMap = context.getJobDetail().getJobDataMap();
-    String jurisdiction = dataMap.getString("TYLER_JURISDICTION");
+    // Merged, since a trigger can say which jurisdictions to refresh
+    JobDataMap dataMap = context.getMergedJobDataMap();
+    String jurisdictionList = dataMap.getString("TYLER_JURISDICTIONS");
+    if (jurisdictionList == null) {
+      jurisdictionList = dataMap.getString("TYLER_JURISDICTION");
+    }
+    List<String> jurisdictions =
+        Arrays.stream(jurisdictionList.split(" ")).filter(j -> !j.isBlank()).toList();
     String env = dataMap.getString("TYLER_ENV");
     MDC.put(MDCWrappers.OPERATION, "UpdateCodeVersions.execute");
-    MDC.put(MDCWrappers.USER_ID, jurisdiction);
     String x509Password = dataMap.getString("X509_PASSWORD");
 
     String pgFullUrl = dataMap.getString("POSTGRES_URL");
@@ -49,28 +64,59 @@ public class UpdateCodeVersions implements Job {
     String pgUser = dataMap.getString("POSTGRES_USERNAME");
     String pgPassword = dataMap.getString("POSTGRES_PASSWORD");
 
-    boolean success = true;
-    try (Connection conn =
-            DatabaseCreator.makeSingleConnection(pgDb, pgFullUrl, pgUser, pgPassword);
-        CodeDatabase cd = new CodeDatabase(jurisdiction, env, conn)) {
-      success = CodeUpdater.executeCommand(cd, jurisdiction, env, List.of("refresh"), x509Password);
-    } catch (SQLException e) {
-      log.error("Couldn't connect to Codes db from Job Executor: " + StdLib.strFromException(e));
-      success = false;
-    }
-    if (!success) {
+    CodeRefreshCoordinator.Report report =
+        CodeRefreshCoordinator.refreshAll(
+            jurisdictions,
+            jurisdiction ->
+                refresh(jurisdiction, env, x509Password, pgFullUrl, pgDb, pgUser, pgPassword));
+    if (!report.success()) {
       Monitor.sendImmediateErrorNotification(
           "UpdateCodeVersions error on " + Monitor.EXTERNAL_DOMAIN,
           badUpdateEmailTemplate,
           Map.of(
               "external_server",
               ServiceHelpers.EXTERNAL_URL,
-              "jurisdiction",
-              jurisdiction,
+              "jurisdictions",
+              String.join(", ", report.failed()),
               "env",
               env,
               "error_timestamp",
-              LocalDate.now().toString()));
+              LocalDate.now().toString(),
+              "report",
+              report.summary()));
+    }
+  }
+
+  private static boolean refresh(
+      String jurisdiction,
+      String env,
+      String x509Password,
+      String pgFullUrl,
+      String pgDb,
+      String pgUser,
+      String pgPassword) {
+    MDC.put(MDCWrappers.USER_ID, jurisdiction);
+    try (Connection conn =
+            DatabaseCreator.makeSingleConnection(pgDb, pgFullUrl, pgUser, pgPassword);
+        CodeDatabase cd = new CodeDatabase(jurisdiction, env, conn)) {
+      // Each parallel loader gets its own connection, so it has its own transaction.
+      ParallelCodeLoader.DbMaker workerDbs =
+          () ->
+              new CodeDatabase(
+                  jurisdiction,
+                  env,
+                  DatabaseCreator.makeSingleConnection(pgDb, pgFullUrl, pgUser, pgPassword));
+      boolean success =
+          CodeUpdater.executeCommand(
+              cd, jurisdiction, env, List.of("refresh"), x509Password, Optional.of(workerDbs));
+      if (success) {
+        // Only swap in the new codes once they're all committed.
+        cd.publishSnapshot();
+      }
+      return success;
+    } catch (SQLException e) {
+      log.error("Couldn't connect to Codes db from Job Executor: " + StdLib.strFromException(e));
+      return false;
     }
   }
 }
@@ -0,0 +1,253 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import jakarta.xml.ws.soap.SOAPFaultException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bulkhead and circuit breaker for one upstream service, i.e. Tyler's court record service for
+ * Illinois ("illinois-stage record").
+ *
+ * <p>The bulkhead: at most UPSTREAM_MAX_CALLS calls to the service run at once (which can be set for
+ * each kind of service, i.e. UPSTREAM_MAX_CALLS_RECORD). Calls past that fail right away, so when
+ * one service slows down, requests waiting on it can't take every thread from requests to the other
+ * services.
+ *
+ * <p>The circuit breaker: after UPSTREAM_FAILURES_TO_OPEN failed (or slower than
+ * UPSTREAM_SLOW_CALL_SECONDS, which can also be set for each kind of service) calls in a row, no
+ * calls are made to the service for UPSTREAM_OPEN_SECONDS. After that, one call is let through;
+ * if it works, the service is used as normal again, and if it doesn't, the breaker stays open for
+ * another UPSTREAM_OPEN_SECONDS.
+ *
+ * <p>Calls rejected by either throw an {@link UpstreamUnavailableException}, which becomes a 503.
+ * SOAP faults don't count as failures: Tyler answered, it just didn't like the request.
+ */
+public class Upstream {
+  private static final Logger log = LoggerFactory.getLogger(Upstream.class);
+
+  private static final int MAX_CALLS = Integer.parseInt(GetEnv("UPSTREAM_MAX_CALLS").orElse("32"));
+  private static final int FAILURES_TO_OPEN =
+      Integer.parseInt(GetEnv("UPSTREAM_FAILURES_TO_OPEN").orElse("5"));
+  private static final Duration OPEN_FOR =
+      Duration.ofSeconds(Long.parseLong(GetEnv("UPSTREAM_OPEN_SECONDS").orElse("30")));
+  private static final Duration SLOW_CALL =
+      Duration.ofSeconds(Long.parseLong(GetEnv("UPSTREAM_SLOW_CALL_SECONDS").orElse("60")));
+
+  /**
+   * Services that are expected to be slower than UPSTREAM_SLOW_CALL_SECONDS. Case searches are
+   * given 3 minutes to answer (see {@link CasesService}), so they aren't slow until after that.
+   */
+  private static final Map<String, Duration> SLOW_CALL_AT_LEAST =
+      Map.of("record", Duration.ofSeconds(200));
+
+  private static final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /** A snapshot of an upstream, for operators. */
+  public record Status(
+      String name,
+      State state,
+      int inFlight,
+      int maxCalls,
+      long slowCallSeconds,
+      long calls,
+      long failures,
+      long rejectedBusy,
+      long rejectedOpen) {}
+
+  /** A call to the upstream. */
+  public interface Call<T> {
+    T call() throws Throwable;
+  }
+
+  private final String name;
+  private final int maxCalls;
+  private final int failuresToOpen;
+  private final long openForNanos;
+  private final long slowCallNanos;
+  private final LongSupplier nanoTime;
+  private final Semaphore permits;
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong rejectedBusy = new AtomicLong();
+  private final AtomicLong rejectedOpen = new AtomicLong();
+
+  // Guarded by this
+  private State state = State.CLOSED;
+  private int failuresInARow = 0;
+  private long openedAt = 0;
+  private boolean probing = false;
+
+  Upstream(
+      String name,
+      int maxCalls,
+      int failuresToOpen,
+      Duration openFor,
+      Duration slowCall,
+      LongSupplier nanoTime) {
+    this.name = name;
+    this.maxCalls = maxCalls;
+    this.failuresToOpen = failuresToOpen;
+    this.openForNanos = openFor.toNanos();
+    this.slowCallNanos = slowCall.toNanos();
+    this.nanoTime = nanoTime;
+    this.permits = new Semaphore(maxCalls);
+  }
+
+  /**
+   * Gets the upstream for a service.
+   *
+   * @param domain the jurisdiction, "-", and the Tyler env, i.e. "illinois-stage"
+   * @param service the kind of service, i.e. "filing", "record", "service", "firm", or "user"
+   */
+  public static Upstream get(String domain, String service) {
+    return upstreams.computeIfAbsent(
+        domain + " " + service,
+        name ->
+            new Upstream(
+                name,
+                GetEnv("UPSTREAM_MAX_CALLS_" + service.toUpperCase(Locale.ROOT))
+                    .map(Integer::parseInt)
+                    .orElse(MAX_CALLS),
+                FAILURES_TO_OPEN,
+                OPEN_FOR,
+                slowCall(service),
+                System::nanoTime));
+  }
+
+  /** How long a call to the kind of service can take before it counts as a failure. */
+  private static Duration slowCall(String service) {
+    return GetEnv("UPSTREAM_SLOW_CALL_SECONDS_" + service.toUpperCase(Locale.ROOT))
+        .map(secs -> Duration.ofSeconds(Long.parseLong(secs)))
+        .orElseGet(
+            () -> {
+              Duration atLeast = SLOW_CALL_AT_LEAST.getOrDefault(service, Duration.ZERO);
+              return SLOW_CALL.compareTo(atLeast) < 0 ? atLeast : SLOW_CALL;
+            });
+  }
+
+  /** The status of every upstream that has been called so far, sorted by name. */
+  public static List<Status> statuses() {
+    return upstreams.values().stream()
+        .map(Upstream::status)
+        .sorted(Comparator.comparing(Status::name))
+        .toList();
+  }
+
+  public synchronized Status status() {
+    return new Status(
+        name,
+        state,
+        maxCalls - permits.availablePermits(),
+        maxCalls,
+        Duration.ofNanos(slowCallNanos).toSeconds(),
+        calls.get(),
+        failures.get(),
+        rejectedBusy.get(),
+        rejectedOpen.get());
+  }
+
+  /**
+   * Makes the call, unless the upstream is too busy or failing.
+   *
+   * @throws UpstreamUnavailableException if the call wasn't made
+   */
+  public <T> T call(Call<T> call) throws Throwable {
+    boolean probe = allowCall();
+    if (!permits.tryAcquire()) {
+      if (probe) {
+        endProbe();
+      }
+      rejectedBusy.incrementAndGet();
+      throw new UpstreamUnavailableException(name, "too many calls waiting on it", 1);
+    }
+    calls.incrementAndGet();
+    long start = nanoTime.getAsLong();
+    try {
+      T result = call.call();
+      recordResult(probe, nanoTime.getAsLong() - start < slowCallNanos);
+      return result;
+    } catch (SOAPFaultException ex) {
+      recordResult(probe, true);
+      throw ex;
+    } catch (Throwable ex) {
+      recordResult(probe, false);
+      throw ex;
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Checks the breaker before a call.
+   *
+   * @return if this call is the one probe let through a half open breaker
+   */
+  private synchronized boolean allowCall() {
+    if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openForNanos) {
+      state = State.HALF_OPEN;
+      log.info("Trying {} again", name);
+    }
+    if (state == State.CLOSED) {
+      return false;
+    }
+    if (state == State.HALF_OPEN && !probing) {
+      probing = true;
+      return true;
+    }
+    rejectedOpen.incrementAndGet();
+    long waitedNanos = nanoTime.getAsLong() - openedAt;
+    long retryAfter = Math.max(1, Duration.ofNanos(openForNanos - waitedNanos).toSeconds());
+    throw new UpstreamUnavailableException(name, "it has been failing", retryAfter);
+  }
+
+  private synchronized void endProbe() {
+    probing = false;
+  }
+
+  /**
+   * @param probe if this was the half open breaker's probe. Only it lets another probe through;
+   *     calls that started before the breaker opened can still finish while it's half open.
+   */
+  private synchronized void recordResult(boolean probe, boolean success) {
+    if (probe) {
+      probing = false;
+    }
+    if (success) {
+      if (state != State.CLOSED) {
+        log.info("{} is working again, closing its circuit breaker", name);
+      }
+      state = State.CLOSED;
+      failuresInARow = 0;
+      return;
+    }
+    failures.incrementAndGet();
+    failuresInARow += 1;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && failuresInARow >= failuresToOpen)) {
+      log.warn(
+          "{} failed {} calls in a row, not calling it for {} seconds",
+          name,
+          failuresInARow,
+          Duration.ofNanos(openForNanos).toSeconds());
+      state = State.OPEN;
+      openedAt = nanoTime.getAsLong();
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Provider
+public class UpstreamExceptionMapper implements ExceptionMapper<UpstreamUnavailableException> {
+  private static final Logger log = LoggerFactory.getLogger(UpstreamExceptionMapper.class);
+
+  @Override
+  public Response toResponse(UpstreamUnavailableException exception) {
+    log.warn(exception.getMessage());
+    return toResponse503(exception);
+  }
+
+  /** Also used for requests answered asynchronously, which don't go through the mappers. */
+  static Response toResponse503(UpstreamUnavailableException exception) {
+    return Response.status(503)
+        .header("Retry-After", exception.getRetryAfterSeconds())
+        .entity(
+            "\"Tyler Technologies' "
+                + exception.getUpstream()
+                + " service is unavailable right now, try again later\"")
+        .build();
+  }
+}
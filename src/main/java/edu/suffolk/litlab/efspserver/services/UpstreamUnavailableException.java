@@ -0,0 +1,27 @@
+package edu.suffolk.litlab.efspserver.services;
+
+/**
+ * Thrown instead of calling an upstream service (i.e. Tyler's court record service for Illinois)
+ * that is already too busy, or that has been failing. Becomes a 503 for the REST client.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final String upstream;
+  private final long retryAfterSeconds;
+
+  public UpstreamUnavailableException(String upstream, String reason, long retryAfterSeconds) {
+    super(upstream + " is unavailable: " + reason);
+    this.upstream = upstream;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public String getUpstream() {
+    return upstream;
+  }
+
+  /** About how long until the upstream will be tried again. */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
@@ -3,6 +3,7 @@ package edu.suffolk.litlab.efspserver.tyler;
 import com.fasterxml.jackson.databind.JsonNode;
 import edu.suffolk.litlab.efspserver.services.LoginInterface;
 import edu.suffolk.litlab.efspserver.services.ServiceHelpers;
+import edu.suffolk.litlab.efspserver.services.SoapPortPool;
 import jakarta.xml.ws.BindingProvider;
 import java.util.Map;
 import java.util.Optional;
@@ -83,7 +84,9 @@ public class TylerLogin implements LoginInterface {
    * @return A port connection to the SOAP server
    */
   private static IEfmUserService makeUserPort(EfmUserService userService) {
-    IEfmUserService port = userService.getBasicHttpBindingIEfmUserService();
+    IEfmUserService port =
+        SoapPortPool.get(
+            userService, IEfmUserService.class, userService::getBasicHttpBindingIEfmUserService);
     ServiceHelpers.setupServicePort((BindingProvider) port);
     return port;
   }
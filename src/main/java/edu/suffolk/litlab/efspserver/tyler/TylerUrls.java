@@ -1,5 +1,6 @@
 package edu.suffolk.litlab.efspserver.tyler;
 
+import edu.suffolk.litlab.efspserver.services.SoapTransport;
 import java.net.URL;
 import java.util.Map;
 import java.util.Optional;
@@ -41,7 +42,7 @@ public class TylerUrls {
    */
   public static Optional<EfmUserService> getEfmUserFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, efmUserWsdls);
-    return url.map(u -> new EfmUserService(u));
+    return url.map(u -> SoapTransport.makeService(wsdlDomain, () -> new EfmUserService(u)));
   }
 
   /**
@@ -56,7 +57,7 @@ public class TylerUrls {
 
   public static Optional<EfmFirmService> getEfmFirmFactory(String wsdlDomain) {
     Optional<URL> url = urlFromString(wsdlDomain, efmFirmWsdls);
-    return url.map(u -> new EfmFirmService(u));
+    return url.map(u -> SoapTransport.makeService(wsdlDomain, () -> new EfmFirmService(u)));
   }
 
   public static Optional<EfmFirmService> getEfmFirmFactory(String jurisdiction, String env) {
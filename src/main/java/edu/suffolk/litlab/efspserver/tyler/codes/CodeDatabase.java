@@ -1,22 +1,26 @@
 package edu.suffolk.litlab.efspserver.tyler.codes;
 
 import edu.suffolk.litlab.efspserver.StdLib;
+import edu.suffolk.litlab.efspserver.db.LazyConnection;
 import edu.suffolk.litlab.efspserver.ecfcodes.CodeDatabaseAPI;
 import jakarta.xml.bind.JAXBException;
 import java.io.InputStream;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import javax.sql.DataSource;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -26,6 +30,8 @@ import org.oasis_open.docs.codelist.ns.genericode._1.CodeListDocument;
 import org.oasis_open.docs.codelist.ns.genericode._1.Column;
 import org.oasis_open.docs.codelist.ns.genericode._1.Row;
 import org.oasis_open.docs.codelist.ns.genericode._1.Value;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,34 +46,89 @@ import org.slf4j.LoggerFactory;
 public class CodeDatabase extends CodeDatabaseAPI {
   private static final Logger log = LoggerFactory.getLogger(CodeDatabase.class);
 
+  /** If code lists should be loaded with COPY instead of batched INSERTs. */
+  private static final boolean LOAD_WITH_COPY =
+      StdLib.GetEnv("CODE_LOAD_WITH_COPY").map(Boolean::parseBoolean).orElse(true);
+
   /** The DNS domain (tyler jurisdiction + tyler environment, illinois-stage). */
   private final String tylerDomain;
 
+  /**
+   * The in memory codes for this domain, if they've been loaded. Taken once when this object is
+   * made, so all lookups done with one CodeDatabase see the same version of the codes.
+   */
+  private final Optional<CodeSnapshot> snapshot;
+
   public CodeDatabase(String jurisdiction, String env, Connection conn) {
+    this(jurisdiction + "-" + env, conn, CodeSnapshot.forDomain(jurisdiction + "-" + env));
+  }
+
+  private CodeDatabase(String tylerDomain, Connection conn, Optional<CodeSnapshot> snapshot) {
     super(conn);
-    this.tylerDomain = jurisdiction + "-" + env;
+    this.tylerDomain = tylerDomain;
+    this.snapshot = snapshot;
   }
 
+  /**
+   * Makes a CodeDatabase that only takes a connection from the pool if it needs to: lookups that
+   * can be answered from the {@link CodeSnapshot} don't need one. If the pool is out of
+   * connections, lookups that need one throw a {@link
+   * LazyConnection.ConnectionUnavailableException}.
+   */
   public static CodeDatabase fromDS(String jurisdiction, String env, DataSource ds) {
-    try {
-      CodeDatabase cd = new CodeDatabase(jurisdiction, env, ds.getConnection());
-      return cd;
-    } catch (SQLException e) {
-      log.error("In CodeDatabase constructor, can't get connection: " + StdLib.strFromException(e));
-      throw new RuntimeException(e);
+    String domain = jurisdiction + "-" + env;
+    return new CodeDatabase(domain, LazyConnection.of(ds), CodeSnapshot.current(domain, ds));
+  }
+
+  /**
+   * Reads all of the codes for this domain into memory and publishes them, so new CodeDatabases
+   * answer lookups from there. Only call this once the codes have been committed.
+   *
+   * @return true if the snapshot was published
+   */
+  public boolean publishSnapshot() {
+    if (conn == null) {
+      log.error("SQL connection not created yet!");
+      return false;
     }
+    Optional<CodeSnapshot> snap = CodeSnapshot.build(conn, tylerDomain);
+    snap.ifPresent(CodeSnapshot::publish);
+    return snap.isPresent();
   }
 
   @Override
   public void createTablesIfAbsent() throws SQLException {
     createTableIfAbsent("location");
     createTableIfAbsent("installedversion");
+    CourtPolicyStore.createIfAbsent(conn);
   }
 
   public String getDomain() {
     return tylerDomain;
   }
 
+  /**
+   * Starts refreshing this domain's codes in a {@link CodeStaging} schema, if the tables are all
+   * partitioned so they can be swapped in afterwards. Commits.
+   */
+  public Optional<CodeStaging> startStaging(Collection<String> tableNames) throws SQLException {
+    if (conn == null || !CodeStaging.canSwap(conn, tableNames)) {
+      return Optional.empty();
+    }
+    return Optional.of(CodeStaging.start(conn, tylerDomain));
+  }
+
+  /**
+   * For the rest of the current transaction, looks for tables in the given schema before public,
+   * so the update methods load into {@link CodeStaging} tables instead of the live ones. Needs
+   * autocommit to be off.
+   */
+  public void loadIntoSchema(String schema) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.execute("SET LOCAL search_path TO \"" + schema + "\", public");
+    }
+  }
+
   public void createTableIfAbsent(String tableName) throws SQLException {
     if (conn == null) {
       throw new SQLException();
@@ -98,6 +159,7 @@ public class CodeDatabase extends CodeDatabaseAPI {
           try (Statement createSt = conn.createStatement()) {
             log.info("Full statement: {}", createQuery);
             createSt.executeUpdate(createQuery);
+            createSt.executeUpdate(CodeTableConstants.getCreateDefaultPartition(tableName));
           }
         }
       }
@@ -157,30 +219,179 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   public void updateTable(String tableName, String courtName, CodeListDocument doc)
       throws SQLException {
-    String versionUpdate = CodeTableConstants.updateVersion();
-    try (PreparedStatement update = conn.prepareStatement(versionUpdate)) {
+    try {
       if (tableName.equals("optionalservices")) {
         OptionalServiceCode.updateOptionalServiceTable(courtName, this.tylerDomain, doc, this.conn);
       } else {
         updateTableInner(tableName, courtName, doc);
       }
+      updateVersion(tableName, courtName, doc.getIdentification().getVersion());
+    } catch (SQLException ex) {
+      log.error(
+          "Tried to execute an insert, but failed! Exception: {}", StdLib.strFromException(ex));
+      log.error("Going to rollback updates to this table");
+      throw ex;
+    }
+  }
+
+  /**
+   * Streams the code list straight into the table with COPY (see {@link GenericodeCopyLoader}),
+   * instead of unmarshalling it first. Falls back to the JAXB path if CODE_LOAD_WITH_COPY is false,
+   * we don't know the table's columns, or the connection isn't one we can COPY through.
+   */
+  @Override
+  public void updateTable(String tableName, String courtName, XMLStreamReader xsr)
+      throws JAXBException, SQLException {
+    Optional<CopyManager> copier = copyManager();
+    if (!LOAD_WITH_COPY || copier.isEmpty()) {
+      super.updateTable(tableName, courtName, xsr);
+      return;
+    }
+    try {
+      String version;
+      if (tableName.equals("optionalservices")) {
+        version =
+            OptionalServiceCode.copyOptionalServiceTable(
+                courtName, this.tylerDomain, xsr, this.conn, copier.get());
+      } else {
+        String copySql = CodeTableConstants.getCopyInto(tableName);
+        if (copySql.isEmpty()) {
+          super.updateTable(tableName, courtName, xsr);
+          return;
+        }
+        List<String> trailing =
+            CodeTableConstants.isCourtTable(tableName)
+                ? List.of(courtName, this.tylerDomain)
+                : List.of(this.tylerDomain);
+        version =
+            GenericodeCopyLoader.copyRows(
+                xsr,
+                copier.get(),
+                copySql,
+                CodeTableConstants.getTableColumnsWithType(tableName),
+                trailing,
+                false);
+      }
+      updateVersion(tableName, courtName, version);
+    } catch (XMLStreamException ex) {
+      throw new JAXBException("Couldn't read the " + tableName + " code list", ex);
+    } catch (SQLException ex) {
+      log.error("Couldn't copy {} for {}: {}", tableName, courtName, StdLib.strFromException(ex));
+      throw ex;
+    }
+  }
+
+  /**
+   * Like {@link #updateTable(String, String, XMLStreamReader)}, but instead of adding the rows to
+   * the table, which should have had the court's old rows deleted first, only changes the rows that
+   * are different from what's already there (see {@link CodeTableDiff}). Doesn't commit.
+   *
+   * @return how many rows were inserted and deleted
+   */
+  public CodeTableDiff.RowChanges diffTable(
+      String tableName, String courtName, XMLStreamReader xsr)
+      throws JAXBException, SQLException {
+    Optional<CopyManager> copier = copyManager();
+    if (copier.isEmpty()) {
+      throw new SQLException("Can only diff code tables through a Postgres connection");
+    }
+    try {
+      String version;
+      CodeTableDiff.RowChanges changes;
+      if (tableName.equals("optionalservices")) {
+        String main = incomingTable("optionalservices");
+        String filingList = incomingTable("optionalservices_filinglist");
+        version =
+            OptionalServiceCode.copyOptionalServiceTable(
+                courtName, this.tylerDomain, xsr, this.conn, copier.get(), main, filingList);
+        changes =
+            CodeTableDiff.apply(
+                    conn,
+                    "optionalservices",
+                    main,
+                    OptionalServiceCode.mainColumns(),
+                    tylerDomain,
+                    courtName)
+                .plus(
+                    CodeTableDiff.apply(
+                        conn,
+                        "optionalservices_filinglist",
+                        filingList,
+                        OptionalServiceCode.filingListColumns(),
+                        tylerDomain,
+                        courtName));
+      } else {
+        String incoming = incomingTable(tableName);
+        String copySql = CodeTableConstants.getCopyInto(tableName, incoming);
+        if (copySql.isEmpty()) {
+          throw new SQLException("Don't know the columns of " + tableName + ", can't diff it");
+        }
+        boolean courtTable = CodeTableConstants.isCourtTable(tableName);
+        List<String> trailing =
+            courtTable ? List.of(courtName, this.tylerDomain) : List.of(this.tylerDomain);
+        version =
+            GenericodeCopyLoader.copyRows(
+                xsr,
+                copier.get(),
+                copySql,
+                CodeTableConstants.getTableColumnsWithType(tableName),
+                trailing,
+                false);
+        changes =
+            CodeTableDiff.apply(
+                conn,
+                tableName,
+                incoming,
+                CodeTableConstants.getTableColumns(tableName),
+                tylerDomain,
+                courtTable ? courtName : null);
+      }
+      updateVersion(tableName, courtName, version);
+      return changes;
+    } catch (XMLStreamException ex) {
+      throw new JAXBException("Couldn't read the " + tableName + " code list", ex);
+    } catch (SQLException ex) {
+      log.error("Couldn't diff {} for {}: {}", tableName, courtName, StdLib.strFromException(ex));
+      throw ex;
+    }
+  }
+
+  /** Makes an empty temp table with the same columns as the given one, for incoming rows. */
+  private String incomingTable(String tableName) throws SQLException {
+    String incoming = tableName + "__incoming";
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(
+          "CREATE TEMP TABLE IF NOT EXISTS \"%s\" (LIKE \"%s\" INCLUDING DEFAULTS)"
+              .formatted(incoming, tableName));
+      st.executeUpdate("TRUNCATE \"%s\"".formatted(incoming));
+    }
+    return incoming;
+  }
+
+  private void updateVersion(String tableName, String courtName, String version)
+      throws SQLException {
+    String versionUpdate = CodeTableConstants.updateVersion();
+    try (PreparedStatement update = conn.prepareStatement(versionUpdate)) {
       // The version table that we directly download references things by "___codes.zip", not the
       // table name. We can translate those here.
       String zipName = CodeTableConstants.getZipNameFromTable(tableName);
       update.setString(1, courtName);
       update.setString(2, zipName);
-      update.setString(3, doc.getIdentification().getVersion());
+      update.setString(3, version);
       update.setString(4, tylerDomain);
-      update.setString(5, doc.getIdentification().getVersion());
+      update.setString(5, version);
       update.executeUpdate();
-    } catch (SQLException ex) {
-      log.error(
-          "Tried to execute an insert, but failed! Exception: {}", StdLib.strFromException(ex));
-      log.error("Going to rollback updates to this table");
-      throw ex;
     }
   }
 
+  /** The Postgres COPY API for this connection, if it is a Postgres connection. */
+  private Optional<CopyManager> copyManager() throws SQLException {
+    if (conn == null || !conn.isWrapperFor(PGConnection.class)) {
+      return Optional.empty();
+    }
+    return Optional.of(conn.unwrap(PGConnection.class).getCopyAPI());
+  }
+
   public void updateTableInner(String tableName, String courtName, CodeListDocument doc)
       throws SQLException {
     String insertQuery = CodeTableConstants.getInsertInto(tableName);
@@ -302,6 +513,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<CaseCategory> getCaseCategoriesFor(String courtLocationId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getCaseCategoriesFor(courtLocationId);
+    }
     return safetyWrap(
         () -> {
           String query = CaseCategory.getCaseCategoriesForLoc();
@@ -320,6 +534,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   public List<CaseCategory> getFilableCaseCategories(
       String courtLocationId, Optional<Boolean> initial) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getFilableCaseCategories(courtLocationId, initial);
+    }
     return safetyWrap(
         () -> {
           PreparedStatement st;
@@ -342,6 +559,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   public Optional<CaseCategory> getCaseCategoryWithCode(
       String courtLocationId, String caseCatCode) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getCaseCategoryWithCode(courtLocationId, caseCatCode);
+    }
     return safetyWrapOpt(
         () -> {
           String query = CaseCategory.getCaseCategoryWithCode();
@@ -405,6 +625,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   public List<CaseType> getCaseTypesFor(
       String courtLocationId, String caseCategoryCode, Optional<Boolean> initial) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getCaseTypesFor(courtLocationId, caseCategoryCode, initial);
+    }
     return safetyWrap(
         () -> {
           PreparedStatement st;
@@ -426,6 +649,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public Optional<CaseType> getCaseTypeWith(String courtLocationId, String caseTypeCode) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getCaseTypeWith(courtLocationId, caseTypeCode);
+    }
     return safetyWrapOpt(
         () -> {
           try (PreparedStatement st =
@@ -459,41 +685,24 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public DataFieldRow getDataField(String courtLocationId, String dataName) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getDataField(courtLocationId, dataName);
+    }
     if (conn == null) {
       log.error("SQL connection not created in DataField yet");
       return DataFieldRow.MissingDataField(dataName);
     }
 
-    try {
-      List<String> parentList = getParentList(courtLocationId);
-      String query = DataFieldRow.getAllFromDataFieldConfigForLoc();
-      for (String currentCourt : parentList) {
-        try (PreparedStatement st = conn.prepareStatement(query)) {
-          st.setString(1, tylerDomain);
-          st.setString(2, currentCourt);
-          st.setString(3, dataName);
-          ResultSet rs = st.executeQuery();
-          if (!rs.next()) {
-            continue;
-          }
-          DataFieldRow dfr =
-              new DataFieldRow(
-                  rs.getString(1),
-                  rs.getString(2),
-                  rs.getBoolean(3),
-                  rs.getBoolean(4),
-                  rs.getString(5),
-                  rs.getString(6),
-                  rs.getString(7),
-                  rs.getString(8),
-                  rs.getString(9),
-                  rs.getString(10),
-                  rs.getBoolean(11),
-                  rs.getString(12));
-          return dfr;
-        }
+    try (PreparedStatement st = conn.prepareStatement(DataFieldRow.getNearestDataFieldConfig())) {
+      st.setString(1, courtLocationId);
+      st.setString(2, tylerDomain);
+      st.setString(3, tylerDomain);
+      st.setString(4, dataName);
+      ResultSet rs = st.executeQuery();
+      if (!rs.next()) {
+        return DataFieldRow.MissingDataField(dataName);
       }
-      return DataFieldRow.MissingDataField(dataName);
+      return new DataFieldRow(rs);
     } catch (SQLException ex) {
       log.error("SQLException: " + ex.toString());
       return DataFieldRow.MissingDataField(dataName);
@@ -501,29 +710,22 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<NameAndCode> getDataFieldNames(String courtLocationId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getDataFieldNames(courtLocationId);
+    }
     if (conn == null) {
       log.error("SQL connection not created in DataField yet");
       return List.of();
     }
 
-    try {
-      List<String> parentList = getParentList(courtLocationId);
-      String query = DataFieldRow.getAllDataFieldNames();
+    try (PreparedStatement st = conn.prepareStatement(DataFieldRow.getNearestDataFieldNames())) {
+      st.setString(1, courtLocationId);
+      st.setString(2, tylerDomain);
+      st.setString(3, tylerDomain);
+      ResultSet rs = st.executeQuery();
       var dataFields = new ArrayList<NameAndCode>();
-      Set<String> codesInList = new HashSet<>();
-      for (String currentCourt : parentList) {
-        try (PreparedStatement st = conn.prepareStatement(query)) {
-          st.setString(1, tylerDomain);
-          st.setString(2, currentCourt);
-          ResultSet rs = st.executeQuery();
-          while (rs.next()) {
-            var code = rs.getString(1);
-            if (!codesInList.contains(code)) {
-              dataFields.add(new NameAndCode(rs.getString(2), rs.getString(1)));
-              codesInList.add(rs.getString(1));
-            }
-          }
-        }
+      while (rs.next()) {
+        dataFields.add(new NameAndCode(rs.getString(2), rs.getString(1)));
       }
       return dataFields;
     } catch (SQLException ex) {
@@ -534,42 +736,25 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   /** gets all data fields if dataNames is empty, otherwise just those that match the code. */
   public DataFields getDataFields(String courtLocationId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getDataFields(courtLocationId);
+    }
     if (conn == null) {
       log.error("SQL connection not created in DataField yet");
       return new DataFields();
     }
 
-    try {
-      List<String> parentList = getParentList(courtLocationId);
-      String query = DataFieldRow.getAllDataFieldConfigsForLoc();
-      List<Map<String, DataFieldRow>> allDataFields = new ArrayList<>();
-      for (String currentCourt : parentList) {
-        try (PreparedStatement st = conn.prepareStatement(query)) {
-          st.setString(1, tylerDomain);
-          st.setString(2, currentCourt);
-          ResultSet rs = st.executeQuery();
-          var dataFieldMap = new HashMap<String, DataFieldRow>();
-          while (rs.next()) {
-            DataFieldRow dfr =
-                new DataFieldRow(
-                    rs.getString(1),
-                    rs.getString(2),
-                    rs.getBoolean(3),
-                    rs.getBoolean(4),
-                    rs.getString(5),
-                    rs.getString(6),
-                    rs.getString(7),
-                    rs.getString(8),
-                    rs.getString(9),
-                    rs.getString(10),
-                    rs.getBoolean(11),
-                    rs.getString(12));
-            dataFieldMap.put(dfr.code, dfr);
-          }
-          allDataFields.add(dataFieldMap);
-        }
+    try (PreparedStatement st = conn.prepareStatement(DataFieldRow.getNearestDataFieldConfigs())) {
+      st.setString(1, courtLocationId);
+      st.setString(2, tylerDomain);
+      st.setString(3, tylerDomain);
+      ResultSet rs = st.executeQuery();
+      var dataFieldMap = new HashMap<String, DataFieldRow>();
+      while (rs.next()) {
+        DataFieldRow dfr = new DataFieldRow(rs);
+        dataFieldMap.put(dfr.code, dfr);
       }
-      return new DataFields(allDataFields);
+      return new DataFields(List.of(dataFieldMap));
     } catch (SQLException ex) {
       log.error("SQLException: " + ex.toString());
       return new DataFields();
@@ -644,6 +829,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
 
   public List<FilingCode> getFilingType(
       String courtLocationId, String categoryCode, String typeCode, boolean initial) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getFilingType(courtLocationId, categoryCode, typeCode, initial);
+    }
     return safetyWrap(
         () -> {
           List<FilingCode> filingTypes = new ArrayList<>();
@@ -671,6 +859,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public Optional<FilingCode> getFilingTypeWith(String courtLocationId, String filingCode) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getFilingTypeWith(courtLocationId, filingCode);
+    }
     return safetyWrapOpt(
         () -> {
           try (PreparedStatement st =
@@ -697,6 +888,62 @@ public class CodeDatabase extends CodeDatabaseAPI {
     }
   }
 
+  /**
+   * Vacuums and analyzes just the given tables, instead of the whole database. Needs autocommit to
+   * be on.
+   */
+  @Override
+  public void vacuumTables(Collection<String> tableNames) {
+    maintainTables(CodeTableConstants::vacuumAnalyze, tableNames);
+  }
+
+  /**
+   * Updates the planner statistics of just the given tables, for when only a few of their rows
+   * changed and there's little for vacuum to do.
+   */
+  @Override
+  public void analyzeTables(Collection<String> tableNames) {
+    maintainTables(CodeTableConstants::analyze, tableNames);
+  }
+
+  private void maintainTables(
+      Function<Collection<String>, String> makeQuery, Collection<String> tableNames) {
+    String query = "";
+    try {
+      // One missing table would fail the whole statement
+      List<String> existing = existingTables(tableNames);
+      if (existing.isEmpty()) {
+        return;
+      }
+      query = makeQuery.apply(existing);
+      try (Statement st = conn.createStatement()) {
+        log.info("Maintenance statement: {}", query);
+        st.executeUpdate(query);
+      }
+    } catch (SQLException ex) {
+      log.error("Error when running {} in {}: {}", query, tylerDomain, StdLib.strFromException(ex));
+    }
+  }
+
+  private List<String> existingTables(Collection<String> tableNames) throws SQLException {
+    List<String> existing = new ArrayList<>();
+    String query =
+        """
+        SELECT DISTINCT t FROM unnest(?) AS t
+        WHERE to_regclass(quote_ident(t)) IS NOT NULL""";
+    Array names = conn.createArrayOf("text", tableNames.toArray());
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setArray(1, names);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        existing.add(rs.getString(1));
+      }
+    } finally {
+      names.free();
+    }
+    return existing;
+  }
+
   public List<NameAndCode> getDamageAmount(String courtLocationId, String caseCategory) {
     return safetyWrap(
         () -> {
@@ -766,6 +1013,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
    * @return a list of party types
    */
   public List<PartyType> getPartyTypeFor(String courtLocationId, String caseTypeCode) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getPartyTypeFor(courtLocationId, caseTypeCode);
+    }
     return safetyWrap(
         () -> {
           String query = PartyType.getPartyTypeFromCaseType();
@@ -817,6 +1067,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<CrossReference> getCrossReference(String courtLocationId, String caseTypeId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getCrossReference(courtLocationId, caseTypeId);
+    }
     return safetyWrap(
         () -> {
           try (PreparedStatement st = conn.prepareStatement(CrossReference.query())) {
@@ -834,6 +1087,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<ServiceCodeType> getServiceTypes(String courtLocationId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getServiceTypes(courtLocationId);
+    }
     return safetyWrap(
         () -> {
           String query = ServiceCodeType.query();
@@ -851,6 +1107,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<DocumentTypeTableRow> getDocumentTypes(String courtLocationId, String filingCodeId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getDocumentTypes(courtLocationId, filingCodeId);
+    }
     if (conn == null) {
       log.error("SQL connection not created in Document Type yet");
       return List.of();
@@ -930,6 +1189,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<FilingComponent> getFilingComponents(String courtLocationId, String filingCodeId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getFilingComponents(courtLocationId, filingCodeId);
+    }
     if (conn == null) {
       log.error("SQL connection not created in FilingComponents yet");
       return List.of();
@@ -1089,6 +1351,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public List<OptionalServiceCode> getOptionalServices(String courtId, String filingCode) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getOptionalServices(courtId, filingCode);
+    }
     return safetyWrap(
         () -> {
           try (PreparedStatement st =
@@ -1168,12 +1433,87 @@ public class CodeDatabase extends CodeDatabaseAPI {
     return courtTables;
   }
 
+  /**
+   * The versions of each code list that Tyler says are available, from the last download of the
+   * "version" system table. Keyed by "location/codelist", like "adams/casetypecodes.zip".
+   */
+  public Map<String, String> getAvailableVersions() throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    Map<String, String> versions = new HashMap<>();
+    try (PreparedStatement st = conn.prepareStatement(CodeTableConstants.getAvailableVersions())) {
+      st.setString(1, this.tylerDomain);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        versions.put(rs.getString(1) + "/" + rs.getString(2), rs.getString(3));
+      }
+    }
+    return versions;
+  }
+
+  /**
+   * Gets the checkpoints ready for a checkpointed load (see {@link CodeUpdateProgress}). Doesn't
+   * commit.
+   *
+   * @param resume if true, only the stale checkpoints are removed; if false, all of them are
+   * @return the code lists already loaded, keyed like {@link #getAvailableVersions}
+   */
+  public Set<String> startCheckpoints(boolean resume) throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    CodeUpdateProgress.createIfAbsent(conn);
+    if (!resume) {
+      CodeUpdateProgress.clear(conn, tylerDomain);
+      return Set.of();
+    }
+    int stale = CodeUpdateProgress.removeStale(conn, tylerDomain);
+    if (stale > 0) {
+      log.info("Removed {} stale checkpoints for {}", stale, tylerDomain);
+    }
+    return CodeUpdateProgress.loaded(conn, tylerDomain);
+  }
+
+  /** Checkpoints the court's table at its installed version. Doesn't commit. */
+  public void markLoaded(String tableName, String courtName) throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    CodeUpdateProgress.markLoaded(
+        conn, tylerDomain, courtName, CodeTableConstants.getZipNameFromTable(tableName));
+  }
+
+  /** Saves a court's policy, as XML (see {@link CourtPolicyStore}). */
+  public void savePolicy(String courtId, String policyXml, Instant fetched) throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    CourtPolicyStore.save(conn, tylerDomain, courtId, policyXml, fetched);
+  }
+
+  /** This domain's saved court policies, by court. */
+  public Map<String, CourtPolicyStore.Saved> getSavedPolicies() throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    return CourtPolicyStore.loadAll(conn, tylerDomain);
+  }
+
+  /** Removes all of this domain's checkpoints, once a checkpointed load is done. */
+  public void clearCheckpoints() throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    CodeUpdateProgress.clear(conn, tylerDomain);
+  }
+
   public boolean deleteFromTable(String tableName) throws SQLException {
     if (conn == null) {
       throw new SQLException();
     }
     if (tableName.equals("optionalservices")) {
-      OptionalServiceCode.deleteFromOptionalServiceTable(null, tylerDomain, conn);
+      OptionalServiceCode.deleteFromOptionalServiceTable((String) null, tylerDomain, conn);
     } else {
       final String deleteFromTable = CodeTableConstants.getDeleteAllCourtsFrom(tableName);
       // TODO(brycew): make variant that deletes everything with a specific jurisdiction
@@ -1218,6 +1558,46 @@ public class CodeDatabase extends CodeDatabaseAPI {
     return true;
   }
 
+  /**
+   * Deletes the rows of all of the given courts from the table, in one statement instead of one
+   * per court.
+   *
+   * @return false if the table doesn't have courts, or one of the courts isn't valid
+   */
+  @Override
+  public boolean deleteFromTable(String tableName, Collection<String> courtLocations)
+      throws SQLException {
+    if (conn == null) {
+      throw new SQLException();
+    }
+    if (courtLocations.stream().anyMatch(court -> court == null || court.isBlank())) {
+      log.warn("Don't call this without valid courts: just don't use the var");
+      return false;
+    }
+    if (courtLocations.isEmpty()) {
+      return true;
+    }
+    if (tableName.equals("optionalservices")) {
+      OptionalServiceCode.deleteFromOptionalServiceTable(courtLocations, tylerDomain, conn);
+      return true;
+    }
+    final String deleteFromCourts = CodeTableConstants.getDeleteFromCourts(tableName);
+    if (deleteFromCourts.isBlank()) {
+      log.warn("Cannot remove courts from {}, a table with no court locations", tableName);
+      return false;
+    }
+    Array courts = conn.createArrayOf("text", courtLocations.toArray());
+    try (PreparedStatement st = conn.prepareStatement(deleteFromCourts)) {
+      st.setString(1, tylerDomain);
+      st.setArray(2, courts);
+      int deleted = st.executeUpdate();
+      log.debug("Deleted {} rows of {} courts from {}", deleted, courtLocations.size(), tableName);
+    } finally {
+      courts.free();
+    }
+    return true;
+  }
+
   /**
    * Gets all court location identifiers (CLI) stored in the database. updateTable should have been
    * called on the `location` table before this works.
@@ -1290,6 +1670,9 @@ public class CodeDatabase extends CodeDatabaseAPI {
   }
 
   public Optional<CourtLocationInfo> getFullLocationInfo(String courtId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getFullLocationInfo(courtId);
+    }
     return safetyWrapOpt(
         () -> {
           try (PreparedStatement st = conn.prepareStatement(CourtLocationInfo.fullSingleQuery())) {
@@ -1312,30 +1695,30 @@ public class CodeDatabase extends CodeDatabaseAPI {
    * ["cook:dv6", "cook:dv", "cook", "1", "0"]
    */
   public List<String> getParentList(String courtId) {
+    if (snapshot.isPresent()) {
+      return snapshot.get().getParentList(courtId);
+    }
     List<String> parentList = new ArrayList<String>();
-    String currentCourt = courtId;
-    while (!currentCourt.isBlank()) {
-      parentList.add(currentCourt);
-      try (PreparedStatement st = conn.prepareStatement(CourtLocationInfo.parentQuery())) {
-        st.setString(1, tylerDomain);
-        st.setString(2, currentCourt);
-        ResultSet rs = st.executeQuery();
-        if (rs.next()) {
-          currentCourt = rs.getString(2);
-        } else {
-          log.warn("CourtLocation " + currentCourt + ", ancestor of " + courtId + " not found!");
-          return parentList;
+    if (courtId == null || courtId.isBlank()) {
+      return parentList;
+    }
+    try (PreparedStatement st = conn.prepareStatement(CourtLocationInfo.ancestryQuery())) {
+      st.setString(1, courtId);
+      st.setString(2, tylerDomain);
+      st.setString(3, tylerDomain);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        parentList.add(rs.getString(1));
+        if (!rs.getBoolean(2)) {
+          log.warn("CourtLocation " + rs.getString(1) + ", ancestor of " + courtId + " not found!");
         }
-      } catch (SQLException ex) {
-        log.error(
-            "CourtLocation "
-                + currentCourt
-                + ", ancestor of "
-                + courtId
-                + " made a SQL error: "
-                + StdLib.strFromException(ex));
-        return parentList;
       }
+    } catch (SQLException ex) {
+      log.error(
+          "CourtLocation "
+              + courtId
+              + " ancestors made a SQL error: "
+              + StdLib.strFromException(ex));
     }
     return parentList;
   }
@@ -0,0 +1,611 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read-only, in memory copy of the code tables for a single domain (e.g. illinois-stage).
+ *
+ * <p>The codes only change when {@link edu.suffolk.litlab.efspserver.ecfcodes.CodeUpdater} runs
+ * (once a night), but a single filing looks them up dozens of times. Once an update commits, the
+ * whole domain is read into one of these and published, replacing the previous snapshot in a single
+ * step; {@link CodeDatabase} answers the lookups it can from here without touching Postgres.
+ *
+ * <p>Every lookup here should return exactly what the matching query in {@link CodeDatabase} would.
+ * Rows are indexed by (location, key), where the key is the column that the query filters on.
+ *
+ * <p>Codes can also be changed without publishing a new snapshot, e.g. by running `CodeUpdater
+ * refresh` by hand. So {@link #current} compares the domain's "installedversion" rows with the ones
+ * the snapshot was built from, at most every CODE_SNAPSHOT_CHECK_SECONDS, and rebuilds it if they
+ * changed.
+ */
+public class CodeSnapshot {
+  private static final Logger log = LoggerFactory.getLogger(CodeSnapshot.class);
+
+  /** The currently published snapshot for each domain. */
+  private static final Map<String, CodeSnapshot> published = new ConcurrentHashMap<>();
+
+  /** How often {@link #current} checks if the codes have changed since a snapshot was built. */
+  private static final Duration CHECK_INTERVAL =
+      Duration.ofSeconds(
+          Long.parseLong(StdLib.GetEnv("CODE_SNAPSHOT_CHECK_SECONDS").orElse("60")));
+
+  public final String domain;
+  public final Instant builtAt;
+
+  /** The domain's installed code list versions when this was built, see {@link #installed}. */
+  private final String installedVersions;
+
+  /** When (in {@link System#nanoTime}) this was last known to be current. */
+  private final AtomicLong checkedAt;
+
+  private final Map<String, CourtLocationInfo> locations;
+  private final Map<String, List<CaseCategory>> caseCategories;
+  private final Map<String, Map<String, List<CaseType>>> caseTypes;
+  private final Map<String, List<CaseType>> caseTypesByLoc;
+  private final Map<String, List<FilingCode>> filingCodes;
+  private final Map<String, Map<String, List<PartyType>>> partyTypes;
+  private final Map<String, Map<String, List<DocumentTypeTableRow>>> documentTypes;
+  private final Map<String, Map<String, List<FilingComponent>>> filingComponents;
+  private final Map<String, Map<String, List<OptionalServiceCode>>> optionalServices;
+  private final Map<String, List<ServiceCodeType>> serviceTypes;
+  private final Map<String, Map<String, List<CrossReference>>> crossReferences;
+  private final Map<String, Map<String, DataFieldRow>> dataFields;
+
+  /** Each location's line of succession, see {@link CodeDatabase#getParentList}. */
+  private final Map<String, List<String>> ancestry;
+
+  /**
+   * The nearest definition of every data field for each location, closest court's fields first.
+   */
+  private final Map<String, Map<String, DataFieldRow>> nearestDataFields;
+
+  private CodeSnapshot(String domain, Connection conn) throws SQLException {
+    this.domain = domain;
+    this.builtAt = Instant.now();
+    // Before reading the codes: if they change while they're read, the next check will notice
+    this.installedVersions = installed(conn, domain);
+    this.checkedAt = new AtomicLong(System.nanoTime());
+
+    Map<String, CourtLocationInfo> locs = new HashMap<>();
+    for (CourtLocationInfo info : load(conn, allLocations(), CourtLocationInfo::new)) {
+      if (info.code != null) {
+        locs.put(info.code, info);
+      }
+    }
+    this.locations = Map.copyOf(locs);
+
+    this.caseCategories =
+        byLocation(
+            load(
+                conn,
+                allCaseCategories(),
+                rs -> new Located<>(rs.getString(8), new CaseCategory(rs))));
+    List<CaseType> allTypes = load(conn, allCaseTypes(), CaseType::new);
+    this.caseTypes = byLocationAndKey(allTypes, ct -> ct.location, ct -> ct.casecategory);
+    this.caseTypesByLoc =
+        byLocation(allTypes.stream().map(ct -> new Located<>(ct.location, ct)).toList());
+    this.filingCodes =
+        byLocation(
+            load(conn, allFilingCodes(), FilingCode::new).stream()
+                .map(fc -> new Located<>(fc.location, fc))
+                .toList());
+    this.partyTypes =
+        byLocationAndKey(
+            load(conn, allPartyTypes(), PartyType::new), pt -> pt.location, pt -> pt.casetypeid);
+    this.documentTypes =
+        byLocationAndKey(
+            load(conn, allDocumentTypes(), DocumentTypeTableRow::new),
+            dt -> dt.location,
+            dt -> dt.filingcodeid);
+    this.filingComponents =
+        byLocationAndKey(
+            load(conn, allFilingComponents(), FilingComponent::new),
+            fc -> fc.location,
+            fc -> fc.filingcodeid);
+    List<Located<OptionalServiceCode>> optServs =
+        load(
+            conn,
+            allOptionalServices(),
+            rs -> new Located<>(rs.getString(10), new OptionalServiceCode(rs)));
+    this.optionalServices =
+        unwrap(byLocationAndKey(optServs, os -> os.location, os -> os.row.filingcodeid));
+    this.serviceTypes =
+        byLocation(
+            load(
+                conn,
+                allServiceTypes(),
+                rs -> new Located<>(rs.getString(6), new ServiceCodeType(rs))));
+    this.crossReferences =
+        byLocationAndKey(
+            load(conn, allCrossReferences(), CrossReference::new),
+            cr -> cr.location,
+            cr -> cr.casetypeid);
+
+    Map<String, Map<String, DataFieldRow>> fields = new HashMap<>();
+    for (DataFieldRow dfr : load(conn, allDataFields(), DataFieldRow::new)) {
+      if (dfr.location != null && dfr.code != null) {
+        fields.computeIfAbsent(dfr.location, l -> new LinkedHashMap<>()).putIfAbsent(dfr.code, dfr);
+      }
+    }
+    this.dataFields = Map.copyOf(fields);
+
+    Map<String, List<String>> chains = new HashMap<>();
+    Map<String, Map<String, DataFieldRow>> nearest = new HashMap<>();
+    for (String code : locations.keySet()) {
+      List<String> chain = walkParents(code);
+      chains.put(code, List.copyOf(chain));
+      nearest.put(code, Collections.unmodifiableMap(resolveDataFields(chain)));
+    }
+    this.ancestry = Map.copyOf(chains);
+    this.nearestDataFields = Map.copyOf(nearest);
+  }
+
+  /**
+   * Reads all of the code tables for a domain. Should only be called with a connection that can see
+   * a fully committed set of codes.
+   */
+  public static Optional<CodeSnapshot> build(Connection conn, String domain) {
+    Instant start = Instant.now();
+    try {
+      CodeSnapshot snap = new CodeSnapshot(domain, conn);
+      log.info(
+          "Built code snapshot for {} ({} locations) in {}",
+          domain,
+          snap.locations.size(),
+          Duration.between(start, Instant.now()));
+      return Optional.of(snap);
+    } catch (SQLException | RuntimeException ex) {
+      log.warn(
+          "Couldn't build a code snapshot for {}, will keep using the DB: {}",
+          domain,
+          StdLib.strFromException(ex));
+      return Optional.empty();
+    }
+  }
+
+  /** Makes this snapshot the one that all new lookups in its domain will read from. */
+  public static void publish(CodeSnapshot snap) {
+    published.put(snap.domain, snap);
+  }
+
+  /** Removes the snapshot for the domain; lookups will go back to the database. */
+  public static void invalidate(String domain) {
+    published.remove(domain);
+  }
+
+  public static Optional<CodeSnapshot> forDomain(String domain) {
+    return Optional.ofNullable(published.get(domain));
+  }
+
+  /**
+   * The published snapshot for the domain, checking first that the codes in the database haven't
+   * changed since it was built (if it hasn't been checked recently). A stale snapshot is rebuilt,
+   * or removed if it can't be, so lookups go to the database.
+   */
+  public static Optional<CodeSnapshot> current(String domain, DataSource ds) {
+    return current(domain, ds, CHECK_INTERVAL);
+  }
+
+  static Optional<CodeSnapshot> current(String domain, DataSource ds, Duration checkInterval) {
+    CodeSnapshot snap = published.get(domain);
+    if (snap == null || !snap.claimCheck(checkInterval)) {
+      return Optional.ofNullable(snap);
+    }
+    try (Connection conn = ds.getConnection()) {
+      if (snap.installedVersions.equals(installed(conn, domain))) {
+        return Optional.of(snap);
+      }
+      log.info("Codes for {} changed since the snapshot was built, rebuilding it", domain);
+      Optional<CodeSnapshot> rebuilt = build(conn, domain);
+      if (rebuilt.isPresent()) {
+        // Unless a newer snapshot was published in the meantime
+        published.replace(domain, snap, rebuilt.get());
+      } else {
+        published.remove(domain, snap);
+      }
+      return forDomain(domain);
+    } catch (SQLException ex) {
+      log.warn(
+          "Couldn't check if the code snapshot for {} is stale, still using it: {}",
+          domain,
+          StdLib.strFromException(ex));
+      return Optional.of(snap);
+    }
+  }
+
+  /** True if it's time to check this snapshot, and no other thread is already doing it. */
+  private boolean claimCheck(Duration checkInterval) {
+    long now = System.nanoTime();
+    long last = checkedAt.get();
+    return now - last >= checkInterval.toNanos() && checkedAt.compareAndSet(last, now);
+  }
+
+  /** A summary of every installed code list version in the domain, which changes with them. */
+  private static String installed(Connection conn, String domain) throws SQLException {
+    String query =
+        """
+        SELECT count(*), md5(string_agg(location || ' ' || codelist || ' ' ||
+            coalesce(installedversion, ''), ',' ORDER BY location, codelist))
+        FROM installedversion WHERE domain=?""";
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, domain);
+      try (ResultSet rs = st.executeQuery()) {
+        rs.next();
+        return rs.getLong(1) + ":" + rs.getString(2);
+      }
+    }
+  }
+
+  public Optional<CourtLocationInfo> getFullLocationInfo(String courtId) {
+    return Optional.ofNullable(get(locations, courtId, null));
+  }
+
+  /** See {@link CodeDatabase#getParentList}. */
+  public List<String> getParentList(String courtId) {
+    List<String> chain = get(ancestry, courtId, null);
+    if (chain != null) {
+      return new ArrayList<>(chain);
+    }
+    return walkParents(courtId);
+  }
+
+  private List<String> walkParents(String courtId) {
+    List<String> parentList = new ArrayList<>();
+    String currentCourt = courtId;
+    while (currentCourt != null
+        && !currentCourt.isBlank()
+        && parentList.size() <= CourtLocationInfo.MAX_ANCESTRY_DEPTH) {
+      parentList.add(currentCourt);
+      CourtLocationInfo info = locations.get(currentCourt);
+      if (info == null) {
+        log.warn("CourtLocation " + currentCourt + ", ancestor of " + courtId + " not found!");
+        return parentList;
+      }
+      currentCourt = info.parentnodeid;
+    }
+    return parentList;
+  }
+
+  private Map<String, DataFieldRow> resolveDataFields(List<String> chain) {
+    Map<String, DataFieldRow> resolved = new LinkedHashMap<>();
+    for (String currentCourt : chain) {
+      for (DataFieldRow row : get(dataFields, currentCourt, Map.of()).values()) {
+        resolved.putIfAbsent(row.code, row);
+      }
+    }
+    return resolved;
+  }
+
+  private Map<String, DataFieldRow> nearestDataFields(String courtLocationId) {
+    Map<String, DataFieldRow> fields = get(nearestDataFields, courtLocationId, null);
+    if (fields != null) {
+      return fields;
+    }
+    return resolveDataFields(getParentList(courtLocationId));
+  }
+
+  public List<CaseCategory> getCaseCategoriesFor(String courtLocationId) {
+    // TODO(#86): stop filtering out criminal categories
+    return filter(
+        get(caseCategories, courtLocationId, List.of()),
+        cat -> cat.ecfcasetype != null && !cat.ecfcasetype.equals("CriminalCase"));
+  }
+
+  public List<CaseCategory> getFilableCaseCategories(
+      String courtLocationId, Optional<Boolean> initial) {
+    var typesAtLoc = get(caseTypes, courtLocationId, Map.of());
+    boolean onlyInitial = initial.orElse(false);
+    return filter(
+        getCaseCategoriesFor(courtLocationId),
+        cat ->
+            get(typesAtLoc, cat.code, List.of()).stream()
+                .anyMatch(type -> !onlyInitial || type.initial));
+  }
+
+  public Optional<CaseCategory> getCaseCategoryWithCode(String courtLocationId, String code) {
+    return get(caseCategories, courtLocationId, List.of()).stream()
+        .filter(cat -> eq(cat.code, code))
+        .findFirst();
+  }
+
+  public List<CaseType> getCaseTypesFor(
+      String courtLocationId, String caseCategoryCode, Optional<Boolean> initial) {
+    boolean onlyInitial = initial.orElse(false);
+    return filter(
+        rows(caseTypes, courtLocationId, caseCategoryCode), type -> !onlyInitial || type.initial);
+  }
+
+  public Optional<CaseType> getCaseTypeWith(String courtLocationId, String caseTypeCode) {
+    return get(caseTypesByLoc, courtLocationId, List.of()).stream()
+        .filter(type -> eq(type.code, caseTypeCode))
+        .findFirst();
+  }
+
+  public List<FilingCode> getFilingType(
+      String courtLocationId, String categoryCode, String typeCode, boolean initial) {
+    List<FilingCode> atLoc = get(filingCodes, courtLocationId, List.of());
+    List<FilingCode> specific =
+        filter(
+            atLoc,
+            fc ->
+                !fc.iscourtuseonly
+                    && matchesTiming(fc, initial)
+                    && ((eq(fc.casecategory, categoryCode) && eq(fc.casetypeid, ""))
+                        || eq(fc.casetypeid, typeCode)));
+    if (!specific.isEmpty()) {
+      return specific;
+    }
+    return filter(
+        atLoc,
+        fc ->
+            !fc.iscourtuseonly
+                && matchesTiming(fc, initial)
+                && eq(fc.casecategory, "")
+                && eq(fc.casetypeid, ""));
+  }
+
+  public Optional<FilingCode> getFilingTypeWith(String courtLocationId, String filingCode) {
+    return get(filingCodes, courtLocationId, List.of()).stream()
+        .filter(fc -> eq(fc.code, filingCode))
+        .findFirst();
+  }
+
+  public List<PartyType> getPartyTypeFor(String courtLocationId, String caseTypeCode) {
+    List<PartyType> types = rows(partyTypes, courtLocationId, caseTypeCode);
+    if (types.isEmpty()) {
+      return rows(partyTypes, courtLocationId, "");
+    }
+    return types;
+  }
+
+  public List<DocumentTypeTableRow> getDocumentTypes(String courtLocationId, String filingCodeId) {
+    List<DocumentTypeTableRow> types = rows(documentTypes, courtLocationId, filingCodeId);
+    if (types.isEmpty()) {
+      return rows(documentTypes, courtLocationId, "");
+    }
+    return types;
+  }
+
+  public List<FilingComponent> getFilingComponents(String courtLocationId, String filingCodeId) {
+    return rows(filingComponents, courtLocationId, filingCodeId);
+  }
+
+  public List<OptionalServiceCode> getOptionalServices(String courtId, String filingCode) {
+    return rows(optionalServices, courtId, filingCode);
+  }
+
+  public List<ServiceCodeType> getServiceTypes(String courtLocationId) {
+    return new ArrayList<>(get(serviceTypes, courtLocationId, List.of()));
+  }
+
+  public List<CrossReference> getCrossReference(String courtLocationId, String caseTypeId) {
+    return rows(crossReferences, courtLocationId, caseTypeId);
+  }
+
+  public DataFieldRow getDataField(String courtLocationId, String dataName) {
+    DataFieldRow row = get(nearestDataFields(courtLocationId), dataName, null);
+    if (row != null) {
+      return row;
+    }
+    return DataFieldRow.MissingDataField(dataName);
+  }
+
+  public List<NameAndCode> getDataFieldNames(String courtLocationId) {
+    return nearestDataFields(courtLocationId).values().stream()
+        .map(row -> new NameAndCode(row.name, row.code))
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  public DataFields getDataFields(String courtLocationId) {
+    return new DataFields(List.of(nearestDataFields(courtLocationId)));
+  }
+
+  private static boolean matchesTiming(FilingCode fc, boolean initial) {
+    if (initial) {
+      return eq(fc.filingtype, "Initial") || eq(fc.filingtype, "Both");
+    } else {
+      return eq(fc.filingtype, "Subsequent") || eq(fc.filingtype, "Both");
+    }
+  }
+
+  /** Same as SQL's `=`: nothing is equal to null. */
+  private static boolean eq(String dbVal, String param) {
+    return dbVal != null && param != null && dbVal.equals(param);
+  }
+
+  private static <T> List<T> filter(List<T> rows, Predicate<T> pred) {
+    return rows.stream().filter(pred).collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  /** Callers are allowed to modify the lists they get back, so always hand out a copy. */
+  private static <T> List<T> rows(
+      Map<String, Map<String, List<T>>> index, String location, String key) {
+    return new ArrayList<>(get(get(index, location, Map.of()), key, List.of()));
+  }
+
+  /** Like {@link Map#getOrDefault}, but the immutable maps here throw on a null key. */
+  private static <V> V get(Map<String, V> map, String key, V fallback) {
+    if (key == null) {
+      return fallback;
+    }
+    return map.getOrDefault(key, fallback);
+  }
+
+  /** A row that doesn't know its own location. */
+  private static class Located<T> {
+    final String location;
+    final T row;
+
+    Located(String location, T row) {
+      this.location = location;
+      this.row = row;
+    }
+  }
+
+  private static <T> Map<String, List<T>> byLocation(List<Located<T>> rows) {
+    Map<String, List<T>> index = new HashMap<>();
+    for (Located<T> r : rows) {
+      if (r.location != null) {
+        index.computeIfAbsent(r.location, l -> new ArrayList<>()).add(r.row);
+      }
+    }
+    return index.entrySet().stream()
+        .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> List.copyOf(e.getValue())));
+  }
+
+  private static <T> Map<String, Map<String, List<T>>> byLocationAndKey(
+      List<T> rows,
+      Function<T, String> location,
+      Function<T, String> key) {
+    Map<String, Map<String, List<T>>> index = new HashMap<>();
+    for (T r : rows) {
+      String loc = location.apply(r);
+      String k = key.apply(r);
+      if (loc != null && k != null) {
+        index
+            .computeIfAbsent(loc, l -> new HashMap<>())
+            .computeIfAbsent(k, l -> new ArrayList<>())
+            .add(r);
+      }
+    }
+    return index.entrySet().stream()
+        .collect(
+            Collectors.toUnmodifiableMap(
+                Map.Entry::getKey,
+                e ->
+                    e.getValue().entrySet().stream()
+                        .collect(
+                            Collectors.toUnmodifiableMap(
+                                Map.Entry::getKey, inner -> List.copyOf(inner.getValue())))));
+  }
+
+  private static <T> Map<String, Map<String, List<T>>> unwrap(
+      Map<String, Map<String, List<Located<T>>>> index) {
+    return index.entrySet().stream()
+        .collect(
+            Collectors.toUnmodifiableMap(
+                Map.Entry::getKey,
+                e ->
+                    e.getValue().entrySet().stream()
+                        .collect(
+                            Collectors.toUnmodifiableMap(
+                                Map.Entry::getKey,
+                                inner -> inner.getValue().stream().map(l -> l.row).toList()))));
+  }
+
+  @FunctionalInterface
+  private interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
+
+  private <T> List<T> load(Connection conn, String query, RowMapper<T> mapper)
+      throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, domain);
+      try (ResultSet rs = st.executeQuery()) {
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+          rows.add(mapper.map(rs));
+        }
+        return rows;
+      }
+    }
+  }
+
+  private static String allLocations() {
+    return CourtLocationInfo.fullSingleQuery().replace("AND code=?", "");
+  }
+
+  private static String allCaseCategories() {
+    return """
+        SELECT code, name, ecfcasetype, procedureremedyinitial,
+          procedureremedysubsequent, damageamountinitial, damageamountsubsequent, location
+        FROM casecategory WHERE domain=?""";
+  }
+
+  private static String allCaseTypes() {
+    return """
+        SELECT code, name, casecategory, initial,
+          fee, willfileddate, efspcode, location
+        FROM casetype WHERE domain=?""";
+  }
+
+  private static String allFilingCodes() {
+    return """
+        SELECT code, name, fee, casecategory, casetypeid, filingtype, iscourtuseonly,
+               civilclaimamount, probateestateamount, amountincontroversy, useduedate,
+               isproposedorder, efspcode, location
+        FROM filing WHERE domain=?""";
+  }
+
+  /** Keeps the same ordering as {@link PartyType#getPartyTypeFromCaseType}. */
+  private static String allPartyTypes() {
+    return """
+        SELECT code, name, isavailablefornewparties, casetypeid, isrequired, amount,
+               numberofpartiestoignore, sendforredaction, dateofdeath, displayorder,
+               efspcode, location
+        FROM partytype
+        WHERE domain=?
+        ORDER BY location, isrequired DESC, displayorder, casetypeid DESC""";
+  }
+
+  private static String allDocumentTypes() {
+    return """
+        SELECT code, name, filingcodeid, iscourtuseonly, isdefault, efspcode, location
+        FROM documenttype
+        WHERE domain=? AND iscourtuseonly='False'""";
+  }
+
+  private static String allFilingComponents() {
+    return """
+        SELECT code, name, filingcodeid, required, allowmultiple, displayorder, efspcode, location
+        FROM filingcomponent WHERE domain=?""";
+  }
+
+  private static String allOptionalServices() {
+    return """
+        SELECT os.code, os.name, os.displayorder, os.fee, os_fl.filingcodeid, os.multiplier,
+          os.altfeedesc, os.hasfeeprompt, os.feeprompttext, os.location
+        FROM optionalservices as os JOIN optionalservices_filinglist as os_fl
+          ON os.domain=os_fl.domain AND os.location=os_fl.location AND os.code=os_fl.code
+        WHERE os.domain=?""";
+  }
+
+  private static String allServiceTypes() {
+    return """
+        SELECT code, name, servicemethod, fee, disclaimertext, location
+        FROM servicetype WHERE domain=?""";
+  }
+
+  private static String allCrossReferences() {
+    return """
+        SELECT code, name, casetypeid, isdefault, isrequired, validationregex,
+          customvalidationfailuremessage, efspcode, location
+        FROM crossreference WHERE domain=?""";
+  }
+
+  private static String allDataFields() {
+    return DataFieldRow.getAllDataFieldConfigsForLoc().replace(" AND location=?", "");
+  }
+}
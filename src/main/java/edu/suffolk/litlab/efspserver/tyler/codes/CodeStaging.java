@@ -0,0 +1,303 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import static edu.suffolk.litlab.efspserver.StdLib.GetEnv;
+
+import edu.suffolk.litlab.efspserver.StdLib;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes a domain's codes in staging tables, and then swaps them in all at once.
+ *
+ * <p>The code tables are partitioned by domain, with each domain in its own partition (named by
+ * {@link #partitionName}). A refresh makes a staging schema for the domain with an empty copy of
+ * each table that's changing, copies over the rows that aren't being reloaded, and loads the new
+ * codes into it (see {@link CodeDatabase#loadIntoSchema}). Then {@link #swap} indexes and
+ * analyzes the new tables, and in one short transaction detaches the domain's old partitions and
+ * attaches the new ones. Readers see either all of the old codes or all of the new ones, and since
+ * no rows are deleted from the live tables, there's nothing to vacuum afterwards.
+ *
+ * <p>The swap does block readers, briefly. DETACH PARTITION takes an ACCESS EXCLUSIVE lock on the
+ * live table, which every domain shares, so code lookups on those tables in any domain wait until
+ * the swap commits (lookups served from {@link CodeSnapshot} don't). Nothing is copied while the
+ * locks are held, so that's usually a few milliseconds, but the swap also has to wait for queries
+ * that are already running, and lookups queue up behind it meanwhile. So it gives up after
+ * CODE_SWAP_LOCK_TIMEOUT_SECONDS (default 10), leaving the old codes in place. DETACH ...
+ * CONCURRENTLY would avoid the lock, but it can't run in a transaction, so the tables couldn't be
+ * swapped all at once, and it isn't allowed on tables with a default partition, which the tables
+ * keep for domains that haven't been swapped in yet.
+ */
+public class CodeStaging {
+  private static final Logger log = LoggerFactory.getLogger(CodeStaging.class);
+
+  private static final long LOCK_TIMEOUT_SECONDS =
+      Long.parseLong(GetEnv("CODE_SWAP_LOCK_TIMEOUT_SECONDS").orElse("10"));
+
+  /** Turns "CREATE INDEX name ON [ONLY] public.table USING ..." into its columns part. */
+  private static final Pattern indexDef =
+      Pattern.compile("^CREATE INDEX \\S+ ON (?:ONLY )?\\S+ (USING .*)$");
+
+  private final Connection conn;
+  private final String domain;
+  private final String schema;
+  private final Set<String> tables = new LinkedHashSet<>();
+
+  private CodeStaging(Connection conn, String domain) {
+    this.conn = conn;
+    this.domain = domain;
+    this.schema = "staging__" + sanitize(domain);
+  }
+
+  private static String sanitize(String domain) {
+    return domain.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+  }
+
+  /** The name of the partition of the table that has the domain's rows. */
+  public static String partitionName(String tableName, String domain) {
+    String name = tableName + "__" + sanitize(domain);
+    return name.length() > 63 ? name.substring(0, 63) : name;
+  }
+
+  /**
+   * A name for an index of the partition. Indices end up in the public schema with the partition,
+   * so they can't keep the names Postgres would pick in the staging schema, which could already be
+   * taken there (i.e. "installedversion_pkey").
+   */
+  private static String indexName(String partition, String suffix) {
+    int keep = Math.min(partition.length(), 63 - suffix.length());
+    return partition.substring(0, keep) + suffix;
+  }
+
+  /**
+   * If all of the tables are partitioned, so they can be swapped. Tables from before the code
+   * tables were partitioned aren't, until DatabaseVersion updates them.
+   */
+  public static boolean canSwap(Connection conn, Collection<String> tableNames)
+      throws SQLException {
+    String query =
+        """
+        SELECT COUNT(*) FROM pg_catalog.pg_class c
+        JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = 'public' AND c.relname = ? AND c.relkind = 'p'""";
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      for (String table : tableNames) {
+        st.setString(1, table);
+        ResultSet rs = st.executeQuery();
+        if (!rs.next() || rs.getInt(1) <= 0) {
+          log.info("{} isn't partitioned, can't swap in new codes", table);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Starts a new staging schema for the domain, dropping anything left over from an earlier refresh
+   * that didn't finish. Commits.
+   */
+  public static CodeStaging start(Connection conn, String domain) throws SQLException {
+    CodeStaging staging = new CodeStaging(conn, domain);
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate("DROP SCHEMA IF EXISTS \"" + staging.schema + "\" CASCADE");
+      st.executeUpdate("CREATE SCHEMA \"" + staging.schema + "\"");
+    }
+    conn.commit();
+    return staging;
+  }
+
+  public String getSchema() {
+    return schema;
+  }
+
+  /** Makes an empty staging copy of the table. */
+  public void addTable(String tableName) throws SQLException {
+    if (!tables.add(tableName)) {
+      return;
+    }
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(
+          "CREATE TABLE \"%s\".\"%s\" (LIKE public.\"%s\" INCLUDING DEFAULTS)"
+              .formatted(schema, tableName, tableName));
+      if (tableName.equals("installedversion")) {
+        // Versions are upserted, which needs the primary key
+        st.executeUpdate(
+            """
+            ALTER TABLE "%s".installedversion
+            ADD CONSTRAINT "%s" PRIMARY KEY (location, codelist, domain)"""
+                .formatted(schema, indexName(partitionName(tableName, domain), "_pkey")));
+      }
+    }
+  }
+
+  /** Copies the domain's rows for all courts except the given ones into the staging table. */
+  public void keepOtherCourts(String tableName, Collection<String> reloading) throws SQLException {
+    addTable(tableName);
+    String copy =
+        """
+        INSERT INTO "%s"."%s" SELECT * FROM public."%s"
+        WHERE domain=? AND location <> ALL(?)"""
+            .formatted(schema, tableName, tableName);
+    try (PreparedStatement st = conn.prepareStatement(copy)) {
+      st.setString(1, domain);
+      st.setArray(2, textArray(reloading));
+      st.executeUpdate();
+    }
+  }
+
+  /**
+   * Copies the domain's installed versions into the staging table, except for the code lists that
+   * are being reloaded, which are given as "location/codelist".
+   */
+  public void keepOtherVersions(Collection<String> reloading) throws SQLException {
+    addTable("installedversion");
+    String copy =
+        """
+        INSERT INTO "%s".installedversion SELECT * FROM public.installedversion
+        WHERE domain=? AND (location || '/' || codelist) <> ALL(?)"""
+            .formatted(schema);
+    try (PreparedStatement st = conn.prepareStatement(copy)) {
+      st.setString(1, domain);
+      st.setArray(2, textArray(reloading));
+      st.executeUpdate();
+    }
+  }
+
+  private Array textArray(Collection<String> vals) throws SQLException {
+    return conn.createArrayOf("text", vals.toArray());
+  }
+
+  /** Removes the staging schema and everything in it. Commits. */
+  public void drop() {
+    try (Statement st = conn.createStatement()) {
+      boolean autoCommit = conn.getAutoCommit();
+      if (!autoCommit) {
+        conn.rollback();
+      }
+      st.executeUpdate("DROP SCHEMA IF EXISTS \"" + schema + "\" CASCADE");
+      if (!autoCommit) {
+        conn.commit();
+      }
+    } catch (SQLException ex) {
+      log.error("Couldn't drop {}: {}", schema, StdLib.strFromException(ex));
+    }
+  }
+
+  /**
+   * Swaps the staging tables in as the domain's partitions. Expects everything that was loaded to
+   * have been committed. Leaves autocommit off.
+   *
+   * @return true if the new codes were swapped in; if not, the old codes are still there
+   */
+  public boolean swap() {
+    try {
+      conn.setAutoCommit(false);
+      // Before the swap, so the swap itself is quick: build the indices, get statistics, and add
+      // a check that matches the partition, so ATTACH doesn't need to scan the table.
+      try (Statement st = conn.createStatement()) {
+        for (String table : tables) {
+          List<String> indices = indexColumns(table);
+          for (int i = 0; i < indices.size(); i++) {
+            st.executeUpdate(
+                "CREATE INDEX \"%s\" ON \"%s\".\"%s\" %s"
+                    .formatted(
+                        indexName(partitionName(table, domain), "_idx" + i),
+                        schema,
+                        table,
+                        indices.get(i)));
+          }
+          st.executeUpdate(
+              "ALTER TABLE \"%s\".\"%s\" ADD CHECK (domain IS NOT NULL AND domain = %s)"
+                  .formatted(schema, table, domainLiteral()));
+          st.executeUpdate("ANALYZE \"%s\".\"%s\"".formatted(schema, table));
+        }
+      }
+      conn.commit();
+
+      try (Statement st = conn.createStatement()) {
+        st.executeUpdate("SET LOCAL lock_timeout = '%ds'".formatted(LOCK_TIMEOUT_SECONDS));
+        for (String table : tables) {
+          String partition = partitionName(table, domain);
+          if (partitionExists(partition)) {
+            st.executeUpdate(
+                "ALTER TABLE public.\"%s\" DETACH PARTITION public.\"%s\""
+                    .formatted(table, partition));
+            st.executeUpdate("DROP TABLE public.\"%s\"".formatted(partition));
+          } else {
+            // The first swap for this domain: its rows are still in the default partition.
+            String deleteOld = "DELETE FROM public.\"%s\" WHERE domain=?".formatted(table);
+            try (PreparedStatement del = conn.prepareStatement(deleteOld)) {
+              del.setString(1, domain);
+              del.executeUpdate();
+            }
+          }
+          st.executeUpdate(
+              "ALTER TABLE \"%s\".\"%s\" RENAME TO \"%s\"".formatted(schema, table, partition));
+          st.executeUpdate(
+              "ALTER TABLE \"%s\".\"%s\" SET SCHEMA public".formatted(schema, partition));
+          st.executeUpdate(
+              "ALTER TABLE public.\"%s\" ATTACH PARTITION public.\"%s\" FOR VALUES IN (%s)"
+                  .formatted(table, partition, domainLiteral()));
+        }
+        st.executeUpdate("DROP SCHEMA \"" + schema + "\" CASCADE");
+      }
+      conn.commit();
+      log.info("Swapped in new codes for {} in {}", domain, tables);
+      return true;
+    } catch (SQLException ex) {
+      log.error("Couldn't swap in new codes for {}: {}", domain, StdLib.strFromException(ex));
+      drop();
+      return false;
+    }
+  }
+
+  private boolean partitionExists(String partition) throws SQLException {
+    try (PreparedStatement st =
+        conn.prepareStatement("SELECT to_regclass('public.\"' || ? || '\"') IS NOT NULL")) {
+      st.setString(1, partition);
+      ResultSet rs = st.executeQuery();
+      return rs.next() && rs.getBoolean(1);
+    }
+  }
+
+  /**
+   * The non-unique indices on the live table, as "USING btree (column)". The only unique index is
+   * the installedversion primary key, which {@link #addTable} already made.
+   */
+  private List<String> indexColumns(String table) throws SQLException {
+    String query =
+        """
+        SELECT pg_get_indexdef(i.indexrelid) FROM pg_catalog.pg_index i
+        WHERE i.indrelid = to_regclass('public."' || ? || '"') AND NOT i.indisunique""";
+    List<String> columns = new ArrayList<>();
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, table);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        Matcher m = indexDef.matcher(rs.getString(1));
+        if (m.matches()) {
+          columns.add(m.group(1));
+        }
+      }
+    }
+    return columns;
+  }
+
+  /** DDL can't take parameters, so the domain has to be quoted in the statement. */
+  private String domainLiteral() {
+    return "'" + domain.replace("'", "''") + "'";
+  }
+}
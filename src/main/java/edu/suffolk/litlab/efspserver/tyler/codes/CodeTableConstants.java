@@ -1,6 +1,7 @@
 package edu.suffolk.litlab.efspserver.tyler.codes;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,7 +17,9 @@ public class CodeTableConstants {
   private static final Map<String, TableColumns> tableColumns;
   private static final Map<String, String> createQueries = new HashMap<>();
   private static final Map<String, String> insertQueries = new HashMap<>();
+  private static final Map<String, String> copyQueries = new HashMap<>();
   private static final Map<String, String> deleteFromQueries = new HashMap<>();
+  private static final Map<String, String> deleteFromCourtsQueries = new HashMap<>();
   private static final Map<String, String> deleteAllCourtsFromQueries = new HashMap<>();
 
   static {
@@ -319,9 +322,12 @@ public class CodeTableConstants {
     for (Map.Entry<String, TableColumns> table : tableColumns.entrySet()) {
       createQueries.put(table.getKey(), createTableQuery(table.getKey(), table.getValue()));
       insertQueries.put(table.getKey(), createInsertQuery(table.getKey(), table.getValue()));
+      copyQueries.put(table.getKey(), createCopyQuery(table.getKey(), table.getValue()));
       deleteAllCourtsFromQueries.put(table.getKey(), "DELETE FROM " + table.getKey() + " WHERE domain=?");
       if (table.getValue().needsExtraLocCol) {
         deleteFromQueries.put(table.getKey(), "DELETE FROM " + table.getKey() + " WHERE domain=? AND location=?");
+        deleteFromCourtsQueries.put(table.getKey(),
+            "DELETE FROM " + table.getKey() + " WHERE domain=? AND location = ANY(?)");
       }
     }
     
@@ -412,6 +418,10 @@ public class CodeTableConstants {
         WHERE v.domain=? AND ((iv.installedversion IS NULL) OR (v.version != iv.installedversion))""";
   }
 
+  public static String getAvailableVersions() {
+    return "SELECT location, codelist, version FROM version WHERE domain=?";
+  }
+
   public static String getCaseSubtypesFor() {
     return """
         SELECT code, name
@@ -451,6 +461,20 @@ public class CodeTableConstants {
     return "VACUUM ANALYZE";
   }
 
+  /** Vacuums and analyzes just the given tables (with all of their partitions). */
+  public static String vacuumAnalyze(Collection<String> tableNames) {
+    return "VACUUM ANALYZE " + quotedList(tableNames);
+  }
+
+  /** Updates the planner statistics of just the given tables. */
+  public static String analyze(Collection<String> tableNames) {
+    return "ANALYZE " + quotedList(tableNames);
+  }
+
+  private static String quotedList(Collection<String> tableNames) {
+    return tableNames.stream().map(t -> "\"" + t + "\"").collect(Collectors.joining(", "));
+  }
+
   public static boolean tableHasLocation(String tableName) {
     return tableColumns.containsKey(tableName) && tableColumns.get(tableName).needsExtraLocCol;
   }
@@ -462,6 +486,11 @@ public class CodeTableConstants {
     return "";
   }
 
+  /** Makes the partition that a domain's rows go in until it has its own partition. */
+  public static String getCreateDefaultPartition(String tableName) {
+    return "CREATE TABLE \"" + tableName + "__default\" PARTITION OF \"" + tableName + "\" DEFAULT";
+  }
+
   public static List<String> getCreateIndex(String tableName) {
     if (!tableIndices.containsKey(tableName)) {
       return List.of();
@@ -476,6 +505,25 @@ public class CodeTableConstants {
     return insertQueries.get(tableName);
   }
   
+  /**
+   * Returns a COPY ... FROM STDIN (CSV) statement for the table, with the columns in the same order
+   * as {@link #getInsertInto}.
+   */
+  public static String getCopyInto(String tableName) {
+    if (!copyQueries.containsKey(tableName)) {
+      return "";
+    }
+    return copyQueries.get(tableName);
+  }
+
+  /** Same as {@link #getCopyInto(String)}, but copies into another table with the same columns. */
+  public static String getCopyInto(String tableName, String intoTable) {
+    if (!tableColumns.containsKey(tableName)) {
+      return "";
+    }
+    return createCopyQuery(intoTable, tableColumns.get(tableName));
+  }
+
   public static String getDeleteFrom(String tableName) {
     if (!deleteFromQueries.containsKey(tableName)) {
       return "";
@@ -483,6 +531,14 @@ public class CodeTableConstants {
     return deleteFromQueries.get(tableName);
   }
 
+  /** Deletes the rows of every court in an array parameter, in one statement. */
+  public static String getDeleteFromCourts(String tableName) {
+    if (!deleteFromCourtsQueries.containsKey(tableName)) {
+      return "";
+    }
+    return deleteFromCourtsQueries.get(tableName);
+  }
+
   public static String getDeleteAllCourtsFrom(String tableName) {
     if (!deleteAllCourtsFromQueries.containsKey(tableName)) {
       return "";
@@ -530,6 +586,20 @@ public class CodeTableConstants {
     return insertLocation.toString();
   }
 
+  private static String createCopyQuery(String tableName, TableColumns tc) {
+    StringBuilder copy = new StringBuilder();
+    copy.append("COPY \"" + tableName + "\" (");
+    copy.append(
+        tc.mainList.stream()
+            .map(col -> "\"" + col.getLeft() + "\"")
+            .collect(Collectors.joining(", ")));
+    if (tc.needsExtraLocCol) {
+      copy.append(", location");
+    }
+    copy.append(", domain) FROM STDIN WITH (FORMAT csv)");
+    return copy.toString();
+  }
+
   private static String createTableQuery(String tableName, TableColumns tc) {
     StringBuilder createLocation = new StringBuilder();
     createLocation.append("CREATE TABLE " + tableName + "(");
@@ -551,7 +621,8 @@ public class CodeTableConstants {
       createLocation.append(
           ", PRIMARY KEY(" + tc.primaryKeys.stream().collect(Collectors.joining(",")) + ")");
     }
-    createLocation.append(")");
+    // Each domain gets its own partition, so it can be swapped out on its own (see CodeStaging)
+    createLocation.append(") PARTITION BY LIST (domain)");
     return createLocation.toString();
   }
 }
@@ -0,0 +1,100 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a freshly downloaded code list to a live code table by only touching the rows that
+ * changed, instead of deleting all of a court's rows and inserting them again.
+ *
+ * <p>Most code lists are the same from one night to the next, but a full reload still rewrites
+ * every row, which leaves the tables full of dead tuples for vacuum to clean up. Here the new rows
+ * are COPYed into a temp table, and each row on both sides is hashed (md5 of the whole row). Rows
+ * whose hash is only in the live table are deleted, and rows whose hash is only in the new list
+ * are inserted; a row that changed is one of each. Code tables don't have a unique key per row (the
+ * same code can show up more than once), so duplicate rows are matched up by how many times each
+ * one shows up. Rows are deleted by their physical location (tableoid and ctid, since the tables
+ * are partitioned), which is fine because it all happens in one statement.
+ */
+public class CodeTableDiff {
+
+  /** How many rows a diff inserted and deleted. */
+  public record RowChanges(long inserted, long deleted) {
+    public static final RowChanges NONE = new RowChanges(0, 0);
+
+    public RowChanges plus(RowChanges other) {
+      return new RowChanges(inserted + other.inserted, deleted + other.deleted);
+    }
+
+    public boolean isEmpty() {
+      return inserted == 0 && deleted == 0;
+    }
+  }
+
+  /**
+   * Makes the domain's (and court's) rows in the live table match the rows in the incoming table.
+   * Doesn't commit.
+   *
+   * @param liveTable the code table to update
+   * @param incomingTable a table with the same columns, holding all of the new rows for the court
+   * @param columns the columns to compare, besides the location and domain
+   * @param location the court, or null if the table isn't per court
+   */
+  public static RowChanges apply(
+      Connection conn,
+      String liveTable,
+      String incomingTable,
+      List<String> columns,
+      String domain,
+      String location)
+      throws SQLException {
+    String cols = columns.stream().map(c -> "\"" + c + "\"").collect(Collectors.joining(", "));
+    String hash = "md5(ROW(%s)::text)".formatted(cols);
+    boolean perCourt = location != null;
+    String liveWhere = perCourt ? "domain=? AND location=?" : "domain=?";
+    String insertCols = perCourt ? cols + ", location, domain" : cols + ", domain";
+    String insertVals = perCourt ? "?, ?" : "?";
+    String query =
+        """
+        WITH old AS (
+          SELECT tableoid, ctid, h, row_number() OVER (PARTITION BY h) AS n
+          FROM (SELECT tableoid, ctid, %2$s AS h FROM "%3$s" WHERE %5$s) AS o
+        ), incoming AS (
+          SELECT %1$s, h, row_number() OVER (PARTITION BY h) AS n
+          FROM (SELECT %1$s, %2$s AS h FROM "%4$s") AS i
+        ), gone AS (
+          DELETE FROM "%3$s" WHERE %5$s AND (tableoid, ctid) IN (
+            SELECT old.tableoid, old.ctid FROM old
+            WHERE NOT EXISTS (SELECT 1 FROM incoming WHERE incoming.h=old.h AND incoming.n=old.n))
+          RETURNING 1
+        ), added AS (
+          INSERT INTO "%3$s" (%6$s)
+          SELECT %1$s, %7$s FROM incoming
+          WHERE NOT EXISTS (SELECT 1 FROM old WHERE old.h=incoming.h AND old.n=incoming.n)
+          RETURNING 1
+        )
+        SELECT (SELECT COUNT(*) FROM added), (SELECT COUNT(*) FROM gone)"""
+            .formatted(cols, hash, liveTable, incomingTable, liveWhere, insertCols, insertVals);
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      int idx = 1;
+      // old, gone, then added
+      for (int i = 0; i < 2; i++) {
+        st.setString(idx++, domain);
+        if (perCourt) {
+          st.setString(idx++, location);
+        }
+      }
+      if (perCourt) {
+        st.setString(idx++, location);
+      }
+      st.setString(idx++, domain);
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return new RowChanges(rs.getLong(1), rs.getLong(2));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checkpoints for long code loads, so a run that dies part way through can pick up where it left
+ * off instead of starting over.
+ *
+ * <p>Each court's table is committed along with a row here saying which version of it was loaded
+ * (copied from "installedversion" in the same transaction). When resuming, the tables with a
+ * checkpoint are skipped. A checkpoint is only good as long as the installed version is the one it
+ * recorded: if something else has loaded the table since (or removed it), the checkpoint is thrown
+ * out and the table is loaded again.
+ */
+public class CodeUpdateProgress {
+
+  private static final String CREATE =
+      """
+      CREATE TABLE IF NOT EXISTS codeupdateprogress (
+        domain text NOT NULL,
+        location text NOT NULL,
+        codelist text NOT NULL,
+        installedversion text,
+        completed timestamp with time zone NOT NULL DEFAULT now(),
+        PRIMARY KEY (domain, location, codelist))""";
+
+  public static void createIfAbsent(Connection conn) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(CREATE);
+    }
+  }
+
+  /**
+   * Records that the court's code list is loaded, at the version that's installed now. Call in the
+   * same transaction that loaded it. Doesn't commit.
+   *
+   * @param codelist the zip name of the table, like in "installedversion"
+   */
+  public static void markLoaded(Connection conn, String domain, String location, String codelist)
+      throws SQLException {
+    String query =
+        """
+        INSERT INTO codeupdateprogress (domain, location, codelist, installedversion)
+        SELECT domain, location, codelist, installedversion FROM installedversion
+        WHERE domain=? AND location=? AND codelist=?
+        ON CONFLICT (domain, location, codelist)
+        DO UPDATE SET installedversion=EXCLUDED.installedversion, completed=now()""";
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, domain);
+      st.setString(2, location);
+      st.setString(3, codelist);
+      st.executeUpdate();
+    }
+  }
+
+  /**
+   * Removes the domain's checkpoints whose code list has a different installed version now.
+   * Doesn't commit.
+   *
+   * @return how many were removed
+   */
+  public static int removeStale(Connection conn, String domain) throws SQLException {
+    String query =
+        """
+        DELETE FROM codeupdateprogress AS p WHERE p.domain=? AND NOT EXISTS (
+          SELECT 1 FROM installedversion AS iv
+          WHERE iv.domain=p.domain AND iv.location=p.location AND iv.codelist=p.codelist
+            AND iv.installedversion IS NOT DISTINCT FROM p.installedversion)""";
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, domain);
+      return st.executeUpdate();
+    }
+  }
+
+  /** The domain's checkpointed code lists, as "location/codelist". */
+  public static Set<String> loaded(Connection conn, String domain) throws SQLException {
+    Set<String> loaded = new HashSet<>();
+    try (PreparedStatement st =
+        conn.prepareStatement(
+            "SELECT location, codelist FROM codeupdateprogress WHERE domain=?")) {
+      st.setString(1, domain);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        loaded.add(rs.getString(1) + "/" + rs.getString(2));
+      }
+    }
+    return loaded;
+  }
+
+  /** Removes all of the domain's checkpoints. Doesn't commit. */
+  public static void clear(Connection conn, String domain) throws SQLException {
+    try (PreparedStatement st =
+        conn.prepareStatement("DELETE FROM codeupdateprogress WHERE domain=?")) {
+      st.setString(1, domain);
+      st.executeUpdate();
+    }
+  }
+}
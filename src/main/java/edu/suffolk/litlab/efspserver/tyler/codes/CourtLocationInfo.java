@@ -207,11 +207,37 @@ public class CourtLocationInfo {
     this.allowhearing = Boolean.parseBoolean(rs.getString(43));
   }
 
-  public static String parentQuery() {
+  /** How far up the court hierarchy we'll go, in case the codes ever have a loop of parents. */
+  public static final int MAX_ANCESTRY_DEPTH = 32;
+
+  /**
+   * A recursive CTE, `ancestry(code, depth)`, with a court (at depth 0) and each of its parents, up
+   * to the root. An ancestor that's missing from the location table is still included, but ends
+   * the chain. Need to provide the location (1) and the domain (2).
+   */
+  public static String ancestryCte() {
     return """
-      SELECT code, parentnodeid
-      FROM location
-      WHERE domain=? AND code=?
+      WITH RECURSIVE ancestry(code, depth) AS (
+        SELECT CAST(? AS text), 0
+        UNION ALL
+        SELECT CAST(l.parentnodeid AS text), a.depth + 1
+        FROM ancestry AS a JOIN location AS l ON l.code=a.code
+        WHERE l.domain=? AND l.parentnodeid IS NOT NULL AND l.parentnodeid <> ''
+          AND a.depth < %d
+      )
+      """.formatted(MAX_ANCESTRY_DEPTH);
+  }
+
+  /**
+   * Gets a court and all of its ancestors, closest first, and if each is in the location table.
+   * Need to provide the location (1) and the domain (2, 3).
+   */
+  public static String ancestryQuery() {
+    return ancestryCte()
+        + """
+        SELECT a.code, l.code IS NOT NULL
+        FROM ancestry AS a LEFT JOIN location AS l ON l.domain=? AND l.code=a.code
+        ORDER BY a.depth
         """;
   }
 
@@ -0,0 +1,69 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the last court policy we got from Tyler for each court, as the policy response's XML, so
+ * the policies don't all have to be fetched again after a restart.
+ */
+public class CourtPolicyStore {
+
+  private static final String CREATE =
+      """
+      CREATE TABLE IF NOT EXISTS courtpolicy (
+        domain text NOT NULL,
+        location text NOT NULL,
+        policy text NOT NULL,
+        fetched timestamp with time zone NOT NULL,
+        PRIMARY KEY (domain, location))""";
+
+  /** A saved policy, and when it was fetched from Tyler. */
+  public record Saved(String policyXml, Instant fetched) {}
+
+  public static void createIfAbsent(Connection conn) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(CREATE);
+    }
+  }
+
+  /** Saves the court's policy, replacing any older one. Doesn't commit. */
+  public static void save(
+      Connection conn, String domain, String location, String policyXml, Instant fetched)
+      throws SQLException {
+    String query =
+        """
+        INSERT INTO courtpolicy (domain, location, policy, fetched) VALUES (?, ?, ?, ?)
+        ON CONFLICT (domain, location)
+        DO UPDATE SET policy=EXCLUDED.policy, fetched=EXCLUDED.fetched
+        WHERE courtpolicy.fetched < EXCLUDED.fetched""";
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, domain);
+      st.setString(2, location);
+      st.setString(3, policyXml);
+      st.setTimestamp(4, Timestamp.from(fetched));
+      st.executeUpdate();
+    }
+  }
+
+  /** All of the domain's saved policies, by court. */
+  public static Map<String, Saved> loadAll(Connection conn, String domain) throws SQLException {
+    Map<String, Saved> saved = new HashMap<>();
+    try (PreparedStatement st =
+        conn.prepareStatement("SELECT location, policy, fetched FROM courtpolicy WHERE domain=?")) {
+      st.setString(1, domain);
+      ResultSet rs = st.executeQuery();
+      while (rs.next()) {
+        saved.put(rs.getString(1), new Saved(rs.getString(2), rs.getTimestamp(3).toInstant()));
+      }
+    }
+    return saved;
+  }
+}
@@ -1,5 +1,7 @@
 package edu.suffolk.litlab.efspserver.tyler.codes;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +51,22 @@ public class DataFieldRow {
     this.location = location;
   }
 
+  public DataFieldRow(ResultSet rs) throws SQLException {
+    this(
+        rs.getString(1),
+        rs.getString(2),
+        rs.getBoolean(3),
+        rs.getBoolean(4),
+        rs.getString(5),
+        rs.getString(6),
+        rs.getString(7),
+        rs.getString(8),
+        rs.getString(9),
+        rs.getString(10),
+        rs.getBoolean(11),
+        rs.getString(12));
+  }
+
   /**
    * According to the Tyler docs, if some data field is not defined, it defaults to isVisible=False,
    * and isRequired=False. Everything else will be empty
@@ -67,25 +85,60 @@ public class DataFieldRow {
     return matcher.find();
   }
 
-  /**
-   * Gets all columns from datafieldconfig table Need to provide the location (1) and the code (2)
-   * of the field. For example, 'adams' and 'FilingEventCaseParties'
-   *
-   * @return the String to make a SQL PreparedStatement from
-   */
-  public static String getAllFromDataFieldConfigForLoc() {
-    return "SELECT code, name, isvisible, isrequired, helptext, ghosttext, contextualhelpdata, "
-        + "validationmessage, regularexpression, defaultvalueexpression, isreadonly, location "
-        + "FROM datafieldconfig WHERE domain=? AND location=? AND code=?";
-  }
-
   public static String getAllDataFieldConfigsForLoc() {
     return "SELECT code, name, isvisible, isrequired, helptext, ghosttext, contextualhelpdata, "
         + "validationmessage, regularexpression, defaultvalueexpression, isreadonly, location "
         + "FROM datafieldconfig WHERE domain=? AND location=?";
   }
 
-  public static String getAllDataFieldNames() {
-    return "SELECT code, name FROM datafieldconfig WHERE domain=? AND location=?";
+  /**
+   * Gets the nearest definition of every data field for a court: if the court doesn't define a
+   * field, the definition from its closest ancestor that does is used. Need to provide the location
+   * (1) and the domain (2, 3).
+   */
+  public static String getNearestDataFieldConfigs() {
+    return CourtLocationInfo.ancestryCte()
+        + """
+        SELECT DISTINCT ON (d.code) d.code, d.name, d.isvisible, d.isrequired, d.helptext,
+            d.ghosttext, d.contextualhelpdata, d.validationmessage, d.regularexpression,
+            d.defaultvalueexpression, d.isreadonly, d.location, a.depth
+        FROM datafieldconfig AS d JOIN ancestry AS a ON d.location=a.code
+        WHERE d.domain=?
+        ORDER BY d.code, a.depth
+        """;
+  }
+
+  /**
+   * Same as {@link #getNearestDataFieldConfigs()}, but for a single field. Need to provide the
+   * location (1), the domain (2, 3), and the code of the field (4).
+   */
+  public static String getNearestDataFieldConfig() {
+    return CourtLocationInfo.ancestryCte()
+        + """
+        SELECT d.code, d.name, d.isvisible, d.isrequired, d.helptext,
+            d.ghosttext, d.contextualhelpdata, d.validationmessage, d.regularexpression,
+            d.defaultvalueexpression, d.isreadonly, d.location
+        FROM datafieldconfig AS d JOIN ancestry AS a ON d.location=a.code
+        WHERE d.domain=? AND d.code=?
+        ORDER BY a.depth
+        LIMIT 1
+        """;
+  }
+
+  /**
+   * The names of all of the data fields that a court has or inherits, closest court first. Need to
+   * provide the location (1) and the domain (2, 3).
+   */
+  public static String getNearestDataFieldNames() {
+    return CourtLocationInfo.ancestryCte()
+        + """
+        SELECT code, name FROM (
+          SELECT DISTINCT ON (d.code) d.code, d.name, a.depth
+          FROM datafieldconfig AS d JOIN ancestry AS a ON d.location=a.code
+          WHERE d.domain=?
+          ORDER BY d.code, a.depth
+        ) AS nearest
+        ORDER BY depth, code
+        """;
   }
 }
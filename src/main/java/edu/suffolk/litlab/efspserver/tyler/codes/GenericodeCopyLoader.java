@@ -0,0 +1,178 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.lang3.tuple.Pair;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads a genericode code list into the database with Postgres' COPY, reading the XML one row at a
+ * time with StAX.
+ *
+ * <p>Unmarshalling the whole code list into a {@link
+ * org.oasis_open.docs.codelist.ns.genericode._1.CodeListDocument} and batching INSERTs makes
+ * several objects per cell; for the big tables (filingcomponent, datafield, documenttype,
+ * optionalservices) that adds up. Here only the current row is in memory, and rows are sent to the
+ * database in chunks as CSV.
+ *
+ * <p>Values are converted the same way as {@link CodeDatabase#singleInsert}: booleans with {@link
+ * Boolean#parseBoolean}, integers with {@link Integer#parseInt}, and columns that a row doesn't have
+ * are NULL.
+ */
+public class GenericodeCopyLoader {
+  private static final Logger log = LoggerFactory.getLogger(GenericodeCopyLoader.class);
+
+  /** How much CSV to build up before sending it to the database. */
+  private static final int FLUSH_CHARS = 64 * 1024;
+
+  /**
+   * COPYs every row of the code list into the table.
+   *
+   * @param copySql the COPY ... FROM STDIN WITH (FORMAT csv) statement to run
+   * @param columns the genericode column ids (and their SQL types) to copy, in the same order as
+   *     copySql
+   * @param trailing values that are the same for each row (like the location and domain), put after
+   *     the columns
+   * @param numberRows if true, each row starts with its (1-based) position in the code list
+   * @return the version of the code list, from its Identification
+   */
+  public static String copyRows(
+      XMLStreamReader xsr,
+      CopyManager copier,
+      String copySql,
+      List<Pair<String, String>> columns,
+      List<String> trailing,
+      boolean numberRows)
+      throws XMLStreamException, SQLException {
+    Map<String, Integer> colIdx = new HashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      colIdx.put(columns.get(i).getLeft(), i);
+    }
+    String[] row = new String[columns.size()];
+    int currentCol = -1;
+    boolean inIdentification = false;
+    String version = null;
+    long rowCount = 0;
+    StringBuilder csv = new StringBuilder(FLUSH_CHARS + 1024);
+
+    long start = System.nanoTime();
+    CopyIn copy = copier.copyIn(copySql);
+    try {
+      while (xsr.hasNext()) {
+        int event = xsr.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          switch (xsr.getLocalName()) {
+            case "Identification" -> inIdentification = true;
+            case "Version" -> {
+              if (inIdentification) {
+                version = xsr.getElementText();
+              }
+            }
+            case "Row" -> Arrays.fill(row, null);
+            case "Value" ->
+                currentCol = colIdx.getOrDefault(xsr.getAttributeValue(null, "ColumnRef"), -1);
+            case "SimpleValue" -> {
+              if (currentCol >= 0) {
+                row[currentCol] = xsr.getElementText();
+              }
+            }
+            default -> {}
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          switch (xsr.getLocalName()) {
+            case "Identification" -> inIdentification = false;
+            case "Value" -> currentCol = -1;
+            case "Row" -> {
+              rowCount += 1;
+              if (numberRows) {
+                csv.append(rowCount).append(',');
+              }
+              appendRow(csv, row, columns, trailing);
+              if (csv.length() >= FLUSH_CHARS) {
+                flush(copy, csv);
+              }
+            }
+            default -> {}
+          }
+        }
+      }
+      flush(copy, csv);
+      copy.endCopy();
+    } finally {
+      if (copy.isActive()) {
+        copy.cancelCopy();
+      }
+    }
+    log.debug(
+        "Copied {} rows with `{}` in {} ms",
+        rowCount,
+        copySql,
+        (System.nanoTime() - start) / 1_000_000);
+    if (version == null) {
+      throw new XMLStreamException("Code list doesn't have an Identification/Version");
+    }
+    return version;
+  }
+
+  private static void appendRow(
+      StringBuilder csv, String[] row, List<Pair<String, String>> columns, List<String> trailing) {
+    for (int i = 0; i < row.length; i++) {
+      if (i > 0) {
+        csv.append(',');
+      }
+      appendValue(csv, convert(row[i], columns.get(i).getRight()));
+    }
+    for (String val : trailing) {
+      csv.append(',');
+      appendValue(csv, val);
+    }
+    csv.append('\n');
+  }
+
+  private static String convert(String val, String colType) {
+    if (val == null) {
+      return null;
+    }
+    if (colType.equalsIgnoreCase("boolean")) {
+      return Boolean.toString(Boolean.parseBoolean(val));
+    } else if (colType.equalsIgnoreCase("integer")) {
+      return Integer.toString(Integer.parseInt(val));
+    }
+    return val;
+  }
+
+  /** In COPY's CSV, an unquoted empty value is NULL, and a quoted one is the empty string. */
+  private static void appendValue(StringBuilder csv, String val) {
+    if (val == null) {
+      return;
+    }
+    csv.append('"');
+    for (int i = 0; i < val.length(); i++) {
+      char c = val.charAt(i);
+      if (c == '"') {
+        csv.append('"');
+      }
+      csv.append(c);
+    }
+    csv.append('"');
+  }
+
+  private static void flush(CopyIn copy, StringBuilder csv) throws SQLException {
+    if (csv.length() == 0) {
+      return;
+    }
+    byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+    copy.writeToCopy(bytes, 0, bytes.length);
+    csv.setLength(0);
+  }
+}
@@ -1,17 +1,24 @@
 package edu.suffolk.litlab.efspserver.tyler.codes;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.oasis_open.docs.codelist.ns.genericode._1.CodeListDocument;
 import org.oasis_open.docs.codelist.ns.genericode._1.Column;
 import org.oasis_open.docs.codelist.ns.genericode._1.Value;
+import org.postgresql.copy.CopyManager;
 
 public class OptionalServiceCode {
   public final String code;
@@ -149,7 +156,7 @@ public class OptionalServiceCode {
           "efspcode" text,
           "domain" varchar(80),
           "location" varchar(80)
-      )
+      ) PARTITION BY LIST (domain)
           """;
     final String CREATE_FL =
         """
@@ -158,11 +165,14 @@ public class OptionalServiceCode {
           "filingcodeid" varchar(40),
           "domain" varchar(80),
           "location" varchar(80)
-      )
+      ) PARTITION BY LIST (domain)
         """;
     try (Statement createSt = conn.createStatement()) {
       createSt.executeUpdate(CREATE_MAIN);
+      createSt.executeUpdate(CodeTableConstants.getCreateDefaultPartition("optionalservices"));
       createSt.executeUpdate(CREATE_FL);
+      createSt.executeUpdate(
+          CodeTableConstants.getCreateDefaultPartition("optionalservices_filinglist"));
     }
   }
 
@@ -203,6 +213,26 @@ public class OptionalServiceCode {
     }
   }
 
+  /** Deletes the optional services of all of the given courts, one statement per table. */
+  public static void deleteFromOptionalServiceTable(
+      Collection<String> courtLocations, String tylerDomain, Connection conn) throws SQLException {
+    Array courts = conn.createArrayOf("text", courtLocations.toArray());
+    try (PreparedStatement stmt =
+            conn.prepareStatement(
+                "DELETE FROM optionalservices WHERE domain=? AND location = ANY(?)");
+        PreparedStatement stmtFL =
+            conn.prepareStatement(
+                "DELETE FROM optionalservices_filinglist WHERE domain=? AND location = ANY(?)")) {
+      for (PreparedStatement st : List.of(stmt, stmtFL)) {
+        st.setString(1, tylerDomain);
+        st.setArray(2, courts);
+        st.executeUpdate();
+      }
+    } finally {
+      courts.free();
+    }
+  }
+
   private static class DistinctOptServ {
     public String code;
     public String domain;
@@ -302,4 +332,130 @@ public class OptionalServiceCode {
       stmtFilingList.executeBatch();
     }
   }
+
+  private static final List<Pair<String, String>> loadColumns =
+      List.of(
+          new ImmutablePair<>("code", "varchar(40)"),
+          new ImmutablePair<>("name", "text"),
+          new ImmutablePair<>("displayorder", "integer"),
+          new ImmutablePair<>("fee", "text"),
+          new ImmutablePair<>("filingcodeid", "varchar(40)"),
+          new ImmutablePair<>("multiplier", "boolean"),
+          new ImmutablePair<>("altfeedesc", "text"),
+          new ImmutablePair<>("hasfeeprompt", "boolean"),
+          new ImmutablePair<>("feeprompttext", "text"),
+          new ImmutablePair<>("efspcode", "text"));
+
+  /**
+   * Does the same thing as {@link #updateOptionalServiceTable}, but streams the code list with
+   * {@link GenericodeCopyLoader}. Each row goes into both optionalservices and
+   * optionalservices_filinglist, and only one COPY can run at a time, so the rows are copied into a
+   * temporary table first and split up from there.
+   *
+   * @return the version of the code list
+   */
+  public static String copyOptionalServiceTable(
+      String courtName,
+      String tylerDomain,
+      XMLStreamReader xsr,
+      Connection conn,
+      CopyManager copier)
+      throws SQLException, XMLStreamException {
+    return copyOptionalServiceTable(
+        courtName,
+        tylerDomain,
+        xsr,
+        conn,
+        copier,
+        "optionalservices",
+        "optionalservices_filinglist");
+  }
+
+  /** Same as above, but puts the rows in the given tables instead of the live ones. */
+  public static String copyOptionalServiceTable(
+      String courtName,
+      String tylerDomain,
+      XMLStreamReader xsr,
+      Connection conn,
+      CopyManager copier,
+      String mainTable,
+      String filingListTable)
+      throws SQLException, XMLStreamException {
+    final String createLoad =
+        """
+      CREATE TEMP TABLE IF NOT EXISTS optionalservices_load (
+          "rownum" integer,
+          "code" varchar(40),
+          "name" text,
+          "displayorder" integer,
+          "fee" text,
+          "filingcodeid" varchar(40),
+          "multiplier" boolean,
+          "altfeedesc" text,
+          "hasfeeprompt" boolean,
+          "feeprompttext" text,
+          "efspcode" text
+      )
+        """;
+    final String copyLoad =
+        """
+      COPY optionalservices_load ("rownum", "code", "name", "displayorder", "fee", "filingcodeid",
+        "multiplier", "altfeedesc", "hasfeeprompt", "feeprompttext", "efspcode"
+      ) FROM STDIN WITH (FORMAT csv)
+        """;
+    // The first row for each code wins, like the alreadyAdded check in updateOptionalServiceTable
+    final String insertMain =
+        """
+      INSERT INTO "%s" ("code", "name", "displayorder", "fee", "multiplier", "altfeedesc",
+        "hasfeeprompt", "feeprompttext", "efspcode", "domain", "location"
+      ) SELECT DISTINCT ON ("code") "code", "name", "displayorder", "fee", "multiplier", "altfeedesc",
+        "hasfeeprompt", "feeprompttext", "efspcode", ?, ?
+      FROM optionalservices_load ORDER BY "code", "rownum"
+        """
+            .formatted(mainTable);
+    final String insertFL =
+        """
+      INSERT INTO "%s" ("code", "filingcodeid", "domain", "location")
+      SELECT "code", "filingcodeid", ?, ? FROM optionalservices_load
+        """
+            .formatted(filingListTable);
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate(createLoad);
+      st.executeUpdate("TRUNCATE optionalservices_load");
+    }
+    String version =
+        GenericodeCopyLoader.copyRows(xsr, copier, copyLoad, loadColumns, List.of(), true);
+    try (PreparedStatement stmt = conn.prepareStatement(insertMain);
+        PreparedStatement stmtFL = conn.prepareStatement(insertFL)) {
+      stmt.setString(1, tylerDomain);
+      stmt.setString(2, courtName);
+      stmt.executeUpdate();
+      stmtFL.setString(1, tylerDomain);
+      stmtFL.setString(2, courtName);
+      stmtFL.executeUpdate();
+    }
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate("TRUNCATE optionalservices_load");
+    }
+    return version;
+  }
+
+  /** The columns of the optionalservices table, besides the domain and location. */
+  public static List<String> mainColumns() {
+    return List.of(
+        "code",
+        "name",
+        "displayorder",
+        "fee",
+        "multiplier",
+        "altfeedesc",
+        "hasfeeprompt",
+        "feeprompttext",
+        "efspcode");
+  }
+
+  /** The columns of the optionalservices_filinglist table, besides the domain and location. */
+  public static List<String> filingListColumns() {
+    return List.of("code", "filingcodeid");
+  }
 }
@@ -3,11 +3,13 @@ package gov.niem.niem.proxy.xsd._2;
 
 import java.util.ArrayList;
 import java.util.List;
+import jakarta.activation.DataHandler;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlAttribute;
 import jakarta.xml.bind.annotation.XmlID;
 import jakarta.xml.bind.annotation.XmlIDREF;
+import jakarta.xml.bind.annotation.XmlMimeType;
 import jakarta.xml.bind.annotation.XmlSchemaType;
 import jakarta.xml.bind.annotation.XmlType;
 import jakarta.xml.bind.annotation.XmlValue;
@@ -43,7 +45,8 @@ import org.apache.cxf.xjc.runtime.JAXBToStringStyle;
 public class Base64Binary {
 
     @XmlValue
-    protected byte[] value;
+    @XmlMimeType("application/octet-stream")
+    protected DataHandler value;
     @XmlAttribute(name = "id", namespace = "http://niem.gov/niem/structures/2.0")
     @XmlJavaTypeAdapter(CollapsedStringAdapter.class)
     @XmlID
@@ -63,9 +66,10 @@ public class Base64Binary {
      * 
      * @return
      *     possible object is
-     *     byte[]
+     *     {@link DataHandler }
+     *     
      */
-    public byte[] getValue() {
+    public DataHandler getValue() {
         return value;
     }
 
@@ -74,9 +78,10 @@ public class Base64Binary {
      * 
      * @param value
      *     allowed object is
-     *     byte[]
+     *     {@link DataHandler }
+     *     
      */
-    public void setValue(byte[] value) {
+    public void setValue(DataHandler value) {
         this.value = value;
     }
 
@@ -0,0 +1,156 @@
+package edu.suffolk.litlab.efspserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HeaderSignerTest {
+  private static final Logger log = LoggerFactory.getLogger(HeaderSignerTest.class);
+
+  private static final String PASSWORD = "changeit";
+  private static final int SIGNATURES = 200;
+
+  @TempDir
+  Path dir;
+
+  private String keystore;
+
+  /** Makes a keystore with a self signed cert, like the one Tyler gives us. */
+  @BeforeEach
+  public void setUp() throws Exception {
+    KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+    gen.initialize(2048);
+    KeyPair pair = gen.generateKeyPair();
+    X500Name name = new X500Name("CN=efsp-test");
+    Instant now = Instant.now();
+    X509CertificateHolder holder =
+        new JcaX509v3CertificateBuilder(name, BigInteger.ONE, Date.from(now),
+            Date.from(now.plus(Duration.ofDays(1))), name, pair.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withRSA").build(pair.getPrivate()));
+    X509Certificate cert = new JcaX509CertificateConverter().getCertificate(holder);
+
+    KeyStore ks = KeyStore.getInstance("JKS");
+    ks.load(null, null);
+    ks.setKeyEntry("tyler", pair.getPrivate(), PASSWORD.toCharArray(), new Certificate[] {cert});
+    Path path = dir.resolve("test.jks");
+    try (OutputStream out = Files.newOutputStream(path)) {
+      ks.store(out, PASSWORD.toCharArray());
+    }
+    keystore = path.toString();
+  }
+
+  private static void assertSigned(String content, Optional<String> signed) throws Exception {
+    assertTrue(signed.isPresent());
+    CMSSignedData data = new CMSSignedData(Base64.getDecoder().decode(signed.get()));
+    assertEquals(content,
+        new String((byte[]) data.getSignedContent().getContent(), StandardCharsets.UTF_8));
+    SignerInformation signer = data.getSignerInfos().getSigners().iterator().next();
+    X509CertificateHolder cert =
+        (X509CertificateHolder)
+            data.getCertificates().getMatches(signer.getSID()).iterator().next();
+    assertTrue(signer.verify(new JcaSimpleSignerInfoVerifierBuilder().build(cert)));
+  }
+
+  @Test
+  public void testSignaturesVerify() throws Exception {
+    HeaderSigner signer = new HeaderSigner(keystore, PASSWORD);
+    assertSigned("2022-01-01T00:00:00Z", signer.signedBase64("2022-01-01T00:00:00Z"));
+    assertSigned("again", signer.signedBase64("again"));
+  }
+
+  @Test
+  public void testCachedKeyStillVerifies() throws Exception {
+    HeaderSigner signer = new HeaderSigner(keystore, PASSWORD);
+    assertSigned("first", signer.signedBase64("first"));
+    // Later signatures don't read the keystore again, so they work without it
+    Files.delete(Path.of(keystore));
+    assertSigned("cached", signer.signedBase64("cached"));
+    assertSigned("cached again", signer.signedBase64("cached again"));
+  }
+
+  @Test
+  public void testBadKeystoreIsEmpty() {
+    assertEquals(Optional.empty(), new HeaderSigner(keystore, "wrong").signedBase64("hi"));
+    assertEquals(Optional.empty(),
+        new HeaderSigner(dir.resolve("missing.jks").toString(), PASSWORD).signedBase64("hi"));
+  }
+
+  @Test
+  public void testSharedSignerAcrossThreads() throws Exception {
+    HeaderSigner signer = new HeaderSigner(keystore, PASSWORD);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Optional<String>>> signed = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        String content = "content " + i;
+        signed.add(pool.submit(() -> signer.signedBase64(content)));
+      }
+      for (int i = 0; i < signed.size(); i++) {
+        assertSigned("content " + i, signed.get(i).get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Compares a new signer for each signature, which reads the keystore each time like every
+   * signature used to, with one signer for all of them.
+   */
+  @Test
+  public void testSignaturesPerSecond() throws Exception {
+    // Warm up
+    new HeaderSigner(keystore, PASSWORD).signedCurrentTime();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < SIGNATURES; i++) {
+      assertTrue(new HeaderSigner(keystore, PASSWORD).signedCurrentTime().isPresent());
+    }
+    double freshPerSec = SIGNATURES / ((System.nanoTime() - start) / 1e9);
+
+    HeaderSigner signer = new HeaderSigner(keystore, PASSWORD);
+    start = System.nanoTime();
+    for (int i = 0; i < SIGNATURES; i++) {
+      assertTrue(signer.signedCurrentTime().isPresent());
+    }
+    double sharedPerSec = SIGNATURES / ((System.nanoTime() - start) / 1e9);
+    log.info(
+        "Signatures per second: {} with the keystore read each time, {} with one signer",
+        Math.round(freshPerSec),
+        Math.round(sharedPerSec));
+  }
+}
@@ -0,0 +1,37 @@
+package edu.suffolk.litlab.efspserver;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import jakarta.xml.bind.Marshaller;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.oasis_open.docs.codelist.ns.genericode._1.CodeListDocument;
+
+public class JaxbContextsTest {
+
+  @Test
+  public void testContextsAreReused() throws Exception {
+    assertSame(JaxbContexts.get(CodeListDocument.class), JaxbContexts.get(CodeListDocument.class));
+    assertSame(
+        JaxbContexts.unmarshaller(CodeListDocument.class),
+        JaxbContexts.unmarshaller(CodeListDocument.class));
+  }
+
+  @Test
+  public void testMarshallersArePerThread() throws Exception {
+    Marshaller here = JaxbContexts.formattedMarshaller(CodeListDocument.class);
+    Marshaller there =
+        CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    return JaxbContexts.formattedMarshaller(CodeListDocument.class);
+                  } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                  }
+                })
+            .get();
+    assertSame(here, JaxbContexts.formattedMarshaller(CodeListDocument.class));
+    assertNotSame(here, there);
+  }
+}
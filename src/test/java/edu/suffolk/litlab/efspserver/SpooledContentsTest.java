@@ -0,0 +1,54 @@
+package edu.suffolk.litlab.efspserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class SpooledContentsTest {
+
+  @Test
+  public void testSmallStaysInMemory() throws Exception {
+    byte[] data = "%PDF-1.4 tiny".getBytes();
+    SpooledContents contents = SpooledContents.spool(new ByteArrayInputStream(data));
+    assertTrue(contents.isInMemory());
+    assertEquals(data.length, contents.length());
+    assertArrayEquals(data, contents.readAllBytes());
+  }
+
+  @Test
+  public void testLargeGoesToDisk() throws Exception {
+    byte[] data = new byte[3 * 1024 * 1024];
+    new Random(42).nextBytes(data);
+    SpooledContents contents = SpooledContents.spool(new ByteArrayInputStream(data));
+    assertFalse(contents.isInMemory());
+    assertEquals(data.length, contents.length());
+    try (InputStream in = contents.asDataHandler().getInputStream()) {
+      assertArrayEquals(data, in.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testLastReleaseDeletesFile() throws Exception {
+    byte[] data = new byte[2 * 1024 * 1024];
+    new Random(7).nextBytes(data);
+    SpooledContents contents = SpooledContents.spool(new ByteArrayInputStream(data));
+    assertFalse(contents.isInMemory());
+
+    // A second owner keeps the file around after the first is done
+    contents.retain();
+    contents.release();
+    assertArrayEquals(data, contents.readAllBytes());
+
+    contents.release();
+    assertThrows(NoSuchFileException.class, () -> contents.openStream());
+    assertThrows(IllegalStateException.class, () -> contents.retain());
+  }
+}
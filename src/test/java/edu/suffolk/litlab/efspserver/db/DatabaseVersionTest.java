@@ -17,8 +17,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.zip.GZIPInputStream;
 
@@ -38,6 +41,7 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.utility.DockerImageName;
 
 import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeStaging;
 import edu.suffolk.litlab.efspserver.tyler.codes.FilingComponent;
 import edu.suffolk.litlab.efspserver.tyler.codes.OptionalServiceCode;
 import edu.suffolk.litlab.efspserver.tyler.codes.PartyType;
@@ -56,6 +60,10 @@ public class DatabaseVersionTest {
   @Container
   public PostgreSQLContainer<?> codeDb = new PostgreSQLContainer<>(POSTGRES_DOCKER_NAME);
 
+  /** Only started by the tests that need code tables as they were at a specific version. */
+  @Container
+  public PostgreSQLContainer<?> v10CodeDb = new PostgreSQLContainer<>(POSTGRES_DOCKER_NAME);
+
   private static final String v0AtRestInsert = """
            INSERT INTO at_rest_keys (
                "server_id", "server_name", "api_key", "tyler_enabled",
@@ -136,6 +144,93 @@ public class DatabaseVersionTest {
     }
   }
   
+  @Test
+  public void testPartitionsPopulatedCodeTables() throws SQLException {
+    v10CodeDb.start();
+    try (Connection v10Conn = DatabaseCreator.makeSingleConnection(
+        v10CodeDb.getDatabaseName(), v10CodeDb.getJdbcUrl(),
+        v10CodeDb.getUsername(), v10CodeDb.getPassword())) {
+      v10Conn.setAutoCommit(false);
+      // Code tables like they were at version 10: plain tables, with every domain's rows together
+      Map<String, Integer> rowsPerDomain = Map.of(
+          "illinois-stage", 5,
+          "massachusetts-prod", 3,
+          "texas-a-very-long-jurisdiction-name-that-runs-past-the-limit-stage", 2);
+      try (Statement st = v10Conn.createStatement()) {
+        st.executeUpdate("""
+            CREATE TABLE casetype (
+              code text, name text, location text, domain text NOT NULL)""");
+        st.executeUpdate("CREATE INDEX ON casetype (location)");
+        st.executeUpdate("""
+            CREATE TABLE installedversion (
+              codelist text, location text, version text, domain text NOT NULL,
+              PRIMARY KEY (location, codelist, domain))""");
+      }
+      try (PreparedStatement types = v10Conn.prepareStatement(
+              "INSERT INTO casetype VALUES (?, 'Type', 'adams', ?)");
+          PreparedStatement versions = v10Conn.prepareStatement(
+              "INSERT INTO installedversion VALUES ('casetypecodes', 'adams', '1', ?)")) {
+        for (var domainRows : rowsPerDomain.entrySet()) {
+          for (int i = 0; i < domainRows.getValue(); i++) {
+            types.setString(1, Integer.toString(i));
+            types.setString(2, domainRows.getKey());
+            types.executeUpdate();
+          }
+          versions.setString(1, domainRows.getKey());
+          versions.executeUpdate();
+        }
+      }
+      v10Conn.commit();
+
+      new DatabaseVersion(v10Conn, userConn).update10To11();
+
+      for (String table : List.of("casetype", "installedversion")) {
+        assertEquals("p", queryString(v10Conn,
+            "SELECT relkind::text FROM pg_class WHERE relname=?", table));
+        Set<String> expectedPartitions = new HashSet<>();
+        expectedPartitions.add(table + "__default");
+        for (String domain : rowsPerDomain.keySet()) {
+          expectedPartitions.add(CodeStaging.partitionName(table, domain));
+        }
+        Set<String> partitions = new HashSet<>();
+        try (PreparedStatement st = v10Conn.prepareStatement("""
+            SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = to_regclass(?)""")) {
+          st.setString(1, table);
+          ResultSet rs = st.executeQuery();
+          while (rs.next()) {
+            partitions.add(rs.getString(1));
+          }
+        }
+        assertEquals(expectedPartitions, partitions);
+        assertEquals("0", queryString(v10Conn,
+            "SELECT COUNT(*)::text FROM to_regclass(?) t WHERE t IS NOT NULL",
+            table + "__legacy"));
+      }
+      for (var domainRows : rowsPerDomain.entrySet()) {
+        String partition = CodeStaging.partitionName("casetype", domainRows.getKey());
+        assertEquals(domainRows.getValue().toString(), queryString(v10Conn,
+            "SELECT COUNT(*)::text FROM \"" + partition + "\""));
+        assertEquals(domainRows.getValue().toString(), queryString(v10Conn,
+            "SELECT COUNT(*)::text FROM casetype WHERE domain=?", domainRows.getKey()));
+      }
+      assertEquals("0", queryString(v10Conn, "SELECT COUNT(*)::text FROM casetype__default"));
+      assertEquals("3", queryString(v10Conn, "SELECT COUNT(*)::text FROM installedversion"));
+    }
+  }
+
+  private static String queryString(Connection conn, String query, String... params)
+      throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      for (int i = 0; i < params.length; i++) {
+        st.setString(i + 1, params[i]);
+      }
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return rs.getString(1);
+    }
+  }
+
   private List<File> unTarGz(String resourcePath) throws FileNotFoundException, IOException, ArchiveException, URISyntaxException {
     File output = unGzip(new File(this.getClass().getResource(resourcePath).toURI()), new File(".")); 
     return unTar(output, new File(".")); 
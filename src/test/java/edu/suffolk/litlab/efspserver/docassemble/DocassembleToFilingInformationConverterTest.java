@@ -81,6 +81,19 @@ public class DocassembleToFilingInformationConverterTest {
             "users[0].email", "", "text", List.of()))); 
   }
   
+  @Test
+  public void testCanLeaveTheDocumentsForLater() throws IOException {
+    String interviewContents = getFileContents("/housing_tro_2_plaintiff_business_def.json");
+    Result<FilingInformation, FilingError> maybeInfo =
+        converter.extractWithoutDocuments(interviewContents);
+    assertThat(maybeInfo).isOk();
+    FilingInformation info = maybeInfo.unwrapOrElseThrow();
+    assertTrue(info.getFilings().size() > 0);
+    for (FilingDoc doc : info.getFilings()) {
+      doc.getFilingAttachments().forEach(a -> assertTrue(a.needsFetching()));
+    }
+  }
+
   @Test
   public void testGetsUserInformation() throws IOException {
     String interviewContents = getFileContents("/housing_tro_2_plaintiff_business_def.json");
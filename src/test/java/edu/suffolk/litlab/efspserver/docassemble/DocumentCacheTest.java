@@ -0,0 +1,96 @@
+package edu.suffolk.litlab.efspserver.docassemble;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.suffolk.litlab.efspserver.SpooledContents;
+import java.io.ByteArrayInputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class DocumentCacheTest {
+
+  @Test
+  public void testSameContentsAreShared() {
+    SpooledContents first = SpooledContents.of("same pdf".getBytes());
+    SpooledContents second = SpooledContents.of("same pdf".getBytes());
+    SpooledContents kept =
+        DocumentCache.put(
+            "server-a",
+            "http://da.example/1.pdf",
+            first,
+            "abc123",
+            Optional.empty(),
+            Optional.empty());
+    SpooledContents dedupped =
+        DocumentCache.put(
+            "server-a",
+            "http://da.example/2.pdf",
+            second,
+            "abc123",
+            Optional.empty(),
+            Optional.empty());
+    assertSame(kept, dedupped);
+
+    var entry = DocumentCache.get("server-a", "http://da.example/2.pdf");
+    assertTrue(entry.isPresent());
+    assertSame(kept, entry.get().contents());
+    assertFalse(entry.get().needsRevalidation());
+  }
+
+  @Test
+  public void testEntriesArePerServer() {
+    DocumentCache.put(
+        "server-a",
+        "http://da.example/private.pdf",
+        SpooledContents.of("secret".getBytes()),
+        "def456",
+        Optional.of("\"etag\""),
+        Optional.empty());
+    assertTrue(DocumentCache.get("server-a", "http://da.example/private.pdf").isPresent());
+    assertTrue(
+        DocumentCache.get("server-a", "http://da.example/private.pdf").get().needsRevalidation());
+    assertFalse(DocumentCache.get("server-b", "http://da.example/private.pdf").isPresent());
+  }
+
+  @Test
+  public void testCacheKeepsFilesAfterRequestsEnd() throws Exception {
+    byte[] pdf = new byte[2 * 1024 * 1024];
+    new Random(3).nextBytes(pdf);
+    SpooledContents first = SpooledContents.spool(new ByteArrayInputStream(pdf));
+    SpooledContents second = SpooledContents.spool(new ByteArrayInputStream(pdf));
+    assertFalse(first.isInMemory());
+    SpooledContents kept =
+        DocumentCache.put(
+            "server-a",
+            "http://da.example/big-1.pdf",
+            first,
+            "big789",
+            Optional.empty(),
+            Optional.empty());
+    SpooledContents dedupped =
+        DocumentCache.put(
+            "server-a",
+            "http://da.example/big-2.pdf",
+            second,
+            "big789",
+            Optional.empty(),
+            Optional.empty());
+    assertSame(kept, dedupped);
+    // The duplicate download is deleted right away
+    assertThrows(NoSuchFileException.class, () -> second.openStream());
+
+    // Both requests finish, but the cache still has its copy
+    kept.release();
+    dedupped.release();
+    var entry = DocumentCache.get("server-a", "http://da.example/big-1.pdf");
+    assertTrue(entry.isPresent());
+    assertArrayEquals(pdf, entry.get().contents().readAllBytes());
+    entry.get().contents().release();
+  }
+}
@@ -0,0 +1,211 @@
+package edu.suffolk.litlab.efspserver.docassemble;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.suffolk.litlab.efspserver.FilingAttachment;
+import edu.suffolk.litlab.efspserver.FilingDoc;
+import edu.suffolk.litlab.efspserver.FilingInformation;
+import edu.suffolk.litlab.efspserver.services.AllWrongCollector;
+import edu.suffolk.litlab.efspserver.services.FilingError;
+import fj.data.NonEmptyList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DocumentFetcherTest {
+  private static final int SLOW_MS = 200;
+
+  private HttpServer server;
+  private String base;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  /** Serves slow documents, and a 404 for anything under /missing. */
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(64));
+    server.createContext("/", this::handle);
+    server.start();
+    base = "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    if (exchange.getRequestURI().getPath().startsWith("/missing")) {
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+      return;
+    }
+    int now = inFlight.incrementAndGet();
+    maxInFlight.accumulateAndGet(now, Math::max);
+    try {
+      Thread.sleep(SLOW_MS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    // Done before answering, so the client never sees a download that's still "in flight"
+    inFlight.decrementAndGet();
+    byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private FilingAttachment attachment(String path) throws IOException {
+    // Unique, so nothing comes from the DocumentCache
+    return new FilingAttachment(
+        "doc.pdf", new URL(base + path + "/" + UUID.randomUUID()), "pdf", "code", "");
+  }
+
+  private static FilingInformation filingWith(List<FilingAttachment> attachments) {
+    FilingInformation info = new FilingInformation();
+    List<FilingDoc> docs = new ArrayList<>();
+    for (FilingAttachment attachment : attachments) {
+      docs.add(
+          new FilingDoc(
+              Optional.empty(), List.of(), NonEmptyList.nel(attachment), false));
+    }
+    info.setFilings(docs);
+    return info;
+  }
+
+  private FilingInformation slowFiling(int documents) throws IOException {
+    List<FilingAttachment> attachments = new ArrayList<>();
+    for (int i = 0; i < documents; i++) {
+      attachments.add(attachment("slow"));
+    }
+    return filingWith(attachments);
+  }
+
+  private static List<FilingAttachment> attachments(FilingInformation info) {
+    List<FilingAttachment> attachments = new ArrayList<>();
+    for (FilingDoc doc : info.getFilings()) {
+      doc.getFilingAttachments().forEach(attachments::add);
+    }
+    return attachments;
+  }
+
+  @Test
+  public void testFetchesEveryDocument() throws Exception {
+    FilingInformation info = slowFiling(3);
+    DocumentFetcher.fetchAll(info, new AllWrongCollector());
+    for (FilingAttachment attachment : attachments(info)) {
+      assertEquals(
+          attachment.getDataUrl().get().getPath(),
+          new String(attachment.getContents().readAllBytes(), StandardCharsets.UTF_8));
+    }
+    info.releaseDocuments();
+  }
+
+  @Test
+  public void testOneFilingDownloadsAtMostItsLimit() throws Exception {
+    FilingInformation info = slowFiling(DocumentFetcher.MAX_PER_FILING * 3);
+    DocumentFetcher.fetchAll(info, new AllWrongCollector());
+    assertTrue(maxInFlight.get() > 1, "Should download in parallel, got " + maxInFlight.get());
+    assertTrue(
+        maxInFlight.get() <= DocumentFetcher.MAX_PER_FILING,
+        maxInFlight.get() + " downloads at once for one filing");
+    info.releaseDocuments();
+  }
+
+  @Test
+  public void testAllFilingsDownloadAtMostTheTotalLimit() throws Exception {
+    int filings = 2 * DocumentFetcher.MAX_CONCURRENT / DocumentFetcher.MAX_PER_FILING + 1;
+    ExecutorService callers = Executors.newFixedThreadPool(filings);
+    try {
+      List<Future<FilingInformation>> fetched = new ArrayList<>();
+      for (int i = 0; i < filings; i++) {
+        FilingInformation info = slowFiling(DocumentFetcher.MAX_PER_FILING * 2);
+        fetched.add(
+            callers.submit(
+                () -> {
+                  DocumentFetcher.fetchAll(info, new AllWrongCollector());
+                  return info;
+                }));
+      }
+      for (Future<FilingInformation> f : fetched) {
+        f.get().releaseDocuments();
+      }
+    } finally {
+      callers.shutdown();
+    }
+    assertTrue(
+        maxInFlight.get() > DocumentFetcher.MAX_PER_FILING,
+        "Filings should download at the same time, got " + maxInFlight.get());
+    assertTrue(
+        maxInFlight.get() <= DocumentFetcher.MAX_CONCURRENT,
+        maxInFlight.get() + " downloads at once in total");
+  }
+
+  @Test
+  public void testFailedDocumentsAreReported() throws Exception {
+    List<FilingAttachment> attachments = new ArrayList<>();
+    attachments.add(attachment("slow"));
+    FilingAttachment missing = attachment("missing");
+    attachments.add(missing);
+    attachments.add(attachment("slow"));
+    FilingInformation info = filingWith(attachments);
+    AllWrongCollector collector = new AllWrongCollector();
+
+    FilingError err =
+        assertThrows(FilingError.class, () -> DocumentFetcher.fetchAll(info, collector));
+    assertTrue(collector.hasError());
+    assertTrue(err.getDescription().contains(missing.getDataUrl().get().toString()), err.getDescription());
+    // The documents that did download aren't kept around
+    for (FilingAttachment attachment : attachments) {
+      assertTrue(attachment.needsFetching());
+    }
+  }
+
+  @Test
+  public void testUnexpectedErrorsWaitForTheOtherDownloads() throws Exception {
+    List<FilingAttachment> attachments = new ArrayList<>();
+    // Blows up its worker, instead of failing like a bad download
+    attachments.add(
+        new FilingAttachment("broken.pdf", new URL(base + "broken"), "pdf", "code", "") {
+          @Override
+          public Optional<URL> getDataUrl() {
+            throw new IllegalStateException("broken attachment");
+          }
+        });
+    for (int i = 0; i < DocumentFetcher.MAX_PER_FILING * 2; i++) {
+      attachments.add(attachment("slow"));
+    }
+    FilingInformation info = filingWith(attachments);
+
+    FilingError err =
+        assertThrows(
+            FilingError.class, () -> DocumentFetcher.fetchAll(info, new AllWrongCollector()));
+    assertTrue(err.getDescription().contains("broken attachment"), err.getDescription());
+    assertEquals(0, inFlight.get(), "Still downloading after fetchAll gave up");
+    // Nothing that was still downloading shows up after the documents were released
+    Thread.sleep(2 * SLOW_MS);
+    for (FilingAttachment attachment : attachments) {
+      assertTrue(attachment.needsFetching(), "Documents should be released");
+    }
+  }
+}
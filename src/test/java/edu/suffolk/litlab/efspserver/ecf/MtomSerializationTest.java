@@ -0,0 +1,130 @@
+package edu.suffolk.litlab.efspserver.ecf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.suffolk.litlab.efspserver.JaxbContexts;
+import edu.suffolk.litlab.efspserver.SpooledContents;
+import edu.suffolk.litlab.efspserver.ecf4.Ecf4Helper;
+import gov.niem.niem.niem_core._2.BinaryType;
+import gov.niem.niem.niem_core._2.DocumentType;
+import gov.niem.niem.niem_core._2.ObjectFactory;
+import jakarta.activation.DataHandler;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.attachment.AttachmentMarshaller;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Marshals a filing with several documents both ways, like the EFM would get them over the wire,
+ * to check that MTOM actually takes the documents out of the XML.
+ */
+public class MtomSerializationTest {
+  private static final Logger log = LoggerFactory.getLogger(MtomSerializationTest.class);
+
+  private static final int DOC_COUNT = 4;
+  private static final int DOC_SIZE = 256 * 1024;
+
+  private final ObjectFactory niemObjFac = new ObjectFactory();
+
+  /** Collects the attachments, like CXF does when MTOM is on. */
+  private static class XopCollector extends AttachmentMarshaller {
+    final List<DataHandler> attachments = new ArrayList<>();
+
+    @Override
+    public boolean isXOPPackage() {
+      return true;
+    }
+
+    @Override
+    public String addMtomAttachment(DataHandler data, String elemNamespace, String elemName) {
+      attachments.add(data);
+      return "cid:" + attachments.size() + "@efsp";
+    }
+
+    @Override
+    public String addMtomAttachment(
+        byte[] data, int offset, int length, String mime, String elemNamespace, String elemName) {
+      throw new AssertionError("Documents should be sent as DataHandlers");
+    }
+
+    @Override
+    public String addSwaRefAttachment(DataHandler data) {
+      throw new AssertionError("Documents shouldn't be sent as swaRefs");
+    }
+  }
+
+  private DocumentType makeDocument(Random random) {
+    byte[] pdf = new byte[DOC_SIZE];
+    random.nextBytes(pdf);
+    BinaryType binary = niemObjFac.createBinaryType();
+    binary.setBinaryObject(
+        niemObjFac.createBinaryBase64Object(Ecf4Helper.convertBase64(SpooledContents.of(pdf))));
+    DocumentType doc = niemObjFac.createDocumentType();
+    doc.setDocumentBinary(binary);
+    return doc;
+  }
+
+  private long marshal(List<DocumentType> docs, XopCollector xop) throws Exception {
+    Marshaller mar =
+        JaxbContexts.get(
+                ObjectFactory.class,
+                gov.niem.niem.structures._2.ObjectFactory.class,
+                oasis.names.tc.legalxml_courtfiling.schema.xsd.corefilingmessage_4.ObjectFactory.class,
+                oasis.names.tc.legalxml_courtfiling.schema.xsd.commontypes_4.ObjectFactory.class)
+            .createMarshaller();
+    if (xop != null) {
+      mar.setAttachmentMarshaller(xop);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (DocumentType doc : docs) {
+      mar.marshal(niemObjFac.createDocument(doc), out);
+    }
+    return out.size();
+  }
+
+  @Test
+  public void testMtomMovesDocumentsOutOfTheMessage() throws Exception {
+    Random random = new Random(7);
+    List<DocumentType> docs = new ArrayList<>();
+    for (int i = 0; i < DOC_COUNT; i++) {
+      docs.add(makeDocument(random));
+    }
+
+    long start = System.nanoTime();
+    long inlineSize = marshal(docs, null);
+    long inlineMs = (System.nanoTime() - start) / 1_000_000;
+
+    XopCollector xop = new XopCollector();
+    start = System.nanoTime();
+    long xmlSize = marshal(docs, xop);
+    long attachmentSize = 0;
+    for (DataHandler dh : xop.attachments) {
+      try (InputStream in = dh.getInputStream()) {
+        attachmentSize += in.readAllBytes().length;
+      }
+    }
+    long mtomMs = (System.nanoTime() - start) / 1_000_000;
+    log.info(
+        "Inline: {} bytes in {} ms; MTOM: {} bytes of XML + {} bytes of attachments in {} ms",
+        inlineSize,
+        inlineMs,
+        xmlSize,
+        attachmentSize,
+        mtomMs);
+
+    // Base64 is 4/3 the size of the raw document
+    assertTrue(inlineSize >= DOC_COUNT * (long) DOC_SIZE * 4 / 3);
+    assertEquals(DOC_COUNT, xop.attachments.size());
+    assertEquals(DOC_COUNT * (long) DOC_SIZE, attachmentSize);
+    // Each message is just its namespace declarations and an XOP include, a few KB at most
+    assertTrue(
+        xmlSize < DOC_COUNT * 8 * 1024, "XML with XOP includes should be tiny, was " + xmlSize);
+  }
+}
@@ -0,0 +1,187 @@
+package edu.suffolk.litlab.efspserver.ecf4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import oasis.names.tc.legalxml_courtfiling.schema.xsd.commontypes_4.ErrorType;
+import oasis.names.tc.legalxml_courtfiling.schema.xsd.courtpolicyresponsemessage_4.CourtPolicyResponseMessageType;
+import oasis.names.tc.legalxml_courtfiling.wsdl.webservicesprofile_definitions_4_0.FilingReviewMDEPort;
+
+import org.junit.jupiter.api.Test;
+
+public class PolicyCacherTest {
+
+  /** A clock that only moves when the test says so. */
+  private static class TestClock extends Clock {
+    Instant now = Instant.parse("2026-01-01T12:00:00Z");
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneId.of("UTC");
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
+  private final TestClock clock = new TestClock();
+  private final AtomicInteger calls = new AtomicInteger();
+
+  private PolicyCacher cacher() {
+    return new PolicyCacher(Optional.empty(), clock, Duration.ofHours(24), Duration.ofHours(168));
+  }
+
+  /** A filing port whose getPolicy gives a new policy from `policy` each time. */
+  private FilingReviewMDEPort port(Supplier<CourtPolicyResponseMessageType> policy) {
+    return (FilingReviewMDEPort)
+        Proxy.newProxyInstance(
+            FilingReviewMDEPort.class.getClassLoader(),
+            new Class<?>[] {FilingReviewMDEPort.class},
+            (proxy, method, args) -> {
+              if (!method.getName().equals("getPolicy")) {
+                throw new UnsupportedOperationException(method.getName());
+              }
+              calls.incrementAndGet();
+              return policy.get();
+            });
+  }
+
+  private static CourtPolicyResponseMessageType withError(String code) {
+    ErrorType err = new ErrorType();
+    err.setErrorCode(Ecf4Helper.convertText(code));
+    err.setErrorText(Ecf4Helper.convertText("Error " + code));
+    CourtPolicyResponseMessageType policy = new CourtPolicyResponseMessageType();
+    policy.getError().add(err);
+    return policy;
+  }
+
+  @Test
+  public void testKeepsPoliciesUntilTheyExpire() {
+    var cacher = cacher();
+    var port = port(CourtPolicyResponseMessageType::new);
+    var first = cacher.getPolicyFor(port, "adams");
+    clock.now = clock.now.plus(Duration.ofHours(23));
+    assertSame(first, cacher.getPolicyFor(port, "adams"));
+    assertEquals(1, calls.get());
+
+    // Courts are kept separately
+    cacher.getPolicyFor(port, "cook");
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testStalePoliciesRefreshInTheBackground() throws Exception {
+    var cacher = cacher();
+    CountDownLatch refreshing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    var port =
+        port(
+            () -> {
+              if (calls.get() > 1) {
+                refreshing.countDown();
+                try {
+                  release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                  Thread.currentThread().interrupt();
+                }
+              }
+              return new CourtPolicyResponseMessageType();
+            });
+    var first = cacher.getPolicyFor(port, "adams");
+    clock.now = clock.now.plus(Duration.ofHours(25));
+
+    // Gets the stale one right away, while the new one is fetched
+    assertSame(first, cacher.getPolicyFor(port, "adams"));
+    assertTrue(refreshing.await(10, TimeUnit.SECONDS));
+    assertSame(first, cacher.getPolicyFor(port, "adams"));
+    release.countDown();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (cacher.getPolicyFor(port, "adams") == first && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertNotSame(first, cacher.getPolicyFor(port, "adams"));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testVeryStalePoliciesAreFetchedRightAway() {
+    var cacher = cacher();
+    var port = port(CourtPolicyResponseMessageType::new);
+    var first = cacher.getPolicyFor(port, "adams");
+    clock.now = clock.now.plus(Duration.ofDays(8));
+    assertNotSame(first, cacher.getPolicyFor(port, "adams"));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testOnlyOneFetchAtOnce() throws Exception {
+    var cacher = cacher();
+    CountDownLatch release = new CountDownLatch(1);
+    var port =
+        port(
+            () -> {
+              try {
+                release.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+              return new CourtPolicyResponseMessageType();
+            });
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    List<CompletableFuture<CourtPolicyResponseMessageType>> policies = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      policies.add(
+          CompletableFuture.supplyAsync(() -> cacher.getPolicyFor(port, "adams"), threads));
+    }
+    Thread.sleep(100);
+    release.countDown();
+    var first = policies.get(0).get(10, TimeUnit.SECONDS);
+    for (var policy : policies) {
+      assertSame(first, policy.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, calls.get());
+    threads.shutdown();
+  }
+
+  @Test
+  public void testErrorsArentKept() {
+    var cacher = cacher();
+    var port = port(() -> withError("-1"));
+    assertEquals(1, cacher.getPolicyFor(port, "adams").getError().size());
+    cacher.getPolicyFor(port, "adams");
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testXmlRoundTrip() throws Exception {
+    var policy = withError("0");
+    var back = PolicyCacher.fromXml(PolicyCacher.toXml(policy));
+    assertEquals("0", back.getError().get(0).getErrorCode().getValue());
+    assertEquals("Error 0", back.getError().get(0).getErrorText().getValue());
+  }
+}
@@ -0,0 +1,112 @@
+package edu.suffolk.litlab.efspserver.ecf4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.ScheduleBuilder;
+import org.quartz.Scheduler;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+
+public class TylerModuleSetupTest {
+  private static final JobKey JOB_KEY = JobKey.jobKey("job-codes-test", "codesdb-group");
+
+  /** The jurisdictions of each run. The first run waits for `release`, like a slow refresh. */
+  private static final BlockingQueue<String> runs = new LinkedBlockingQueue<>();
+  private static CountDownLatch release;
+
+  @DisallowConcurrentExecution
+  public static class RecordingJob implements Job {
+    @Override
+    public void execute(JobExecutionContext context) {
+      boolean first = runs.isEmpty();
+      runs.add(context.getMergedJobDataMap().getString("TYLER_JURISDICTIONS"));
+      if (first) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private Scheduler scheduler;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    runs.clear();
+    release = new CountDownLatch(1);
+    Properties props = new Properties();
+    props.setProperty("org.quartz.scheduler.instanceName", "tyler-module-setup-test");
+    props.setProperty("org.quartz.threadPool.threadCount", "2");
+    props.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+    scheduler = new StdSchedulerFactory(props).getScheduler();
+    scheduler.start();
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    release.countDown();
+    scheduler.shutdown(true);
+  }
+
+  private void schedule(ScheduleBuilder<?> schedule, String jurisdiction) throws Exception {
+    JobDetail job =
+        JobBuilder.newJob(RecordingJob.class)
+            .withIdentity(JOB_KEY)
+            .usingJobData("TYLER_JURISDICTIONS", jurisdiction)
+            .storeDurably()
+            .build();
+    TylerModuleSetup.scheduleCodeUpdate(scheduler, job, schedule, "test", jurisdiction);
+  }
+
+  @Test
+  public void testLateJurisdictionsGetTheirOwnImmediateRun() throws Exception {
+    var immediately = SimpleScheduleBuilder.simpleSchedule().withIntervalInSeconds(20);
+    schedule(immediately, "illinois");
+    // The immediate run is still going when the next jurisdictions register
+    assertEquals("illinois", runs.poll(10, TimeUnit.SECONDS));
+    schedule(immediately, "massachusetts");
+    schedule(immediately, "texas");
+    release.countDown();
+
+    Set<String> late =
+        new HashSet<>(List.of(runs.poll(10, TimeUnit.SECONDS), runs.poll(10, TimeUnit.SECONDS)));
+    assertEquals(Set.of("massachusetts", "texas"), late);
+    assertEquals(
+        "illinois massachusetts texas",
+        scheduler.getJobDetail(JOB_KEY).getJobDataMap().getString("TYLER_JURISDICTIONS"));
+  }
+
+  @Test
+  public void testDailyRunPicksUpLateJurisdictions() throws Exception {
+    var daily = CronScheduleBuilder.dailyAtHourAndMinute(2, 13);
+    schedule(daily, "illinois");
+    schedule(daily, "massachusetts");
+    assertEquals(1, scheduler.getTriggersOfJob(JOB_KEY).size());
+    assertEquals(
+        "illinois massachusetts",
+        scheduler.getJobDetail(JOB_KEY).getJobDataMap().getString("TYLER_JURISDICTIONS"));
+    assertNull(runs.poll(100, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,71 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class CodeRefreshCoordinatorTest {
+
+  private static final List<String> JURISDICTIONS =
+      List.of("illinois", "massachusetts", "texas", "california", "indiana");
+
+  @Test
+  public void testRefreshesAtTheSameTime() {
+    // Each refresh waits for all of the others to start, so they have to run at once
+    CountDownLatch started = new CountDownLatch(JURISDICTIONS.size());
+    var report =
+        CodeRefreshCoordinator.refreshAll(
+            JURISDICTIONS,
+            0,
+            jurisdiction -> {
+              started.countDown();
+              return started.await(10, TimeUnit.SECONDS);
+            });
+    assertTrue(report.success());
+    assertEquals(
+        JURISDICTIONS, report.outcomes().stream().map(o -> o.jurisdiction()).toList());
+  }
+
+  @Test
+  public void testLimitsJurisdictionsAtOnce() {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger most = new AtomicInteger();
+    var report =
+        CodeRefreshCoordinator.refreshAll(
+            JURISDICTIONS,
+            2,
+            jurisdiction -> {
+              most.accumulateAndGet(running.incrementAndGet(), Math::max);
+              Thread.sleep(50);
+              running.decrementAndGet();
+              return true;
+            });
+    assertTrue(report.success());
+    assertTrue(most.get() <= 2, "Ran " + most.get() + " at once");
+  }
+
+  @Test
+  public void testReportsEveryFailure() {
+    var report =
+        CodeRefreshCoordinator.refreshAll(
+            JURISDICTIONS,
+            0,
+            jurisdiction -> {
+              if (jurisdiction.equals("texas")) {
+                throw new IllegalStateException("Tyler's down");
+              }
+              return !jurisdiction.equals("indiana");
+            });
+    assertFalse(report.success());
+    assertEquals(List.of("texas", "indiana"), report.failed());
+    assertTrue(report.summary().contains("illinois: succeeded"));
+    assertTrue(report.summary().contains("texas: FAILED"));
+  }
+}
@@ -0,0 +1,116 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class CodeZipCacheTest {
+
+  private static final byte[] ZIP = "not really a zip".getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path cacheDir;
+
+  private HttpServer server;
+  private String url;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger fullResponses = new AtomicInteger();
+  private CodeZipCache cache;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/CodeService/codes/casetype/adams", exchange -> {
+      requests.incrementAndGet();
+      if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        fullResponses.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        exchange.sendResponseHeaders(200, ZIP.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(ZIP);
+        }
+      }
+      exchange.close();
+    });
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/CodeService/codes/casetype/adams";
+    cache = new CodeZipCache(cacheDir);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private byte[] fetch(Optional<String> version) throws IOException {
+    var key = new CodeZipCache.Key("illinois-stage", "cook:cd1", "casetype", version);
+    try (InputStream in = cache.fetch(url, "signed", key)) {
+      return in.readAllBytes();
+    }
+  }
+
+  @Test
+  public void testKnownVersionIsNotDownloadedAgain() throws IOException {
+    assertArrayEquals(ZIP, fetch(Optional.of("1234")));
+    assertArrayEquals(ZIP, fetch(Optional.of("1234")));
+    assertEquals(1, requests.get());
+
+    List<CodeZipCache.CachedZip> cached = cache.latest("illinois-stage");
+    assertEquals(1, cached.size());
+    assertEquals("cook:cd1", cached.get(0).court());
+    assertEquals("casetype", cached.get(0).table());
+    assertEquals("1234", cached.get(0).version());
+
+    // A new version is downloaded, and replaces the old one
+    assertArrayEquals(ZIP, fetch(Optional.of("1235")));
+    assertEquals(2, requests.get());
+    assertEquals("1235", cache.latest("illinois-stage").get(0).version());
+  }
+
+  @Test
+  public void testUnknownVersionIsRevalidated() throws IOException {
+    assertArrayEquals(ZIP, fetch(Optional.empty()));
+    assertArrayEquals(ZIP, fetch(Optional.empty()));
+    assertEquals(2, requests.get());
+    assertEquals(1, fullResponses.get());
+  }
+
+  @Test
+  public void testCorruptZipIsDownloadedAgain() throws IOException {
+    fetch(Optional.of("1234"));
+    Path zip = cache.latest("illinois-stage").get(0).zip();
+    Files.write(zip, "corrupted".getBytes(StandardCharsets.UTF_8));
+    assertEquals(Optional.empty(), cache.open(zip));
+
+    assertArrayEquals(ZIP, fetch(Optional.of("1234")));
+    assertEquals(2, fullResponses.get());
+  }
+
+  @Test
+  public void testErrorsAreNotCached() throws IOException {
+    var key = new CodeZipCache.Key("illinois-stage", "adams", "casetype", Optional.empty());
+    String missing = url.replace("adams", "nowhere");
+    assertThrows(IOException.class, () -> cache.fetch(missing, "signed", key));
+    assertEquals(List.of(), cache.latest("illinois-stage"));
+  }
+}
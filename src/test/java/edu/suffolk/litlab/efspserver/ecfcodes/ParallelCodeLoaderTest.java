@@ -0,0 +1,169 @@
+package edu.suffolk.litlab.efspserver.ecfcodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeDatabase;
+
+public class ParallelCodeLoaderTest {
+  private static Logger log = LoggerFactory.getLogger(ParallelCodeLoaderTest.class);
+
+  private static final List<String> TABLES =
+      List.of("casecategory", "casetype", "casesubtype", "servicetype", "filingstatus", "optionalservices");
+  private static final int COURTS = 6;
+
+  @Container
+  public PostgreSQLContainer<?> postgres =
+    new PostgreSQLContainer<>(DockerImageName.parse(DatabaseVersionTest.POSTGRES_DOCKER_NAME));
+
+  private Connection conn;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    postgres.start();
+    conn = newConnection();
+    CodeDatabase cd = new CodeDatabase("illinois", "stage", conn);
+    cd.createTablesIfAbsent();
+    for (String table : TABLES) {
+      cd.createTableIfAbsent(table);
+      cd.createIndicesIfAbsent(table);
+    }
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  private Connection newConnection() throws SQLException {
+    return DatabaseCreator.makeSingleConnection(
+        postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+  }
+
+  /** The same adams test tables, loaded as if they were for several different courts. */
+  private List<ParallelCodeLoader.Job> jobs() {
+    List<ParallelCodeLoader.Job> jobs = new ArrayList<>();
+    for (int i = 0; i < COURTS; i++) {
+      String court = "adams" + i;
+      for (String table : TABLES) {
+        jobs.add(new ParallelCodeLoader.Job(court + "/" + table, cd ->
+            cd.updateTable(table, court, this.getClass().getResourceAsStream("/adams_" + table + "_test.xml"))));
+      }
+    }
+    return jobs;
+  }
+
+  /** The same jobs as {@link #jobs}, split so the files are read by the fetch workers. */
+  private List<ParallelCodeLoader.Source> sources() {
+    List<ParallelCodeLoader.Source> sources = new ArrayList<>();
+    for (int i = 0; i < COURTS; i++) {
+      String court = "adams" + i;
+      sources.add(() -> TABLES.stream().map(table -> new ParallelCodeLoader.FetchJob(court + "/" + table, () -> {
+        byte[] xml = this.getClass().getResourceAsStream("/adams_" + table + "_test.xml").readAllBytes();
+        return new ParallelCodeLoader.Fetched() {
+          @Override
+          public void load(CodeDatabase cd) throws Exception {
+            cd.updateTable(table, court, new ByteArrayInputStream(xml));
+          }
+
+          @Override
+          public void close() {}
+        };
+      })).toList());
+    }
+    return sources;
+  }
+
+  private int count(String table, String domain) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE domain=?")) {
+      st.setString(1, domain);
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSerial() throws Exception {
+    Instant start = Instant.now();
+    assertTrue(ParallelCodeLoader.loadAll(jobs(), 1,
+        () -> new CodeDatabase("illinois", "serial", newConnection())));
+    Duration serial = Duration.between(start, Instant.now());
+
+    start = Instant.now();
+    assertTrue(ParallelCodeLoader.loadAll(jobs(), 4,
+        () -> new CodeDatabase("illinois", "parallel", newConnection())));
+    Duration parallel = Duration.between(start, Instant.now());
+    log.info("Loading {} tables took {} serially, {} with 4 workers", COURTS * TABLES.size(), serial, parallel);
+
+    for (String table : TABLES) {
+      int serialRows = count(table, "illinois-serial");
+      // The test casesubtype list is empty, but the rest should have rows
+      assertTrue(serialRows > 0 || table.equals("casesubtype"), table + " should have rows");
+      assertEquals(serialRows, count(table, "illinois-parallel"), table + " should match");
+    }
+  }
+
+  @Test
+  public void testFailureRollsEverythingBack() throws Exception {
+    List<ParallelCodeLoader.Job> jobs = jobs();
+    jobs.add(new ParallelCodeLoader.Job("broken", cd -> {
+      throw new SQLException("Fake failure");
+    }));
+    assertFalse(ParallelCodeLoader.loadAll(jobs, 4,
+        () -> new CodeDatabase("illinois", "broken", newConnection())));
+    for (String table : TABLES) {
+      assertEquals(0, count(table, "illinois-broken"), table + " should be rolled back");
+    }
+  }
+
+  @Test
+  public void testPipelineMatchesSerial() throws Exception {
+    assertTrue(ParallelCodeLoader.loadAll(jobs(), 1,
+        () -> new CodeDatabase("illinois", "serial", newConnection())));
+    Instant start = Instant.now();
+    assertTrue(ParallelCodeLoader.pipeline(sources(), new ParallelCodeLoader.Stages(2, 4, 3),
+        () -> new CodeDatabase("illinois", "pipeline", newConnection())));
+    log.info("Pipelining {} tables took {}", COURTS * TABLES.size(), Duration.between(start, Instant.now()));
+
+    for (String table : TABLES) {
+      assertEquals(count(table, "illinois-serial"), count(table, "illinois-pipeline"), table + " should match");
+    }
+  }
+
+  @Test
+  public void testPipelineFailureRollsEverythingBack() throws Exception {
+    List<ParallelCodeLoader.Source> sources = new ArrayList<>(sources());
+    sources.add(() -> List.of(new ParallelCodeLoader.FetchJob("broken", () -> {
+      throw new IOException("Fake download failure");
+    })));
+    assertFalse(ParallelCodeLoader.pipeline(sources, new ParallelCodeLoader.Stages(2, 4, 3),
+        () -> new CodeDatabase("illinois", "broken", newConnection())));
+    for (String table : TABLES) {
+      assertEquals(0, count(table, "illinois-broken"), table + " should be rolled back");
+    }
+  }
+}
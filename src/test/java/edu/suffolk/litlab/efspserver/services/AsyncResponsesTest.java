@@ -0,0 +1,60 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+public class AsyncResponsesTest {
+
+  /** An AsyncResponse that completes the future with whatever it's resumed with. */
+  private static AsyncResponse resumesInto(CompletableFuture<Object> resumed) {
+    return (AsyncResponse)
+        Proxy.newProxyInstance(
+            AsyncResponse.class.getClassLoader(),
+            new Class<?>[] {AsyncResponse.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("resume")) {
+                return resumed.complete(args[0]);
+              }
+              return false;
+            });
+  }
+
+  @Test
+  public void testResumesOnAnotherThread() throws Exception {
+    CompletableFuture<Object> resumed = new CompletableFuture<>();
+    String caller = Thread.currentThread().getName();
+    MDC.put(MDCWrappers.OPERATION, "AsyncResponsesTest");
+    AsyncResponses.resume(
+        resumesInto(resumed),
+        () -> {
+          if (Thread.currentThread().getName().equals(caller)) {
+            return Response.status(500).build();
+          }
+          return Response.ok(MDC.get(MDCWrappers.OPERATION)).build();
+        });
+    // The caller's thread is done with the request
+    assertEquals(null, MDC.get(MDCWrappers.OPERATION));
+    Response resp = (Response) resumed.get(10, TimeUnit.SECONDS);
+    assertEquals(200, resp.getStatus());
+    assertEquals("AsyncResponsesTest", resp.getEntity());
+  }
+
+  @Test
+  public void testExceptionsAre500s() throws Exception {
+    CompletableFuture<Object> resumed = new CompletableFuture<>();
+    AsyncResponses.resume(
+        resumesInto(resumed),
+        () -> {
+          throw new IllegalStateException("Tyler's down");
+        });
+    assertEquals(500, ((Response) resumed.get(10, TimeUnit.SECONDS)).getStatus());
+  }
+}
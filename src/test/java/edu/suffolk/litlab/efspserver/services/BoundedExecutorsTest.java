@@ -0,0 +1,95 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+public class BoundedExecutorsTest {
+
+  /** Fills a one thread, one slot pool, until `release` counts down. */
+  private static ThreadPoolExecutor fullPool(CountDownLatch release) {
+    ThreadPoolExecutor pool = BoundedExecutors.make("test-", 1, 1);
+    for (int i = 0; i < 2; i++) {
+      BoundedExecutors.supply(
+          pool,
+          () -> {
+            try {
+              return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+              return false;
+            }
+          });
+    }
+    return pool;
+  }
+
+  @Test
+  public void testFullPoolFailsTheFuture() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ThreadPoolExecutor pool = fullPool(release);
+    CompletableFuture<String> rejected = BoundedExecutors.supply(pool, () -> "ran");
+    var ex = assertThrows(ExecutionException.class, () -> rejected.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+    release.countDown();
+    pool.shutdown();
+  }
+
+  @Test
+  public void testFullPoolRunsOnThisThread() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ThreadPoolExecutor pool = fullPool(release);
+    String caller = Thread.currentThread().getName();
+    var ran = BoundedExecutors.supplyOrRun(pool, () -> Thread.currentThread().getName());
+    assertEquals(caller, ran.get(10, TimeUnit.SECONDS));
+    release.countDown();
+    pool.shutdown();
+  }
+
+  @Test
+  public void testSharedPoolsAreShutDownWithTheJurisdiction() throws Exception {
+    ThreadPoolExecutor efm = BoundedExecutors.shared("testjur", "efm", 2, 2);
+    assertSame(efm, BoundedExecutors.shared("testjur", "efm", 2, 2));
+    ThreadPoolExecutor lookups = BoundedExecutors.shared("testjur", "lookup", 2, 2);
+    assertNotSame(efm, lookups);
+    assertEquals(
+        "efm-testjur-1",
+        BoundedExecutors.supply(efm, () -> Thread.currentThread().getName())
+            .get(10, TimeUnit.SECONDS));
+
+    BoundedExecutors.shutdown("testjur");
+    assertTrue(efm.isShutdown());
+    assertTrue(lookups.isShutdown());
+    ThreadPoolExecutor again = BoundedExecutors.shared("testjur", "efm", 2, 2);
+    assertNotSame(efm, again);
+    BoundedExecutors.shutdown("testjur");
+  }
+
+  @Test
+  public void testContinuationsKeepTheMdc() throws Exception {
+    ThreadPoolExecutor pool = BoundedExecutors.make("test-", 1, 1);
+    MDC.put("request", "abc");
+    try {
+      CompletableFuture<String> seen =
+          BoundedExecutors.supply(pool, () -> "done")
+              .thenApply(BoundedExecutors.withMdc(done -> done + " " + MDC.get("request")));
+      assertEquals("done abc", seen.get(10, TimeUnit.SECONDS));
+      assertEquals("abc", MDC.get("request"));
+    } finally {
+      MDC.clear();
+      pool.shutdown();
+    }
+  }
+}
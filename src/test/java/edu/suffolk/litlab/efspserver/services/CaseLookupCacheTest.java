@@ -0,0 +1,155 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import jakarta.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class CaseLookupCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  private CaseLookupCache cache(int maxEntries) {
+    return new CaseLookupCache(Duration.ofSeconds(60), maxEntries, now::get);
+  }
+
+  private Response lookup(int status, Object entity) {
+    lookups.incrementAndGet();
+    return Response.status(status).entity(entity).build();
+  }
+
+  private static List<Object> key(String user, String caseId) {
+    return Arrays.asList(user, "illinois", "getCase", "adams", caseId, null);
+  }
+
+  @Test
+  public void testRepeatsAreCachedUntilTheyExpire() {
+    var cache = cache(10);
+    var first = cache.get(key("user1", "123"), () -> lookup(200, "case 123"));
+    var second = cache.get(key("user1", "123"), () -> lookup(200, "case 123 again"));
+    assertEquals(1, lookups.get());
+    assertEquals(200, second.getStatus());
+    assertEquals(first.getEntity(), second.getEntity());
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+    var third = cache.get(key("user1", "123"), () -> lookup(200, "case 123 again"));
+    assertEquals(2, lookups.get());
+    assertEquals("case 123 again", third.getEntity());
+  }
+
+  @Test
+  public void testUsersDontShare() {
+    var cache = cache(10);
+    cache.get(key("user1", "123"), () -> lookup(200, "user1's view"));
+    var other = cache.get(key("user2", "123"), () -> lookup(200, "user2's view"));
+    assertEquals(2, lookups.get());
+    assertEquals("user2's view", other.getEntity());
+  }
+
+  @Test
+  public void testErrorsArentCached() {
+    var cache = cache(10);
+    assertEquals(400, cache.get(key("user1", "123"), () -> lookup(400, "bad")).getStatus());
+    assertEquals(500, cache.get(key("user1", "123"), () -> lookup(500, "down")).getStatus());
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testPartialResultsArentReused() {
+    // Tyler couldn't reach the CMS, so the next lookup should ask again
+    var cache = cache(10);
+    var partial = cache.get(key("user1", "123"), () -> lookup(203, "partial"));
+    assertEquals(203, partial.getStatus());
+    var full = cache.get(key("user1", "123"), () -> lookup(200, "case 123"));
+    assertEquals(2, lookups.get());
+    assertEquals(200, full.getStatus());
+    assertEquals("case 123", full.getEntity());
+    // Once it's complete, it is reused
+    cache.get(key("user1", "123"), () -> lookup(203, "partial again"));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  public void testIdenticalLookupsShareOneCall() throws Exception {
+    var cache = cache(10);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService threads = Executors.newFixedThreadPool(5);
+    List<CompletableFuture<Response>> answers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      answers.add(
+          CompletableFuture.supplyAsync(
+              () ->
+                  cache.get(
+                      key("user1", "123"),
+                      () -> {
+                        try {
+                          release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex) {
+                          Thread.currentThread().interrupt();
+                        }
+                        return lookup(200, "case 123");
+                      }),
+              threads));
+    }
+    // Wait until the other four are waiting on the first
+    while (cache.stats().get("shared_in_flight") < 4) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+    for (var answer : answers) {
+      assertEquals("case 123", answer.get(10, TimeUnit.SECONDS).getEntity());
+    }
+    assertEquals(1, lookups.get());
+    threads.shutdown();
+  }
+
+  @Test
+  public void testDropsLeastRecentlyUsed() {
+    var cache = cache(2);
+    cache.get(key("user1", "1"), () -> lookup(200, "1"));
+    cache.get(key("user1", "2"), () -> lookup(200, "2"));
+    cache.get(key("user1", "1"), () -> lookup(200, "1"));
+    cache.get(key("user1", "3"), () -> lookup(200, "3"));
+    assertEquals(3, lookups.get());
+    // 2 was dropped, 1 wasn't
+    cache.get(key("user1", "1"), () -> lookup(200, "1"));
+    assertEquals(3, lookups.get());
+    cache.get(key("user1", "2"), () -> lookup(200, "2"));
+    assertEquals(4, lookups.get());
+    assertEquals(2, cache.stats().get("evictions"));
+  }
+
+  @Test
+  public void testStatsHaveMedianLatencies() {
+    var cache = cache(10);
+    assertEquals(0, cache.stats().get("miss_p50_millis"));
+    for (long millis : List.of(300L, 100L, 200L)) {
+      cache.get(
+          key("user1", "case" + millis),
+          () -> {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+            return lookup(200, "case");
+          });
+    }
+    cache.get(key("user1", "case100"), () -> lookup(200, "case"));
+    var stats = cache.stats();
+    assertEquals(3, stats.get("misses"));
+    assertEquals(1, stats.get("hits"));
+    assertEquals(200, stats.get("miss_p50_millis"));
+    // The clock doesn't move on hits here
+    assertEquals(0, stats.get("hit_p50_micros"));
+  }
+}
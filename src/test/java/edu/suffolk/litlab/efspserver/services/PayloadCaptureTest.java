@@ -0,0 +1,92 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.suffolk.litlab.efspserver.SpooledContents;
+import edu.suffolk.litlab.efspserver.ecf4.Ecf4Helper;
+import gov.niem.niem.niem_core._2.BinaryType;
+import gov.niem.niem.niem_core._2.DocumentType;
+import gov.niem.niem.niem_core._2.ObjectFactory;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+public class PayloadCaptureTest {
+
+  @AfterEach
+  public void tearDown() {
+    MDC.clear();
+  }
+
+  private static List<String> payloadsFor(String serverId) {
+    return PayloadCapture.recentFor(serverId).stream()
+        .map(c -> c.operation() + " " + c.direction() + " " + c.payload())
+        .toList();
+  }
+
+  @Test
+  public void testOffByDefault() {
+    MDC.put(MDCWrappers.SERVER_ID, "capture-off");
+    AtomicInteger made = new AtomicInteger();
+    PayloadCapture.request("getCase", () -> "payload " + made.incrementAndGet());
+    PayloadCapture.response("getCase", () -> "payload " + made.incrementAndGet());
+    // Debug logging is off too, so the payloads are never even made
+    assertEquals(0, made.get());
+    assertTrue(PayloadCapture.recentFor("capture-off").isEmpty());
+  }
+
+  @Test
+  public void testKeepsTheMostRecentPerOperation() throws Exception {
+    MDC.put(MDCWrappers.SERVER_ID, "capture-on");
+    for (int i = 1; i <= 5; i++) {
+      PayloadCapture.capture("getCase", "request", () -> "case query", 3);
+      Thread.sleep(2);
+      int n = i;
+      PayloadCapture.capture("getCase", "response", () -> "case " + n, 3);
+      Thread.sleep(2);
+    }
+    PayloadCapture.capture("reviewFiling", "request", () -> "filing", 3);
+    MDC.put(MDCWrappers.SERVER_ID, "other-server");
+    PayloadCapture.capture("getCase", "response", () -> "someone else's case", 3);
+
+    // Each operation only keeps its last 3, and the oldest go first
+    assertEquals(
+        List.of(
+            "reviewFiling request filing",
+            "getCase response case 5",
+            "getCase request case query",
+            "getCase response case 4"),
+        payloadsFor("capture-on"));
+    assertEquals(List.of("getCase response someone else's case"), payloadsFor("other-server"));
+  }
+
+  @Test
+  public void testDocumentsArentCaptured() {
+    byte[] pdf = new byte[64 * 1024];
+    new Random(3).nextBytes(pdf);
+    ObjectFactory niem = new ObjectFactory();
+    BinaryType binary = niem.createBinaryType();
+    binary.setBinaryObject(
+        niem.createBinaryBase64Object(Ecf4Helper.convertBase64(SpooledContents.of(pdf))));
+    DocumentType doc = niem.createDocumentType();
+    doc.setDocumentBinary(binary);
+
+    MDC.put(MDCWrappers.SERVER_ID, "capture-docs");
+    PayloadCapture.capture(
+        "reviewFiling",
+        "request",
+        () -> Ecf4Helper.objectToRedactedXmlStrOrError(doc, DocumentType.class),
+        3);
+    String kept = PayloadCapture.recentFor("capture-docs").get(0).payload();
+    assertTrue(kept.contains("redacted"), kept);
+    assertFalse(kept.contains(Base64.getEncoder().encodeToString(pdf).substring(0, 64)));
+    assertTrue(kept.length() < 8 * 1024, "Captured " + kept.length() + " characters");
+  }
+}
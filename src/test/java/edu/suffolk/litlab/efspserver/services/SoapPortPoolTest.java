@@ -0,0 +1,169 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.annotation.Resource;
+import jakarta.jws.WebService;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.Endpoint;
+import jakarta.xml.ws.Service;
+import jakarta.xml.ws.WebServiceContext;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.List;
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.headers.Header;
+import org.apache.cxf.jaxb.JAXBDataBinding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+public class SoapPortPoolTest {
+  private static final Logger log = LoggerFactory.getLogger(SoapPortPoolTest.class);
+
+  private static final String NS = "urn:efsp:test";
+  private static final QName USER = new QName(NS, "User");
+  private static final QName PORT = new QName(NS, "WhoAmIPort");
+  private static final int PORTS = 200;
+
+  @WebService(targetNamespace = NS)
+  public interface WhoAmI {
+    String whoAmI();
+  }
+
+  /** Answers with the User SOAP header that came with the call, or "nobody". */
+  @WebService(
+      targetNamespace = NS,
+      serviceName = "WhoAmIService",
+      portName = "WhoAmIPort",
+      endpointInterface = "edu.suffolk.litlab.efspserver.services.SoapPortPoolTest$WhoAmI")
+  public static class WhoAmIImpl implements WhoAmI {
+    @Resource WebServiceContext context;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String whoAmI() {
+      List<Header> headers = (List<Header>) context.getMessageContext().get(Header.HEADER_LIST);
+      if (headers != null) {
+        for (Header header : headers) {
+          if (header.getName().equals(USER)) {
+            return ((Element) header.getObject()).getTextContent();
+          }
+        }
+      }
+      return "nobody";
+    }
+  }
+
+  private Endpoint endpoint;
+  private Service service;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    String address = "http://localhost:" + port + "/whoami";
+    endpoint = Endpoint.publish(address, new WhoAmIImpl());
+    service = Service.create(new URL(address + "?wsdl"), new QName(NS, "WhoAmIService"));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    endpoint.stop();
+  }
+
+  private WhoAmI borrow() {
+    return SoapPortPool.get(
+        service, WhoAmI.class, () -> service.getPort(PORT, WhoAmI.class));
+  }
+
+  private static void logIn(WhoAmI port, String user) throws JAXBException {
+    var ctx = ((BindingProvider) port).getRequestContext();
+    ctx.put(Header.HEADER_LIST, List.of(new Header(USER, user, new JAXBDataBinding(String.class))));
+    ctx.put("efsp.test.user", user);
+  }
+
+  @Test
+  public void testReturnedPortsDontKeepTheLastUser() throws Exception {
+    WhoAmI alice = borrow();
+    logIn(alice, "alice");
+    assertEquals("alice", alice.whoAmI());
+
+    // Same shared port and same thread, but a new borrower
+    WhoAmI next = borrow();
+    assertFalse(((BindingProvider) next).getRequestContext().containsKey(Header.HEADER_LIST));
+    assertFalse(((BindingProvider) next).getRequestContext().containsKey("efsp.test.user"));
+    assertEquals("nobody", next.whoAmI());
+
+    WhoAmI bob = borrow();
+    logIn(bob, "bob");
+    assertEquals("bob", bob.whoAmI());
+    // Earlier borrowers keep their own context
+    assertEquals("alice", alice.whoAmI());
+  }
+
+  @Test
+  public void testOtherThreadsDontSeeTheUser() throws Exception {
+    WhoAmI alice = borrow();
+    logIn(alice, "alice");
+    assertEquals("alice", alice.whoAmI());
+
+    String[] seen = new String[1];
+    Thread other = new Thread(() -> seen[0] = borrow().whoAmI());
+    other.start();
+    other.join();
+    assertEquals("nobody", seen[0]);
+  }
+
+  /**
+   * Compares making a new CXF proxy for each request, like every request used to, with borrowing
+   * the pooled one. Both are then used for one call, so the pooled port's per call work counts too.
+   */
+  @Test
+  public void testPortsPerSecond() throws Exception {
+    // Warm up
+    for (int i = 0; i < 20; i++) {
+      service.getPort(PORT, WhoAmI.class).whoAmI();
+      borrow().whoAmI();
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < PORTS; i++) {
+      service.getPort(PORT, WhoAmI.class);
+    }
+    long makeNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (int i = 0; i < PORTS; i++) {
+      borrow();
+    }
+    long borrowNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < PORTS; i++) {
+      service.getPort(PORT, WhoAmI.class).whoAmI();
+    }
+    long makeAndCallNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (int i = 0; i < PORTS; i++) {
+      borrow().whoAmI();
+    }
+    long borrowAndCallNanos = System.nanoTime() - start;
+
+    log.info(
+        "Microseconds per port: {} to make, {} to borrow. With a call: {} made, {} borrowed",
+        makeNanos / PORTS / 1000,
+        borrowNanos / PORTS / 1000,
+        makeAndCallNanos / PORTS / 1000,
+        borrowAndCallNanos / PORTS / 1000);
+    assertTrue(borrowNanos < makeNanos, "Borrowing should be cheaper than making a port");
+  }
+}
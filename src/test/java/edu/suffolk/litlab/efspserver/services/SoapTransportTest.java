@@ -0,0 +1,82 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import jakarta.annotation.Resource;
+import jakarta.jws.WebService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.xml.ws.Endpoint;
+import jakarta.xml.ws.Service;
+import jakarta.xml.ws.WebServiceContext;
+import jakarta.xml.ws.handler.MessageContext;
+import java.net.ServerSocket;
+import java.net.URL;
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.transport.http.asyncclient.hc5.AsyncHTTPConduit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SoapTransportTest {
+  private static final String NS = "urn:efsp:test";
+
+  @WebService(targetNamespace = NS)
+  public interface Echo {
+    String echo(String text);
+  }
+
+  /** Answers with the text and the client's port, so tests can tell if a connection was reused. */
+  @WebService(
+      targetNamespace = NS,
+      serviceName = "EchoService",
+      portName = "EchoPort",
+      endpointInterface = "edu.suffolk.litlab.efspserver.services.SoapTransportTest$Echo")
+  public static class EchoImpl implements Echo {
+    @Resource WebServiceContext context;
+
+    @Override
+    public String echo(String text) {
+      HttpServletRequest req =
+          (HttpServletRequest) context.getMessageContext().get(MessageContext.SERVLET_REQUEST);
+      return text + ":" + req.getRemotePort();
+    }
+  }
+
+  private Endpoint endpoint;
+  private String address;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    address = "http://localhost:" + port + "/echo";
+    endpoint = Endpoint.publish(address, new EchoImpl());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    endpoint.stop();
+  }
+
+  @Test
+  public void testCallsGoThroughTheAsyncConduit() throws Exception {
+    URL wsdl = new URL(address + "?wsdl");
+    Service service =
+        SoapTransport.makeAsyncService(
+            "testing-stage", () -> Service.create(wsdl, new QName(NS, "EchoService")));
+    Echo echo = service.getPort(new QName(NS, "EchoPort"), Echo.class);
+    assertInstanceOf(AsyncHTTPConduit.class, ClientProxy.getClient(echo).getConduit());
+
+    String first = echo.echo("hi");
+    String second = echo.echo("again");
+    assertEquals("hi", first.split(":")[0]);
+    assertEquals("again", second.split(":")[0]);
+    // The connection is kept alive and reused
+    assertEquals(first.split(":")[1], second.split(":")[1]);
+  }
+}
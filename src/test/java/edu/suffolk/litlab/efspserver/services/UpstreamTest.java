@@ -0,0 +1,235 @@
+package edu.suffolk.litlab.efspserver.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamTest {
+
+  /** A stand in for Tyler: "/slow" waits until released, "/sleep" takes 200 ms. */
+  private HttpServer stub;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final AtomicInteger hits = new AtomicInteger();
+
+  /** Added to the clock, to skip ahead past the breaker's open time. */
+  private final AtomicLong skipped = new AtomicLong();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    stub.setExecutor(Executors.newCachedThreadPool());
+    stub.createContext(
+        "/",
+        exchange -> {
+          hits.incrementAndGet();
+          try {
+            switch (exchange.getRequestURI().getPath()) {
+              case "/slow" -> release.await(10, TimeUnit.SECONDS);
+              case "/sleep" -> Thread.sleep(200);
+              default -> {}
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, body.length);
+          exchange.getResponseBody().write(body);
+          exchange.close();
+        });
+    stub.start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    release.countDown();
+    stub.stop(0);
+  }
+
+  private String get(String path) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + stub.getAddress().getPort() + path);
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setReadTimeout(10_000);
+    try (InputStream is = conn.getInputStream()) {
+      return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private Upstream upstream(int maxCalls, int failuresToOpen) {
+    return new Upstream(
+        "illinois-stage record",
+        maxCalls,
+        failuresToOpen,
+        Duration.ofSeconds(30),
+        Duration.ofMillis(100),
+        () -> System.nanoTime() + skipped.get());
+  }
+
+  @Test
+  public void testRejectsCallsPastTheLimit() throws Throwable {
+    Upstream upstream = upstream(2, 5);
+    var first = CompletableFuture.supplyAsync(() -> callQuietly(upstream, "/slow"));
+    var second = CompletableFuture.supplyAsync(() -> callQuietly(upstream, "/slow"));
+    // Both calls are waiting on the stub
+    while (hits.get() < 2) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, upstream.status().inFlight());
+
+    long start = System.nanoTime();
+    assertThrows(UpstreamUnavailableException.class, () -> upstream.call(() -> get("/fast")));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "Didn't fail fast");
+    assertEquals(2, hits.get());
+
+    release.countDown();
+    assertEquals("ok", first.get(10, TimeUnit.SECONDS));
+    assertEquals("ok", second.get(10, TimeUnit.SECONDS));
+    // The limit only applies to calls at the same time
+    assertEquals("ok", upstream.call(() -> get("/fast")));
+    var status = upstream.status();
+    assertEquals(1, status.rejectedBusy());
+    assertEquals(0, status.inFlight());
+    assertEquals(Upstream.State.CLOSED, status.state());
+  }
+
+  @Test
+  public void testOpensOnSlowCallsAndRecovers() throws Throwable {
+    Upstream upstream = upstream(4, 2);
+    upstream.call(() -> get("/sleep"));
+    assertEquals(Upstream.State.CLOSED, upstream.status().state());
+    upstream.call(() -> get("/sleep"));
+    assertEquals(Upstream.State.OPEN, upstream.status().state());
+
+    var ex =
+        assertThrows(UpstreamUnavailableException.class, () -> upstream.call(() -> get("/fast")));
+    assertEquals("illinois-stage record", ex.getUpstream());
+    assertTrue(ex.getRetryAfterSeconds() > 0);
+    assertEquals(2, hits.get());
+
+    skipped.addAndGet(TimeUnit.SECONDS.toNanos(31));
+    assertEquals("ok", upstream.call(() -> get("/fast")));
+    var status = upstream.status();
+    assertEquals(Upstream.State.CLOSED, status.state());
+    assertEquals(3, status.calls());
+    assertEquals(2, status.failures());
+    assertEquals(1, status.rejectedOpen());
+  }
+
+  @Test
+  public void testFailedProbeReopens() throws Throwable {
+    Upstream upstream = upstream(4, 1);
+    stub.stop(0);
+    assertThrows(IOException.class, () -> upstream.call(() -> get("/fast")));
+    assertEquals(Upstream.State.OPEN, upstream.status().state());
+
+    skipped.addAndGet(TimeUnit.SECONDS.toNanos(31));
+    assertThrows(IOException.class, () -> upstream.call(() -> get("/fast")));
+    assertEquals(Upstream.State.OPEN, upstream.status().state());
+    assertThrows(UpstreamUnavailableException.class, () -> upstream.call(() -> get("/fast")));
+  }
+
+  @Test
+  public void testStaleCallsDontEndTheProbe() throws Throwable {
+    // Skipping ahead shouldn't make the probe look slow
+    Upstream upstream =
+        new Upstream(
+            "illinois-stage record",
+            4,
+            1,
+            Duration.ofSeconds(30),
+            Duration.ofHours(1),
+            () -> System.nanoTime() + skipped.get());
+    CountDownLatch staleDone = new CountDownLatch(1);
+    CountDownLatch probeDone = new CountDownLatch(1);
+    // Started before the breaker opened, and still going after it's half open
+    var stale =
+        CompletableFuture.supplyAsync(
+            () ->
+                callQuietly(
+                    upstream,
+                    () -> {
+                      staleDone.await(10, TimeUnit.SECONDS);
+                      throw new IOException("timed out");
+                    }));
+    while (upstream.status().inFlight() < 1) {
+      Thread.sleep(10);
+    }
+    assertThrows(
+        IOException.class,
+        () ->
+            upstream.call(
+                () -> {
+                  throw new IOException("down");
+                }));
+    assertEquals(Upstream.State.OPEN, upstream.status().state());
+
+    skipped.addAndGet(TimeUnit.SECONDS.toNanos(31));
+    var probe =
+        CompletableFuture.supplyAsync(
+            () ->
+                callQuietly(
+                    upstream,
+                    () -> {
+                      probeDone.await(10, TimeUnit.SECONDS);
+                      return "ok";
+                    }));
+    while (upstream.status().inFlight() < 2) {
+      Thread.sleep(10);
+    }
+    assertEquals(Upstream.State.HALF_OPEN, upstream.status().state());
+
+    staleDone.countDown();
+    assertTrue(stale.get(10, TimeUnit.SECONDS).contains("timed out"));
+    // The probe is still going, so no other call gets through, even once the breaker would be
+    // half open again
+    skipped.addAndGet(TimeUnit.SECONDS.toNanos(31));
+    assertThrows(UpstreamUnavailableException.class, () -> upstream.call(() -> "second probe"));
+
+    probeDone.countDown();
+    assertEquals("ok", probe.get(10, TimeUnit.SECONDS));
+    assertEquals(Upstream.State.CLOSED, upstream.status().state());
+    assertEquals("after", upstream.call(() -> "after"));
+  }
+
+  @Test
+  public void testRecordCallsCanBeSlowerThanOthers() {
+    // Case searches are given 3 minutes, so they shouldn't count as failures until after that
+    assertTrue(Upstream.get("slow-test", "record").status().slowCallSeconds() > 180);
+    assertEquals(60, Upstream.get("slow-test", "filing").status().slowCallSeconds());
+  }
+
+  private String callQuietly(Upstream upstream, Upstream.Call<String> call) {
+    try {
+      return upstream.call(call);
+    } catch (Throwable ex) {
+      return ex.toString();
+    }
+  }
+
+  private String callQuietly(Upstream upstream, String path) {
+    try {
+      return upstream.call(() -> get(path));
+    } catch (Throwable ex) {
+      return ex.toString();
+    }
+  }
+}
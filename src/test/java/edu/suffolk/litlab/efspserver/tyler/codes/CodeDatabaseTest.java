@@ -3,17 +3,27 @@ package edu.suffolk.litlab.efspserver.tyler.codes;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import javax.sql.DataSource;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -22,12 +32,14 @@ import org.testcontainers.utility.DockerImageName;
 
 import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
 import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+import edu.suffolk.litlab.efspserver.db.LazyConnection.ConnectionUnavailableException;
 import edu.suffolk.litlab.efspserver.ecfcodes.CodeUpdater;
 
 public class CodeDatabaseTest {
   private static Logger log = 
       LoggerFactory.getLogger(CodeDatabaseTest.class); 
   
+  private Connection conn;
   private CodeDatabase cd;
   
   @Container
@@ -37,7 +49,7 @@ public class CodeDatabaseTest {
   @BeforeEach
   public void setUp() throws SQLException {
     postgres.start();
-    Connection conn = DatabaseCreator.makeSingleConnection(
+    conn = DatabaseCreator.makeSingleConnection(
         postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
     cd = new CodeDatabase("illinois", "stage", conn); 
     cd.createTablesIfAbsent();
@@ -45,6 +57,7 @@ public class CodeDatabaseTest {
   
   @AfterEach
   public void tearDown() throws SQLException {
+    CodeSnapshot.invalidate(cd.getDomain());
     cd.close();
   }
   
@@ -101,6 +114,103 @@ public class CodeDatabaseTest {
     assertTrue(info.isPresent());
   }
 
+  @Test
+  public void testParentList() throws Exception {
+    loadFromXmls();
+    assertEquals(List.of("adams", "1", "0"), cd.getParentList("adams"));
+    assertEquals(List.of("not-a-court"), cd.getParentList("not-a-court"));
+    assertEquals(List.of(), cd.getParentList(""));
+    assertFalse(cd.getDataField("adams", "not-a-field").isvisible);
+  }
+
+  @Test
+  public void testSnapshotMatchesDb() throws Exception {
+    loadFromXmls();
+
+    List<CaseCategory> dbCats = cd.getCaseCategoriesFor("adams");
+    List<CaseType> dbTypes = cd.getCaseTypesFor("adams", "183527", Optional.empty());
+    List<OptionalServiceCode> dbOptServs = cd.getOptionalServices("adams", "183612");
+    List<ServiceCodeType> dbServices = cd.getServiceTypes("adams");
+
+    // The snapshot reads every code table, not just the ones with test codes
+    for (String table : CodeUpdater.ecf4ElemToTableName.values()) {
+      cd.createTableIfAbsent(table);
+    }
+    assertTrue(cd.publishSnapshot());
+    // Only CodeDatabases made after publishing read from the snapshot
+    CodeDatabase snapCd = new CodeDatabase("illinois", "stage", conn);
+    List<CaseCategory> snapCats = snapCd.getCaseCategoriesFor("adams");
+    assertEquals(
+        dbCats.stream().map(c -> c.code).sorted().toList(),
+        snapCats.stream().map(c -> c.code).sorted().toList());
+    List<CaseType> snapTypes = snapCd.getCaseTypesFor("adams", "183527", Optional.empty());
+    assertEquals(
+        dbTypes.stream().map(t -> t.code).sorted().toList(),
+        snapTypes.stream().map(t -> t.code).sorted().toList());
+    assertEquals(dbOptServs.size(), snapCd.getOptionalServices("adams", "183612").size());
+    assertEquals(dbServices.size(), snapCd.getServiceTypes("adams").size());
+    assertTrue(snapCd.getFullLocationInfo("adams").isPresent());
+    assertEquals(cd.getParentList("adams"), snapCd.getParentList("adams"));
+
+    // Deleting from the DB doesn't change what's already been published
+    cd.deleteFromTable("casecategory", "adams");
+    assertEquals(dbCats.size(), snapCd.getCaseCategoriesFor("adams").size());
+  }
+
+  @Test
+  public void testLookupsFailWithoutAConnection() throws Exception {
+    // Nothing listens on port 1
+    PGSimpleDataSource noDb = new PGSimpleDataSource();
+    noDb.setServerNames(new String[] {"localhost"});
+    noDb.setPortNumbers(new int[] {1});
+    CodeDatabase noConn = CodeDatabase.fromDS("illinois", "stage", noDb);
+    // Not an empty answer, which looks like the court doesn't exist
+    assertThrows(ConnectionUnavailableException.class, () -> noConn.getFullLocationInfo("adams"));
+    assertThrows(ConnectionUnavailableException.class, () -> noConn.getCaseCategoriesFor("adams"));
+    noConn.close();
+  }
+
+  private void installVersion(String version) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement("""
+        INSERT INTO installedversion (location, codelist, installedversion, domain)
+        VALUES ('adams', 'casecategory', ?, 'illinois-stage')
+        ON CONFLICT (domain, location, codelist)
+        DO UPDATE SET installedversion=EXCLUDED.installedversion""")) {
+      st.setString(1, version);
+      st.executeUpdate();
+    }
+  }
+
+  @Test
+  public void testStaleSnapshotIsRebuilt() throws Exception {
+    loadFromXmls();
+    for (String table : CodeUpdater.ecf4ElemToTableName.values()) {
+      cd.createTableIfAbsent(table);
+    }
+    installVersion("1");
+    assertTrue(cd.publishSnapshot());
+    CodeSnapshot first = CodeSnapshot.forDomain("illinois-stage").get();
+    DataSource ds = DatabaseCreator.makeDataSource(
+        postgres.getJdbcUrl(), postgres.getDatabaseName(),
+        postgres.getUsername(), postgres.getPassword(), 2, 100);
+
+    assertSame(first, CodeSnapshot.current("illinois-stage", ds, Duration.ZERO).get());
+
+    // Like running `CodeUpdater refresh` by hand: new codes, but nothing publishes them
+    cd.deleteFromTable("casecategory", "adams");
+    installVersion("2");
+    // Not checked again until the interval is up
+    assertSame(first, CodeSnapshot.current("illinois-stage", ds, Duration.ofHours(1)).get());
+
+    CodeSnapshot rebuilt = CodeSnapshot.current("illinois-stage", ds, Duration.ZERO).get();
+    assertNotSame(first, rebuilt);
+    assertEquals(0, rebuilt.getCaseCategoriesFor("adams").size());
+    assertFalse(first.getCaseCategoriesFor("adams").isEmpty());
+    CodeDatabase fresh = CodeDatabase.fromDS("illinois", "stage", ds);
+    assertEquals(0, fresh.getCaseCategoriesFor("adams").size());
+    fresh.close();
+  }
+
   @Test
   public void testDeletes() throws Exception {
     loadFromXmls();
@@ -121,4 +231,63 @@ public class CodeDatabaseTest {
     assertEquals(0, catsAfterDelete.size(), "Should be no categories after deleting");
   }
 
+  private int casetypes(String courtPattern) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(
+        "SELECT COUNT(*) FROM casetype WHERE domain='illinois-stage' AND location LIKE ?")) {
+      st.setString(1, courtPattern);
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  public void testDeleteManyCourts() throws Exception {
+    loadFromXmls();
+    int adamsRows = casetypes("adams");
+    // Copies adams' case types to 200 more courts
+    try (Statement st = conn.createStatement()) {
+      st.executeUpdate("""
+          CREATE TEMP TABLE adams_casetype AS
+          SELECT * FROM casetype WHERE domain='illinois-stage' AND location='adams'""");
+      st.execute("""
+          DO $$ BEGIN FOR i IN 1..200 LOOP
+            UPDATE adams_casetype SET location = 'court' || i;
+            INSERT INTO casetype SELECT * FROM adams_casetype;
+          END LOOP; END $$""");
+    }
+    assertEquals(200 * adamsRows, casetypes("court%"));
+
+    List<String> oneAtATime = new ArrayList<>();
+    List<String> together = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      oneAtATime.add("court" + i);
+      together.add("court" + (100 + i));
+    }
+    long start = System.nanoTime();
+    for (String court : oneAtATime) {
+      assertTrue(cd.deleteFromTable("casetype", court));
+    }
+    long oneAtATimeMs = (System.nanoTime() - start) / 1_000_000;
+    start = System.nanoTime();
+    assertTrue(cd.deleteFromTable("casetype", together));
+    long togetherMs = (System.nanoTime() - start) / 1_000_000;
+    log.info("Deleting 100 courts: {} ms one at a time, {} ms in one statement",
+        oneAtATimeMs, togetherMs);
+
+    assertEquals(0, casetypes("court%"));
+    assertEquals(adamsRows, casetypes("adams"));
+
+    assertTrue(cd.deleteFromTable("optionalservices", List.of("adams", "kane")));
+    assertEquals(0, cd.getOptionalServices("adams", "183612").size());
+    assertTrue(cd.deleteFromTable("casetype", List.of()));
+    assertFalse(cd.deleteFromTable("casetype", List.of("adams", " ")));
+    assertFalse(cd.deleteFromTable("version", List.of("adams")));
+    assertEquals(adamsRows, casetypes("adams"));
+
+    // Tables that don't exist are skipped, instead of failing the others
+    cd.vacuumTables(List.of("casetype", "optionalservices_filinglist", "not_a_table"));
+    cd.analyzeTables(List.of("casetype", "not_a_table"));
+  }
+
 }
@@ -0,0 +1,124 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+
+public class CodeStagingTest {
+
+  @Container
+  public PostgreSQLContainer<?> postgres =
+    new PostgreSQLContainer<>(DockerImageName.parse(DatabaseVersionTest.POSTGRES_DOCKER_NAME));
+
+  private Connection conn;
+  private CodeDatabase cd;
+  private CodeDatabase otherCd;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    postgres.start();
+    conn = DatabaseCreator.makeSingleConnection(
+        postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    cd = new CodeDatabase("illinois", "stage", conn);
+    otherCd = new CodeDatabase("massachusetts", "stage", conn);
+    cd.createTablesIfAbsent();
+    cd.createTableIfAbsent("casetype");
+    cd.updateTable("casetype", "adams", casetypes());
+    cd.updateTable("casetype", "other", casetypes());
+    otherCd.updateTable("casetype", "adams", casetypes());
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  private InputStream casetypes() {
+    return this.getClass().getResourceAsStream("/adams_casetype_test.xml");
+  }
+
+  private int count(String query, String... params) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      for (int i = 0; i < params.length; i++) {
+        st.setString(i + 1, params[i]);
+      }
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  private int casetypes(String domain, String court) throws SQLException {
+    return count("SELECT COUNT(*) FROM casetype WHERE domain=? AND location=?", domain, court);
+  }
+
+  private boolean schemaExists(String schema) throws SQLException {
+    return count("SELECT COUNT(*) FROM pg_namespace WHERE nspname=?", schema) > 0;
+  }
+
+  /** Reloads adams' case types for illinois in staging. */
+  private CodeStaging stageAdams() throws Exception {
+    conn.setAutoCommit(false);
+    CodeStaging staging = cd.startStaging(List.of("casetype", "installedversion")).get();
+    staging.keepOtherCourts("casetype", List.of("adams"));
+    staging.keepOtherVersions(List.of("adams/casetypecodes.zip"));
+    conn.commit();
+    cd.loadIntoSchema(staging.getSchema());
+    cd.updateTable("casetype", "adams", casetypes());
+    conn.commit();
+    return staging;
+  }
+
+  @Test
+  public void testSwapReplacesOnlyOneDomain() throws Exception {
+    int adamsRows = casetypes("illinois-stage", "adams");
+    assertTrue(adamsRows > 0);
+    int otherDomainRows = casetypes("massachusetts-stage", "adams");
+
+    // Twice: the first time the rows are in the default partition, the second in their own.
+    for (int i = 0; i < 2; i++) {
+      CodeStaging staging = stageAdams();
+      // Nothing changes in the live tables until the swap
+      assertEquals(adamsRows, casetypes("illinois-stage", "adams"));
+      assertTrue(staging.swap());
+      conn.setAutoCommit(true);
+
+      assertFalse(schemaExists(staging.getSchema()));
+      assertEquals(adamsRows, casetypes("illinois-stage", "adams"));
+      assertEquals(adamsRows, casetypes("illinois-stage", "other"));
+      assertEquals(otherDomainRows, casetypes("massachusetts-stage", "adams"));
+      assertEquals(2 * adamsRows,
+          count("SELECT COUNT(*) FROM " + CodeStaging.partitionName("casetype", "illinois-stage")));
+      assertEquals(2,
+          count("SELECT COUNT(*) FROM installedversion WHERE domain=?", "illinois-stage"));
+    }
+  }
+
+  @Test
+  public void testDropLeavesLiveCodes() throws Exception {
+    int adamsRows = casetypes("illinois-stage", "adams");
+    CodeStaging staging = stageAdams();
+    staging.drop();
+    conn.setAutoCommit(true);
+    assertFalse(schemaExists(staging.getSchema()));
+    assertEquals(adamsRows, casetypes("illinois-stage", "adams"));
+    assertEquals(adamsRows, casetypes("illinois-stage", "other"));
+  }
+}
@@ -0,0 +1,109 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+import edu.suffolk.litlab.efspserver.tyler.codes.CodeTableDiff.RowChanges;
+
+public class CodeTableDiffTest {
+
+  private static final String DOMAIN = "illinois-diff";
+
+  @Container
+  public PostgreSQLContainer<?> postgres =
+    new PostgreSQLContainer<>(DockerImageName.parse(DatabaseVersionTest.POSTGRES_DOCKER_NAME));
+
+  private Connection conn;
+  private CodeDatabase cd;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    postgres.start();
+    conn = DatabaseCreator.makeSingleConnection(
+        postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    cd = new CodeDatabase("illinois", "diff", conn);
+    cd.createTablesIfAbsent();
+    for (String table : new String[] {"casetype", "optionalservices"}) {
+      cd.createTableIfAbsent(table);
+      cd.updateTable(table, "adams", reader(table));
+      cd.updateTable(table, "other", reader(table));
+    }
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  private XMLStreamReader reader(String table) throws Exception {
+    String filename = "/adams_" + table + "_test.xml";
+    return XMLInputFactory.newInstance().createXMLStreamReader(this.getClass().getResourceAsStream(filename));
+  }
+
+  private int execute(String query) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, DOMAIN);
+      return st.executeUpdate();
+    }
+  }
+
+  private int casetypes(String court) throws SQLException {
+    try (PreparedStatement st =
+        conn.prepareStatement("SELECT COUNT(*) FROM casetype WHERE domain=? AND location=?")) {
+      st.setString(1, DOMAIN);
+      st.setString(2, court);
+      ResultSet rs = st.executeQuery();
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  public void testSameCodesChangeNothing() throws Exception {
+    int rows = casetypes("adams");
+    assertTrue(rows > 0);
+    assertTrue(cd.diffTable("casetype", "adams", reader("casetype")).isEmpty());
+    assertTrue(cd.diffTable("optionalservices", "adams", reader("optionalservices")).isEmpty());
+    assertEquals(rows, casetypes("adams"));
+  }
+
+  @Test
+  public void testOnlyChangedRowsAreWritten() throws Exception {
+    int rows = casetypes("adams");
+    // One changed row, one missing row, and one extra copy of a row
+    execute("""
+        UPDATE casetype SET name = name || ' (old)' WHERE ctid =
+          (SELECT ctid FROM casetype WHERE domain=? AND location='adams' ORDER BY code LIMIT 1)""");
+    execute("""
+        DELETE FROM casetype WHERE ctid =
+          (SELECT ctid FROM casetype WHERE domain=? AND location='adams' ORDER BY code DESC LIMIT 1)""");
+    execute("""
+        INSERT INTO casetype SELECT * FROM casetype
+        WHERE domain=? AND location='adams' ORDER BY code LIMIT 1 OFFSET 1""");
+    assertEquals(rows, casetypes("adams"));
+
+    RowChanges changes = cd.diffTable("casetype", "adams", reader("casetype"));
+    assertEquals(new RowChanges(2, 2), changes);
+    assertEquals(rows, casetypes("adams"));
+    assertEquals(rows, casetypes("other"));
+
+    assertTrue(cd.diffTable("casetype", "adams", reader("casetype")).isEmpty());
+  }
+}
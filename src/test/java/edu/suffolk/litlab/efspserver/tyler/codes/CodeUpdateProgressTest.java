@@ -0,0 +1,89 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+
+public class CodeUpdateProgressTest {
+
+  @Container
+  public PostgreSQLContainer<?> postgres =
+    new PostgreSQLContainer<>(DockerImageName.parse(DatabaseVersionTest.POSTGRES_DOCKER_NAME));
+
+  private Connection conn;
+  private CodeDatabase cd;
+  private CodeDatabase otherCd;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    postgres.start();
+    conn = DatabaseCreator.makeSingleConnection(
+        postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    cd = new CodeDatabase("illinois", "stage", conn);
+    otherCd = new CodeDatabase("massachusetts", "stage", conn);
+    cd.createTablesIfAbsent();
+    cd.createTableIfAbsent("casetype");
+    cd.startCheckpoints(false);
+    for (String court : new String[] {"adams", "other"}) {
+      cd.updateTable("casetype", court, casetypes());
+      cd.markLoaded("casetype", court);
+    }
+    otherCd.updateTable("casetype", "adams", casetypes());
+    otherCd.startCheckpoints(false);
+    otherCd.markLoaded("casetype", "adams");
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  private InputStream casetypes() {
+    return this.getClass().getResourceAsStream("/adams_casetype_test.xml");
+  }
+
+  @Test
+  public void testResumeSkipsLoadedTables() throws Exception {
+    assertEquals(Set.of("adams/casetypecodes.zip", "other/casetypecodes.zip"),
+        cd.startCheckpoints(true));
+    // Loading it again keeps the checkpoint good
+    cd.updateTable("casetype", "adams", casetypes());
+    assertEquals(2, cd.startCheckpoints(true).size());
+  }
+
+  @Test
+  public void testChangedVersionInvalidatesCheckpoint() throws Exception {
+    try (PreparedStatement st = conn.prepareStatement("""
+        UPDATE installedversion SET installedversion='newer'
+        WHERE domain='illinois-stage' AND location='adams'""")) {
+      assertEquals(1, st.executeUpdate());
+    }
+    assertEquals(Set.of("other/casetypecodes.zip"), cd.startCheckpoints(true));
+    // Other domains aren't touched
+    assertEquals(Set.of("adams/casetypecodes.zip"), otherCd.startCheckpoints(true));
+  }
+
+  @Test
+  public void testStartingOverClearsCheckpoints() throws Exception {
+    assertEquals(Set.of(), cd.startCheckpoints(false));
+    assertEquals(Set.of(), cd.startCheckpoints(true));
+    cd.markLoaded("casetype", "adams");
+    cd.clearCheckpoints();
+    assertEquals(Set.of(), cd.startCheckpoints(true));
+    assertEquals(Set.of("adams/casetypecodes.zip"), otherCd.startCheckpoints(true));
+  }
+}
@@ -0,0 +1,124 @@
+package edu.suffolk.litlab.efspserver.tyler.codes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.oasis_open.docs.codelist.ns.genericode._1.CodeListDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import edu.suffolk.litlab.efspserver.JaxbContexts;
+import edu.suffolk.litlab.efspserver.db.DatabaseCreator;
+import edu.suffolk.litlab.efspserver.db.DatabaseVersionTest;
+
+/**
+ * Loads each test code list both with JAXB + INSERTs and with StAX + COPY, checks that they end up
+ * with the same rows, and logs how long each took.
+ */
+public class GenericodeCopyLoaderTest {
+  private static Logger log = LoggerFactory.getLogger(GenericodeCopyLoaderTest.class);
+
+  private static final Map<String, String> tableToCourt = Map.of(
+      "location", "0",
+      "optionalservices", "adams",
+      "casecategory", "adams",
+      "casetype", "adams",
+      "casesubtype", "adams",
+      "servicetype", "adams",
+      "filingstatus", "adams");
+
+  @Container
+  public PostgreSQLContainer<?> postgres =
+    new PostgreSQLContainer<>(DockerImageName.parse(DatabaseVersionTest.POSTGRES_DOCKER_NAME));
+
+  private Connection conn;
+  private CodeDatabase jaxbCd;
+  private CodeDatabase copyCd;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    postgres.start();
+    conn = DatabaseCreator.makeSingleConnection(
+        postgres.getDatabaseName(), postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    jaxbCd = new CodeDatabase("illinois", "jaxb", conn);
+    copyCd = new CodeDatabase("illinois", "copy", conn);
+    jaxbCd.createTablesIfAbsent();
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  private XMLStreamReader reader(String table, String court) throws Exception {
+    String filename = "/" + court + "_" + table + "_test.xml";
+    return XMLInputFactory.newInstance().createXMLStreamReader(this.getClass().getResourceAsStream(filename));
+  }
+
+  /** All of the rows in the table for the domain, without the domain column, in a stable order. */
+  private List<String> rows(String table, String domain) throws SQLException {
+    List<String> rows = new ArrayList<>();
+    try (PreparedStatement st = conn.prepareStatement("SELECT * FROM " + table + " WHERE domain=?")) {
+      st.setString(1, domain);
+      ResultSet rs = st.executeQuery();
+      ResultSetMetaData md = rs.getMetaData();
+      while (rs.next()) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 1; i <= md.getColumnCount(); i++) {
+          if (!md.getColumnName(i).equals("domain")) {
+            row.append(rs.getString(i)).append('|');
+          }
+        }
+        rows.add(row.toString());
+      }
+    }
+    rows.sort(null);
+    return rows;
+  }
+
+  @Test
+  public void testCopyMatchesJaxb() throws Exception {
+    for (Map.Entry<String, String> entry : tableToCourt.entrySet()) {
+      String table = entry.getKey();
+      String court = entry.getValue();
+      jaxbCd.createTableIfAbsent(table);
+
+      long start = System.nanoTime();
+      CodeListDocument doc = JaxbContexts.unmarshaller(CodeListDocument.class)
+          .unmarshal(reader(table, court), CodeListDocument.class).getValue();
+      jaxbCd.updateTable(table, court, doc);
+      long jaxbMs = (System.nanoTime() - start) / 1_000_000;
+
+      start = System.nanoTime();
+      copyCd.updateTable(table, court, reader(table, court));
+      long copyMs = (System.nanoTime() - start) / 1_000_000;
+      log.info("{}: JAXB + INSERT took {} ms, StAX + COPY took {} ms", table, jaxbMs, copyMs);
+
+      List<String> jaxbRows = rows(table, "illinois-jaxb");
+      // The test casesubtype list is empty, but the rest should have rows
+      assertTrue(!jaxbRows.isEmpty() || table.equals("casesubtype"), table + " should have rows");
+      assertEquals(jaxbRows, rows(table, "illinois-copy"), table + " rows should match");
+    }
+    assertEquals(rows("optionalservices_filinglist", "illinois-jaxb"),
+        rows("optionalservices_filinglist", "illinois-copy"));
+    assertEquals(rows("installedversion", "illinois-jaxb"), rows("installedversion", "illinois-copy"));
+  }
+}